@@ -0,0 +1,64 @@
+package com.openlattice.chronicle.benchmarks
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.geekbeast.mappers.mappers.ObjectMappers
+import com.openlattice.chronicle.android.ChronicleData
+import com.openlattice.chronicle.android.ChronicleUsageEvent
+import com.openlattice.chronicle.services.upload.AppDataUploadService
+import com.openlattice.chronicle.services.upload.StreamingUsageEventReader
+import com.openlattice.chronicle.util.tests.TestDataFactory
+import org.openjdk.jmh.annotations.*
+import java.io.ByteArrayInputStream
+import java.io.StringWriter
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares the object mapping android ingest path with the streaming row buffer path. Run with the gc profiler
+ * (configured by default in build.gradle) and read `gc.alloc.rate.norm` as bytes allocated per event, since each
+ * invocation is normalized by the number of events in the payload.
+ *
+ * ./gradlew jmh
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+open class AndroidUsageEventIngestBenchmark {
+    companion object {
+        const val EVENTS = 2048
+    }
+
+    private val mapper: ObjectMapper = ObjectMappers.getJsonMapper()
+    private lateinit var payload: ByteArray
+
+    @Setup
+    fun setup() {
+        payload = mapper.writeValueAsBytes(
+            TestDataFactory.chronicleUsageEvents(UUID.randomUUID(), "benchmark", EVENTS)
+        )
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    fun objectMapping(): String {
+        val data = mapper.readValue(payload, ChronicleData::class.java)
+        val mapped = AppDataUploadService.filter(
+            AppDataUploadService.mapToStorageModel(data.map { it as ChronicleUsageEvent })
+        ).toList()
+        return mapper.writeValueAsString(mapped)
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    fun streaming(): String {
+        val rows = StreamingUsageEventReader(mapper).read(ByteArrayInputStream(payload)).filter()
+        val writer = StringWriter()
+        rows.writeUploadData(mapper, writer)
+        return writer.toString()
+    }
+}
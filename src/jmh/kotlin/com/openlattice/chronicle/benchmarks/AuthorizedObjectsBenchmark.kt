@@ -0,0 +1,145 @@
+package com.openlattice.chronicle.benchmarks
+
+import com.hazelcast.config.Config
+import com.hazelcast.config.InMemoryFormat
+import com.hazelcast.config.IndexConfig
+import com.hazelcast.config.IndexType
+import com.hazelcast.config.MapConfig
+import com.hazelcast.config.SerializerConfig
+import com.hazelcast.core.Hazelcast
+import com.hazelcast.core.HazelcastInstance
+import com.hazelcast.map.IMap
+import com.hazelcast.query.Predicates
+import com.openlattice.chronicle.authorization.AceKey
+import com.openlattice.chronicle.authorization.AceValue
+import com.openlattice.chronicle.authorization.AclKey
+import com.openlattice.chronicle.authorization.AuthorizedObjectsIndex
+import com.openlattice.chronicle.authorization.Permission
+import com.openlattice.chronicle.authorization.Principal
+import com.openlattice.chronicle.authorization.PrincipalType
+import com.openlattice.chronicle.authorization.SecurableObjectType
+import com.openlattice.chronicle.hazelcast.HazelcastMap
+import com.openlattice.chronicle.mapstores.authorization.PermissionMapstore.Companion.ACL_KEY_INDEX
+import com.openlattice.chronicle.mapstores.authorization.PermissionMapstore.Companion.PERMISSIONS_INDEX
+import com.openlattice.chronicle.mapstores.authorization.PermissionMapstore.Companion.PRINCIPAL_INDEX
+import com.openlattice.chronicle.mapstores.authorization.PermissionMapstore.Companion.SECURABLE_OBJECT_TYPE_INDEX
+import com.openlattice.chronicle.serializers.AceKeyStreamSerializer
+import com.openlattice.chronicle.serializers.AceValueStreamSerializer
+import com.openlattice.chronicle.serializers.AclKeyStreamSerializer
+import com.openlattice.chronicle.serializers.PrincipalStreamSerializer
+import org.openjdk.jmh.annotations.*
+import java.time.OffsetDateTime
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares listing the studies a user can read with a predicate query over the permissions map, as
+ * `HazelcastAuthorizationService.listAuthorizedObjectsOfType` has always done, against the member-local bitmap index.
+ * Scores are reported in microseconds per listing.
+ *
+ * The permissions map of an embedded single member hazelcast cluster is populated with 100k aces by default: studies
+ * with one owner and four other users each, out of 2,000 users. Every listing is for a user and the two roles all
+ * users belong to. The number of aces can be changed with `-Dchronicle.benchmark.aces`.
+ *
+ * ./gradlew jmh -Pjmh.includes=AuthorizedObjectsBenchmark
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+open class AuthorizedObjectsBenchmark {
+    companion object {
+        private const val USERS = 2_000
+        private const val ACES_PER_STUDY = 5
+        private val ACES: Int = Integer.getInteger("chronicle.benchmark.aces", 100_000)
+        private val ROLES = listOf(Principal(PrincipalType.ROLE, "researchers"), Principal(PrincipalType.ROLE, "all"))
+        private val READ = EnumSet.of(Permission.READ)
+    }
+
+    private lateinit var hazelcast: HazelcastInstance
+    private lateinit var aces: IMap<AceKey, AceValue>
+    private lateinit var index: AuthorizedObjectsIndex
+    private lateinit var principalSets: List<Set<Principal>>
+    private var next = 0
+
+    @Setup
+    fun setup() {
+        val config = Config()
+        config.clusterName = "authorized_objects_benchmark"
+        config.networkConfig.join.multicastConfig.isEnabled = false
+        config.addMapConfig(
+            MapConfig(HazelcastMap.PERMISSIONS.name)
+                .setInMemoryFormat(InMemoryFormat.OBJECT)
+                .addIndexConfig(IndexConfig(IndexType.HASH, ACL_KEY_INDEX))
+                .addIndexConfig(IndexConfig(IndexType.HASH, PRINCIPAL_INDEX))
+                .addIndexConfig(IndexConfig(IndexType.HASH, SECURABLE_OBJECT_TYPE_INDEX))
+                .addIndexConfig(IndexConfig(IndexType.HASH, PERMISSIONS_INDEX))
+        )
+        config.serializationConfig
+            .addSerializerConfig(
+                SerializerConfig().setImplementation(AceKeyStreamSerializer()).setTypeClass(AceKey::class.java)
+            )
+            .addSerializerConfig(
+                SerializerConfig().setImplementation(AceValueStreamSerializer()).setTypeClass(AceValue::class.java)
+            )
+            .addSerializerConfig(
+                SerializerConfig().setImplementation(AclKeyStreamSerializer()).setTypeClass(AclKey::class.java)
+            )
+            .addSerializerConfig(
+                SerializerConfig().setImplementation(PrincipalStreamSerializer()).setTypeClass(Principal::class.java)
+            )
+        hazelcast = Hazelcast.newHazelcastInstance(config)
+        aces = HazelcastMap.PERMISSIONS.getMap(hazelcast)
+
+        val random = Random(0)
+        val users = (0 until USERS).map { Principal(PrincipalType.USER, "user-$it") }
+        (0 until ACES / ACES_PER_STUDY).chunked(1_000).forEach { studies ->
+            aces.putAll(studies.flatMap { study ->
+                val aclKey = AclKey(UUID(0, study.toLong()))
+                val owner = AceKey(aclKey, users[random.nextInt(USERS)]) to aceValue(
+                    Permission.OWNER,
+                    Permission.READ,
+                    Permission.WRITE
+                )
+                listOf(owner) + (1 until ACES_PER_STUDY).map {
+                    val permissions = if (random.nextBoolean()) arrayOf(Permission.READ) else arrayOf(Permission.WRITE)
+                    AceKey(aclKey, users[random.nextInt(USERS)]) to aceValue(*permissions)
+                }
+            }.toMap())
+        }
+
+        principalSets = users.shuffled(random).take(256).map { (ROLES + it).toSet() }
+        index = AuthorizedObjectsIndex(aces)
+        checkNotNull(index.listAuthorizedObjects(principalSets.first(), setOf(SecurableObjectType.Study), READ))
+    }
+
+    private fun aceValue(vararg permissions: Permission): AceValue {
+        return AceValue(EnumSet.copyOf(permissions.toList()), SecurableObjectType.Study, OffsetDateTime.MAX)
+    }
+
+    private fun nextPrincipals(): Set<Principal> = principalSets[next++ and (principalSets.size - 1)]
+
+    @TearDown
+    fun tearDown() {
+        hazelcast.shutdown()
+    }
+
+    @Benchmark
+    fun predicateQuery(): Int {
+        val predicate = Predicates.and<AceKey, AceValue>(
+            Predicates.`in`(PRINCIPAL_INDEX, *nextPrincipals().toTypedArray()),
+            Predicates.equal(SECURABLE_OBJECT_TYPE_INDEX, SecurableObjectType.Study),
+            Predicates.equal(PERMISSIONS_INDEX, Permission.READ)
+        )
+        return aces.keySet(predicate).map { it.aclKey }.size
+    }
+
+    @Benchmark
+    fun bitmapIndex(): Int {
+        return index.listAuthorizedObjects(nextPrincipals(), setOf(SecurableObjectType.Study), READ)!!.size
+    }
+}
@@ -0,0 +1,197 @@
+package com.openlattice.chronicle.benchmarks
+
+import com.geekbeast.configuration.postgres.PostgresFlavor
+import com.hazelcast.config.Config
+import com.hazelcast.config.SerializerConfig
+import com.hazelcast.core.Hazelcast
+import com.hazelcast.core.HazelcastInstance
+import com.hazelcast.map.IMap
+import com.openlattice.chronicle.mapstores.stats.ParticipantKey
+import com.openlattice.chronicle.notifications.StudyNotificationSettings
+import com.openlattice.chronicle.participants.ParticipantStats
+import com.openlattice.chronicle.serializers.ParticipantKeyStreamSerializer
+import com.openlattice.chronicle.serializers.ParticipantStatsStreamSerializer
+import com.openlattice.chronicle.serializers.RecentUploadsAggregatorStreamSerializer
+import com.openlattice.chronicle.services.studies.StudyComplianceService
+import com.openlattice.chronicle.services.studies.aggregators.RecentUploadsAggregator
+import com.openlattice.chronicle.storage.PostgresBinaryCopyLoader
+import com.openlattice.chronicle.storage.RedshiftColumns
+import com.openlattice.chronicle.storage.RedshiftDataTables
+import com.openlattice.chronicle.study.StudySetting
+import com.openlattice.chronicle.study.StudySettingType
+import org.openjdk.jmh.annotations.*
+import java.sql.Connection
+import java.sql.DriverManager
+import java.time.OffsetDateTime
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares finding participants with recent android uploads by grouping usage events in event storage, as the
+ * compliance task has always done, against aggregating the participant stats map. Scores are reported in
+ * milliseconds per compliance evaluation.
+ *
+ * The synthetic dataset defaults to a million participants spread over 100 studies, with a few events each in event
+ * storage and one stats entry each in an embedded single member hazelcast cluster. The sizes can be changed with
+ * `-Dchronicle.benchmark.participants` and `-Dchronicle.benchmark.eventsPerParticipant`.
+ *
+ * Requires a local postgres database. The benchmark creates and populates `chronicle_usage_events` in a dedicated
+ * `compliance_benchmark` schema which is dropped afterwards, so it is safe to point at a development database.
+ *
+ * ./gradlew jmh -Pjmh.includes=ComplianceEvaluationBenchmark -Dchronicle.benchmark.jdbcUrl=jdbc:postgresql://localhost:5432/chronicle
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+open class ComplianceEvaluationBenchmark {
+    companion object {
+        private const val SCHEMA = "compliance_benchmark"
+        private const val STUDIES = 100
+        private const val DAYS_OF_DATA = 30
+        private val PARTICIPANTS: Int = Integer.getInteger("chronicle.benchmark.participants", 1_000_000)
+        private val EVENTS_PER_PARTICIPANT: Int = Integer.getInteger("chronicle.benchmark.eventsPerParticipant", 4)
+        private val TABLE = RedshiftDataTables.CHRONICLE_USAGE_EVENTS
+    }
+
+    private lateinit var connection: Connection
+    private lateinit var hazelcast: HazelcastInstance
+    private lateinit var participantStats: IMap<ParticipantKey, ParticipantStats>
+    private lateinit var enabledStudiesSettings: Map<UUID, Map<StudySettingType, StudySetting>>
+    private lateinit var sql: String
+
+    @Setup
+    fun setup() {
+        val studyIds = (0 until STUDIES).map { UUID(0, it.toLong()) }
+        //Uses the default no data uploaded policy.
+        enabledStudiesSettings = studyIds.associateWith {
+            mapOf(StudySettingType.Notifications to StudyNotificationSettings("", "", true))
+        }
+        sql = StudyComplianceService.buildSql(
+            TABLE.name,
+            RedshiftColumns.TIMESTAMP.name,
+            enabledStudiesSettings,
+            true,
+            PostgresFlavor.VANILLA
+        )
+
+        val random = Random(0)
+        val now = OffsetDateTime.now()
+        val lastDates = (0 until PARTICIPANTS).map {
+            now.minusSeconds(random.nextInt(DAYS_OF_DATA * 24 * 60 * 60).toLong())
+        }
+
+        setupEventStorage(studyIds, lastDates)
+        setupParticipantStats(studyIds, lastDates)
+    }
+
+    private fun setupEventStorage(studyIds: List<UUID>, lastDates: List<OffsetDateTime>) {
+        connection = DriverManager.getConnection(
+            System.getProperty("chronicle.benchmark.jdbcUrl", "jdbc:postgresql://localhost:5432/chronicle"),
+            System.getProperty("chronicle.benchmark.user", "postgres"),
+            System.getProperty("chronicle.benchmark.password", "")
+        )
+        val loader = PostgresBinaryCopyLoader(TABLE)
+        check(loader.isAvailable(connection)) { "Binary copy is not available for ${TABLE.name}." }
+
+        connection.createStatement().use { stmt ->
+            stmt.execute("DROP SCHEMA IF EXISTS $SCHEMA CASCADE")
+            stmt.execute("CREATE SCHEMA $SCHEMA")
+            stmt.execute("SET search_path TO $SCHEMA")
+            stmt.execute(
+                "CREATE TABLE ${TABLE.name} (${TABLE.columns.joinToString(",") { "${it.name} ${it.datatype.sql()}" }})"
+            )
+        }
+
+        val uploadedAt = OffsetDateTime.now()
+        loader.copy(connection, lastDates.asSequence().flatMapIndexed { i, lastDate ->
+            (0 until EVENTS_PER_PARTICIPANT).asSequence().map { event ->
+                arrayOf<Any?>(
+                    studyIds[i % STUDIES].toString(),
+                    "participant-$i",
+                    "com.example.app${event % 8}",
+                    "Move to Foreground",
+                    1 + event % 2,
+                    lastDate.minusHours(event.toLong()),
+                    "America/Los_Angeles",
+                    "",
+                    "Example App",
+                    uploadedAt
+                )
+            }
+        })
+        connection.createStatement().use { stmt -> stmt.execute("ANALYZE ${TABLE.name}") }
+    }
+
+    private fun setupParticipantStats(studyIds: List<UUID>, lastDates: List<OffsetDateTime>) {
+        val config = Config()
+        config.clusterName = SCHEMA
+        config.networkConfig.join.multicastConfig.isEnabled = false
+        config.serializationConfig
+            .addSerializerConfig(
+                SerializerConfig()
+                    .setImplementation(ParticipantKeyStreamSerializer())
+                    .setTypeClass(ParticipantKey::class.java)
+            )
+            .addSerializerConfig(
+                SerializerConfig()
+                    .setImplementation(ParticipantStatsStreamSerializer())
+                    .setTypeClass(ParticipantStats::class.java)
+            )
+            .addSerializerConfig(
+                SerializerConfig()
+                    .setImplementation(RecentUploadsAggregatorStreamSerializer())
+                    .setTypeClass(RecentUploadsAggregator::class.java)
+            )
+        hazelcast = Hazelcast.newHazelcastInstance(config)
+        participantStats = hazelcast.getMap("PARTICIPANT_STATS")
+
+        lastDates.indices.chunked(10_000).forEach { chunk ->
+            participantStats.putAll(chunk.associate { i ->
+                val studyId = studyIds[i % STUDIES]
+                val participantId = "participant-$i"
+                ParticipantKey(studyId, participantId) to ParticipantStats(
+                    studyId = studyId,
+                    participantId = participantId,
+                    androidFirstDate = lastDates[i].minusHours(EVENTS_PER_PARTICIPANT - 1L),
+                    androidLastDate = lastDates[i],
+                    androidUniqueDates = setOf(lastDates[i].toLocalDate()),
+                )
+            })
+        }
+    }
+
+    @TearDown
+    fun tearDown() {
+        connection.createStatement().use { stmt -> stmt.execute("DROP SCHEMA IF EXISTS $SCHEMA CASCADE") }
+        connection.close()
+        hazelcast.shutdown()
+    }
+
+    @Benchmark
+    fun eventStorageGroupBy(): Int {
+        val studyParticipants = mutableMapOf<UUID, MutableSet<String>>()
+        connection.createStatement().use { stmt ->
+            stmt.executeQuery(sql).use { rs ->
+                while (rs.next()) {
+                    studyParticipants
+                        .getOrPut(UUID.fromString(rs.getString(RedshiftColumns.STUDY_ID.name))) { mutableSetOf() }
+                        .add(rs.getString(RedshiftColumns.PARTICIPANT_ID.name))
+                }
+            }
+        }
+        return studyParticipants.values.sumOf { it.size }
+    }
+
+    @Benchmark
+    fun participantStatsAggregator(): Int {
+        val recentUploads = participantStats.aggregate(
+            RecentUploadsAggregator(StudyComplianceService.getCutoffs(enabledStudiesSettings))
+        )
+        return recentUploads.android.values.sumOf { it.size }
+    }
+}
@@ -0,0 +1,153 @@
+package com.openlattice.chronicle.benchmarks
+
+import com.fasterxml.jackson.module.kotlin.readValue
+import com.geekbeast.configuration.postgres.PostgresFlavor
+import com.geekbeast.mappers.mappers.ObjectMappers
+import com.openlattice.chronicle.android.ChronicleUsageEvent
+import com.openlattice.chronicle.services.upload.AppDataUploadService
+import com.openlattice.chronicle.services.upload.UploadBufferCodec
+import com.openlattice.chronicle.services.upload.UsageEventColumn
+import com.openlattice.chronicle.services.upload.UsageEventQueueEntries
+import com.openlattice.chronicle.services.upload.UsageEventQueueEntry
+import com.openlattice.chronicle.storage.RedshiftDataTables
+import com.openlattice.chronicle.storage.sinks.EventSink
+import com.openlattice.chronicle.storage.sinks.InMemoryEventSink
+import com.openlattice.chronicle.storage.sinks.PostgresUsageEventSink
+import com.openlattice.chronicle.storage.sinks.RedshiftUsageEventSink
+import com.openlattice.chronicle.storage.tasks.BufferedUpload
+import com.openlattice.chronicle.storage.tasks.UsageEventStorageDrain
+import com.openlattice.chronicle.util.tests.TestDataFactory
+import com.zaxxer.hikari.HikariConfig
+import com.zaxxer.hikari.HikariDataSource
+import org.openjdk.jmh.annotations.*
+import java.io.File
+import java.time.OffsetDateTime
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Replays android upload buffer payloads through the event storage drain into each [EventSink]. Scores are the time to
+ * drain the full set of payloads once, the number of events per replay is printed during setup.
+ *
+ * Payloads are read from the directory in `chronicle.benchmark.payloads`, one upload buffer row per file. Files ending
+ * in `.json` hold the `data` column and any other file holds the `data_binary` column. Without recorded payloads the
+ * benchmark generates random usage events.
+ *
+ * The `postgres`, `postgres-copy` and `redshift` sinks require a database. Tables are created in a dedicated
+ * `sink_benchmark` schema which is dropped afterwards, so it is safe to point at a development database.
+ *
+ * ./gradlew jmhJar
+ * java -Dchronicle.benchmark.payloads=/tmp/payloads -Dchronicle.benchmark.jdbcUrl=jdbc:postgresql://localhost:5432/chronicle \
+ *     -jar build/libs/chronicle-server-*-jmh.jar EventSinkBenchmark -p sink=memory,postgres,postgres-copy
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+open class EventSinkBenchmark {
+    companion object {
+        private const val SCHEMA = "sink_benchmark"
+        private const val GENERATED_UPLOADS = 64
+        private const val GENERATED_EVENTS_PER_UPLOAD = 256
+        private val TABLE = RedshiftDataTables.CHRONICLE_USAGE_EVENTS
+    }
+
+    @Param("memory")
+    var sink: String = "memory"
+
+    private val mapper = ObjectMappers.getJsonMapper()
+    private val studyId = UUID.randomUUID()
+    private var hds: HikariDataSource? = null
+    private lateinit var drain: UsageEventStorageDrain
+    private lateinit var uploads: List<BufferedUpload<UsageEventQueueEntry>>
+
+    @Setup
+    fun setup() {
+        uploads = recordedUploads() ?: generatedUploads()
+
+        val eventSink: EventSink<UsageEventQueueEntry> = when (sink) {
+            "memory" -> InMemoryEventSink(false)
+            "postgres" -> PostgresUsageEventSink(dataSource(), false)
+            "postgres-copy" -> PostgresUsageEventSink(dataSource(), true)
+            "redshift" -> RedshiftUsageEventSink(dataSource())
+            else -> throw IllegalArgumentException("Unknown sink $sink")
+        }
+        drain = UsageEventStorageDrain({ PostgresFlavor.VANILLA }, { eventSink })
+
+        println("Replaying ${uploads.size} uploads with ${uploads.sumOf { it.events.size }} events into $sink")
+    }
+
+    @Setup(Level.Invocation)
+    fun truncate() {
+        hds?.connection?.use { connection ->
+            connection.createStatement().use { stmt -> stmt.execute("TRUNCATE ${TABLE.name}") }
+        }
+    }
+
+    @TearDown
+    fun tearDown() {
+        hds?.use { ds ->
+            ds.connection.use { connection ->
+                connection.createStatement().use { stmt -> stmt.execute("DROP SCHEMA IF EXISTS $SCHEMA CASCADE") }
+            }
+        }
+    }
+
+    @Benchmark
+    fun replay(): Int {
+        return drain.write(uploads, null)
+    }
+
+    private fun dataSource(): HikariDataSource {
+        val config = HikariConfig()
+        config.jdbcUrl = System.getProperty("chronicle.benchmark.jdbcUrl", "jdbc:postgresql://localhost:5432/chronicle")
+        config.username = System.getProperty("chronicle.benchmark.user", "postgres")
+        config.password = System.getProperty("chronicle.benchmark.password", "")
+        config.connectionInitSql = "SET search_path TO $SCHEMA"
+
+        val ds = HikariDataSource(config)
+        ds.connection.use { connection ->
+            connection.createStatement().use { stmt ->
+                stmt.execute("CREATE SCHEMA IF NOT EXISTS $SCHEMA")
+                stmt.execute(
+                    "CREATE TABLE IF NOT EXISTS ${TABLE.name} (${
+                        TABLE.columns.joinToString(",") { "${it.name} ${it.datatype.sql()}" }
+                    })"
+                )
+            }
+        }
+        hds = ds
+        return ds
+    }
+
+    private fun recordedUploads(): List<BufferedUpload<UsageEventQueueEntry>>? {
+        val directory = System.getProperty("chronicle.benchmark.payloads") ?: return null
+        val files = checkNotNull(File(directory).listFiles()) { "Unable to list payloads in $directory" }
+        return files.filter { it.isFile }.sortedBy { it.name }.mapIndexed { index, file ->
+            val data: List<Map<String, UsageEventColumn>> = if (file.extension == "json") {
+                mapper.readValue(file)
+            } else {
+                UploadBufferCodec.decodeUsageEvents(mapper, file.readBytes())
+            }
+            upload("participant-${index % 16}", data)
+        }
+    }
+
+    private fun generatedUploads(): List<BufferedUpload<UsageEventQueueEntry>> {
+        return (0 until GENERATED_UPLOADS).map { index ->
+            val participantId = "participant-${index % 16}"
+            val events = TestDataFactory.chronicleUsageEvents(studyId, participantId, GENERATED_EVENTS_PER_UPLOAD)
+                .map { it as ChronicleUsageEvent }
+            upload(participantId, AppDataUploadService.mapToStorageModel(events).toList())
+        }
+    }
+
+    private fun upload(participantId: String, data: List<Map<String, UsageEventColumn>>) = BufferedUpload(
+        studyId,
+        UsageEventQueueEntries(studyId, participantId, data, OffsetDateTime.now()).toEntryList()
+    )
+}
@@ -0,0 +1,115 @@
+package com.openlattice.chronicle.benchmarks
+
+import com.openlattice.chronicle.storage.ChroniclePostgresTables
+import com.openlattice.chronicle.storage.PostgresBinaryCopyLoader
+import com.openlattice.chronicle.storage.RedshiftDataTables
+import org.openjdk.jmh.annotations.*
+import java.sql.Connection
+import java.sql.DriverManager
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+import java.util.*
+import java.util.concurrent.TimeUnit
+import kotlin.math.min
+
+/**
+ * Compares loading usage events into vanilla postgres event storage with multi-row inserts against binary `COPY`.
+ * Scores are reported in rows per second.
+ *
+ * Requires a local postgres database. The benchmark creates and truncates `chronicle_usage_events` in a dedicated
+ * `copy_benchmark` schema, so it is safe to point at a development database.
+ *
+ * ./gradlew jmh -Pjmh.includes=EventStorageLoadBenchmark -Dchronicle.benchmark.jdbcUrl=jdbc:postgresql://localhost:5432/chronicle
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+open class EventStorageLoadBenchmark {
+    companion object {
+        const val ROWS = 10_000
+        private const val SCHEMA = "copy_benchmark"
+        private val TABLE = RedshiftDataTables.CHRONICLE_USAGE_EVENTS
+        private val INSERT_BATCH_SIZE = (ChroniclePostgresTables.MAX_BIND_PARAMETERS - 1) / TABLE.columns.size
+    }
+
+    private val loader = PostgresBinaryCopyLoader(TABLE)
+    private lateinit var connection: Connection
+    private lateinit var rows: List<Array<Any?>>
+
+    @Setup
+    fun setup() {
+        connection = DriverManager.getConnection(
+            System.getProperty("chronicle.benchmark.jdbcUrl", "jdbc:postgresql://localhost:5432/chronicle"),
+            System.getProperty("chronicle.benchmark.user", "postgres"),
+            System.getProperty("chronicle.benchmark.password", "")
+        )
+        check(loader.isAvailable(connection)) { "Binary copy is not available for ${TABLE.name}." }
+
+        connection.createStatement().use { stmt ->
+            stmt.execute("CREATE SCHEMA IF NOT EXISTS $SCHEMA")
+            stmt.execute("SET search_path TO $SCHEMA")
+            stmt.execute(
+                "CREATE TABLE IF NOT EXISTS ${TABLE.name} (${
+                    TABLE.columns.joinToString(",") { "${it.name} ${it.datatype.sql()}" }
+                })"
+            )
+        }
+
+        val random = Random(0)
+        val studyId = UUID.randomUUID().toString()
+        val start = OffsetDateTime.of(2022, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC)
+        rows = (0 until ROWS).map { i ->
+            arrayOf<Any?>(
+                studyId,
+                "participant-${i % 16}",
+                "com.example.app${random.nextInt(64)}",
+                "Move to Foreground",
+                1 + random.nextInt(2),
+                start.plusSeconds(i.toLong()),
+                "America/Los_Angeles",
+                "",
+                "Example App",
+                OffsetDateTime.now()
+            )
+        }
+    }
+
+    @Setup(Level.Invocation)
+    fun truncate() {
+        connection.createStatement().use { stmt -> stmt.execute("TRUNCATE ${TABLE.name}") }
+    }
+
+    @TearDown
+    fun tearDown() {
+        connection.createStatement().use { stmt -> stmt.execute("DROP SCHEMA IF EXISTS $SCHEMA CASCADE") }
+        connection.close()
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    fun multiRowInsert(): Int {
+        val insertBatchSize = min(rows.size, INSERT_BATCH_SIZE)
+        return rows.chunked(insertBatchSize).sumOf { chunk ->
+            connection.prepareStatement(RedshiftDataTables.buildMultilineInsertUsageEvents(chunk.size, false))
+                .use { ps ->
+                    var indexBase = 0
+                    chunk.forEach { row ->
+                        row.forEachIndexed { index, value -> ps.setObject(indexBase + index + 1, value) }
+                        indexBase += row.size
+                    }
+                    ps.executeUpdate()
+                }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    fun binaryCopy(): Long {
+        return loader.copy(connection, rows.asSequence())
+    }
+}
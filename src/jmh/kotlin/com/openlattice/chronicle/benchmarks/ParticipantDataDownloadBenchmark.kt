@@ -0,0 +1,189 @@
+package com.openlattice.chronicle.benchmarks
+
+import com.geekbeast.mappers.mappers.ObjectMappers
+import com.geekbeast.postgres.PostgresArrays
+import com.geekbeast.postgres.streams.BasePostgresIterable
+import com.geekbeast.postgres.streams.PreparedStatementHolderSupplier
+import com.openlattice.chronicle.constants.CustomMediaType
+import com.openlattice.chronicle.converters.PostgresDownloadCsvHttpMessageConverter
+import com.openlattice.chronicle.converters.PostgresDownloadWrapper
+import com.openlattice.chronicle.converters.PostgresRowDownload
+import com.openlattice.chronicle.converters.PostgresRowDownloadHttpMessageConverter
+import com.openlattice.chronicle.services.download.DataDownloadService
+import com.openlattice.chronicle.storage.PostgresBinaryCopyLoader
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APPLICATION_LABEL
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_PACKAGE_NAME
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.INTERACTION_TYPE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.PARTICIPANT_ID
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.STUDY_ID
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.TIMESTAMP
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.TIMEZONE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.USERNAME
+import com.openlattice.chronicle.storage.RedshiftDataTables
+import com.zaxxer.hikari.HikariConfig
+import com.zaxxer.hikari.HikariDataSource
+import org.openjdk.jmh.annotations.*
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpOutputMessage
+import java.io.OutputStream
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares the map based participant data download against the streaming row download for usage events. Scores are
+ * reported in rows per second and the `gc` profiler reports `gc.alloc.rate.norm` as bytes allocated per row.
+ *
+ * Requires a local postgres database. The benchmark creates and populates `chronicle_usage_events` in a dedicated
+ * `download_benchmark` schema which is dropped afterwards, so it is safe to point at a development database.
+ *
+ * ./gradlew jmh -Pjmh.includes=ParticipantDataDownloadBenchmark -Dchronicle.benchmark.jdbcUrl=jdbc:postgresql://localhost:5432/chronicle
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+open class ParticipantDataDownloadBenchmark {
+    companion object {
+        const val ROWS = 100_000
+        private const val SCHEMA = "download_benchmark"
+        private const val FETCH_SIZE = 32768
+        private val TABLE = RedshiftDataTables.CHRONICLE_USAGE_EVENTS
+        private val SQL = """
+            SELECT ${TABLE.columns.joinToString(",") { it.name }}
+            FROM ${TABLE.name}
+            WHERE ${STUDY_ID.name} = ?
+            AND ${PARTICIPANT_ID.name} = ANY(?)
+            AND ${TIMESTAMP.name} >= ?
+            AND ${TIMESTAMP.name} < ?
+        """.trimIndent()
+    }
+
+    @Param("csv", "json")
+    var format: String = "csv"
+
+    private val studyId = UUID.randomUUID()
+    private val participantIds = (0 until 16).map { "participant-$it" }.toSet()
+    private val start = OffsetDateTime.of(2022, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC)
+    private val end = start.plusSeconds(ROWS.toLong())
+    private val csvConverter = PostgresDownloadCsvHttpMessageConverter()
+    private val mapper = ObjectMappers.getJsonMapper()
+    private val out = OutputStream.nullOutputStream()
+    private val outputMessage = object : HttpOutputMessage {
+        private val headers = HttpHeaders()
+        override fun getHeaders(): HttpHeaders = headers
+        override fun getBody(): OutputStream = out
+    }
+    private lateinit var hds: HikariDataSource
+
+    @Setup
+    fun setup() {
+        val config = HikariConfig()
+        config.jdbcUrl = System.getProperty("chronicle.benchmark.jdbcUrl", "jdbc:postgresql://localhost:5432/chronicle")
+        config.username = System.getProperty("chronicle.benchmark.user", "postgres")
+        config.password = System.getProperty("chronicle.benchmark.password", "")
+        config.connectionInitSql = "SET search_path TO $SCHEMA"
+        hds = HikariDataSource(config)
+
+        val random = Random(0)
+        val rows = (0 until ROWS).asSequence().map { i ->
+            arrayOf<Any?>(
+                studyId.toString(),
+                "participant-${i % 16}",
+                "com.example.app${random.nextInt(64)}",
+                "Move to Foreground",
+                1 + random.nextInt(2),
+                start.plusSeconds(i.toLong()),
+                "America/Los_Angeles",
+                "",
+                "Example App",
+                OffsetDateTime.now()
+            )
+        }
+
+        hds.connection.use { connection ->
+            connection.createStatement().use { stmt ->
+                stmt.execute("CREATE SCHEMA IF NOT EXISTS $SCHEMA")
+                stmt.execute("SET search_path TO $SCHEMA")
+                stmt.execute(
+                    "CREATE TABLE IF NOT EXISTS ${TABLE.name} (${
+                        TABLE.columns.joinToString(",") { "${it.name} ${it.datatype.sql()}" }
+                    })"
+                )
+                stmt.execute("TRUNCATE ${TABLE.name}")
+            }
+            PostgresBinaryCopyLoader(TABLE).copy(connection, rows)
+        }
+    }
+
+    @TearDown
+    fun tearDown() {
+        hds.use { ds ->
+            ds.connection.use { connection ->
+                connection.createStatement().use { stmt -> stmt.execute("DROP SCHEMA IF EXISTS $SCHEMA CASCADE") }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    fun maps() {
+        val download = mapDownload()
+        when (format) {
+            "csv" -> csvConverter.write(download, CustomMediaType.TEXT_CSV, outputMessage)
+            else -> mapper.writeValue(out, download)
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    fun rows(): Long {
+        val download = PostgresRowDownload(
+            hds,
+            SQL,
+            DataDownloadService.USAGE_EVENTS_DOWNLOAD_COLUMNS,
+            FETCH_SIZE
+        ) { connection, ps -> bind(connection, ps) }
+        return when (format) {
+            "csv" -> PostgresRowDownloadHttpMessageConverter.writeCsv(download, out)
+            else -> PostgresRowDownloadHttpMessageConverter.writeJson(download, out)
+        }
+    }
+
+    /**
+     * Mirrors [DataDownloadService.getParticipantsUsageEventsData], except that arrays are created on the statement's
+     * connection so that repeated invocations do not exhaust the pool.
+     */
+    private fun mapDownload(): PostgresDownloadWrapper {
+        val iterable = BasePostgresIterable<Map<String, Any>>(
+            PreparedStatementHolderSupplier(hds, SQL, FETCH_SIZE) { ps -> bind(ps.connection, ps) }
+        ) { rs ->
+            mapOf(
+                DataDownloadService.associateString(rs, STUDY_ID),
+                DataDownloadService.associateString(rs, PARTICIPANT_ID),
+                DataDownloadService.associateString(rs, APP_PACKAGE_NAME),
+                DataDownloadService.associateString(rs, INTERACTION_TYPE),
+                DataDownloadService.associateOffsetDatetimeWithTimezone(rs, TIMEZONE, TIMESTAMP),
+                DataDownloadService.associateString(rs, TIMEZONE),
+                DataDownloadService.associateString(rs, USERNAME),
+                DataDownloadService.associateString(rs, APPLICATION_LABEL)
+            )
+        }
+        return PostgresDownloadWrapper(iterable).withColumnAdvice(TABLE.columns.map { it.name })
+    }
+
+    private fun bind(connection: Connection, ps: PreparedStatement) {
+        var index = 0
+        ps.setString(++index, studyId.toString())
+        ps.setArray(++index, PostgresArrays.createTextArray(connection, participantIds))
+        ps.setObject(++index, start)
+        ps.setObject(++index, end)
+    }
+}
@@ -0,0 +1,76 @@
+package com.openlattice.chronicle.benchmarks
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.module.kotlin.readValue
+import com.geekbeast.mappers.mappers.ObjectMappers
+import com.openlattice.chronicle.services.upload.StreamingUsageEventReader
+import com.openlattice.chronicle.services.upload.UploadBufferCodec
+import com.openlattice.chronicle.services.upload.UsageEventColumn
+import com.openlattice.chronicle.util.tests.TestDataFactory
+import org.openjdk.jmh.annotations.*
+import java.io.ByteArrayInputStream
+import java.io.StringWriter
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares the cost of draining android usage events from the upload buffer in each encoding. The time per operation
+ * is the decode cost per event when moving to event storage. Buffered bytes per event for each encoding are printed
+ * during setup.
+ *
+ * ./gradlew jmh
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+open class UploadBufferEncodingBenchmark {
+    companion object {
+        const val EVENTS = 2048
+    }
+
+    private val mapper: ObjectMapper = ObjectMappers.getJsonMapper()
+    private lateinit var json: String
+    private lateinit var columnar: ByteArray
+    private lateinit var compressedJson: ByteArray
+
+    @Setup
+    fun setup() {
+        val payload = mapper.writeValueAsBytes(
+            TestDataFactory.chronicleUsageEvents(UUID.randomUUID(), "benchmark", EVENTS)
+        )
+        val rows = StreamingUsageEventReader(mapper).read(ByteArrayInputStream(payload)).filter()
+        val writer = StringWriter()
+        rows.writeUploadData(mapper, writer)
+        json = writer.toString()
+        columnar = UploadBufferCodec.encodeUsageEvents(rows)
+        compressedJson = UploadBufferCodec.encodeJson(mapper, mapper.readValue<List<Any>>(json))
+
+        println("Upload buffer bytes per event (${rows.size} events):")
+        println("  jsonb (before toast compression): ${json.toByteArray().size / rows.size}")
+        println("  columnar lz4: ${columnar.size / rows.size}")
+        println("  compressed json: ${compressedJson.size / rows.size}")
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    fun decodeJson(): List<Map<String, UsageEventColumn>> {
+        return mapper.readValue(json)
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    fun decodeColumnar(): List<Map<String, UsageEventColumn>> {
+        return UploadBufferCodec.decodeUsageEvents(mapper, columnar)
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    fun decodeCompressedJson(): List<Map<String, UsageEventColumn>> {
+        return UploadBufferCodec.decodeUsageEvents(mapper, compressedJson)
+    }
+}
@@ -20,6 +20,7 @@ import com.geekbeast.postgres.PostgresPod
 import com.geekbeast.pods.TaskSchedulerPod
 import com.openlattice.chronicle.hazelcast.pods.HazelcastQueuePod
 import com.openlattice.chronicle.pods.servlet.ChronicleServerSecurityPod
+import com.openlattice.chronicle.pods.tables.PartitionedPostgresDataTablesPod
 import com.openlattice.chronicle.pods.tables.PostgresDataTablesPod
 import com.openlattice.chronicle.pods.tables.PostgresTablesPod
 import com.openlattice.chronicle.pods.tables.RedshiftTablesPod
@@ -56,6 +57,7 @@ class ChronicleServer(vararg pods: Class<*>) : BaseRhizomeServer(
             PostgresTablesPod::class.java,
             RedshiftTablesPod::class.java,
             PostgresDataTablesPod::class.java,
+            PartitionedPostgresDataTablesPod::class.java,
             TaskSchedulerPod::class.java,
             SharedStreamSerializersPod::class.java,
             ByteBlobServicePod::class.java,
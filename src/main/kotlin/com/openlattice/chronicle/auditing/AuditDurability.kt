@@ -0,0 +1,20 @@
+package com.openlattice.chronicle.auditing
+
+/**
+ * How long a caller recording audit events waits before returning.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+enum class AuditDurability {
+    /**
+     * Returns as soon as the audit events are queued. Audit events are dropped if the queue is full or if they cannot
+     * be written.
+     */
+    FIRE_AND_FORGET,
+
+    /**
+     * Returns once the audit events have been committed to the audit buffer, writing them on the caller's thread if the
+     * queue is full.
+     */
+    WAIT_FOR_FLUSH
+}
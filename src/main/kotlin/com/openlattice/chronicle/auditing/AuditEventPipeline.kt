@@ -0,0 +1,159 @@
+package com.openlattice.chronicle.auditing
+
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.Histogram
+import com.codahale.metrics.Meter
+import com.codahale.metrics.MetricRegistry
+import com.codahale.metrics.Timer
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import com.openlattice.chronicle.configuration.ChronicleAuditConfiguration
+import org.slf4j.LoggerFactory
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * Group commits audit events to the audit buffer off the request thread.
+ *
+ * Request threads enqueue the audit events of a call to [record] onto a bounded per node [MpscRingBuffer] without
+ * blocking. A single background writer takes queued audit events and writes them with [write] once
+ * [ChronicleAuditConfiguration.maxBatch] events have accumulated or [ChronicleAuditConfiguration.lingerMillis] after
+ * the first one arrived, whichever comes first.
+ *
+ * With [AuditDurability.FIRE_AND_FORGET] audit events that do not fit in the queue are dropped. With
+ * [AuditDurability.WAIT_FOR_FLUSH] the writer is woken up to commit immediately and the caller blocks until the batch
+ * containing its audit events has been written, or writes them itself if the queue is full.
+ *
+ * @param write Writes a batch of audit events to the audit buffer and returns the number of rows written.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class AuditEventPipeline(
+    private val configuration: ChronicleAuditConfiguration,
+    metricRegistry: MetricRegistry,
+    private val write: (List<AuditableEvent>) -> Int
+) {
+    companion object {
+        private val logger = LoggerFactory.getLogger(AuditEventPipeline::class.java)
+    }
+
+    private val queue = MpscRingBuffer<PendingAuditEvents>(configuration.queueCapacity)
+    private val lingerNanos = TimeUnit.MILLISECONDS.toNanos(configuration.lingerMillis)
+
+    private val dropped: Meter = metricRegistry.meter(metricName("dropped"))
+    private val failed: Meter = metricRegistry.meter(metricName("failed"))
+    private val batchSizes: Histogram = metricRegistry.histogram(metricName("batch-size"))
+    private val flushes: Timer = metricRegistry.timer(metricName("flushes"))
+
+    @Volatile
+    private var running = true
+
+    private val writer = ThreadFactoryBuilder()
+        .setNameFormat("audit-pipeline-writer-%d")
+        .setDaemon(true)
+        .build()
+        .newThread { writeLoop() }
+
+    init {
+        metricRegistry.gauge(metricName("queue-depth")) { Gauge { queue.size } }
+        writer.start()
+    }
+
+    /**
+     * Queues [events] for the next group commit.
+     *
+     * @return The number of audit events written for [AuditDurability.WAIT_FOR_FLUSH], otherwise the number of audit
+     * events queued.
+     */
+    fun record(events: List<AuditableEvent>, durability: AuditDurability): Int {
+        if (events.isEmpty()) {
+            return 0
+        }
+
+        return when (durability) {
+            AuditDurability.FIRE_AND_FORGET -> {
+                if (running && queue.offer(PendingAuditEvents(events, null))) {
+                    if (queue.size >= configuration.maxBatch) LockSupport.unpark(writer)
+                    events.size
+                } else {
+                    dropped.mark(events.size.toLong())
+                    0
+                }
+            }
+            AuditDurability.WAIT_FOR_FLUSH -> recordAndWait(events)
+        }
+    }
+
+    private fun recordAndWait(events: List<AuditableEvent>): Int {
+        val pending = PendingAuditEvents(events, CompletableFuture())
+        if (!running || !queue.offer(pending)) {
+            //Waiting callers never lose audit events, so fall back to writing them on the caller's thread.
+            return flushes.time().use { write(events) }
+        }
+        LockSupport.unpark(writer)
+
+        return try {
+            pending.flushed!!.get(configuration.flushTimeoutMillis, TimeUnit.MILLISECONDS)
+        } catch (ex: ExecutionException) {
+            throw IllegalStateException("Unable to write audit events to audit buffer.", ex.cause)
+        } catch (ex: TimeoutException) {
+            throw IllegalStateException("Timed out waiting for audit events to be written to audit buffer.", ex)
+        }
+    }
+
+    /**
+     * Stops accepting audit events and waits for the writer to commit the ones already queued.
+     */
+    fun close() {
+        running = false
+        LockSupport.unpark(writer)
+        writer.join(configuration.flushTimeoutMillis)
+    }
+
+    private fun writeLoop() {
+        val batch = mutableListOf<PendingAuditEvents>()
+        var batchEvents = 0
+        var waited = false
+        var deadline = 0L
+
+        while (running || queue.size > 0 || batch.isNotEmpty()) {
+            val next = queue.poll()
+            if (next != null) {
+                if (batch.isEmpty()) deadline = System.nanoTime() + lingerNanos
+                batch.add(next)
+                batchEvents += next.events.size
+                waited = waited || next.flushed != null
+                if (batchEvents < configuration.maxBatch) continue
+            }
+
+            val remaining = deadline - System.nanoTime()
+            if (batch.isNotEmpty() && (next != null || waited || remaining <= 0 || !running)) {
+                flush(batch, batchEvents)
+                batch.clear()
+                batchEvents = 0
+                waited = false
+            } else if (next == null && running) {
+                LockSupport.parkNanos(if (batch.isEmpty()) lingerNanos else remaining)
+            }
+        }
+    }
+
+    private fun flush(batch: List<PendingAuditEvents>, batchEvents: Int) {
+        batchSizes.update(batchEvents)
+        try {
+            val written = flushes.time().use { write(batch.flatMap { it.events }) }
+            logger.debug("Group committed {} audit events ({} rows) to audit buffer.", batchEvents, written)
+            batch.forEach { it.flushed?.complete(it.events.size) }
+        } catch (ex: Exception) {
+            logger.error("Unable to group commit {} audit events to audit buffer.", batchEvents, ex)
+            failed.mark(batchEvents.toLong())
+            batch.forEach { it.flushed?.completeExceptionally(ex) }
+        }
+    }
+
+    private fun metricName(name: String): String = MetricRegistry.name(AuditEventPipeline::class.java, name)
+
+    private class PendingAuditEvents(val events: List<AuditableEvent>, val flushed: CompletableFuture<Int>?)
+}
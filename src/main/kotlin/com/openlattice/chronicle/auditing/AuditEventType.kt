@@ -33,6 +33,7 @@ enum class AuditEventType {
     BACKGROUND_USAGE_DATA_DELETION,
     BACKGROUND_TUD_DATA_DELETION,
     BACKGROUND_APP_USAGE_SURVEY_DATA_DELETION,
+    BACKGROUND_PARTICIPANTS_DATA_EXPORT,
     CREATE_JOB,
     CREATE_ORGANIZATION,
     CREATE_QUESTIONNAIRE,
@@ -26,7 +26,7 @@ class AuditedOperation<R>(
         try {
             connection.autoCommit = false
             result = op(connection)
-            recordEvents(auditOp(result))
+            auditingManager.recordTransactionEvents(auditOp(result))
             //We should stage audit events on postgres and then batch insert them into postgres
             /*
              * If an exception or service outage happens at this point, we will end up with an audit event for data
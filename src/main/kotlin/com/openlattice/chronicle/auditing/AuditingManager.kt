@@ -4,4 +4,9 @@ interface AuditingManager {
 
     fun recordEvents(events: List<AuditableEvent>): Int
 
+    /**
+     * Records the audit events of an audited transaction before the transaction is committed.
+     */
+    fun recordTransactionEvents(events: List<AuditableEvent>): Int = recordEvents(events)
+
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package com.openlattice.chronicle.auditing
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * A bounded lock-free ring buffer with many producers and a single consumer.
+ *
+ * Producers claim a slot by advancing the tail with a compare and set and then publish their element into it. The
+ * consumer takes elements in claim order and frees a slot by clearing it before advancing the head, so a producer that
+ * sees room always finds its slot empty. An element whose slot was claimed but not yet published is not visible to
+ * [poll] until it is published.
+ *
+ * @param requestedCapacity The minimum capacity of the buffer, which is rounded up to a power of two.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class MpscRingBuffer<T : Any>(requestedCapacity: Int) {
+    init {
+        require(requestedCapacity in 1..(1 shl 30)) { "Ring buffer capacity must be between 1 and 2^30." }
+    }
+
+    val capacity: Int = generateSequence(1) { it shl 1 }.first { it >= requestedCapacity }
+
+    private val mask = capacity - 1L
+    private val slots = AtomicReferenceArray<T?>(capacity)
+    private val head = AtomicLong()
+    private val tail = AtomicLong()
+
+    /**
+     * The number of elements claimed by producers and not yet taken by the consumer.
+     */
+    val size: Int
+        get() = (tail.get() - head.get()).coerceIn(0, capacity.toLong()).toInt()
+
+    /**
+     * Adds [element] to the buffer without blocking. Safe to call from any thread.
+     *
+     * @return False if the buffer is full.
+     */
+    fun offer(element: T): Boolean {
+        while (true) {
+            val claimed = tail.get()
+            if (claimed - head.get() >= capacity) {
+                return false
+            }
+            if (tail.compareAndSet(claimed, claimed + 1)) {
+                slots.lazySet((claimed and mask).toInt(), element)
+                return true
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest published element, if any. Must only be called from the consumer thread.
+     */
+    fun poll(): T? {
+        val next = head.get()
+        val slot = (next and mask).toInt()
+        val element = slots.get(slot) ?: return null
+        slots.lazySet(slot, null)
+        head.lazySet(next + 1)
+        return element
+    }
+}
@@ -1,10 +1,12 @@
 package com.openlattice.chronicle.auditing
 
+import com.codahale.metrics.MetricRegistry
 import com.geekbeast.configuration.postgres.PostgresFlavor
 import com.geekbeast.mappers.mappers.ObjectMappers
 import com.geekbeast.postgres.PostgresDatatype
 import com.geekbeast.util.StopWatch
 import com.google.common.util.concurrent.MoreExecutors
+import com.openlattice.chronicle.configuration.ChronicleAuditConfiguration
 import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.AUDIT_BUFFER
 import com.openlattice.chronicle.storage.RedshiftColumns
 import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.AUDIT
@@ -19,13 +21,25 @@ import java.util.concurrent.Semaphore
 import kotlin.math.min
 
 /**
+ * Audit events are staged in the audit buffer on platform storage and periodically moved to the audit table on audit
+ * storage. When [ChronicleAuditConfiguration.pipeline] is enabled audit events are staged by an [AuditEventPipeline]
+ * instead of on the caller's thread.
  *
  * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
  */
-class RedshiftAuditingManager(private val storageResolver: StorageResolver) : AuditingManager {
+class RedshiftAuditingManager(
+    private val storageResolver: StorageResolver,
+    private val auditConfiguration: ChronicleAuditConfiguration,
+    metricRegistry: MetricRegistry
+) : AuditingManager {
     private val auditStorage = storageResolver.getAuditStorage()
     private val mapper = ObjectMappers.newJsonMapper()
     private val sempahore = Semaphore(10)
+    private val pipeline = if (auditConfiguration.pipeline) {
+        AuditEventPipeline(auditConfiguration, metricRegistry, this::insertEvents)
+    } else {
+        null
+    }
 
     companion object {
         private val executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(1))
@@ -73,6 +87,21 @@ class RedshiftAuditingManager(private val storageResolver: StorageResolver) : Au
     }
 
     override fun recordEvents(events: List<AuditableEvent>): Int {
+        return pipeline?.record(events, AuditDurability.FIRE_AND_FORGET) ?: insertEvents(events)
+    }
+
+    override fun recordTransactionEvents(events: List<AuditableEvent>): Int {
+        return pipeline?.record(events, auditConfiguration.transactionDurability) ?: insertEvents(events)
+    }
+
+    /**
+     * Flushes audit events still queued by the pipeline. Invoked by spring when the context is closed.
+     */
+    fun close() {
+        pipeline?.close()
+    }
+
+    private fun insertEvents(events: List<AuditableEvent>): Int {
         return storageResolver.getPlatformStorage().connection.use { connection ->
             connection.prepareStatement(INSERT_AUDIT_SQL).use { ps ->
                 events.forEach { event ->
@@ -26,6 +26,7 @@ import java.sql.Connection
 import java.time.OffsetDateTime
 import java.util.EnumSet
 import java.util.EnumMap
+import java.util.concurrent.CompletionStage
 import java.util.stream.Stream
 
 /**
@@ -195,6 +196,15 @@ interface AuthorizationManager {
         principals: Set<Principal>
     ): Map<AclKey, EnumMap<Permission, Boolean>>
 
+    /**
+     * Evaluates the same requests as [authorize] without blocking the caller while the aces are read.
+     */
+    @Timed
+    fun authorizeAsync(
+        requests: Map<AclKey, EnumSet<Permission>>,
+        principals: Set<Principal>
+    ): CompletionStage<Map<AclKey, EnumMap<Permission, Boolean>>>
+
     @Timed
     fun accessChecksForPrincipals(
         accessChecks: Set<AccessCheck>,
@@ -0,0 +1,165 @@
+package com.openlattice.chronicle.authorization
+
+import com.hazelcast.core.EntryEvent
+import com.hazelcast.map.IMap
+import com.hazelcast.map.listener.EntryAddedListener
+import com.hazelcast.map.listener.EntryExpiredListener
+import com.hazelcast.map.listener.EntryRemovedListener
+import com.hazelcast.map.listener.EntryUpdatedListener
+import org.roaringbitmap.RoaringBitmap
+import org.slf4j.LoggerFactory
+import java.util.*
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+/**
+ * A member-local inverted index of the permissions map, which maps each principal, permission and securable object type
+ * to a bitmap of the objects whose ace for that principal has that permission. Objects are numbered with dense
+ * ordinals in the order they are first seen by the member.
+ *
+ * Listing the objects a set of principals has permissions on is an intersection over the required permissions and a
+ * union over principals and types of those bitmaps, instead of a predicate query over the whole permissions map.
+ *
+ * The index is built from a snapshot of the permissions map the first time it is used and is then kept up to date from
+ * entry events. Changes seen while the snapshot is read are replayed on top of it. Until the index is built listings
+ * return null and callers fall back to predicate queries.
+ *
+ * Only removals and expirations revoke an ace. The permissions map is backed by a map store, so an evicted ace still
+ * exists and evictions are ignored.
+ *
+ * Ordinals of deleted objects are not reused.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class AuthorizedObjectsIndex(private val aces: IMap<AceKey, AceValue>) {
+    companion object {
+        private val logger = LoggerFactory.getLogger(AuthorizedObjectsIndex::class.java)
+    }
+
+    private enum class State {
+        NEW,
+        BUILDING,
+        READY
+    }
+
+    private data class IndexKey(val permission: Permission, val objectType: SecurableObjectType)
+
+    private data class AceChange(val aceKey: AceKey, val value: AceValue?)
+
+    private val lock = ReentrantReadWriteLock()
+    private var state = State.NEW
+    private val pending = mutableListOf<AceChange>()
+    private val ordinals = mutableMapOf<AclKey, Int>()
+    private val aclKeys = mutableListOf<AclKey>()
+    private val bitmaps = mutableMapOf<Principal, MutableMap<IndexKey, RoaringBitmap>>()
+
+    init {
+        aces.addEntryListener(Listener(), true)
+    }
+
+    /**
+     * Lists the objects of any of [objectTypes] on which at least one of [principals] has an ace with all of
+     * [permissions], in ordinal order. Returns null if the index is not built yet or [permissions] is empty.
+     */
+    fun listAuthorizedObjects(
+        principals: Set<Principal>,
+        objectTypes: Collection<SecurableObjectType>,
+        permissions: EnumSet<Permission>
+    ): List<AclKey>? {
+        if (permissions.isEmpty() || !ensureBuilt()) {
+            return null
+        }
+
+        return lock.read {
+            val authorized = RoaringBitmap()
+            principals.forEach { principal ->
+                val principalBitmaps = bitmaps[principal] ?: return@forEach
+                objectTypes.forEach { objectType ->
+                    val required = permissions.map { principalBitmaps[IndexKey(it, objectType)] }
+                    if (required.all { it != null }) {
+                        authorized.or(required.filterNotNull().reduce { a, b -> RoaringBitmap.and(a, b) })
+                    }
+                }
+            }
+            authorized.map { aclKeys[it] }
+        }
+    }
+
+    private fun ensureBuilt(): Boolean {
+        lock.write {
+            when (state) {
+                State.READY -> return true
+                State.BUILDING -> return false
+                State.NEW -> state = State.BUILDING
+            }
+        }
+
+        try {
+            //Reading the snapshot without holding the lock lets changes arrive and be queued in the meantime.
+            val snapshot = aces.entrySet()
+            lock.write {
+                snapshot.forEach { (aceKey, aceValue) -> apply(AceChange(aceKey, aceValue)) }
+                pending.forEach { apply(it) }
+                pending.clear()
+                state = State.READY
+            }
+            logger.info("Built authorized objects index with {} aces over {} objects.", snapshot.size, aclKeys.size)
+            return true
+        } catch (ex: Exception) {
+            logger.error("Unable to build authorized objects index.", ex)
+            lock.write {
+                pending.clear()
+                state = State.NEW
+            }
+            return false
+        }
+    }
+
+    private fun onChange(change: AceChange) {
+        lock.write {
+            when (state) {
+                //The change is already visible to the snapshot that will be read when the index is built.
+                State.NEW -> Unit
+                State.BUILDING -> pending.add(change)
+                State.READY -> apply(change)
+            }
+        }
+    }
+
+    /**
+     * Clears the principal's bits for the object and sets the bits of the new ace value, if any. Must be called while
+     * holding the write lock.
+     */
+    private fun apply(change: AceChange) {
+        val principal = change.aceKey.principal
+        if (change.value == null && change.aceKey.aclKey !in ordinals) {
+            return
+        }
+        val ordinal = ordinals.getOrPut(change.aceKey.aclKey) {
+            aclKeys.add(change.aceKey.aclKey)
+            aclKeys.size - 1
+        }
+
+        bitmaps[principal]?.values?.forEach { it.remove(ordinal) }
+        val value = change.value ?: return
+        val permissions = value.permissions ?: return
+        val principalBitmaps = bitmaps.getOrPut(principal) { mutableMapOf() }
+        permissions.forEach { permission ->
+            principalBitmaps.getOrPut(IndexKey(permission, value.securableObjectType)) { RoaringBitmap() }.add(ordinal)
+        }
+    }
+
+    private inner class Listener : EntryAddedListener<AceKey, AceValue>,
+                                   EntryUpdatedListener<AceKey, AceValue>,
+                                   EntryRemovedListener<AceKey, AceValue>,
+                                   EntryExpiredListener<AceKey, AceValue> {
+        override fun entryAdded(event: EntryEvent<AceKey, AceValue>) = onChange(AceChange(event.key, event.value))
+
+        override fun entryUpdated(event: EntryEvent<AceKey, AceValue>) = onChange(AceChange(event.key, event.value))
+
+        override fun entryRemoved(event: EntryEvent<AceKey, AceValue>) = onChange(AceChange(event.key, null))
+
+        override fun entryExpired(event: EntryEvent<AceKey, AceValue>) = onChange(AceChange(event.key, null))
+    }
+}
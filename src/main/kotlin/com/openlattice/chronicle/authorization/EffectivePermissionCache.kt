@@ -0,0 +1,131 @@
+package com.openlattice.chronicle.authorization
+
+import com.codahale.metrics.Meter
+import com.codahale.metrics.MetricRegistry
+import com.codahale.metrics.RatioGauge
+import com.codahale.metrics.Timer
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import com.google.common.collect.Maps
+import com.google.common.eventbus.EventBus
+import com.google.common.eventbus.Subscribe
+import com.openlattice.chronicle.configuration.ChronicleAuthorizationConfiguration
+import java.time.OffsetDateTime
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * A node-local cache of the effective permissions of a set of principals on a securable object, which is the union of
+ * the permissions of each principal's ace.
+ *
+ * Cached permissions of an object are dropped whenever any of its aces changes on the permissions map, as reported by
+ * [PermissionMapListener]. Permissions are only cached until the earliest expiration date of the aces they were read
+ * from, and at most [ChronicleAuthorizationConfiguration.permissionCacheTtlSeconds].
+ *
+ * The permissions of an object are cached in a holder that is looked up before the aces are read. An invalidation that
+ * arrives while the aces are being read drops the holder, so permissions read before the change are never visible.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class EffectivePermissionCache(
+    eventBus: EventBus,
+    private val configuration: ChronicleAuthorizationConfiguration,
+    metricRegistry: MetricRegistry,
+) {
+    private val ttlSeconds = configuration.permissionCacheTtlSeconds
+    private val cache: Cache<AclKey, ConcurrentHashMap<List<Principal>, CachedPermissions>> = CacheBuilder.newBuilder()
+        .maximumSize(configuration.permissionCacheMaxObjects)
+        .expireAfterAccess(ttlSeconds, TimeUnit.SECONDS)
+        .build()
+
+    private val hits: Meter = metricRegistry.meter(metricName("hits"))
+    private val misses: Meter = metricRegistry.meter(metricName("misses"))
+    private val invalidations: Meter = metricRegistry.meter(metricName("invalidations"))
+    private val invalidationLag: Timer = metricRegistry.timer(metricName("invalidation-lag"))
+
+    init {
+        metricRegistry.gauge(metricName("hit-ratio")) {
+            object : RatioGauge() {
+                override fun getRatio(): Ratio = Ratio.of(hits.oneMinuteRate, hits.oneMinuteRate + misses.oneMinuteRate)
+            }
+        }
+        eventBus.register(this)
+    }
+
+    companion object {
+        private val PRINCIPAL_ORDER = compareBy<Principal>({ it.type }, { it.id })
+
+        private fun metricName(name: String): String {
+            return MetricRegistry.name(EffectivePermissionCache::class.java, name)
+        }
+    }
+
+    private data class CachedPermissions(val permissions: EnumSet<Permission>, val expiresAt: OffsetDateTime)
+
+    /**
+     * Returns the effective permissions of [principals] on each of [aclKeys]. Permissions that are not cached are read
+     * with [loadAces] in a single call, which is given the ace keys of every uncached object and principal.
+     */
+    fun getPermissions(
+        aclKeys: Set<AclKey>,
+        principals: Set<Principal>,
+        loadAces: (Set<AceKey>) -> Map<AceKey, AceValue>
+    ): Map<AclKey, EnumSet<Permission>> {
+        val principalSet = principals.sortedWith(PRINCIPAL_ORDER)
+        val holders = aclKeys.associateWith { aclKey -> cache.get(aclKey) { ConcurrentHashMap() } }
+        val now = OffsetDateTime.now()
+
+        val permissions = Maps.newHashMapWithExpectedSize<AclKey, EnumSet<Permission>>(aclKeys.size)
+        val uncached = mutableSetOf<AclKey>()
+        holders.forEach { (aclKey, holder) ->
+            val cached = holder[principalSet]
+            if (cached != null && now.isBefore(cached.expiresAt)) {
+                permissions[aclKey] = EnumSet.copyOf(cached.permissions)
+            } else {
+                uncached.add(aclKey)
+            }
+        }
+
+        hits.mark((aclKeys.size - uncached.size).toLong())
+        if (uncached.isEmpty()) {
+            return permissions
+        }
+        misses.mark(uncached.size.toLong())
+
+        val aces = loadAces(uncached.flatMapTo(mutableSetOf()) { aclKey -> principals.map { AceKey(aclKey, it) } })
+        val maxExpiresAt = now.plusSeconds(ttlSeconds)
+        uncached.forEach { aclKey ->
+            val objectPermissions = EnumSet.noneOf(Permission::class.java)
+            var expiresAt = maxExpiresAt
+            principals.forEach { principal ->
+                val ace = aces[AceKey(aclKey, principal)]
+                val acePermissions = ace?.permissions
+                if (ace != null && acePermissions != null && acePermissions.isNotEmpty()) {
+                    objectPermissions.addAll(acePermissions)
+                    if (ace.expirationDate.isBefore(expiresAt)) {
+                        expiresAt = ace.expirationDate
+                    }
+                }
+            }
+
+            permissions[aclKey] = objectPermissions
+            if (now.isBefore(expiresAt)) {
+                val holder = holders.getValue(aclKey)
+                if (holder.size >= configuration.permissionCacheMaxPrincipalSets) {
+                    holder.clear()
+                }
+                holder[principalSet] = CachedPermissions(EnumSet.copyOf(objectPermissions), expiresAt)
+            }
+        }
+
+        return permissions
+    }
+
+    @Subscribe
+    fun handlePermissionChanged(event: PermissionChangedEvent) {
+        cache.invalidate(event.aceKey.aclKey)
+        invalidations.mark()
+        invalidationLag.update(System.nanoTime() - event.receivedAtNanos, TimeUnit.NANOSECONDS)
+    }
+}
@@ -7,7 +7,7 @@ import com.hazelcast.core.HazelcastInstance
 import com.hazelcast.map.IMap
 import com.hazelcast.query.Predicate
 import com.hazelcast.query.Predicates
-import com.openlattice.chronicle.authorization.aggregators.AuthorizationSetAggregator
+import com.openlattice.chronicle.authorization.aggregators.AuthorizationSetsAggregator
 import com.openlattice.chronicle.authorization.aggregators.PrincipalAggregator
 import com.openlattice.chronicle.authorization.principals.PrincipalsMapManager
 import com.openlattice.chronicle.hazelcast.HazelcastMap
@@ -37,8 +37,9 @@ import org.springframework.stereotype.Service
 import java.sql.Connection
 import java.time.OffsetDateTime
 import java.util.*
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionStage
 import java.util.concurrent.Executors
-import java.util.function.Function
 import java.util.stream.Collectors
 import java.util.stream.Stream
 
@@ -47,10 +48,13 @@ class HazelcastAuthorizationService(
     hazelcastInstance: HazelcastInstance,
     storageResolver: StorageResolver,
     private val eventBus: EventBus,
-    private val principalsMapManager: PrincipalsMapManager
+    private val principalsMapManager: PrincipalsMapManager,
+    private val permissionCache: EffectivePermissionCache? = null,
+    authorizedObjectsIndex: Boolean = true
 ) : AuthorizationManager {
     private val authorizationStorage = storageResolver.getDefaultPlatformStorage()
     private val aces: IMap<AceKey, AceValue> = HazelcastMap.PERMISSIONS.getMap(hazelcastInstance)
+    private val authorizedObjects = if (authorizedObjectsIndex) AuthorizedObjectsIndex(aces) else null
     private val securableObjectTypes = HazelcastMap.SECURABLE_OBJECT_TYPES.getMap(hazelcastInstance)
 
     companion object {
@@ -405,22 +409,57 @@ class HazelcastAuthorizationService(
 
         val permissionMap = requests.mapValues { noAccess(it.value) }.toMutableMap()
 
-        val aceKeys = requests.keys
-            .flatMap { aclKey -> principals.map { principal -> AceKey(aclKey, principal) } }
-            .toSet()
-
-        aces
-            .executeOnKeys(aceKeys, AuthorizationEntryProcessor())
-            .forEach { (aceKey, permissions) ->
-                val aclKeyPermissions = permissionMap.getValue(aceKey.aclKey)
+        if (permissionCache != null) {
+            permissionCache.getPermissions(requests.keys, principals, aces::getAll).forEach { (aclKey, permissions) ->
+                val aclKeyPermissions = permissionMap.getValue(aclKey)
                 permissions.forEach { permission ->
                     aclKeyPermissions.computeIfPresent(permission) { _, _ -> true }
                 }
             }
+            return permissionMap
+        }
+
+        val aceKeys = getAceKeys(requests, principals)
+        grantPermissions(permissionMap, aces.executeOnKeys(aceKeys, AuthorizationEntryProcessor()))
 
         return permissionMap
     }
 
+    @Timed
+    override fun authorizeAsync(
+        requests: Map<AclKey, EnumSet<Permission>>,
+        principals: Set<Principal>
+    ): CompletionStage<Map<AclKey, EnumMap<Permission, Boolean>>> {
+        if (requests.isEmpty() || principals.isEmpty()) {
+            return CompletableFuture.completedFuture(requests.mapValues { noAccess(it.value) })
+        }
+
+        return aces.submitToKeys(getAceKeys(requests, principals), AuthorizationEntryProcessor())
+            .thenApply { results ->
+                val permissionMap = requests.mapValues { noAccess(it.value) }
+                grantPermissions(permissionMap, results)
+                permissionMap
+            }
+    }
+
+    private fun getAceKeys(requests: Map<AclKey, EnumSet<Permission>>, principals: Set<Principal>): Set<AceKey> {
+        return requests.keys
+            .flatMap { aclKey -> principals.map { principal -> AceKey(aclKey, principal) } }
+            .toSet()
+    }
+
+    private fun grantPermissions(
+        permissionMap: Map<AclKey, EnumMap<Permission, Boolean>>,
+        results: Map<AceKey, DelegatedPermissionEnumSet>
+    ) {
+        results.forEach { (aceKey, permissions) ->
+            val aclKeyPermissions = permissionMap.getValue(aceKey.aclKey)
+            permissions.forEach { permission ->
+                aclKeyPermissions.computeIfPresent(permission) { _, _ -> true }
+            }
+        }
+    }
+
     @Timed
     override fun accessChecksForPrincipals(
         accessChecks: Set<AccessCheck>,
@@ -434,7 +473,14 @@ class HazelcastAuthorizationService(
             requests[it.aclKey] = p
         }
 
-        return authorize(requests, principals).map { Authorization(it.key, it.value) }
+        //Without the permission cache bulk checks read the aces with asynchronously submitted entry processors.
+        val authorizations = if (permissionCache == null) {
+            authorizeAsync(requests, principals).toCompletableFuture().join()
+        } else {
+            authorize(requests, principals)
+        }
+
+        return authorizations.map { Authorization(it.key, it.value) }
     }
 
     @Timed
@@ -443,6 +489,12 @@ class HazelcastAuthorizationService(
         principals: Set<Principal>,
         requiredPermissions: EnumSet<Permission>
     ): Boolean {
+        if (permissionCache != null) {
+            return permissionCache.getPermissions(setOf(key), principals, aces::getAll)
+                .getValue(key)
+                .containsAll(requiredPermissions)
+        }
+
         val aceKeys = principals.map { AceKey(key, it) }.toSet()
 
         return aces.executeOnKeys(aceKeys, AuthorizationEntryProcessor())
@@ -457,10 +509,14 @@ class HazelcastAuthorizationService(
         aclKeySets: Collection<Set<AclKey>>,
         principals: Set<Principal>
     ): Map<Set<AclKey>, EnumSet<Permission>> {
-        return aclKeySets.parallelStream().collect(Collectors.toMap<Set<AclKey>, Set<AclKey>, EnumSet<Permission>>(
-            Function.identity(),
-            Function { getSecurableObjectSetPermissions(it, principals) }
-        ))
+        val distinctAclKeySets = aclKeySets.distinct()
+        val aclKeys = distinctAclKeySets.flatMapTo(mutableSetOf()) { it }
+        if (aclKeys.isEmpty() || principals.isEmpty()) {
+            return distinctAclKeySets.associateWith { EnumSet.noneOf(Permission::class.java) }
+        }
+
+        //Evaluates every set with a single aggregation instead of one cluster wide aggregation per set.
+        return aces.aggregate(AuthorizationSetsAggregator(distinctAclKeySets), matches(aclKeys, principals))
     }
 
     @Timed
@@ -494,6 +550,10 @@ class HazelcastAuthorizationService(
         objectType: SecurableObjectType,
         permissions: EnumSet<Permission>
     ): Stream<AclKey> {
+        authorizedObjects?.listAuthorizedObjects(principals, setOf(objectType), permissions)?.let {
+            return it.stream()
+        }
+
         val principalPredicate = if (principals.size == 1) hasPrincipal(principals.first()) else hasAnyPrincipals(
             principals
         )
@@ -515,6 +575,8 @@ class HazelcastAuthorizationService(
         objectType: SecurableObjectType,
         permissions: EnumSet<Permission>
     ): List<AclKey> {
+        authorizedObjects?.listAuthorizedObjects(principals, setOf(objectType), permissions)?.let { return it }
+
         val principalPredicate = if (principals.size == 1) hasPrincipal(principals.first()) else hasAnyPrincipals(
             principals
         )
@@ -533,6 +595,8 @@ class HazelcastAuthorizationService(
         objectTypes: Collection<SecurableObjectType>,
         permissions: EnumSet<Permission>
     ): Stream<AclKey> {
+        authorizedObjects?.listAuthorizedObjects(principals, objectTypes, permissions)?.let { return it.stream() }
+
         val principalPredicate = if (principals.size == 1) hasPrincipal(principals.first()) else hasAnyPrincipals(
             principals
         )
@@ -675,18 +739,6 @@ class HazelcastAuthorizationService(
         return map
     }
 
-    private fun getSecurableObjectSetPermissions(
-        aclKeySet: Set<AclKey>,
-        principals: Set<Principal>
-    ): EnumSet<Permission> {
-
-        val authorizationsMap = aclKeySet
-            .associateWith { EnumSet.noneOf(Permission::class.java) }
-            .toMutableMap()
-
-        return aces.aggregate(AuthorizationSetAggregator(authorizationsMap), matches(aclKeySet, principals))
-    }
-
     private fun getDefaultObjectType(map: Map<AclKey, SecurableObjectType>, aclKey: AclKey): SecurableObjectType {
         val securableObjectType = map[aclKey] ?: SecurableObjectType.Unknown
 
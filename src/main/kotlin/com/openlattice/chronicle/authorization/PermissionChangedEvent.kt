@@ -0,0 +1,13 @@
+package com.openlattice.chronicle.authorization
+
+/**
+ * Posted on the node's event bus when an entry of the permissions map is added, updated, removed, evicted or expired.
+ *
+ * @param receivedAtNanos When the change was received from the permissions map, as reported by [System.nanoTime].
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+data class PermissionChangedEvent(
+    val aceKey: AceKey,
+    val receivedAtNanos: Long = System.nanoTime(),
+)
@@ -3,35 +3,56 @@ package com.openlattice.chronicle.authorization
 import com.google.common.eventbus.EventBus
 import com.hazelcast.core.EntryEvent
 import com.hazelcast.map.listener.EntryAddedListener
+import com.hazelcast.map.listener.EntryEvictedListener
+import com.hazelcast.map.listener.EntryExpiredListener
 import com.hazelcast.map.listener.EntryRemovedListener
 import com.hazelcast.map.listener.EntryUpdatedListener
 
 /**
  * Handles internal permission change events. This class sits far below of authorization layer, so should not be
  * responsible for handling audit related events.
+ *
+ * Every change is posted as a [PermissionChangedEvent], which node-local caches of permissions use for invalidation.
  * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
  */
 class PermissionMapListener(private val eventBus: EventBus) : EntryAddedListener<AceKey, AceValue>,
                                                               EntryRemovedListener<AceKey, AceValue>,
-                                                              EntryUpdatedListener<AceKey, AceValue> {
+                                                              EntryUpdatedListener<AceKey, AceValue>,
+                                                              EntryEvictedListener<AceKey, AceValue>,
+                                                              EntryExpiredListener<AceKey, AceValue> {
     override fun entryAdded(event: EntryEvent<AceKey, AceValue>) {
+        postChangedEvent(event)
         if (isMaterializationEvent(event)) {
             postMaterializationEvent(event)
         }
     }
 
     override fun entryRemoved(event: EntryEvent<AceKey, AceValue>) {
+        postChangedEvent(event)
         if (isMaterializationEvent(event)) {
             postMaterializationEvent(event)
         }
     }
 
     override fun entryUpdated(event: EntryEvent<AceKey, AceValue>) {
+        postChangedEvent(event)
         if (isMaterializationEvent(event)) {
             postMaterializationEvent(event)
         }
     }
 
+    override fun entryEvicted(event: EntryEvent<AceKey, AceValue>) {
+        postChangedEvent(event)
+    }
+
+    override fun entryExpired(event: EntryEvent<AceKey, AceValue>) {
+        postChangedEvent(event)
+    }
+
+    private fun postChangedEvent(event: EntryEvent<AceKey, AceValue>) {
+        eventBus.post(PermissionChangedEvent(event.key))
+    }
+
     private fun postMaterializationEvent(event: EntryEvent<AceKey, AceValue>) {
 
     }
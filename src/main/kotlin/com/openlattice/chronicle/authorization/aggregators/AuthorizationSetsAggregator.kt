@@ -0,0 +1,67 @@
+package com.openlattice.chronicle.authorization.aggregators
+
+import com.hazelcast.aggregation.Aggregator
+import com.openlattice.chronicle.authorization.AceKey
+import com.openlattice.chronicle.authorization.AceValue
+import com.openlattice.chronicle.authorization.AclKey
+import com.openlattice.chronicle.authorization.Permission
+import org.slf4j.LoggerFactory
+import java.util.*
+
+/**
+ * Evaluates the permissions of several sets of securable objects with a single aggregation over the permissions map.
+ *
+ * Aces are reduced to the union of the permissions of every principal on each object, once for all sets, and partial
+ * results are combined by object. The permissions of each set, which are the intersection of the permissions of its
+ * objects, are only computed by [aggregate] after every partial result has been combined.
+ *
+ * @param aclKeySets The sets of securable objects to evaluate.
+ * @param permissionsMap The permissions accumulated so far for every object in any of [aclKeySets].
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+data class AuthorizationSetsAggregator(
+    val aclKeySets: List<Set<AclKey>>,
+    val permissionsMap: MutableMap<AclKey, EnumSet<Permission>>
+) : Aggregator<MutableMap.MutableEntry<AceKey, AceValue?>, Map<Set<AclKey>, EnumSet<Permission>>> {
+
+    constructor(aclKeySets: List<Set<AclKey>>) : this(
+        aclKeySets,
+        aclKeySets.flatten().associateWithTo(mutableMapOf()) { EnumSet.noneOf(Permission::class.java) }
+    )
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(AuthorizationSetsAggregator::class.java)
+    }
+
+    override fun accumulate(input: MutableMap.MutableEntry<AceKey, AceValue?>) {
+        val permissions = input.value?.permissions
+
+        if (permissions == null) {
+            logger.error("Encountered null permissions for ${input.key}")
+        } else {
+            permissionsMap.getValue(input.key.aclKey).addAll(permissions)
+        }
+    }
+
+    override fun combine(aggregator: Aggregator<*, *>?) {
+        if (aggregator is AuthorizationSetsAggregator) {
+            aggregator.permissionsMap.forEach {
+                permissionsMap.getValue(it.key).addAll(it.value)
+            }
+        }
+    }
+
+    override fun aggregate(): Map<Set<AclKey>, EnumSet<Permission>> {
+        return aclKeySets.associateWith { aclKeySet ->
+            if (aclKeySet.isEmpty()) {
+                EnumSet.noneOf(Permission::class.java)
+            } else {
+                aclKeySet.fold(EnumSet.allOf(Permission::class.java)) { acc, aclKey ->
+                    acc.retainAll(permissionsMap.getValue(aclKey))
+                    acc
+                }
+            }
+        }
+    }
+}
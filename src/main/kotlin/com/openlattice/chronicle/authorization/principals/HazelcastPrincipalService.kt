@@ -21,7 +21,6 @@ package com.openlattice.chronicle.authorization.principals
 
 import com.auth0.json.mgmt.users.User
 import com.google.common.base.Preconditions
-import com.google.common.collect.Sets
 import com.hazelcast.core.HazelcastInstance
 import com.hazelcast.query.Predicate
 import com.hazelcast.query.Predicates
@@ -30,7 +29,6 @@ import com.openlattice.chronicle.authorization.*
 import com.openlattice.chronicle.authorization.reservations.AclKeyReservationService
 import com.openlattice.chronicle.authorization.principals.processors.*
 import com.openlattice.chronicle.hazelcast.HazelcastMap
-import com.openlattice.chronicle.mapstores.authorization.PrincipalTreesMapstore
 import com.openlattice.chronicle.util.getSafely
 import org.slf4j.LoggerFactory
 import org.springframework.stereotype.Service
@@ -46,6 +44,7 @@ class HazelcastPrincipalService(
     override val authorizationManager: AuthorizationManager,
     private val principalsMapManager: PrincipalsMapManager,
     override val auditingManager: AuditingManager,
+    private val principalTreeClosure: PrincipalTreeClosure,
 ) : SecurePrincipalsManager, AuthorizingComponent {
 
     private val principals = HazelcastMap.PRINCIPALS.getMap(hazelcastInstance)
@@ -68,14 +67,6 @@ class HazelcastPrincipalService(
             return PrincipalsMapManager.hasPrincipalType(principalType)
         }
 
-        private fun hasSecurablePrincipal(principalAclKey: AclKey): Predicate<AclKey, AclKeySet> {
-            return Predicates.equal(PrincipalTreesMapstore.INDEX, principalAclKey.index)
-        }
-
-        private fun hasAnySecurablePrincipal(aclKeys: Set<AclKey>): Predicate<AclKey, AclKeySet> {
-            return Predicates.`in`(PrincipalTreesMapstore.INDEX, *aclKeys.map { it.index }.toTypedArray())
-        }
-
         fun getPrincipalReservationName(principalId: String): String {
             return "$principalId"
         }
@@ -184,12 +175,14 @@ class HazelcastPrincipalService(
         ensurePrincipalsExist(setOf(aclKey))
         authorizationManager.deletePrincipalPermissions(principals[aclKey]!!.principal)
         authorizationManager.deletePermissions(aclKey)
-        principalTrees.executeOnEntries(NestedPrincipalRemover(setOf(aclKey)), hasSecurablePrincipal(aclKey))
+        val parents = principalTreeClosure.getParents(setOf(aclKey))[aclKey] ?: setOf()
+        principalTrees.executeOnKeys(parents, NestedPrincipalRemover(setOf(aclKey)))
         reservations.release(
             aclKey.last()
         ) //TODO: At some point we will implement a release by acl key, but this is good enough fo rnow
-        principalTrees.delete(aclKey)
+        val children = principalTrees.remove(aclKey) ?: setOf()
         principals.delete(aclKey)
+        principalTreeClosure.principalDeleted(aclKey, parents, children)
     }
 
     override fun deleteAllRolesInOrganization(organizationId: UUID) {
@@ -209,6 +202,7 @@ class HazelcastPrincipalService(
             .values
             .filterNotNull()
             .toSet()
+        principalTreeClosure.principalAdded(source, updatedKeys)
 
         return updatedKeys
     }
@@ -220,19 +214,11 @@ class HazelcastPrincipalService(
     override fun removePrincipalsFromPrincipals(principalsToRemove: Set<AclKey>, fromPrincipals: Set<AclKey>) {
         ensurePrincipalsExist(fromPrincipals + principalsToRemove)
         principalTrees.executeOnKeys(fromPrincipals, NestedPrincipalRemover(principalsToRemove))
+        principalTreeClosure.principalsRemoved(principalsToRemove, fromPrincipals)
     }
 
     private fun getAllPrincipalsWithPrincipal(aclKey: AclKey): Collection<SecurablePrincipal> {
-        //We start from the bottom layer and use predicates to sweep up the tree and enumerate all roles with this role.
-        var parentLayer = principalTrees.keySet(hasSecurablePrincipal(aclKey))
-        val principalsWithPrincipal = parentLayer.toMutableSet()
-
-        while (parentLayer.isNotEmpty()) {
-            parentLayer = principalTrees.keySet(hasAnySecurablePrincipal(parentLayer))
-            principalsWithPrincipal.addAll(parentLayer)
-        }
-
-        return principals.getAll(principalsWithPrincipal).values
+        return principals.getAll(principalTreeClosure.getAncestors(setOf(aclKey))).values
     }
 
     override fun getSecurablePrincipals(
@@ -246,22 +232,12 @@ class HazelcastPrincipalService(
     }
 
     private fun getParentPrincipalsOfPrincipals(aclKeys: Set<AclKey>): Map<AclKey, Collection<SecurablePrincipal>> {
-        val parentLayers = principalTrees.entrySet(hasAnySecurablePrincipal(aclKeys))
-        val principals = principals.getAll(parentLayers.map { it.key }.toSet())
-        val childrenToParents = mutableMapOf<AclKey, MutableSet<SecurablePrincipal>>()
-        parentLayers.forEach { (parent, children) ->
-            val sp = principals[parent] ?: return@forEach
-
-            children.filter { aclKeys.contains(it) }.forEach { childAclKey ->
-                if (!childrenToParents.containsKey(childAclKey)) {
-                    childrenToParents[childAclKey] = mutableSetOf()
-                }
-
-                childrenToParents.getValue(childAclKey).add(sp)
-            }
-        }
+        val childrenToParentAclKeys = principalTreeClosure.getParents(aclKeys)
+        val principals = principals.getAll(childrenToParentAclKeys.values.flatten().toSet())
 
-        return childrenToParents
+        return childrenToParentAclKeys
+            .mapValues { (_, parents) -> parents.mapNotNullTo(mutableSetOf()) { principals[it] } }
+            .filterValues { it.isNotEmpty() }
     }
 
     override fun getOrganizationMembers(organizationIds: Set<UUID>): Map<UUID, Set<SecurablePrincipal>> {
@@ -313,61 +289,11 @@ class HazelcastPrincipalService(
     }
 
     override fun getAllPrincipals(sp: SecurablePrincipal): Collection<SecurablePrincipal> {
-        val roles = principalTrees[sp.aclKey] ?: return listOf()
-        var nextLayer: Set<AclKey> = roles
-
-        while (nextLayer.isNotEmpty()) {
-            nextLayer = principalTrees.getAll(nextLayer)
-                .values
-                .flatten()
-                .filter { !roles.contains(it) }
-                .toSet()
-            roles.addAll(nextLayer)
-        }
-        return principals.getAll(roles).values
+        return principals.getAll(principalTreeClosure.getDescendants(setOf(sp.aclKey))).values
     }
 
     override fun bulkGetUnderlyingPrincipals(sps: Set<SecurablePrincipal>): Map<SecurablePrincipal, Set<Principal>> {
-        val aclKeyPrincipals = mutableMapOf<AclKey, AclKeySet>()
-
-        // Bulk load all relevant principal trees from hazelcast
-        var nextLayer = sps.mapTo(mutableSetOf()) { it.aclKey }
-        while (nextLayer.isNotEmpty()) {
-            //Don't load what's already been loaded.
-            val nextLayerMap = principalTrees.getAll(nextLayer - aclKeyPrincipals.keys)
-            nextLayer = nextLayerMap.values.flatMapTo(mutableSetOf()) { it }
-            aclKeyPrincipals.putAll(nextLayerMap)
-        }
-
-        // Map all loaded principals to SecurablePrincipals
-        val aclKeysToPrincipals = principals.getAll(aclKeyPrincipals.keys + aclKeyPrincipals.values.flatten())
-
-        // Map each SecurablePrincipal to all its aclKey children from the in-memory map, and from there a SortedPrincipalSet
-        return sps.associateWith { sp ->
-            val childAclKeys = mutableSetOf<AclKey>(sp.aclKey) //Need to include self.
-            aclKeyPrincipals.getOrDefault(sp.aclKey, AclKeySet()).forEach { childAclKeys.add(it) }
-
-            var nextAclKeyLayer: Set<AclKey> = childAclKeys
-
-            while (nextAclKeyLayer.isNotEmpty()) {
-                nextAclKeyLayer = (nextAclKeyLayer.flatMapTo(mutableSetOf<AclKey>()) {
-                    aclKeyPrincipals[it] ?: setOf()
-                }) - childAclKeys
-                childAclKeys += nextAclKeyLayer
-            }
-
-            val principals = childAclKeys.mapNotNullTo(
-                Sets.newLinkedHashSetWithExpectedSize(childAclKeys.size)
-            ) { aclKey ->
-                aclKeysToPrincipals[aclKey]?.principal
-            }
-
-            if (childAclKeys.size != principals.size) {
-                logger.warn("Unable to retrieve principals for acl keys: ${childAclKeys - aclKeysToPrincipals.keys}")
-            }
-
-            principals
-        }
+        return principalTreeClosure.resolvePrincipals(sps)
     }
 
     override fun ensurePrincipalsExist(aclKeys: Set<AclKey>) {
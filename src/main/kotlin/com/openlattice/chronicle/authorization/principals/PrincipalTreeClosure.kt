@@ -0,0 +1,178 @@
+package com.openlattice.chronicle.authorization.principals
+
+import com.hazelcast.core.HazelcastInstance
+import com.openlattice.chronicle.authorization.AclKey
+import com.openlattice.chronicle.authorization.AclKeySet
+import com.openlattice.chronicle.authorization.PrincipalType
+import com.openlattice.chronicle.authorization.SecurablePrincipal
+import com.openlattice.chronicle.authorization.SortedPrincipalSet
+import com.openlattice.chronicle.authorization.principals.processors.AddPrincipalToPrincipalEntryProcessor
+import com.openlattice.chronicle.authorization.principals.processors.NestedPrincipalRemover
+import com.openlattice.chronicle.hazelcast.HazelcastMap
+import org.slf4j.LoggerFactory
+import java.util.*
+
+/**
+ * Maintains the transitive closure of the principal trees.
+ *
+ * [HazelcastMap.PRINCIPAL_TREES] maps each principal to the principals it has, for example a user to its roles, and
+ * [HazelcastMap.PRINCIPAL_TREE_PARENTS] holds the reverse edges, mapping each principal to the principals that have it.
+ * The principals that transitively have a principal are found with direct gets on the reverse edges instead of a
+ * predicate query over the principal trees for every layer.
+ *
+ * When principals are added to or removed from principals, only the resolved principal sets in
+ * [HazelcastMap.RESOLVED_PRINCIPAL_TREES] of the users that transitively have a changed principal are updated.
+ * Additions are applied as a union with the closure of the added principal and removals recompute the affected users.
+ * Users without a resolved principal set are resolved when they are next synchronized.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class PrincipalTreeClosure(hazelcastInstance: HazelcastInstance) {
+    companion object {
+        private val logger = LoggerFactory.getLogger(PrincipalTreeClosure::class.java)
+
+        /**
+         * Walks [edges] breadth first from [aclKeys], loading each layer with a single call, and returns every acl key
+         * reachable from them, excluding [aclKeys] unless they are reachable from each other.
+         */
+        fun reachable(aclKeys: Set<AclKey>, edges: (Set<AclKey>) -> Map<AclKey, Set<AclKey>>): Set<AclKey> {
+            val reached = mutableSetOf<AclKey>()
+            var nextLayer = edges(aclKeys).values.flatten().toSet()
+            while (nextLayer.isNotEmpty()) {
+                reached.addAll(nextLayer)
+                nextLayer = edges(nextLayer).values.flatten().filterTo(mutableSetOf()) { it !in reached }
+            }
+            return reached
+        }
+
+        /**
+         * Returns the closure of each of [aclKeys] over [edges], including itself. Layers are loaded with a single call
+         * for all of [aclKeys] and every acl key is only loaded once.
+         */
+        fun closures(
+            aclKeys: Set<AclKey>,
+            edges: (Set<AclKey>) -> Map<AclKey, Set<AclKey>>
+        ): Map<AclKey, Set<AclKey>> {
+            val loaded = mutableMapOf<AclKey, Set<AclKey>>()
+            var nextLayer = aclKeys
+            while (nextLayer.isNotEmpty()) {
+                val layer = edges(nextLayer)
+                nextLayer.forEach { loaded[it] = layer[it] ?: setOf() }
+                nextLayer = layer.values.flatten().filterTo(mutableSetOf()) { it !in loaded }
+            }
+
+            return aclKeys.associateWith { aclKey ->
+                val closure = mutableSetOf(aclKey)
+                var nextAclKeyLayer: Set<AclKey> = closure
+                while (nextAclKeyLayer.isNotEmpty()) {
+                    nextAclKeyLayer = nextAclKeyLayer.flatMapTo(mutableSetOf()) { loaded.getValue(it) } - closure
+                    closure += nextAclKeyLayer
+                }
+                closure
+            }
+        }
+    }
+
+    private val principals = HazelcastMap.PRINCIPALS.getMap(hazelcastInstance)
+    private val principalTrees = HazelcastMap.PRINCIPAL_TREES.getMap(hazelcastInstance)
+    private val principalTreeParents = HazelcastMap.PRINCIPAL_TREE_PARENTS.getMap(hazelcastInstance)
+    private val resolvedPrincipalTrees = HazelcastMap.RESOLVED_PRINCIPAL_TREES.getMap(hazelcastInstance)
+
+    /**
+     * Returns the principals that directly have each of [aclKeys]. Acl keys that no principal has are omitted.
+     */
+    fun getParents(aclKeys: Set<AclKey>): Map<AclKey, AclKeySet> {
+        return principalTreeParents.getAll(aclKeys).filterValues { it.isNotEmpty() }
+    }
+
+    /**
+     * Returns every principal that transitively has any of [aclKeys].
+     */
+    fun getAncestors(aclKeys: Set<AclKey>): Set<AclKey> {
+        return reachable(aclKeys) { principalTreeParents.getAll(it) }
+    }
+
+    /**
+     * Returns every principal transitively had by any of [aclKeys].
+     */
+    fun getDescendants(aclKeys: Set<AclKey>): Set<AclKey> {
+        return reachable(aclKeys) { principalTrees.getAll(it) }
+    }
+
+    /**
+     * Resolves the set of principals of each of [sps], including itself.
+     */
+    fun resolvePrincipals(sps: Collection<SecurablePrincipal>): Map<SecurablePrincipal, SortedPrincipalSet> {
+        val closures = closures(sps.mapTo(mutableSetOf()) { it.aclKey }) { principalTrees.getAll(it) }
+        val aclKeysToPrincipals = principals.getAll(closures.values.flatten().toSet())
+
+        return sps.associateWith { sp ->
+            val closure = closures.getValue(sp.aclKey)
+            val sortedPrincipals = SortedPrincipalSet(
+                TreeSet(closure.mapNotNull { aclKeysToPrincipals[it]?.principal })
+            )
+            if (closure.size != sortedPrincipals.size) {
+                logger.warn("Unable to retrieve principals for acl keys: ${closure - aclKeysToPrincipals.keys}")
+            }
+            sortedPrincipals
+        }
+    }
+
+    /**
+     * Records that [source] was added to each of [targets] and adds the closure of [source] to the resolved principals
+     * of the affected users. Must be called after the principal trees of [targets] have been updated.
+     */
+    fun principalAdded(source: AclKey, targets: Set<AclKey>) {
+        targets.forEach { principalTreeParents.executeOnKey(source, AddPrincipalToPrincipalEntryProcessor(it)) }
+
+        val resolved = getResolvedUsers(targets + getAncestors(targets))
+        if (resolved.isEmpty()) {
+            return
+        }
+
+        val added = principals.getAll(getDescendants(setOf(source)) + source).values.map { it.principal }
+        resolvedPrincipalTrees.putAll(resolved.entries.associate { (sp, current) ->
+            sp.principal.id to SortedPrincipalSet(TreeSet(current + added))
+        })
+    }
+
+    /**
+     * Records that [principalsToRemove] were removed from each of [fromPrincipals] and recomputes the resolved
+     * principals of the affected users. Must be called after the principal trees of [fromPrincipals] were updated.
+     */
+    fun principalsRemoved(principalsToRemove: Set<AclKey>, fromPrincipals: Set<AclKey>) {
+        principalTreeParents.executeOnKeys(principalsToRemove, NestedPrincipalRemover(fromPrincipals))
+        resolveUsers(fromPrincipals + getAncestors(fromPrincipals))
+    }
+
+    /**
+     * Records that [aclKey] was deleted, after it was removed from the principal trees of [parents] and its own
+     * principal tree, which contained [children], was deleted.
+     */
+    fun principalDeleted(aclKey: AclKey, parents: Set<AclKey>, children: Set<AclKey>) {
+        principalTreeParents.executeOnKeys(children, NestedPrincipalRemover(setOf(aclKey)))
+        principalTreeParents.delete(aclKey)
+        resolveUsers(parents + getAncestors(parents))
+    }
+
+    private fun resolveUsers(aclKeys: Set<AclKey>) {
+        val users = getResolvedUsers(aclKeys).keys
+        if (users.isNotEmpty()) {
+            resolvedPrincipalTrees.putAll(resolvePrincipals(users).mapKeys { it.key.principal.id })
+        }
+    }
+
+    /**
+     * Returns the current resolved principals of the users among [aclKeys] that have been resolved.
+     */
+    private fun getResolvedUsers(aclKeys: Set<AclKey>): Map<SecurablePrincipal, SortedPrincipalSet> {
+        val users = principals.getAll(aclKeys).values
+            .filter { it.principalType == PrincipalType.USER }
+            .associateBy { it.principal.id }
+        if (users.isEmpty()) {
+            return mapOf()
+        }
+
+        return resolvedPrincipalTrees.getAll(users.keys).mapKeys { users.getValue(it.key) }
+    }
+}
@@ -0,0 +1,27 @@
+package com.openlattice.chronicle.configuration
+
+import com.openlattice.chronicle.auditing.AuditDurability
+
+/**
+ * Settings that control how audit events are written to the audit buffer.
+ *
+ * @param pipeline When true audit events are queued on a bounded per node ring buffer and group committed to the audit
+ * buffer by a background writer. When false every audit event is inserted on the request thread.
+ * @param queueCapacity The maximum number of queued audit requests on a node, rounded up to a power of two. Audit
+ * events recorded while the queue is full are dropped, unless they are waited on.
+ * @param maxBatch The number of queued audit events that causes the writer to commit without waiting any longer.
+ * @param lingerMillis How long the writer waits for more audit events after the first one arrives.
+ * @param transactionDurability Whether audited transactions wait for their audit events to be committed before the
+ * transaction is committed, or only queue them like every other audit event.
+ * @param flushTimeoutMillis How long an audited transaction waits for its audit events to be committed before failing.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+data class ChronicleAuditConfiguration(
+    val pipeline: Boolean = true,
+    val queueCapacity: Int = 8192,
+    val maxBatch: Int = 512,
+    val lingerMillis: Long = 100,
+    val transactionDurability: AuditDurability = AuditDurability.WAIT_FOR_FLUSH,
+    val flushTimeoutMillis: Long = 30000,
+)
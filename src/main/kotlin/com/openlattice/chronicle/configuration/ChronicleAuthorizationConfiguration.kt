@@ -0,0 +1,23 @@
+package com.openlattice.chronicle.configuration
+
+/**
+ * Settings that control how authorization checks are evaluated.
+ *
+ * @param permissionCache When true each node caches the effective permissions of principal sets on securable objects
+ * and invalidates them when the permissions map changes. When false every check reads the permissions map.
+ * @param permissionCacheMaxObjects The maximum number of securable objects with cached permissions on a node.
+ * @param permissionCacheMaxPrincipalSets The maximum number of principal sets cached for a single securable object.
+ * @param permissionCacheTtlSeconds How long cached permissions are used before being read again, even if no change
+ * was seen. Bounds staleness if an invalidation is missed.
+ * @param authorizedObjectsIndex When true each member keeps a bitmap index of the permissions map, which answers
+ * listings of the objects of a type that principals have permissions on. When false listings are predicate queries.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+data class ChronicleAuthorizationConfiguration(
+    val permissionCache: Boolean = true,
+    val permissionCacheMaxObjects: Long = 100_000,
+    val permissionCacheMaxPrincipalSets: Int = 64,
+    val permissionCacheTtlSeconds: Long = 300,
+    val authorizedObjectsIndex: Boolean = true,
+)
@@ -0,0 +1,13 @@
+package com.openlattice.chronicle.configuration
+
+/**
+ * Settings that control how study compliance is evaluated.
+ *
+ * @param statsDriven When true recent uploads are found by aggregating the participant stats map on every member,
+ * instead of by grouping all usage events and sensor data in event storage.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+data class ChronicleComplianceConfiguration(
+    val statsDriven: Boolean = false,
+)
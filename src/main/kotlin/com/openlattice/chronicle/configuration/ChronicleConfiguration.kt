@@ -12,6 +12,11 @@ const val TIME_TO_LIVE = "timeToLive"
 const val ACCESS_KEY_ID = "accessKeyId"
 const val SECRET_ACCESS_KEY = "secretAccessKey"
 const val STORAGE_CONFIGURATION = "storageConfiguration"
+const val UPLOAD_CONFIGURATION = "uploadConfiguration"
+const val DOWNLOAD_CONFIGURATION = "downloadConfiguration"
+const val COMPLIANCE_CONFIGURATION = "complianceConfiguration"
+const val AUTHORIZATION_CONFIGURATION = "authorizationConfiguration"
+const val AUDIT_CONFIGURATION = "auditConfiguration"
 
 @ReloadableConfiguration(uri = "chronicle.yaml")
 data class ChronicleConfiguration(
@@ -20,7 +25,12 @@ data class ChronicleConfiguration(
     @JsonProperty(TIME_TO_LIVE) val timeToLive: Long,
     @JsonProperty(ACCESS_KEY_ID) val accessKeyId: String,
     @JsonProperty(SECRET_ACCESS_KEY) val secretAccessKey: String,
-    @JsonProperty(STORAGE_CONFIGURATION) val storageConfiguration: ChronicleStorageConfiguration = ChronicleStorageConfiguration()
+    @JsonProperty(STORAGE_CONFIGURATION) val storageConfiguration: ChronicleStorageConfiguration = ChronicleStorageConfiguration(),
+    @JsonProperty(UPLOAD_CONFIGURATION) val uploadConfiguration: ChronicleUploadConfiguration = ChronicleUploadConfiguration(),
+    @JsonProperty(DOWNLOAD_CONFIGURATION) val downloadConfiguration: ChronicleDownloadConfiguration = ChronicleDownloadConfiguration(),
+    @JsonProperty(COMPLIANCE_CONFIGURATION) val complianceConfiguration: ChronicleComplianceConfiguration = ChronicleComplianceConfiguration(),
+    @JsonProperty(AUTHORIZATION_CONFIGURATION) val authorizationConfiguration: ChronicleAuthorizationConfiguration = ChronicleAuthorizationConfiguration(),
+    @JsonProperty(AUDIT_CONFIGURATION) val auditConfiguration: ChronicleAuditConfiguration = ChronicleAuditConfiguration()
 ) : Configuration {
 
     companion object {
@@ -0,0 +1,45 @@
+package com.openlattice.chronicle.configuration
+
+/**
+ * Settings that control how participant data is downloaded.
+ *
+ * @param streamingDownload When true participant data downloads are written directly from the result set to the
+ * response with precomputed column accessors instead of building a map per row.
+ * @param fetchSize The number of rows fetched from event storage per round trip by streaming downloads.
+ * @param exportParallelism The number of parts of a participant data export that are queried and written concurrently.
+ * @param exportParticipantsPerPart The maximum number of participants included in a single part of an export.
+ * @param exportDaysPerPart The maximum number of days covered by a single part of an export. Only applies to exports
+ * with both a start and an end date.
+ * @param downloadConcurrency The number of subqueries of a participant data download that run concurrently when the
+ * request does not ask for a concurrency. A concurrency of one runs each download as a single query.
+ * @param maxDownloadConcurrency The upper bound on the concurrency a single download request may ask for.
+ * @param downloadParticipantsPerSlice The maximum number of participants included in a single download subquery.
+ * @param downloadDaysPerSlice The maximum number of days covered by a single download subquery. Only applies to
+ * downloads with both a start and an end date.
+ * @param downloadReservedConnections The number of connections of each data source pool that download subqueries
+ * leave free for uploads and other queries.
+ * @param downloadSliceBufferSize The number of rows each running subquery may read ahead of the response.
+ * @param downloadStallTimeoutMillis How long a subquery waits for the response to accept more rows before giving up
+ * and releasing its connection.
+ * @param downloadPageSize The number of rows in a page of a paged download when the request does not ask for a page
+ * size.
+ * @param maxDownloadPageSize The upper bound on the page size a paged download request may ask for.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+data class ChronicleDownloadConfiguration(
+    val streamingDownload: Boolean = false,
+    val fetchSize: Int = 32768,
+    val exportParallelism: Int = 4,
+    val exportParticipantsPerPart: Int = 8,
+    val exportDaysPerPart: Long = 7,
+    val downloadConcurrency: Int = 1,
+    val maxDownloadConcurrency: Int = 8,
+    val downloadParticipantsPerSlice: Int = 8,
+    val downloadDaysPerSlice: Long = 7,
+    val downloadReservedConnections: Int = 2,
+    val downloadSliceBufferSize: Int = 4096,
+    val downloadStallTimeoutMillis: Long = 300_000,
+    val downloadPageSize: Int = 10_000,
+    val maxDownloadPageSize: Int = 100_000,
+)
@@ -5,6 +5,10 @@ import com.openlattice.chronicle.storage.ChronicleStorage
 
 
 /**
+ * @param eventPartitionMonthsAhead The number of months after the current month for which partitions of partitioned
+ * event tables are created ahead of time.
+ * @param expiredStudyDataDeletion When true the event data of studies that are past their data retention period is
+ * deleted from partitioned event tables, detaching whole partitions where every study in them has expired.
  *
  * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
  */
@@ -14,4 +18,6 @@ data class ChronicleStorageConfiguration(
     val platformWorkStorage: String = ChronicleStorage.PLATFORM.id,
     val defaultEventStorage: String = ChronicleStorage.CHRONICLE.id,
     val auditStorage: String = ChronicleStorage.CHRONICLE.id,
+    val eventPartitionMonthsAhead: Int = 3,
+    val expiredStudyDataDeletion: Boolean = false,
 )
\ No newline at end of file
@@ -0,0 +1,68 @@
+package com.openlattice.chronicle.configuration
+
+import com.openlattice.chronicle.services.upload.UploadType
+
+/**
+ * Settings that control how device uploads are ingested.
+ *
+ * @param streamingIngest When true android usage event uploads are decoded with a streaming parser directly into a
+ * columnar row buffer instead of being bound to a list of usage event objects.
+ * @param partitionedDrain When true the upload buffer is drained by several workers per node, each claiming a disjoint
+ * hash partition of (study id, participant id) and looping until the partition is empty.
+ * @param drainWorkersPerNode The number of drain workers started on each node per upload type.
+ * @param drainPartitions The number of hash partitions the upload buffer is split into across the whole cluster. This
+ * should be at least the total number of drain workers in the cluster.
+ * @param drainBatchSize The maximum number of upload buffer rows claimed by a worker in a single transaction.
+ * @param dedupIndex When true events are checked against a per participant index of content hashes before being
+ * written to event storage so that writes are append only.
+ * @param dedupIndexRetentionDays How many days of event hashes are kept in the index. Events older than this fall back
+ * to the windowed delete of duplicates.
+ * @param binaryCopy When true events written to vanilla postgres event storage are bulk loaded using binary `COPY`
+ * instead of multi-row inserts, falling back to inserts if the connection does not support it.
+ * @param groupCommit When true uploads are queued and group committed to the upload buffer by a small number of
+ * committer threads per node instead of being inserted on the request thread.
+ * @param groupCommitWriters The number of committer threads per node.
+ * @param groupCommitQueueCapacity The maximum number of uploads waiting to be committed on a node before devices are
+ * told to retry later.
+ * @param groupCommitMaxBatch The maximum number of uploads written by a single multi-row insert.
+ * @param groupCommitLingerMillis How long a committer waits for more uploads after the first one arrives.
+ * @param groupCommitTimeoutMillis How long a request waits for its upload to be committed before failing.
+ * @param groupCommitRetryAfterSeconds The `Retry-After` returned to devices when the queue is saturated.
+ * @param binaryUploadBuffer The upload types whose payloads are buffered in the compressed binary encoding instead of
+ * as jsonb. Rows already buffered as jsonb are always readable.
+ * @param maxDecompressedUploadBytes The maximum number of bytes a `gzip` or `zstd` encoded upload may decompress to
+ * before the request is rejected.
+ * @param decompressionBufferSize The size of the buffer used when decompressing an encoded upload.
+ * @param incrementalPreprocessing When true android usage events are sessionized into preprocessed usage events after
+ * every move to event storage, instead of relying on an offline batch to fill that table.
+ * @param preprocessingBatchSize The maximum number of participants preprocessed in a single platform transaction.
+ * @param dailyUsageRollups When true the app usage of each participant day is rolled up after every move to event
+ * storage, and app usage surveys only read raw events for days that have not been rolled up yet.
+ * @param rollupBatchSize The maximum number of participant days rolled up in a single platform transaction.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+data class ChronicleUploadConfiguration(
+    val streamingIngest: Boolean = false,
+    val partitionedDrain: Boolean = false,
+    val drainWorkersPerNode: Int = 3,
+    val drainPartitions: Int = 32,
+    val drainBatchSize: Int = 128,
+    val dedupIndex: Boolean = false,
+    val dedupIndexRetentionDays: Int = 90,
+    val binaryCopy: Boolean = false,
+    val groupCommit: Boolean = false,
+    val groupCommitWriters: Int = 2,
+    val groupCommitQueueCapacity: Int = 1024,
+    val groupCommitMaxBatch: Int = 64,
+    val groupCommitLingerMillis: Long = 5,
+    val groupCommitTimeoutMillis: Long = 30000,
+    val groupCommitRetryAfterSeconds: Long = 30,
+    val binaryUploadBuffer: Set<UploadType> = setOf(),
+    val maxDecompressedUploadBytes: Long = 256L * 1024 * 1024,
+    val decompressionBufferSize: Int = 8192,
+    val incrementalPreprocessing: Boolean = false,
+    val preprocessingBatchSize: Int = 64,
+    val dailyUsageRollups: Boolean = false,
+    val rollupBatchSize: Int = 128,
+)
@@ -22,6 +22,7 @@ package com.openlattice.chronicle.controllers
 import com.fasterxml.jackson.databind.JsonMappingException
 import com.geekbeast.controllers.exceptions.wrappers.ErrorsDTO
 import com.geekbeast.controllers.util.ApiExceptions
+import com.google.common.base.Throwables
 import com.openlattice.chronicle.auditing.AuditEventType
 import com.openlattice.chronicle.auditing.AuditableEvent
 import com.openlattice.chronicle.auditing.AuditingComponent
@@ -31,12 +32,14 @@ import com.openlattice.chronicle.authorization.principals.Principals
 import com.openlattice.chronicle.ids.IdConstants
 import org.apache.commons.io.IOUtils
 import org.slf4j.LoggerFactory
+import org.springframework.http.HttpHeaders
 import org.springframework.http.HttpStatus
 import org.springframework.http.ResponseEntity
 import org.springframework.http.converter.HttpMessageNotReadableException
 import org.springframework.security.access.AccessDeniedException
 import org.springframework.web.bind.annotation.ExceptionHandler
 import org.springframework.web.bind.annotation.RestControllerAdvice
+import java.io.IOException
 import java.util.*
 import javax.inject.Inject
 import javax.servlet.http.HttpServletRequest
@@ -89,6 +92,10 @@ class ChronicleServerExceptionHandler @Inject constructor(override val auditingM
 
     @ExceptionHandler(IllegalArgumentException::class, HttpMessageNotReadableException::class)
     fun handleIllegalArgumentException(req: HttpServletRequest, e: Exception): ResponseEntity<ErrorsDTO> {
+        //Decompression limits are hit while the body is being bound, so avoid reading the body again.
+        Throwables.getCausalChain(e).filterIsInstance<UploadTooLargeException>().firstOrNull()?.let { tooLarge ->
+            return handleUploadTooLargeException(req, tooLarge)
+        }
         when (e) {
             is HttpMessageNotReadableException -> logger.error(
                 "Body that caused error if available: " + IOUtils.toString(
@@ -128,6 +135,38 @@ class ChronicleServerExceptionHandler @Inject constructor(override val auditingM
         logException(req, e)
     }
 
+    @ExceptionHandler(UploadQueueSaturatedException::class)
+    fun handleUploadQueueSaturatedException(
+        req: HttpServletRequest,
+        e: UploadQueueSaturatedException
+    ): ResponseEntity<ErrorsDTO> {
+        logger.warn("Rejected request of type ${req.method} to URL ${req.requestURL}: ${e.message}")
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, e.retryAfterSeconds.toString())
+            .body(ErrorsDTO(ApiExceptions.OTHER_EXCEPTION, e.message!!))
+    }
+
+    @ExceptionHandler(UploadTooLargeException::class)
+    fun handleUploadTooLargeException(req: HttpServletRequest, e: UploadTooLargeException): ResponseEntity<ErrorsDTO> {
+        logger.warn("Rejected request of type ${req.method} to URL ${req.requestURL}: ${e.message}")
+        return ResponseEntity(
+            ErrorsDTO(ApiExceptions.ILLEGAL_ARGUMENT_EXCEPTION, e.message!!),
+            HttpStatus.PAYLOAD_TOO_LARGE
+        )
+    }
+
+    @ExceptionHandler(UnsupportedContentEncodingException::class)
+    fun handleUnsupportedContentEncodingException(
+        req: HttpServletRequest,
+        e: UnsupportedContentEncodingException
+    ): ResponseEntity<ErrorsDTO> {
+        logger.warn("Rejected request of type ${req.method} to URL ${req.requestURL}: ${e.message}")
+        return ResponseEntity(
+            ErrorsDTO(ApiExceptions.ILLEGAL_ARGUMENT_EXCEPTION, e.message!!),
+            HttpStatus.UNSUPPORTED_MEDIA_TYPE
+        )
+    }
+
     @ExceptionHandler(Exception::class)
     fun handleOtherExceptions(req: HttpServletRequest, e: Exception): ResponseEntity<ErrorsDTO> {
         logException(req, e)
@@ -154,4 +193,7 @@ class StudyRegistrationNotFoundException : RuntimeException {
 class CandidateNotFoundException(candidateId: UUID, message: String? = "$candidateId") : RuntimeException(message)
 class StudyNotFoundException(val studyId: UUID, message: String) : RuntimeException(message)
 class OrganizationNotFoundException(val organization: UUID, message: String) : RuntimeException(message)
-class TimeUseDiaryDownloadExcpetion(val studyId: UUID, message: String) : RuntimeException(message)
\ No newline at end of file
+class TimeUseDiaryDownloadExcpetion(val studyId: UUID, message: String) : RuntimeException(message)
+class UploadQueueSaturatedException(val retryAfterSeconds: Long, message: String) : RuntimeException(message)
+class UploadTooLargeException(message: String) : IOException(message)
+class UnsupportedContentEncodingException(message: String) : RuntimeException(message)
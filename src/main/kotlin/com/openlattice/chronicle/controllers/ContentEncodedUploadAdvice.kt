@@ -0,0 +1,67 @@
+package com.openlattice.chronicle.controllers
+
+import com.openlattice.chronicle.services.upload.UploadContentDecoder
+import org.springframework.core.MethodParameter
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpInputMessage
+import org.springframework.http.converter.HttpMessageConverter
+import org.springframework.web.bind.annotation.ControllerAdvice
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter
+import java.io.InputStream
+import java.lang.reflect.Type
+import javax.inject.Inject
+
+/**
+ * Marks an upload endpoint whose `@RequestBody` may be sent with a `Content-Encoding` of `gzip` or `zstd`.
+ */
+@Target(AnnotationTarget.FUNCTION)
+@Retention(AnnotationRetention.RUNTIME)
+annotation class ContentEncodedUpload
+
+/**
+ * Decodes the request body of endpoints annotated with [ContentEncodedUpload] before it is bound by the message
+ * converters.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+@ControllerAdvice
+class ContentEncodedUploadAdvice @Inject constructor(
+    private val uploadContentDecoder: UploadContentDecoder
+) : RequestBodyAdviceAdapter() {
+
+    override fun supports(
+        methodParameter: MethodParameter,
+        targetType: Type,
+        converterType: Class<out HttpMessageConverter<*>>
+    ): Boolean {
+        return methodParameter.hasMethodAnnotation(ContentEncodedUpload::class.java)
+    }
+
+    override fun beforeBodyRead(
+        inputMessage: HttpInputMessage,
+        parameter: MethodParameter,
+        targetType: Type,
+        converterType: Class<out HttpMessageConverter<*>>
+    ): HttpInputMessage {
+        val endpoint = "${parameter.containingClass.simpleName}.${parameter.method!!.name}"
+        val body = uploadContentDecoder.decode(
+            endpoint,
+            inputMessage.headers.getFirst(HttpHeaders.CONTENT_ENCODING),
+            inputMessage.body
+        )
+        val headers = HttpHeaders()
+        headers.putAll(inputMessage.headers)
+        //The body is no longer encoded and its length is no longer known.
+        headers.remove(HttpHeaders.CONTENT_ENCODING)
+        headers.remove(HttpHeaders.CONTENT_LENGTH)
+        return DecodedHttpInputMessage(headers, body)
+    }
+
+    private class DecodedHttpInputMessage(
+        private val headers: HttpHeaders,
+        private val body: InputStream
+    ) : HttpInputMessage {
+        override fun getHeaders(): HttpHeaders = headers
+        override fun getBody(): InputStream = body
+    }
+}
@@ -531,8 +531,10 @@ class ImportController(
     override fun importSystemApps(@RequestBody config: ImportStudiesConfiguration) {
         ensureAdminAccess()
         val hds = dataSourceManager.getDataSource(config.dataSourceName)
-        hds.connection.createStatement().use { statement ->
-            statement.execute("INSERT INTO ${ChroniclePostgresTables.SYSTEM_APPS.name} SELECT * FROM ${config.systemAppsTable} ON CONFLICT DO NOTHING")
+        hds.connection.use { connection ->
+            connection.createStatement().use { statement ->
+                statement.execute("INSERT INTO ${ChroniclePostgresTables.SYSTEM_APPS.name} SELECT * FROM ${config.systemAppsTable} ON CONFLICT DO NOTHING")
+            }
         }
 
         // check inserts
@@ -566,24 +568,26 @@ class ImportController(
 
         val legacySubmissionIdMapping: MutableMap<UUID, UUID> = mutableMapOf()
 
-        val inserted = hds.connection.prepareStatement(INSERT_TUD_SUBMISSIONS_SQL).use { ps ->
-            tudEntities.forEach {
-                val realStudyId = studyService.getStudyId(it.study_id)
-                if (realStudyId == null) {
-                    logger.error("invalid study id ${it.study_id}")
-                    return@forEach
+        val inserted = hds.connection.use { connection ->
+            connection.prepareStatement(INSERT_TUD_SUBMISSIONS_SQL).use { ps ->
+                tudEntities.forEach {
+                    val realStudyId = studyService.getStudyId(it.study_id)
+                    if (realStudyId == null) {
+                        logger.error("invalid study id ${it.study_id}")
+                        return@forEach
+                    }
+                    var index = 0
+                    val submissionId = idGenerationService.getNextId()
+                    legacySubmissionIdMapping[it.submission_id] = submissionId
+                    ps.setObject(++index, submissionId)
+                    ps.setObject(++index, realStudyId)
+                    ps.setString(++index, it.participant_id)
+                    ps.setObject(++index, it.submission_date)
+                    ps.setString(++index, mapper.writeValueAsString(it.submission))
+                    ps.addBatch()
                 }
-                var index = 0
-                val submissionId = idGenerationService.getNextId()
-                legacySubmissionIdMapping[it.submission_id] = submissionId
-                ps.setObject(++index, submissionId)
-                ps.setObject(++index, realStudyId)
-                ps.setString(++index, it.participant_id)
-                ps.setObject(++index, it.submission_date)
-                ps.setString(++index, mapper.writeValueAsString(it.submission))
-                ps.addBatch()
+                ps.executeBatch().sum()
             }
-            ps.executeBatch().sum()
         }
         logger.info("Imported $inserted time use diary submissions. Expected to import ${tudEntities.size}")
 
@@ -595,24 +599,26 @@ class ImportController(
             tudSummarized(it)
         }.toList()
 
-        val summaryInserts = hds.connection.prepareStatement(INSERT_INTO_TUD_SUMMARIZED_SQL).use { ps ->
-            summarizedData.forEach {
-                val submissionId = legacySubmissionIdMapping[it.submissionId] ?: return@forEach
-                val tudSubmission = tudSubmissionById.getValue(it.submissionId)
-                val realStudyId = studyService.getStudyId(tudSubmission.study_id)
-                if (realStudyId == null) {
-                    logger.error("invalid study id ${tudSubmission.study_id}")
-                    return@forEach
+        val summaryInserts = hds.connection.use { connection ->
+            connection.prepareStatement(INSERT_INTO_TUD_SUMMARIZED_SQL).use { ps ->
+                summarizedData.forEach {
+                    val submissionId = legacySubmissionIdMapping[it.submissionId] ?: return@forEach
+                    val tudSubmission = tudSubmissionById.getValue(it.submissionId)
+                    val realStudyId = studyService.getStudyId(tudSubmission.study_id)
+                    if (realStudyId == null) {
+                        logger.error("invalid study id ${tudSubmission.study_id}")
+                        return@forEach
+                    }
+                    var index = 0
+                    ps.setObject(++index, realStudyId)
+                    ps.setString(++index, tudSubmission.participant_id)
+                    ps.setObject(++index, submissionId)
+                    ps.setObject(++index, tudSubmission.submission_date)
+                    ps.setString(++index, mapper.writeValueAsString(it.entities))
+                    ps.addBatch()
                 }
-                var index = 0
-                ps.setObject(++index, realStudyId)
-                ps.setString(++index, tudSubmission.participant_id)
-                ps.setObject(++index, submissionId)
-                ps.setObject(++index, tudSubmission.submission_date)
-                ps.setString(++index, mapper.writeValueAsString(it.entities))
-                ps.addBatch()
+                ps.executeBatch().sum()
             }
-            ps.executeBatch().sum()
         }
         logger.info("inserted $summaryInserts entities into time use diary summary table")
     }
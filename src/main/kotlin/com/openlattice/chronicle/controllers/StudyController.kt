@@ -1,7 +1,9 @@
 package com.openlattice.chronicle.controllers
 
 import com.codahale.metrics.annotation.Timed
+import com.fasterxml.jackson.core.JsonProcessingException
 import com.geekbeast.controllers.exceptions.ForbiddenException
+import com.geekbeast.mappers.mappers.ObjectMappers
 import com.google.common.base.MoreObjects
 import com.hazelcast.core.HazelcastInstance
 import com.openlattice.chronicle.android.ChronicleData
@@ -15,9 +17,14 @@ import com.openlattice.chronicle.authorization.principals.Principals
 import com.openlattice.chronicle.base.OK
 import com.openlattice.chronicle.base.OK.Companion.ok
 import com.openlattice.chronicle.constants.CustomMediaType
-import com.openlattice.chronicle.data.FileType
+import com.openlattice.chronicle.converters.ColumnarDownloads
+import com.openlattice.chronicle.converters.DownloadFormat
+import com.openlattice.chronicle.converters.PostgresRowDownload
 import com.openlattice.chronicle.data.ParticipationStatus
 import com.openlattice.chronicle.deletion.*
+import com.openlattice.chronicle.export.ExportManifest
+import com.openlattice.chronicle.export.ExportParticipantData
+import com.openlattice.chronicle.export.ExportService
 import com.openlattice.chronicle.hazelcast.HazelcastMap
 import com.openlattice.chronicle.ids.HazelcastIdGenerationService
 import com.openlattice.chronicle.ids.IdConstants
@@ -27,6 +34,7 @@ import com.openlattice.chronicle.participants.ParticipantStats
 import com.openlattice.chronicle.sensorkit.SensorDataSample
 import com.openlattice.chronicle.sensorkit.SensorType
 import com.openlattice.chronicle.services.download.DataDownloadService
+import com.openlattice.chronicle.services.download.ParticipantDataPage
 import com.openlattice.chronicle.services.enrollment.EnrollmentManager
 import com.openlattice.chronicle.services.enrollment.EnrollmentService
 import com.openlattice.chronicle.services.jobs.ChronicleJob
@@ -34,6 +42,7 @@ import com.openlattice.chronicle.services.jobs.JobService
 import com.openlattice.chronicle.services.studies.StudyService
 import com.openlattice.chronicle.services.upload.AppDataUploadService
 import com.openlattice.chronicle.services.upload.SensorDataUploadService
+import com.openlattice.chronicle.services.upload.UploadContentDecoder
 import com.openlattice.chronicle.sources.SourceDevice
 import com.openlattice.chronicle.storage.StorageResolver
 import com.openlattice.chronicle.study.*
@@ -71,6 +80,7 @@ import com.openlattice.chronicle.study.StudyApi.Companion.VERIFY_PATH
 import com.openlattice.chronicle.util.ChronicleServerUtil
 import org.slf4j.LoggerFactory
 import org.springframework.format.annotation.DateTimeFormat
+import org.springframework.http.HttpHeaders
 import org.springframework.http.MediaType
 import org.springframework.web.bind.annotation.*
 import java.time.LocalDate
@@ -78,6 +88,7 @@ import java.time.OffsetDateTime
 import java.time.format.DateTimeFormatter
 import java.util.*
 import javax.inject.Inject
+import javax.servlet.http.HttpServletRequest
 import javax.servlet.http.HttpServletResponse
 import javax.validation.constraints.Size
 
@@ -101,6 +112,8 @@ class StudyController @Inject constructor(
     override val authorizationManager: AuthorizationManager,
     override val auditingManager: AuditingManager,
     val chronicleJobService: JobService,
+    val uploadContentDecoder: UploadContentDecoder,
+    val exportService: ExportService,
 //    private val managementApi: ManagementAPI,
 ) : StudyApi, AuthorizingComponent {
 
@@ -108,6 +121,15 @@ class StudyController @Inject constructor(
 
     companion object {
         private val logger = LoggerFactory.getLogger(StudyController::class.java)!!
+        private val mapper = ObjectMappers.getJsonMapper()
+
+        const val EXPORT_PATH = "/export"
+        const val JOB_ID = "jobId"
+        const val JOB_ID_PATH = "/{$JOB_ID}"
+        const val CONCURRENCY = "concurrency"
+        const val PAGE_PATH = "/page"
+        const val PAGE_TOKEN = "pageToken"
+        const val PAGE_SIZE = "pageSize"
     }
 
     /**
@@ -193,18 +215,16 @@ class StudyController @Inject constructor(
 
         return try {
             val studies = studyService.getOrgStudies(organizationId)
-            studies.forEach { study ->
-                recordEvent(
-                    AuditableEvent(
-                        AclKey(study.id),
-                        currentUser.id,
-                        currentUser.principal,
-                        eventType = AuditEventType.GET_STUDY,
-                        study = study.id,
-                        organization = organizationId,
-                    )
+            recordEvents(studies.map { study ->
+                AuditableEvent(
+                    AclKey(study.id),
+                    currentUser.id,
+                    currentUser.principal,
+                    eventType = AuditEventType.GET_STUDY,
+                    study = study.id,
+                    organization = organizationId,
                 )
-            }
+            })
 
             studies
         } catch (ex: NoSuchElementException) {
@@ -308,7 +328,7 @@ class StudyController @Inject constructor(
             deleteStudyTUDSubmissionJob,
             deleteStudyAppUsageSurveyJob
         )
-        return storageResolver.getPlatformStorage().connection.use { conn ->
+        val createdJobIds = storageResolver.getPlatformStorage().connection.use { conn ->
             AuditedTransactionBuilder<Iterable<UUID>>(conn, auditingManager)
                 .transaction { connection ->
                     val newJobIds = chronicleJobService.createJobs(connection, jobList)
@@ -345,6 +365,9 @@ class StudyController @Inject constructor(
                 }
                 .buildAndRun()
         }
+        //Only evicted once committed, so that a concurrent upload check can't cache the removed participants again.
+        enrollmentService.invalidateStudies(listOf(studyId))
+        return createdJobIds
     }
 
     @Timed
@@ -382,7 +405,7 @@ class StudyController @Inject constructor(
             deleteParticipantAppUsageSurveysJob,
         )
 
-        return storageResolver.getPlatformStorage().connection.use { conn ->
+        val createdJobIds = storageResolver.getPlatformStorage().connection.use { conn ->
             AuditedTransactionBuilder<Iterable<UUID>>(conn, auditingManager)
                 .transaction { connection ->
                     val newJobIds = chronicleJobService.createJobs(connection, jobList)
@@ -408,6 +431,8 @@ class StudyController @Inject constructor(
                 }
                 .buildAndRun()
         }
+        enrollmentService.invalidateParticipants(studyId, participantIds)
+        return createdJobIds
     }
 
     @Timed
@@ -426,6 +451,7 @@ class StudyController @Inject constructor(
     }
 
     @Timed
+    @ContentEncodedUpload
     @PostMapping(
         path = [STUDY_ID_PATH + PARTICIPANT_PATH + PARTICIPANT_ID_PATH + IOS_PATH + SOURCE_DEVICE_ID_PATH],
         consumes = [MediaType.APPLICATION_JSON_VALUE],
@@ -501,14 +527,49 @@ class StudyController @Inject constructor(
         return OK()
     }
 
+    /**
+     * Android usage event upload endpoint. When streaming ingest is enabled the request body is decoded incrementally
+     * straight into the upload buffer, otherwise it is bound to [ChronicleData] as before. Either way `gzip` and `zstd`
+     * encoded request bodies are decompressed as they are read.
+     */
     @PostMapping(
         path = [STUDY_ID_PATH + PARTICIPANT_PATH + PARTICIPANT_ID_PATH + ANDROID_PATH + SOURCE_DEVICE_ID_PATH]
     )
-    override fun uploadAndroidUsageEventData(
+    fun uploadAndroidUsageEventData(
         @PathVariable(STUDY_ID) studyId: UUID,
         @PathVariable(PARTICIPANT_ID) participantId: String,
         @PathVariable(SOURCE_DEVICE_ID) datasourceId: String,
-        @RequestBody data: ChronicleData,
+        request: HttpServletRequest,
+    ): Int {
+        val body = uploadContentDecoder.decode(
+            "${StudyController::class.java.simpleName}.uploadAndroidUsageEventData",
+            request.getHeader(HttpHeaders.CONTENT_ENCODING),
+            request.inputStream
+        )
+        if (!appDataUploadService.isStreamingIngestEnabled()) {
+            val data = try {
+                mapper.readValue(body, ChronicleData::class.java)
+            } catch (ex: JsonProcessingException) {
+                throw IllegalArgumentException("Unable to read chronicle data from request body.", ex)
+            }
+            return uploadAndroidUsageEventData(studyId, participantId, datasourceId, data)
+        }
+
+        val realStudyId = studyService.getStudyId(studyId)
+        checkNotNull(realStudyId) { "invalid study id" }
+        return appDataUploadService.uploadAndroidUsageEvents(
+            realStudyId,
+            participantId,
+            datasourceId,
+            body
+        )
+    }
+
+    override fun uploadAndroidUsageEventData(
+        studyId: UUID,
+        participantId: String,
+        datasourceId: String,
+        data: ChronicleData,
     ): Int {
         //TODO: I think we still needs this as long as there is an enrolled participant in a legacy study.
         val realStudyId = studyService.getStudyId(studyId)
@@ -620,6 +681,20 @@ class StudyController @Inject constructor(
         participantIds: Set<String>,
         startDateTime: OffsetDateTime,
         endDateTime: OffsetDateTime,
+    ): Iterable<Map<String, Any>> {
+        return getParticipantsData(studyId, dataType, participantIds, startDateTime, endDateTime, 1)
+    }
+
+    /**
+     * Same as [getParticipantsData], but runs the download as up to [concurrency] concurrent subqueries.
+     */
+    private fun getParticipantsData(
+        studyId: UUID,
+        dataType: ParticipantDataType,
+        participantIds: Set<String>,
+        startDateTime: OffsetDateTime,
+        endDateTime: OffsetDateTime,
+        concurrency: Int,
     ): Iterable<Map<String, Any>> {
         ensureReadAccess(AclKey(studyId))
         return when (dataType) {
@@ -627,24 +702,88 @@ class StudyController @Inject constructor(
                 studyId,
                 participantIds,
                 startDateTime,
-                endDateTime
+                endDateTime,
+                concurrency
             )
 
             ParticipantDataType.AppUsageSurvey -> downloadService.getParticipantsAppUsageSurveyData(
                 studyId,
                 participantIds,
                 startDateTime,
-                endDateTime
+                endDateTime,
+                concurrency
             )
 
             ParticipantDataType.IOSSensor -> {
                 val sensors = getStudySensors(studyId)
-                downloadService.getParticipantsSensorData(studyId, participantIds, sensors, startDateTime, endDateTime)
+                downloadService.getParticipantsSensorData(
+                    studyId,
+                    participantIds,
+                    sensors,
+                    startDateTime,
+                    endDateTime,
+                    concurrency
+                )
             }
 
-            ParticipantDataType.UsageEvents -> {
-                downloadService.getParticipantsUsageEventsData(studyId, participantIds, startDateTime, endDateTime)
+            ParticipantDataType.UsageEvents -> downloadService.getParticipantsUsageEventsData(
+                studyId,
+                participantIds,
+                startDateTime,
+                endDateTime,
+                concurrency
+            )
+        }
+    }
+
+    /**
+     * Same as [getParticipantsData], but returns a download that is written straight from the result set.
+     */
+    private fun getParticipantsRows(
+        studyId: UUID,
+        dataType: ParticipantDataType,
+        participantIds: Set<String>,
+        startDateTime: OffsetDateTime,
+        endDateTime: OffsetDateTime,
+        concurrency: Int,
+    ): PostgresRowDownload {
+        ensureReadAccess(AclKey(studyId))
+        return when (dataType) {
+            ParticipantDataType.Preprocessed -> downloadService.getPreprocessedUsageEventsRows(
+                studyId,
+                participantIds,
+                startDateTime,
+                endDateTime,
+                concurrency
+            )
+
+            ParticipantDataType.AppUsageSurvey -> downloadService.getParticipantsAppUsageSurveyRows(
+                studyId,
+                participantIds,
+                startDateTime,
+                endDateTime,
+                concurrency
+            )
+
+            ParticipantDataType.IOSSensor -> {
+                val sensors = getStudySensors(studyId)
+                downloadService.getParticipantsSensorRows(
+                    studyId,
+                    participantIds,
+                    sensors,
+                    startDateTime,
+                    endDateTime,
+                    concurrency
+                )
             }
+
+            ParticipantDataType.UsageEvents -> downloadService.getParticipantsUsageEventsRows(
+                studyId,
+                participantIds,
+                startDateTime,
+                endDateTime,
+                concurrency
+            )
         }
     }
 
@@ -664,7 +803,12 @@ class StudyController @Inject constructor(
     @Timed
     @GetMapping(
         path = [STUDY_ID_PATH + PARTICIPANTS_PATH + DATA_PATH],
-        produces = [MediaType.APPLICATION_JSON_VALUE, CustomMediaType.TEXT_CSV_VALUE]
+        produces = [
+            MediaType.APPLICATION_JSON_VALUE,
+            CustomMediaType.TEXT_CSV_VALUE,
+            ColumnarDownloads.ARROW_STREAM_VALUE,
+            ColumnarDownloads.PARQUET_VALUE
+        ]
     )
     fun getParticipantsData(
         @PathVariable(STUDY_ID) studyId: UUID,
@@ -672,21 +816,22 @@ class StudyController @Inject constructor(
         @RequestParam(value = PARTICIPANT_ID) participantIds: Set<String>,
         @RequestParam(value = START_DATE) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) startDateTime: OffsetDateTime?,
         @RequestParam(value = END_DATE) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) endDateTime: OffsetDateTime?,
-        @RequestParam(value = RESPONSE_TYPE, defaultValue = "csv") fileType: FileType,
+        @RequestParam(value = RESPONSE_TYPE, defaultValue = "csv") fileType: DownloadFormat,
         @RequestParam(value = FILE_NAME) @Size(max = 64) fileName: String?,
+        @RequestParam(value = CONCURRENCY, required = false) concurrency: Int?,
         response: HttpServletResponse,
-    ): Iterable<Map<String, Any>> {
-        check(fileType == FileType.csv || fileType == FileType.json) { "Requested file type must be json or CSV." }
-        val data = getParticipantsData(
-            studyId,
-            dataType,
-            participantIds,
-            MoreObjects.firstNonNull(startDateTime, OffsetDateTime.MIN),
-            MoreObjects.firstNonNull(endDateTime, OffsetDateTime.MAX)
-        )
+    ): Any {
+        val start = MoreObjects.firstNonNull(startDateTime, OffsetDateTime.MIN)
+        val end = MoreObjects.firstNonNull(endDateTime, OffsetDateTime.MAX)
+        val downloadConcurrency = downloadService.getDownloadConcurrency(concurrency)
+        //Columnar formats are written from the column advice of the map based downloads.
+        val data = if (fileType.fileType != null && downloadService.isStreamingDownloadEnabled()) {
+            getParticipantsRows(studyId, dataType, participantIds, start, end, downloadConcurrency)
+        } else {
+            getParticipantsData(studyId, dataType, participantIds, start, end, downloadConcurrency)
+        }
 
-        ChronicleServerUtil.setDownloadContentType(response, fileType)
-        ChronicleServerUtil.setContentDisposition(
+        fileType.setDownloadHeaders(
             response,
             MoreObjects.firstNonNull(
                 fileName,
@@ -694,8 +839,7 @@ class StudyController @Inject constructor(
                     LocalDate.now()
                         .format(DateTimeFormatter.BASIC_ISO_DATE)
                 }"
-            ),
-            fileType
+            )
         )
 
         recordEvent(
@@ -712,6 +856,122 @@ class StudyController @Inject constructor(
         return data
     }
 
+    /**
+     * Reads participant data as json one page at a time. The first page is requested without a page token and every
+     * full page returns the token of the next page. Usage events uploaded after the first page was read are left out of
+     * later pages, and the ETag header identifies that snapshot.
+     */
+    @Timed
+    @GetMapping(
+        path = [STUDY_ID_PATH + PARTICIPANTS_PATH + DATA_PATH + PAGE_PATH],
+        produces = [MediaType.APPLICATION_JSON_VALUE]
+    )
+    fun getParticipantsDataPage(
+        @PathVariable(STUDY_ID) studyId: UUID,
+        @RequestParam(value = DATA_TYPE) dataType: ParticipantDataType,
+        @RequestParam(value = PARTICIPANT_ID) participantIds: Set<String>,
+        @RequestParam(value = START_DATE, required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) startDateTime: OffsetDateTime?,
+        @RequestParam(value = END_DATE, required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) endDateTime: OffsetDateTime?,
+        @RequestParam(value = PAGE_TOKEN, required = false) pageToken: String?,
+        @RequestParam(value = PAGE_SIZE, required = false) pageSize: Int?,
+        response: HttpServletResponse,
+    ): ParticipantDataPage {
+        ensureReadAccess(AclKey(studyId))
+        val page = downloadService.getParticipantsDataPage(
+            studyId,
+            dataType,
+            participantIds,
+            if (dataType == ParticipantDataType.IOSSensor) getStudySensors(studyId) else setOf(),
+            MoreObjects.firstNonNull(startDateTime, OffsetDateTime.MIN),
+            MoreObjects.firstNonNull(endDateTime, OffsetDateTime.MAX),
+            pageToken,
+            downloadService.getDownloadPageSize(pageSize)
+        )
+        page.watermark?.let { response.setHeader(HttpHeaders.ETAG, "\"${it.toInstant()}\"") }
+
+        //Paging through a download is audited once, when the first page is read.
+        if (pageToken == null) {
+            recordEvent(
+                AuditableEvent(
+                    aclKey = AclKey(studyId),
+                    securablePrincipalId = Principals.getCurrentSecurablePrincipal().id,
+                    principal = Principals.getCurrentUser(),
+                    eventType = AuditEventType.DOWNLOAD_PARTICIPANTS_DATA,
+                    description = dataType.toString(),
+                    study = studyId
+                )
+            )
+        }
+
+        return page
+    }
+
+    /**
+     * Starts a background export of participant data. The export is split into parts by participant and time range,
+     * which are written to blob storage as they finish and listed by [getExportManifest].
+     */
+    @Timed
+    @PostMapping(
+        path = [STUDY_ID_PATH + PARTICIPANTS_PATH + DATA_PATH + EXPORT_PATH],
+        produces = [MediaType.APPLICATION_JSON_VALUE]
+    )
+    fun exportParticipantsData(
+        @PathVariable(STUDY_ID) studyId: UUID,
+        @RequestParam(value = DATA_TYPE) dataType: ParticipantDataType,
+        @RequestParam(value = PARTICIPANT_ID) participantIds: Set<String>,
+        @RequestParam(value = START_DATE, required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) startDateTime: OffsetDateTime?,
+        @RequestParam(value = END_DATE, required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) endDateTime: OffsetDateTime?,
+        @RequestParam(value = RESPONSE_TYPE, defaultValue = "csv") fileType: DownloadFormat,
+    ): UUID {
+        check(fileType != DownloadFormat.arrow) { "Requested file type must be json, CSV or parquet." }
+        ensureReadAccess(AclKey(studyId))
+        val export = ExportParticipantData(
+            studyId,
+            participantIds,
+            dataType,
+            fileType,
+            if (dataType == ParticipantDataType.IOSSensor) getStudySensors(studyId) else setOf(),
+            startDateTime,
+            endDateTime
+        )
+
+        return storageResolver.getPlatformStorage().connection.use { conn ->
+            AuditedTransactionBuilder<UUID>(conn, auditingManager)
+                .transaction { connection -> exportService.createExport(connection, export) }
+                .audit { jobId ->
+                    listOf(
+                        AuditableEvent(
+                            AclKey(studyId),
+                            eventType = AuditEventType.DOWNLOAD_PARTICIPANTS_DATA,
+                            description = dataType.toString(),
+                            study = studyId
+                        ),
+                        AuditableEvent(
+                            AclKey(jobId),
+                            eventType = AuditEventType.CREATE_JOB,
+                            study = studyId
+                        )
+                    )
+                }
+                .buildAndRun()
+        }
+    }
+
+    @Timed
+    @GetMapping(
+        path = [STUDY_ID_PATH + EXPORT_PATH + JOB_ID_PATH],
+        produces = [MediaType.APPLICATION_JSON_VALUE]
+    )
+    fun getExportManifest(
+        @PathVariable(STUDY_ID) studyId: UUID,
+        @PathVariable(JOB_ID) jobId: UUID,
+    ): ExportManifest {
+        ensureReadAccess(AclKey(studyId))
+        val manifest = exportService.getManifest(jobId)
+        check(manifest.studyId == studyId) { "Export $jobId does not belong to study $studyId." }
+        return manifest
+    }
+
     @Timed
     @GetMapping(
         path = [STUDY_ID_PATH + PARTICIPANT_PATH + PARTICIPANT_ID_PATH + VERIFY_PATH]
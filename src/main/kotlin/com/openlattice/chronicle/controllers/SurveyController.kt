@@ -149,16 +149,24 @@ class SurveyController @Inject constructor(
     ): List<AppUsage> {
         val realStudyId = studyService.getStudyId(studyId)
         checkNotNull(realStudyId) { "invalid study id" }
-        val appUsageData = surveysService.getAndroidAppUsageData(realStudyId, participantId, startDateTime, endDateTime)
-        val aggregate = surveysService.computeAggregateUsage(startDateTime, appUsageData)
+        val aggregate = surveysService.getAndroidAggregateUsage(realStudyId, participantId, startDateTime, endDateTime)
 
         val threshold = thresholdInSeconds ?: (studyService
             .getStudySettings(studyId)
             .getOrDefault(StudySettingType.Survey, SurveySettings()) as SurveySettings).appUsageThresholdInSeconds
 
-        //Only keep packages that exceed threshold usage time for query.
+        //Only packages that exceed threshold usage time are read from raw events.
         val packagesToKeep = aggregate.filterValues { it > threshold }.keys
-        return appUsageData.filter { packagesToKeep.contains(it.appPackageName) }
+        if (packagesToKeep.isEmpty()) {
+            return listOf()
+        }
+        return surveysService.getAndroidAppUsageData(
+            realStudyId,
+            participantId,
+            startDateTime,
+            endDateTime,
+            packagesToKeep
+        )
     }
 
     @Timed
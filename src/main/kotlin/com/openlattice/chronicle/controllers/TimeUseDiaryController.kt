@@ -11,11 +11,14 @@ import com.openlattice.chronicle.authorization.AuthorizationManager
 import com.openlattice.chronicle.authorization.AuthorizingComponent
 import com.openlattice.chronicle.authorization.Permission
 import com.openlattice.chronicle.authorization.principals.Principals
-import com.openlattice.chronicle.data.FileType
+import com.openlattice.chronicle.constants.CustomMediaType
+import com.openlattice.chronicle.converters.ColumnarDownloads
+import com.openlattice.chronicle.converters.DownloadFormat
 import com.openlattice.chronicle.ids.HazelcastIdGenerationService
 import com.openlattice.chronicle.services.studies.StudyService
 import com.openlattice.chronicle.services.timeusediary.TimeUseDiaryService
 import com.openlattice.chronicle.storage.StorageResolver
+import com.openlattice.chronicle.study.StudyApi.Companion.RESPONSE_TYPE
 import com.openlattice.chronicle.timeusediary.TimeUseDiaryApi
 import com.openlattice.chronicle.timeusediary.TimeUseDiaryApi.Companion.CONTROLLER
 import com.openlattice.chronicle.timeusediary.TimeUseDiaryApi.Companion.DATA_PATH
@@ -184,13 +187,19 @@ class TimeUseDiaryController(
     @Timed
     @GetMapping(
         path = [STUDY_ID_PATH + DATA_PATH],
-        produces = [MediaType.APPLICATION_JSON_VALUE]
+        produces = [
+            MediaType.APPLICATION_JSON_VALUE,
+            CustomMediaType.TEXT_CSV_VALUE,
+            ColumnarDownloads.ARROW_STREAM_VALUE,
+            ColumnarDownloads.PARQUET_VALUE
+        ]
     )
     fun getStudyTUDSubmissions(
         @PathVariable(STUDY_ID) studyId: UUID,
         @RequestParam(DATA_TYPE) dataType: TimeUseDiaryDownloadDataType,
         @RequestParam(START_DATE) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) startDateTime: OffsetDateTime,
         @RequestParam(END_DATE) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) endDateTime: OffsetDateTime,
+        @RequestParam(value = RESPONSE_TYPE, defaultValue = "csv") fileType: DownloadFormat,
         response: HttpServletResponse
     ): Iterable<List<Map<String, Any>>> {
         val data = getStudyTUDSubmissions(
@@ -200,10 +209,9 @@ class TimeUseDiaryController(
             endDateTime
         )
 
-        val filename = "TimeUseDiary_${dataType}_${LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE)}.csv"
+        val filename = "TimeUseDiary_${dataType}_${LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE)}"
 
-        ChronicleServerUtil.setDownloadContentType(response, FileType.csv)
-        ChronicleServerUtil.setContentDisposition(response, filename, FileType.csv)
+        fileType.setDownloadHeaders(response, if (fileType == DownloadFormat.csv) "$filename.csv" else filename)
 
         recordEvent(
             AuditableEvent(
@@ -239,7 +247,12 @@ class TimeUseDiaryController(
     @Timed
     @GetMapping(
         path = [STUDY_ID_PATH + PARTICIPANTS_PATH + DATA_PATH],
-        produces = [MediaType.APPLICATION_JSON_VALUE]
+        produces = [
+            MediaType.APPLICATION_JSON_VALUE,
+            CustomMediaType.TEXT_CSV_VALUE,
+            ColumnarDownloads.ARROW_STREAM_VALUE,
+            ColumnarDownloads.PARQUET_VALUE
+        ]
     )
     fun getParticipantsTudSubmissions(
         @PathVariable(STUDY_ID) studyId: UUID,
@@ -248,6 +261,7 @@ class TimeUseDiaryController(
         @RequestParam(START_DATE) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) startDateTime: OffsetDateTime?,
         @RequestParam(END_DATE) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) endDateTime: OffsetDateTime?,
         @RequestParam(FILE_NAME) fileName: String?,
+        @RequestParam(value = RESPONSE_TYPE, defaultValue = "csv") fileType: DownloadFormat,
         response: HttpServletResponse
     ): Iterable<List<Map<String, Any>>> {
         val data = getParticipantsTudSubmissions(
@@ -258,10 +272,10 @@ class TimeUseDiaryController(
             MoreObjects.firstNonNull(endDateTime, OffsetDateTime.MAX)
         )
 
-        ChronicleServerUtil.setDownloadContentType(response, FileType.csv)
-        ChronicleServerUtil.setContentDisposition(
+        fileType.setDownloadHeaders(
             response,
-            MoreObjects.firstNonNull(fileName, "TimeUseDiary_${dataType}_${LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE)}"), FileType.csv)
+            MoreObjects.firstNonNull(fileName, "TimeUseDiary_${dataType}_${LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE)}")
+        )
 
         recordEvent(
             AuditableEvent(
@@ -4,6 +4,7 @@ import com.codahale.metrics.annotation.Timed
 import com.google.common.base.Optional
 import com.google.common.collect.SetMultimap
 import com.openlattice.chronicle.api.ChronicleApi
+import com.openlattice.chronicle.controllers.ContentEncodedUpload
 import com.openlattice.chronicle.data.ParticipationStatus
 import com.openlattice.chronicle.services.enrollment.EnrollmentManager
 import com.openlattice.chronicle.services.legacy.LegacyEdmResolver
@@ -110,6 +111,7 @@ class ChronicleControllerV2 : ChronicleApi {
     }
 
     @Timed
+    @ContentEncodedUpload
     @RequestMapping(
             path = [ChronicleApi.ORGANIZATION_ID_PATH + ChronicleApi.STUDY_ID_PATH + ChronicleApi.PARTICIPANT_ID_PATH + ChronicleApi.DATASOURCE_ID_PATH + ChronicleApi.UPLOAD_PATH],
             method = [RequestMethod.POST], consumes = [MediaType.APPLICATION_JSON_VALUE]
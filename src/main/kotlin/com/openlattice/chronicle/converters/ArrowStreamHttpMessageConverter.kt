@@ -0,0 +1,225 @@
+package com.openlattice.chronicle.converters
+
+import com.geekbeast.postgres.PostgresDatatype
+import org.apache.arrow.memory.BufferAllocator
+import org.apache.arrow.memory.RootAllocator
+import org.apache.arrow.vector.BigIntVector
+import org.apache.arrow.vector.BitVector
+import org.apache.arrow.vector.FieldVector
+import org.apache.arrow.vector.Float8Vector
+import org.apache.arrow.vector.IntVector
+import org.apache.arrow.vector.TimeStampMicroTZVector
+import org.apache.arrow.vector.VarCharVector
+import org.apache.arrow.vector.VectorSchemaRoot
+import org.apache.arrow.vector.dictionary.Dictionary
+import org.apache.arrow.vector.dictionary.DictionaryProvider
+import org.apache.arrow.vector.ipc.ArrowStreamWriter
+import org.apache.arrow.vector.types.FloatingPointPrecision
+import org.apache.arrow.vector.types.TimeUnit
+import org.apache.arrow.vector.types.pojo.ArrowType
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding
+import org.apache.arrow.vector.types.pojo.Field
+import org.apache.arrow.vector.types.pojo.FieldType
+import org.apache.arrow.vector.types.pojo.Schema
+import org.springframework.http.HttpInputMessage
+import org.springframework.http.HttpOutputMessage
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter
+import org.springframework.http.converter.HttpMessageNotReadableException
+import org.springframework.http.converter.HttpMessageNotWritableException
+import org.springframework.util.StreamUtils
+import java.io.IOException
+import java.io.OutputStream
+import java.lang.reflect.Type
+import java.nio.charset.StandardCharsets
+
+/**
+ * Writes participant and time use diary downloads as an Arrow IPC stream. Rows are written in record batches of
+ * [BATCH_SIZE] rows, so memory use does not grow with the size of the download.
+ *
+ * Low cardinality string columns are dictionary encoded. Their dictionaries grow as new values are seen and are sent
+ * again ahead of any batch that added values, which the stream format allows.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class ArrowStreamHttpMessageConverter : AbstractGenericHttpMessageConverter<Any>(ColumnarDownloads.ARROW_STREAM) {
+    companion object {
+        private const val BATCH_SIZE = 8192
+        private val allocator = RootAllocator()
+        private val INDEX_TYPE = ArrowType.Int(32, true)
+
+        @JvmStatic
+        fun write(download: Any, out: OutputStream) {
+            val columns = ColumnarDownloads.columns(ColumnarDownloads.columnAdvice(download))
+            allocator.newChildAllocator("arrow-download", 0, Long.MAX_VALUE).use { child ->
+                val dictionaries = columns.withIndex()
+                    .filter { it.value.dictionary }
+                    .associate { (index, column) -> index to StringDictionary(index.toLong(), column.name, child) }
+                try {
+                    val schema = Schema(columns.mapIndexed { index, column -> field(column, dictionaries[index]) })
+                    VectorSchemaRoot.create(schema, child).use { root ->
+                        writeBatches(download, columns, dictionaries, root, out)
+                    }
+                } finally {
+                    dictionaries.values.forEach { it.close() }
+                }
+            }
+        }
+
+        private fun writeBatches(
+            download: Any,
+            columns: List<ColumnarColumn>,
+            dictionaries: Map<Int, StringDictionary>,
+            root: VectorSchemaRoot,
+            out: OutputStream
+        ) {
+            val provider = DictionaryProvider.MapDictionaryProvider(
+                *dictionaries.values.map { it.dictionary }.toTypedArray()
+            )
+            val rows = ColumnarDownloads.rows(download)
+            ArrowStreamWriter(root, provider, StreamUtils.nonClosing(out)).use { writer ->
+                writer.start()
+                val setters = columns.mapIndexed { index, column ->
+                    setter(column, root.getVector(index), dictionaries[index])
+                }
+                while (rows.hasNext()) {
+                    root.allocateNew()
+                    var count = 0
+                    while (count < BATCH_SIZE && rows.hasNext()) {
+                        val row = rows.next()
+                        for (index in columns.indices) {
+                            setters[index](count, row[columns[index].name])
+                        }
+                        count++
+                    }
+                    root.rowCount = count
+                    dictionaries.values.forEach { it.seal() }
+                    writer.writeBatch()
+                }
+                writer.end()
+            }
+        }
+
+        private fun field(column: ColumnarColumn, dictionary: StringDictionary?): Field {
+            if (dictionary != null) {
+                return Field(
+                    column.name,
+                    FieldType(true, ArrowType.Utf8(), DictionaryEncoding(dictionary.id, false, INDEX_TYPE)),
+                    null
+                )
+            }
+            val type = when (column.datatype) {
+                PostgresDatatype.TIMESTAMPTZ -> ArrowType.Timestamp(TimeUnit.MICROSECOND, "UTC")
+                PostgresDatatype.INTEGER -> ArrowType.Int(32, true)
+                PostgresDatatype.BIGINT -> ArrowType.Int(64, true)
+                PostgresDatatype.DOUBLE -> ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)
+                PostgresDatatype.BOOLEAN -> ArrowType.Bool()
+                else -> ArrowType.Utf8()
+            }
+            return Field.nullable(column.name, type)
+        }
+
+        private fun setter(
+            column: ColumnarColumn,
+            vector: FieldVector,
+            dictionary: StringDictionary?
+        ): (Int, Any?) -> Unit {
+            if (dictionary != null) {
+                val indices = vector as IntVector
+                return { row, value ->
+                    val string = ColumnarDownloads.string(value)
+                    if (string == null) indices.setNull(row) else indices.setSafe(row, dictionary.index(string))
+                }
+            }
+            return when (column.datatype) {
+                PostgresDatatype.TIMESTAMPTZ -> {
+                    val timestamps = vector as TimeStampMicroTZVector
+                    { row, value ->
+                        val micros = ColumnarDownloads.timestampMicros(value)
+                        if (micros == null) timestamps.setNull(row) else timestamps.setSafe(row, micros)
+                    }
+                }
+                PostgresDatatype.INTEGER -> {
+                    val integers = vector as IntVector
+                    { row, value ->
+                        val integer = ColumnarDownloads.integer(value)
+                        if (integer == null) integers.setNull(row) else integers.setSafe(row, integer)
+                    }
+                }
+                PostgresDatatype.BIGINT -> {
+                    val longs = vector as BigIntVector
+                    { row, value ->
+                        val long = ColumnarDownloads.long(value)
+                        if (long == null) longs.setNull(row) else longs.setSafe(row, long)
+                    }
+                }
+                PostgresDatatype.DOUBLE -> {
+                    val doubles = vector as Float8Vector
+                    { row, value ->
+                        val double = ColumnarDownloads.double(value)
+                        if (double == null) doubles.setNull(row) else doubles.setSafe(row, double)
+                    }
+                }
+                PostgresDatatype.BOOLEAN -> {
+                    val booleans = vector as BitVector
+                    { row, value ->
+                        val boolean = ColumnarDownloads.boolean(value)
+                        if (boolean == null) booleans.setNull(row) else booleans.setSafe(row, if (boolean) 1 else 0)
+                    }
+                }
+                else -> {
+                    val strings = vector as VarCharVector
+                    { row, value ->
+                        val string = ColumnarDownloads.string(value)
+                        if (string == null) strings.setNull(row)
+                        else strings.setSafe(row, string.toByteArray(StandardCharsets.UTF_8))
+                    }
+                }
+            }
+        }
+    }
+
+    @Throws(IOException::class, HttpMessageNotWritableException::class)
+    override fun writeInternal(t: Any, type: Type, outputMessage: HttpOutputMessage) {
+        write(t, outputMessage.body)
+    }
+
+    override fun supports(clazz: Class<*>): Boolean {
+        return ColumnarDownloads.supports(clazz)
+    }
+
+    @Throws(HttpMessageNotReadableException::class)
+    override fun read(type: Type, contextClass: Class<*>, inputMessage: HttpInputMessage): Any {
+        throw UnsupportedOperationException("Arrow is not a supported input format")
+    }
+
+    @Throws(HttpMessageNotReadableException::class)
+    override fun readInternal(clazz: Class<out Any>, inputMessage: HttpInputMessage): Any {
+        throw UnsupportedOperationException("Arrow is not a supported input format")
+    }
+}
+
+/**
+ * A dictionary of the distinct values of a string column seen so far in a download.
+ */
+private class StringDictionary(val id: Long, name: String, allocator: BufferAllocator) : AutoCloseable {
+    private val values = VarCharVector("$name-dictionary", allocator)
+    private val indices = HashMap<String, Int>()
+    val dictionary = Dictionary(values, DictionaryEncoding(id, false, ArrowType.Int(32, true)))
+
+    fun index(value: String): Int = indices.getOrPut(value) {
+        val index = indices.size
+        values.setSafe(index, value.toByteArray(StandardCharsets.UTF_8))
+        index
+    }
+
+    /**
+     * Makes values added since the last batch visible before the batch is written.
+     */
+    fun seal() {
+        values.valueCount = indices.size
+    }
+
+    override fun close() {
+        values.close()
+    }
+}
@@ -0,0 +1,129 @@
+package com.openlattice.chronicle.converters
+
+import com.geekbeast.postgres.PostgresDatatype
+import com.openlattice.chronicle.storage.PostgresColumns
+import com.openlattice.chronicle.storage.RedshiftColumns
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APPLICATION_LABEL
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_FULL_NAME
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_PACKAGE_NAME
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_RECORD_TYPE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_TIMEZONE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_TITLE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.INTERACTION_TYPE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.PARTICIPANT_ID
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.SENSOR_TYPE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.STUDY_ID
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.TIMEZONE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.USERNAME
+import org.springframework.http.MediaType
+import java.time.Instant
+import java.time.OffsetDateTime
+import java.time.temporal.ChronoUnit
+
+/**
+ * A column of a columnar (arrow or parquet) download.
+ *
+ * @param dictionary True if the column holds a small set of repeated strings and should be dictionary encoded.
+ */
+internal data class ColumnarColumn(val name: String, val datatype: PostgresDatatype, val dictionary: Boolean)
+
+/**
+ * Shared schema resolution and value conversion for the columnar download converters. Column types are resolved from
+ * the column advice of a download the same way as for csv downloads, defaulting to text for unknown columns.
+ *
+ * Timestamps are written as UTC instants with microsecond precision. The local offset of each event is still available
+ * from its timezone column.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+internal object ColumnarDownloads {
+    const val ARROW_STREAM_VALUE = "application/vnd.apache.arrow.stream"
+    const val PARQUET_VALUE = "application/vnd.apache.parquet"
+
+    @JvmField
+    val ARROW_STREAM: MediaType = MediaType.parseMediaType(ARROW_STREAM_VALUE)
+
+    @JvmField
+    val PARQUET: MediaType = MediaType.parseMediaType(PARQUET_VALUE)
+
+    private val resolutionMap = PostgresColumns.columnTypes + RedshiftColumns.columnTypes
+
+    /**
+     * Low cardinality string columns that are repeated on almost every row.
+     */
+    private val DICTIONARY_COLUMNS = setOf(
+        STUDY_ID,
+        PARTICIPANT_ID,
+        APP_PACKAGE_NAME,
+        APPLICATION_LABEL,
+        INTERACTION_TYPE,
+        TIMEZONE,
+        USERNAME,
+        APP_RECORD_TYPE,
+        APP_TITLE,
+        APP_FULL_NAME,
+        APP_TIMEZONE,
+        SENSOR_TYPE
+    ).map { it.name }.toSet()
+
+    fun columns(columnAdvice: List<String>): List<ColumnarColumn> = columnAdvice.map { name ->
+        val datatype = when (val resolved = resolutionMap.getOrDefault(name, PostgresDatatype.TEXT)) {
+            PostgresDatatype.TIMESTAMPTZ,
+            PostgresDatatype.INTEGER,
+            PostgresDatatype.BIGINT,
+            PostgresDatatype.DOUBLE,
+            PostgresDatatype.BOOLEAN -> resolved
+            else -> PostgresDatatype.TEXT
+        }
+        ColumnarColumn(name, datatype, datatype == PostgresDatatype.TEXT && DICTIONARY_COLUMNS.contains(name))
+    }
+
+    /**
+     * The rows of a download, flattening the per submission rows of time use diary downloads.
+     */
+    fun rows(download: Any): Iterator<Map<String, Any?>> = when (download) {
+        is PostgresDownloadWrapper -> download.iterator()
+        is TimeUseDiaryPostgresDownloadWrapper -> download.asSequence().flatten().iterator()
+        else -> throw IllegalArgumentException("Unsupported download type ${download.javaClass.name}")
+    }
+
+    fun columnAdvice(download: Any): List<String> = when (download) {
+        is PostgresDownloadWrapper -> download.columnAdvice
+        is TimeUseDiaryPostgresDownloadWrapper -> download.columnAdvice
+        else -> throw IllegalArgumentException("Unsupported download type ${download.javaClass.name}")
+    }
+
+    fun supports(clazz: Class<*>): Boolean {
+        return PostgresDownloadWrapper::class.java.isAssignableFrom(clazz) ||
+                TimeUseDiaryPostgresDownloadWrapper::class.java.isAssignableFrom(clazz)
+    }
+
+    /**
+     * Missing timestamps are rendered as empty strings by the downloads, so those are treated as null.
+     */
+    fun timestampMicros(value: Any?): Long? {
+        val odt = when (value) {
+            null -> return null
+            is OffsetDateTime -> value
+            is String -> if (value.isEmpty()) return null else OffsetDateTime.parse(value)
+            else -> throw IllegalArgumentException("Unable to convert ${value.javaClass.name} to a timestamp")
+        }
+        return ChronoUnit.MICROS.between(Instant.EPOCH, odt.toInstant())
+    }
+
+    fun string(value: Any?): String? = value?.toString()
+    fun integer(value: Any?): Int? = number(value)?.toInt()
+    fun long(value: Any?): Long? = number(value)?.toLong()
+    fun double(value: Any?): Double? = number(value)?.toDouble()
+    fun boolean(value: Any?): Boolean? = when (value) {
+        is Boolean -> value
+        is String -> if (value.isEmpty()) null else value.toBoolean()
+        else -> null
+    }
+
+    private fun number(value: Any?): Number? = when (value) {
+        is Number -> value
+        is String -> if (value.isEmpty()) null else value.toBigDecimal()
+        else -> null
+    }
+}
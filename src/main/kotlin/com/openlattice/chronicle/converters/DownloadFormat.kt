@@ -0,0 +1,38 @@
+package com.openlattice.chronicle.converters
+
+import com.openlattice.chronicle.data.FileType
+import com.openlattice.chronicle.util.ChronicleServerUtil
+import org.springframework.http.HttpHeaders
+import javax.servlet.http.HttpServletResponse
+
+/**
+ * The formats that participant and time use diary data can be downloaded in. Extends [FileType] with the columnar
+ * formats. Participant data exports support every format except [arrow].
+ *
+ * @param fileType The matching [FileType] for text formats or null for columnar formats.
+ * @param extension The file extension of the format.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+enum class DownloadFormat(val fileType: FileType?, val extension: String) {
+    csv(FileType.csv, "csv"),
+    json(FileType.json, "json"),
+    arrow(null, "arrows"),
+    parquet(null, "parquet");
+
+    fun setDownloadHeaders(response: HttpServletResponse, fileName: String) {
+        if (fileType != null) {
+            ChronicleServerUtil.setDownloadContentType(response, fileType)
+            ChronicleServerUtil.setContentDisposition(response, fileName, fileType)
+        } else {
+            response.contentType = when (this) {
+                parquet -> ColumnarDownloads.PARQUET_VALUE
+                else -> ColumnarDownloads.ARROW_STREAM_VALUE
+            }
+            response.setHeader(
+                HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"$fileName.$extension\""
+            )
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.openlattice.chronicle.converters
+
+import com.fasterxml.jackson.core.JsonGenerator
+import com.fasterxml.jackson.databind.util.TokenBuffer
+import com.openlattice.chronicle.services.download.DownloadColumn
+import com.openlattice.chronicle.services.download.FanOutQueryExecutor
+import com.openlattice.chronicle.services.download.QuerySlice
+import com.zaxxer.hikari.HikariDataSource
+import java.sql.Connection
+import java.sql.PreparedStatement
+
+/**
+ * A [PostgresRowDownload] that is queried as several slices with [FanOutQueryExecutor]. Each slice writes its rows
+ * into token buffers of up to [ROWS_PER_BUFFER] rows, which are replayed to the response generator in slice order,
+ * so the output is the same as querying every slice in turn.
+ *
+ * @param slices The slices of the download, in output order.
+ * @param bind Binds the query parameters for a slice.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class FanOutRowDownload(
+    private val executor: FanOutQueryExecutor,
+    private val dataSourceName: String,
+    private val hds: HikariDataSource,
+    private val sql: String,
+    columns: List<DownloadColumn>,
+    private val fetchSize: Int,
+    private val slices: List<QuerySlice>,
+    private val concurrency: Int,
+    private val bufferSize: Int,
+    private val bind: (Connection, PreparedStatement, QuerySlice) -> Unit,
+) : PostgresRowDownload(hds, sql, columns, fetchSize, { connection, ps -> bind(connection, ps, slices.single()) }) {
+    companion object {
+        private const val ROWS_PER_BUFFER = 256
+    }
+
+    override fun writeRows(generator: JsonGenerator, writeRow: RowWriter): Long {
+        if (slices.size == 1) {
+            return super.writeRows(generator, writeRow)
+        }
+
+        val buffers = executor.execute<BufferedRows>(
+            dataSourceName,
+            hds,
+            slices,
+            concurrency,
+            (bufferSize / ROWS_PER_BUFFER).coerceAtLeast(1)
+        ) { slice, emit ->
+            FanOutQueryExecutor.query(hds, sql, fetchSize, { connection, ps -> bind(connection, ps, slice) }) { rs ->
+                var buffer = BufferedRows(TokenBuffer(generator.codec, false))
+                writeRows(rs, buffer.tokens) { row, writers, _ ->
+                    writeRow.write(row, writers, buffer.tokens)
+                    if (++buffer.rows == ROWS_PER_BUFFER) {
+                        emit(buffer)
+                        buffer = BufferedRows(TokenBuffer(generator.codec, false))
+                    }
+                }
+                if (buffer.rows > 0) {
+                    emit(buffer)
+                }
+            }
+        }
+
+        //Closing stops the remaining subqueries if writing the response fails.
+        return buffers.use {
+            var rows = 0L
+            buffers.forEach { buffer ->
+                buffer.tokens.serialize(generator)
+                rows += buffer.rows
+            }
+            rows
+        }
+    }
+
+    private class BufferedRows(val tokens: TokenBuffer, var rows: Int = 0)
+}
@@ -0,0 +1,151 @@
+package com.openlattice.chronicle.converters
+
+import com.geekbeast.postgres.PostgresDatatype
+import org.apache.parquet.example.data.Group
+import org.apache.parquet.example.data.simple.SimpleGroupFactory
+import org.apache.parquet.hadoop.example.ExampleParquetWriter
+import org.apache.parquet.hadoop.metadata.CompressionCodecName
+import org.apache.parquet.io.OutputFile
+import org.apache.parquet.io.PositionOutputStream
+import org.apache.parquet.schema.LogicalTypeAnnotation
+import org.apache.parquet.schema.MessageType
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName
+import org.apache.parquet.schema.Types
+import org.springframework.http.HttpInputMessage
+import org.springframework.http.HttpOutputMessage
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter
+import org.springframework.http.converter.HttpMessageNotReadableException
+import org.springframework.http.converter.HttpMessageNotWritableException
+import java.io.IOException
+import java.io.OutputStream
+import java.lang.reflect.Type
+
+/**
+ * Writes participant and time use diary downloads as a snappy compressed parquet file. Row groups are kept small so
+ * that only [ROW_GROUP_SIZE] bytes of a download are buffered before they are flushed to the response.
+ *
+ * Dictionary encoding is only enabled for the low cardinality string columns, where it pays for itself.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class ParquetHttpMessageConverter : AbstractGenericHttpMessageConverter<Any>(ColumnarDownloads.PARQUET) {
+    companion object {
+        private const val ROW_GROUP_SIZE = 16L * 1024 * 1024
+
+        /**
+         * @return The number of rows written.
+         */
+        @JvmStatic
+        fun write(download: Any, out: OutputStream): Long {
+            val columns = ColumnarDownloads.columns(ColumnarDownloads.columnAdvice(download))
+            val schema = schema(columns)
+            val groups = SimpleGroupFactory(schema)
+            val builder = ExampleParquetWriter.builder(StreamOutputFile(out))
+                .withType(schema)
+                .withCompressionCodec(CompressionCodecName.SNAPPY)
+                .withRowGroupSize(ROW_GROUP_SIZE)
+                .withDictionaryEncoding(false)
+            columns.filter { it.dictionary }.forEach { builder.withDictionaryEncoding(it.name, true) }
+
+            var rows = 0L
+            builder.build().use { writer ->
+                ColumnarDownloads.rows(download).forEach { row ->
+                    val group = groups.newGroup()
+                    columns.forEach { column -> append(group, column, row[column.name]) }
+                    writer.write(group)
+                    rows++
+                }
+            }
+            return rows
+        }
+
+        private fun schema(columns: List<ColumnarColumn>): MessageType {
+            val builder = Types.buildMessage()
+            columns.forEach { column ->
+                when (column.datatype) {
+                    PostgresDatatype.TIMESTAMPTZ -> builder.optional(PrimitiveTypeName.INT64)
+                        .`as`(LogicalTypeAnnotation.timestampType(true, LogicalTypeAnnotation.TimeUnit.MICROS))
+                        .named(column.name)
+                    PostgresDatatype.INTEGER -> builder.optional(PrimitiveTypeName.INT32).named(column.name)
+                    PostgresDatatype.BIGINT -> builder.optional(PrimitiveTypeName.INT64).named(column.name)
+                    PostgresDatatype.DOUBLE -> builder.optional(PrimitiveTypeName.DOUBLE).named(column.name)
+                    PostgresDatatype.BOOLEAN -> builder.optional(PrimitiveTypeName.BOOLEAN).named(column.name)
+                    else -> builder.optional(PrimitiveTypeName.BINARY)
+                        .`as`(LogicalTypeAnnotation.stringType())
+                        .named(column.name)
+                }
+            }
+            return builder.named("download")
+        }
+
+        /**
+         * Missing values are left out of the group, which parquet reads back as null.
+         */
+        private fun append(group: Group, column: ColumnarColumn, value: Any?) {
+            when (column.datatype) {
+                PostgresDatatype.TIMESTAMPTZ -> ColumnarDownloads.timestampMicros(value)
+                    ?.let { group.append(column.name, it) }
+                PostgresDatatype.INTEGER -> ColumnarDownloads.integer(value)?.let { group.append(column.name, it) }
+                PostgresDatatype.BIGINT -> ColumnarDownloads.long(value)?.let { group.append(column.name, it) }
+                PostgresDatatype.DOUBLE -> ColumnarDownloads.double(value)?.let { group.append(column.name, it) }
+                PostgresDatatype.BOOLEAN -> ColumnarDownloads.boolean(value)?.let { group.append(column.name, it) }
+                else -> ColumnarDownloads.string(value)?.let { group.append(column.name, it) }
+            }
+        }
+    }
+
+    @Throws(IOException::class, HttpMessageNotWritableException::class)
+    override fun writeInternal(t: Any, type: Type, outputMessage: HttpOutputMessage) {
+        write(t, outputMessage.body)
+    }
+
+    override fun supports(clazz: Class<*>): Boolean {
+        return ColumnarDownloads.supports(clazz)
+    }
+
+    @Throws(HttpMessageNotReadableException::class)
+    override fun read(type: Type, contextClass: Class<*>, inputMessage: HttpInputMessage): Any {
+        throw UnsupportedOperationException("Parquet is not a supported input format")
+    }
+
+    @Throws(HttpMessageNotReadableException::class)
+    override fun readInternal(clazz: Class<out Any>, inputMessage: HttpInputMessage): Any {
+        throw UnsupportedOperationException("Parquet is not a supported input format")
+    }
+}
+
+/**
+ * Lets the parquet writer stream straight to a response instead of a hadoop file system. Closing the writer only
+ * flushes the underlying stream, which is left for the servlet container to close.
+ */
+private class StreamOutputFile(private val out: OutputStream) : OutputFile {
+    override fun create(blockSizeHint: Long): PositionOutputStream = object : PositionOutputStream() {
+        private var position = 0L
+
+        override fun getPos(): Long = position
+
+        override fun write(b: Int) {
+            out.write(b)
+            position++
+        }
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            out.write(b, off, len)
+            position += len
+        }
+
+        override fun flush() {
+            out.flush()
+        }
+
+        override fun close() {
+            out.flush()
+        }
+    }
+
+    override fun createOrOverwrite(blockSizeHint: Long): PositionOutputStream = create(blockSizeHint)
+
+    override fun supportsBlockSize(): Boolean = false
+
+    override fun defaultBlockSize(): Long = 0
+}
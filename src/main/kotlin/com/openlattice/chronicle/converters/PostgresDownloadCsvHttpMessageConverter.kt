@@ -46,7 +46,7 @@ class PostgresDownloadCsvHttpMessageConverter : AbstractGenericHttpMessageConver
 ) {
     companion object {
         private val resolutionMap = PostgresColumns.columnTypes + RedshiftColumns.columnTypes
-        private val csvTypes = EnumMap<PostgresDatatype, CsvSchema.ColumnType>(PostgresDatatype::class.java)
+        internal val csvTypes = EnumMap<PostgresDatatype, CsvSchema.ColumnType>(PostgresDatatype::class.java)
 
         init {
             csvTypes[PostgresDatatype.TEXT] = CsvSchema.ColumnType.STRING
@@ -1,16 +1,14 @@
 package com.openlattice.chronicle.converters
 
-import com.geekbeast.postgres.streams.BasePostgresIterable
-import java.sql.ResultSet
-
 /**
  * Decorates a postgres iterable with a list of columns that can be used to generate a CSV download of data
  * directly from a postgres query. It is expected
- * @param iterable The base postgres iterable to wrap.
+ * @param iterable The postgres iterable to wrap. This is usually a single base postgres iterable, but may merge the
+ * results of several queries.
  * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
  */
 class PostgresDownloadWrapper(
-    iterable: BasePostgresIterable<Map<String, Any>>
+    iterable: Iterable<Map<String, Any>>
 ) :
     Iterable<Map<String, Any>> by iterable {
     companion object {
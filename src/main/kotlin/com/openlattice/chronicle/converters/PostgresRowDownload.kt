@@ -0,0 +1,92 @@
+package com.openlattice.chronicle.converters
+
+import com.fasterxml.jackson.core.JsonGenerator
+import com.fasterxml.jackson.core.io.SerializedString
+import com.openlattice.chronicle.services.download.ColumnWriter
+import com.openlattice.chronicle.services.download.DownloadColumn
+import com.openlattice.chronicle.services.download.FanOutQueryExecutor
+import com.openlattice.chronicle.services.download.ZoneIdCache
+import com.zaxxer.hikari.HikariDataSource
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+
+/**
+ * A download that is written row by row straight from a postgres result set to a streaming generator, without
+ * materializing a map per row. The query is only executed when the download is written.
+ *
+ * @param columns The columns of the download in output order.
+ * @param bind Binds the query parameters. It is passed the connection the query runs on, so that arrays can be created
+ * without borrowing another connection from the pool.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+open class PostgresRowDownload(
+    private val hds: HikariDataSource,
+    private val sql: String,
+    val columns: List<DownloadColumn>,
+    private val fetchSize: Int,
+    private val bind: (Connection, PreparedStatement) -> Unit,
+) {
+    private val fieldNames = columns.map { SerializedString(it.name) }
+
+    /**
+     * Writes each row as an array of values in column order. This is the row format expected by csv generators.
+     *
+     * @return The number of rows written.
+     */
+    fun writeArrays(generator: JsonGenerator): Long = writeRows(generator) { rs, writers, out ->
+        out.writeStartArray()
+        for (writer in writers) {
+            writer.write(rs, out)
+        }
+        out.writeEndArray()
+    }
+
+    /**
+     * Writes each row as an object keyed by column name, skipping columns that are not present in the query.
+     *
+     * @return The number of rows written.
+     */
+    fun writeObjects(generator: JsonGenerator): Long = writeRows(generator) { rs, writers, out ->
+        out.writeStartObject()
+        for (i in writers.indices) {
+            if (!columns[i].present) continue
+            out.writeFieldName(fieldNames[i])
+            writers[i].write(rs, out)
+        }
+        out.writeEndObject()
+    }
+
+    /**
+     * Writes every row of the download to [generator] with [writeRow].
+     *
+     * @return The number of rows written.
+     */
+    protected open fun writeRows(generator: JsonGenerator, writeRow: RowWriter): Long {
+        return FanOutQueryExecutor.query(hds, sql, fetchSize, bind) { rs -> writeRows(rs, generator, writeRow) }
+    }
+
+    /**
+     * Writes the remaining rows of [rs] to [generator] with [writeRow].
+     *
+     * @return The number of rows written.
+     */
+    protected fun writeRows(rs: ResultSet, generator: JsonGenerator, writeRow: RowWriter): Long {
+        val zoneIds = ZoneIdCache()
+        val writers = columns.map { it.bind(rs, zoneIds) }.toTypedArray()
+        var rows = 0L
+        while (rs.next()) {
+            writeRow.write(rs, writers, generator)
+            rows++
+        }
+        return rows
+    }
+}
+
+/**
+ * Writes the current row of a result set with the column writers bound to it.
+ */
+fun interface RowWriter {
+    fun write(rs: ResultSet, writers: Array<ColumnWriter>, generator: JsonGenerator)
+}
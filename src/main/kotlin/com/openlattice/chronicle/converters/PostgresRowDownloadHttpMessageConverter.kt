@@ -0,0 +1,87 @@
+package com.openlattice.chronicle.converters
+
+import com.fasterxml.jackson.core.JsonEncoding
+import com.fasterxml.jackson.core.JsonFactory
+import com.fasterxml.jackson.dataformat.csv.CsvFactory
+import com.fasterxml.jackson.dataformat.csv.CsvGenerator
+import com.fasterxml.jackson.dataformat.csv.CsvSchema
+import com.geekbeast.mappers.mappers.ObjectMappers
+import com.openlattice.chronicle.constants.CustomMediaType
+import org.springframework.http.HttpInputMessage
+import org.springframework.http.HttpOutputMessage
+import org.springframework.http.MediaType
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter
+import org.springframework.http.converter.HttpMessageNotReadableException
+import org.springframework.http.converter.HttpMessageNotWritableException
+import java.io.IOException
+import java.io.OutputStream
+import java.lang.reflect.Type
+
+/**
+ * Writes a [PostgresRowDownload] as csv or json using streaming generators. This must be registered ahead of the
+ * default jackson converter so that json downloads are not serialized as a bean.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class PostgresRowDownloadHttpMessageConverter : AbstractGenericHttpMessageConverter<PostgresRowDownload>(
+    CustomMediaType.TEXT_CSV,
+    MediaType.APPLICATION_JSON
+) {
+    companion object {
+        private val csvFactory = CsvFactory()
+            .enable(CsvGenerator.Feature.STRICT_CHECK_FOR_QUOTING)
+        private val jsonFactory: JsonFactory = ObjectMappers.getJsonMapper().factory
+
+        @JvmStatic
+        fun writeCsv(download: PostgresRowDownload, out: OutputStream): Long {
+            val schema = CsvSchema.builder()
+            download.columns.forEach { column ->
+                schema.addColumn(
+                    column.name,
+                    PostgresDownloadCsvHttpMessageConverter.csvTypes.getValue(column.datatype)
+                )
+            }
+            return csvFactory.createGenerator(out, JsonEncoding.UTF8).use { generator ->
+                generator.schema = schema.setUseHeader(true).build()
+                download.writeArrays(generator)
+            }
+        }
+
+        @JvmStatic
+        fun writeJson(download: PostgresRowDownload, out: OutputStream): Long {
+            return jsonFactory.createGenerator(out, JsonEncoding.UTF8).use { generator ->
+                generator.writeStartArray()
+                val rows = download.writeObjects(generator)
+                generator.writeEndArray()
+                rows
+            }
+        }
+    }
+
+    @Throws(IOException::class, HttpMessageNotWritableException::class)
+    override fun writeInternal(t: PostgresRowDownload, type: Type, outputMessage: HttpOutputMessage) {
+        val contentType = outputMessage.headers.contentType
+        if (contentType != null && CustomMediaType.TEXT_CSV.isCompatibleWith(contentType)) {
+            writeCsv(t, outputMessage.body)
+        } else {
+            writeJson(t, outputMessage.body)
+        }
+    }
+
+    override fun supports(clazz: Class<*>): Boolean {
+        return PostgresRowDownload::class.java.isAssignableFrom(clazz)
+    }
+
+    @Throws(HttpMessageNotReadableException::class)
+    override fun read(type: Type, contextClass: Class<*>, inputMessage: HttpInputMessage): PostgresRowDownload {
+        throw UnsupportedOperationException("Downloads are not a supported input format")
+    }
+
+    @Throws(HttpMessageNotReadableException::class)
+    override fun readInternal(
+        clazz: Class<out PostgresRowDownload>,
+        inputMessage: HttpInputMessage
+    ): PostgresRowDownload {
+        throw UnsupportedOperationException("Downloads are not a supported input format")
+    }
+}
@@ -0,0 +1,42 @@
+package com.openlattice.chronicle.export
+
+import com.geekbeast.rhizome.jobs.JobStatus
+import com.openlattice.chronicle.converters.DownloadFormat
+import java.net.URL
+import java.time.OffsetDateTime
+import java.util.*
+
+/**
+ * The parts of a participant data export that have been written so far. The export is complete once [parts] contains
+ * [totalParts] entries.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+data class ExportManifest(
+    val jobId: UUID,
+    val studyId: UUID,
+    val status: JobStatus,
+    val fileType: DownloadFormat,
+    val totalParts: Int,
+    val parts: List<ExportPartManifest>,
+) {
+    val complete: Boolean
+        get() = parts.size == totalParts
+}
+
+/**
+ * A part of an export. Csv and json parts are gzip compressed, while parquet parts are compressed internally.
+ *
+ * @param url A pre-signed url for downloading the part. Null if the configured blob storage does not support
+ * pre-signed urls.
+ */
+data class ExportPartManifest(
+    val index: Int,
+    val participantIds: List<String>,
+    val startDateTime: OffsetDateTime?,
+    val endDateTime: OffsetDateTime?,
+    val key: String,
+    val rows: Long,
+    val sizeBytes: Long,
+    val url: URL?,
+)
@@ -0,0 +1,45 @@
+package com.openlattice.chronicle.export
+
+import com.openlattice.chronicle.services.download.QuerySlice
+import java.time.OffsetDateTime
+
+/**
+ * A chunk of a participant data export covering a subset of the participants over a slice of the time range.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+data class ExportPart(
+    val index: Int,
+    val participantIds: List<String>,
+    val startDateTime: OffsetDateTime?,
+    val endDateTime: OffsetDateTime?,
+) {
+    companion object {
+        /**
+         * Splits an export into parts of at most [participantsPerPart] participants and [daysPerPart] days. The plan
+         * only depends on the export definition, so it is stable across retries of the same export.
+         */
+        @JvmStatic
+        fun plan(export: ExportParticipantData, participantsPerPart: Int, daysPerPart: Long): List<ExportPart> {
+            val ranges = timeRanges(export.startDateTime, export.endDateTime, daysPerPart)
+            var index = 0
+            return export.participantIds
+                .sorted()
+                .chunked(participantsPerPart.coerceAtLeast(1))
+                .flatMap { participantIds ->
+                    ranges.map { (start, end) -> ExportPart(index++, participantIds, start, end) }
+                }
+        }
+
+        private fun timeRanges(
+            start: OffsetDateTime?,
+            end: OffsetDateTime?,
+            daysPerPart: Long
+        ): List<Pair<OffsetDateTime?, OffsetDateTime?>> {
+            if (start == null || end == null) {
+                return listOf(start to end)
+            }
+            return QuerySlice.timeRanges(start, end, daysPerPart)
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.openlattice.chronicle.export
+
+import com.openlattice.chronicle.constants.ParticipantDataType
+import com.openlattice.chronicle.converters.DownloadFormat
+import com.openlattice.chronicle.sensorkit.SensorType
+import com.openlattice.chronicle.services.jobs.ChronicleParticipantJobDefinition
+import java.time.OffsetDateTime
+import java.util.*
+
+/**
+ * Exports participant data to blob storage as a set of compressed parts that can be downloaded independently.
+ *
+ * @param sensors The sensors configured for the study when the export was requested. Only used for sensor data.
+ * @param startDateTime The start of the exported time range or null for no lower bound.
+ * @param endDateTime The end of the exported time range or null for no upper bound.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class ExportParticipantData(
+    override val studyId: UUID,
+    override val participantIds: Collection<String>,
+    val dataType: ParticipantDataType,
+    val fileType: DownloadFormat,
+    val sensors: Set<SensorType> = setOf(),
+    val startDateTime: OffsetDateTime? = null,
+    val endDateTime: OffsetDateTime? = null,
+) : ChronicleParticipantJobDefinition
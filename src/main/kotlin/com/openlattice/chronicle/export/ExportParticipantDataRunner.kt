@@ -0,0 +1,283 @@
+package com.openlattice.chronicle.export
+
+import com.geekbeast.postgres.PostgresArrays
+import com.geekbeast.rhizome.jobs.JobStatus
+import com.openlattice.chronicle.auditing.AuditEventType
+import com.openlattice.chronicle.auditing.AuditableEvent
+import com.openlattice.chronicle.authorization.AclKey
+import com.openlattice.chronicle.configuration.ChronicleDownloadConfiguration
+import com.openlattice.chronicle.constants.ParticipantDataType
+import com.openlattice.chronicle.converters.ColumnarDownloads
+import com.openlattice.chronicle.converters.DownloadFormat
+import com.openlattice.chronicle.converters.ParquetHttpMessageConverter
+import com.openlattice.chronicle.converters.PostgresRowDownload
+import com.openlattice.chronicle.converters.PostgresRowDownloadHttpMessageConverter
+import com.openlattice.chronicle.services.download.DataDownloadManager
+import com.openlattice.chronicle.services.jobs.AbstractChronicleJobRunner
+import com.openlattice.chronicle.services.jobs.ChronicleJob
+import com.openlattice.chronicle.storage.ByteBlobDataManager
+import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.EXPORT_PARTS
+import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.JOBS
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.COMPLETED_AT
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.JOB_ID
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.PART_INDEX
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPDATED_AT
+import com.openlattice.chronicle.storage.StorageResolver
+import org.slf4j.LoggerFactory
+import java.io.Closeable
+import java.io.OutputStream
+import java.nio.file.Files
+import java.sql.Connection
+import java.time.OffsetDateTime
+import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.zip.GZIPOutputStream
+
+/**
+ * Runs participant data exports. Each part of an export is queried on its own event storage connection, written to a
+ * temporary file, uploaded to blob storage and recorded in [EXPORT_PARTS] as soon as it finishes. Csv and json parts
+ * are gzip compressed, while parquet parts use the compression of the parquet writer. Up to
+ * [ChronicleDownloadConfiguration.exportParallelism] parts are written concurrently, so only that many parts are kept
+ * on local disk at once and none are held in memory.
+ *
+ * If any part fails the job transaction is rolled back, which leaves the job pending. The next attempt only writes the
+ * parts that have not been recorded yet.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class ExportParticipantDataRunner(
+    private val downloadManager: DataDownloadManager,
+    private val byteBlobDataManager: ByteBlobDataManager,
+    private val storageResolver: StorageResolver,
+    private val downloadConfiguration: ChronicleDownloadConfiguration,
+) : AbstractChronicleJobRunner<ExportParticipantData>(), Closeable {
+    companion object {
+        private val logger = LoggerFactory.getLogger(ExportParticipantDataRunner::class.java)
+        private const val GZIP_CONTENT_TYPE = "application/gzip"
+
+        private val GET_FINISHED_PARTS_SQL = """
+            SELECT ${PART_INDEX.name} FROM ${EXPORT_PARTS.name} WHERE ${JOB_ID.name} = ?
+        """.trimIndent()
+
+        private val INSERT_PART_SQL = """
+            INSERT INTO ${EXPORT_PARTS.name} (${EXPORT_PARTS.columns.joinToString(",") { it.name }})
+            VALUES (${EXPORT_PARTS.columns.joinToString(",") { "?" }})
+            ON CONFLICT DO NOTHING
+        """.trimIndent()
+
+        private val UPDATE_FINISHED_EXPORT_JOB_SQL = """
+            UPDATE ${JOBS.name}
+            SET (${UPDATED_AT.name},${COMPLETED_AT.name}) = (?, ?)
+            WHERE ${JOB_ID.name} = ?
+        """.trimIndent()
+
+        @JvmStatic
+        fun partKey(studyId: UUID, jobId: UUID, index: Int, fileType: DownloadFormat): String {
+            val extension = if (fileType == DownloadFormat.parquet) fileType.extension else "${fileType.extension}.gz"
+            return "exports/$studyId/$jobId/part-${"%05d".format(index)}.$extension"
+        }
+    }
+
+    private val executor = Executors.newFixedThreadPool(downloadConfiguration.exportParallelism)
+
+    override fun accepts(): Class<ExportParticipantData> = ExportParticipantData::class.java
+
+    override fun runJob(connection: Connection, job: ChronicleJob): List<AuditableEvent> {
+        val export = job.definition as ExportParticipantData
+        val parts = ExportPart.plan(
+            export,
+            downloadConfiguration.exportParticipantsPerPart,
+            downloadConfiguration.exportDaysPerPart
+        )
+        val finishedParts = getFinishedParts(connection, job.id)
+        val remainingParts = parts.filter { it.index !in finishedParts }
+
+        logger.info(
+            "Exporting {} of {} parts of {} data for study {} (job = {})",
+            remainingParts.size,
+            parts.size,
+            export.dataType,
+            export.studyId,
+            job.id
+        )
+
+        val rows = remainingParts
+            .map { part -> executor.submit(Callable { writePart(job.id, export, part) }) }
+            .sumOf { it.get() }
+
+        job.updatedAt = OffsetDateTime.now()
+        job.completedAt = job.updatedAt
+        job.status = JobStatus.FINISHED
+        updateFinishedExportJob(connection, job)
+
+        return listOf(
+            AuditableEvent(
+                AclKey(export.studyId),
+                job.securablePrincipalId,
+                job.principal,
+                eventType = AuditEventType.BACKGROUND_PARTICIPANTS_DATA_EXPORT,
+                description = "Exported $rows rows of ${export.dataType} data in ${remainingParts.size} parts",
+                study = export.studyId
+            )
+        )
+    }
+
+    /**
+     * Shuts down the part writers when the runner is destroyed.
+     */
+    override fun close() {
+        executor.shutdownNow()
+        if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            logger.warn("Export part writers did not stop within a minute.")
+        }
+    }
+
+    private fun writePart(jobId: UUID, export: ExportParticipantData, part: ExportPart): Long {
+        val key = partKey(export.studyId, jobId, part.index, export.fileType)
+        val file = Files.createTempFile("export-part-", ".${export.fileType.extension}")
+        val (rows, size) = try {
+            val rows = Files.newOutputStream(file).buffered().use { out -> writeRows(export, part, out) }
+            val size = Files.size(file)
+            byteBlobDataManager.putFile(
+                key,
+                file,
+                if (export.fileType == DownloadFormat.parquet) ColumnarDownloads.PARQUET_VALUE else GZIP_CONTENT_TYPE,
+                "attachment; filename=\"${key.substringAfterLast('/')}\""
+            )
+            rows to size
+        } finally {
+            Files.deleteIfExists(file)
+        }
+
+        //Recorded outside of the job transaction so that finished parts are kept if another part fails.
+        storageResolver.getPlatformStorage().connection.use { connection ->
+            connection.prepareStatement(INSERT_PART_SQL).use { ps ->
+                var index = 0
+                ps.setObject(++index, jobId)
+                ps.setInt(++index, part.index)
+                ps.setObject(++index, export.studyId)
+                ps.setArray(++index, PostgresArrays.createTextArray(connection, part.participantIds))
+                ps.setObject(++index, part.startDateTime)
+                ps.setObject(++index, part.endDateTime)
+                ps.setString(++index, key)
+                ps.setLong(++index, rows)
+                ps.setLong(++index, size)
+                ps.setObject(++index, OffsetDateTime.now())
+                ps.executeUpdate()
+            }
+        }
+
+        logger.info("Wrote part {} of job {} with {} rows ({} bytes)", part.index, jobId, rows, size)
+        return rows
+    }
+
+    /**
+     * @return The number of rows written.
+     */
+    private fun writeRows(export: ExportParticipantData, part: ExportPart, out: OutputStream): Long {
+        return when (export.fileType) {
+            DownloadFormat.parquet -> ParquetHttpMessageConverter.write(getData(export, part), out)
+            DownloadFormat.json -> GZIPOutputStream(out).use {
+                PostgresRowDownloadHttpMessageConverter.writeJson(getRows(export, part), it)
+            }
+            DownloadFormat.csv -> GZIPOutputStream(out).use {
+                PostgresRowDownloadHttpMessageConverter.writeCsv(getRows(export, part), it)
+            }
+            DownloadFormat.arrow -> throw IllegalArgumentException("Exports can not be written as arrow streams.")
+        }
+    }
+
+    /**
+     * The map based download of a part, which the columnar writers read their schema from.
+     */
+    private fun getData(export: ExportParticipantData, part: ExportPart): Iterable<Map<String, Any>> {
+        val participantIds = part.participantIds.toSet()
+        val start = part.startDateTime ?: OffsetDateTime.MIN
+        val end = part.endDateTime ?: OffsetDateTime.MAX
+        return when (export.dataType) {
+            ParticipantDataType.Preprocessed -> downloadManager.getPreprocessedUsageEventsData(
+                export.studyId,
+                participantIds,
+                start,
+                end
+            )
+            ParticipantDataType.AppUsageSurvey -> downloadManager.getParticipantsAppUsageSurveyData(
+                export.studyId,
+                participantIds,
+                start,
+                end
+            )
+            ParticipantDataType.IOSSensor -> downloadManager.getParticipantsSensorData(
+                export.studyId,
+                participantIds,
+                export.sensors,
+                start,
+                end
+            )
+            ParticipantDataType.UsageEvents -> downloadManager.getParticipantsUsageEventsData(
+                export.studyId,
+                participantIds,
+                start,
+                end
+            )
+        }
+    }
+
+    private fun getRows(export: ExportParticipantData, part: ExportPart): PostgresRowDownload {
+        val participantIds = part.participantIds.toSet()
+        val start = part.startDateTime ?: OffsetDateTime.MIN
+        val end = part.endDateTime ?: OffsetDateTime.MAX
+        return when (export.dataType) {
+            ParticipantDataType.Preprocessed -> downloadManager.getPreprocessedUsageEventsRows(
+                export.studyId,
+                participantIds,
+                start,
+                end
+            )
+            ParticipantDataType.AppUsageSurvey -> downloadManager.getParticipantsAppUsageSurveyRows(
+                export.studyId,
+                participantIds,
+                start,
+                end
+            )
+            ParticipantDataType.IOSSensor -> downloadManager.getParticipantsSensorRows(
+                export.studyId,
+                participantIds,
+                export.sensors,
+                start,
+                end
+            )
+            ParticipantDataType.UsageEvents -> downloadManager.getParticipantsUsageEventsRows(
+                export.studyId,
+                participantIds,
+                start,
+                end
+            )
+        }
+    }
+
+    private fun getFinishedParts(connection: Connection, jobId: UUID): Set<Int> {
+        return connection.prepareStatement(GET_FINISHED_PARTS_SQL).use { ps ->
+            ps.setObject(1, jobId)
+            ps.executeQuery().use { rs ->
+                val parts = mutableSetOf<Int>()
+                while (rs.next()) {
+                    parts.add(rs.getInt(PART_INDEX.name))
+                }
+                parts
+            }
+        }
+    }
+
+    private fun updateFinishedExportJob(connection: Connection, job: ChronicleJob) {
+        connection.prepareStatement(UPDATE_FINISHED_EXPORT_JOB_SQL).use { ps ->
+            var index = 1
+            ps.setObject(index++, job.updatedAt)
+            ps.setObject(index++, job.completedAt)
+            ps.setObject(index, job.id)
+            ps.executeUpdate()
+        }
+    }
+}
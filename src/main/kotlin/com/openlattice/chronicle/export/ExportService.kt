@@ -0,0 +1,133 @@
+package com.openlattice.chronicle.export
+
+import com.geekbeast.postgres.streams.BasePostgresIterable
+import com.geekbeast.postgres.streams.PreparedStatementHolderSupplier
+import com.openlattice.chronicle.configuration.ChronicleDownloadConfiguration
+import com.openlattice.chronicle.ids.HazelcastIdGenerationService
+import com.openlattice.chronicle.postgres.ResultSetAdapters
+import com.openlattice.chronicle.services.jobs.ChronicleJob
+import com.openlattice.chronicle.services.jobs.JobManager
+import com.openlattice.chronicle.storage.ByteBlobDataManager
+import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.EXPORT_PARTS
+import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.JOBS
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.JOB_ID
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.OBJECT_KEY
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.PART_INDEX
+import com.openlattice.chronicle.storage.StorageResolver
+import org.slf4j.LoggerFactory
+import org.springframework.scheduling.annotation.Scheduled
+import java.sql.Connection
+import java.util.*
+
+/**
+ * Creates participant data export jobs and lists the parts that have been written for them. Once a finished export job
+ * expires its parts are removed from blob storage and from [EXPORT_PARTS].
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class ExportService(
+    private val storageResolver: StorageResolver,
+    private val byteBlobDataManager: ByteBlobDataManager,
+    private val jobManager: JobManager,
+    private val idGenerationService: HazelcastIdGenerationService,
+    private val downloadConfiguration: ChronicleDownloadConfiguration,
+) {
+    companion object {
+        private val logger = LoggerFactory.getLogger(ExportService::class.java)
+
+        private const val EXPIRED_PARTS_BATCH_SIZE = 1000
+
+        private val GET_EXPORT_PARTS_SQL = """
+            SELECT * FROM ${EXPORT_PARTS.name} WHERE ${JOB_ID.name} = ? ORDER BY ${PART_INDEX.name}
+        """.trimIndent()
+
+        /**
+         * Parts of jobs that no longer exist, since finished jobs are deleted once they expire.
+         */
+        private val GET_EXPIRED_PARTS_SQL = """
+            SELECT ${JOB_ID.name}, ${PART_INDEX.name}, ${OBJECT_KEY.name} FROM ${EXPORT_PARTS.name} p
+            WHERE NOT EXISTS (SELECT 1 FROM ${JOBS.name} j WHERE j.${JOB_ID.name} = p.${JOB_ID.name})
+            LIMIT $EXPIRED_PARTS_BATCH_SIZE
+        """.trimIndent()
+
+        /**
+         * 1. job id
+         * 2. part index
+         */
+        private val DELETE_PART_SQL = """
+            DELETE FROM ${EXPORT_PARTS.name} WHERE ${JOB_ID.name} = ? AND ${PART_INDEX.name} = ?
+        """.trimIndent()
+    }
+
+    fun createExport(connection: Connection, export: ExportParticipantData): UUID {
+        return jobManager.createJob(connection, ChronicleJob(id = idGenerationService.getNextId(), definition = export))
+    }
+
+    fun getManifest(jobId: UUID): ExportManifest {
+        val job = jobManager.getJob(jobId)
+        val export = checkNotNull(job.definition as? ExportParticipantData) { "Job $jobId is not an export." }
+        val parts = BasePostgresIterable(
+            PreparedStatementHolderSupplier(storageResolver.getPlatformStorage(), GET_EXPORT_PARTS_SQL) { ps ->
+                ps.setObject(1, jobId)
+            }
+        ) { ResultSetAdapters.exportPartManifest(it) }.toList()
+
+        val urls = getPresignedUrls(parts.map { it.key })
+        return ExportManifest(
+            jobId,
+            export.studyId,
+            job.status,
+            export.fileType,
+            ExportPart.plan(
+                export,
+                downloadConfiguration.exportParticipantsPerPart,
+                downloadConfiguration.exportDaysPerPart
+            ).size,
+            parts.map { it.copy(url = urls[it.key]) }
+        )
+    }
+
+    /**
+     * Removes the parts of expired export jobs. Blobs are deleted before their rows, so a part that fails to delete is
+     * retried on the next run.
+     */
+    @Scheduled(fixedRate = 60 * 60 * 1000L)
+    fun clearExpiredExports() {
+        var deleted = 0
+        do {
+            val parts = BasePostgresIterable(
+                PreparedStatementHolderSupplier(storageResolver.getPlatformStorage(), GET_EXPIRED_PARTS_SQL) {}
+            ) { rs ->
+                Triple(
+                    rs.getObject(JOB_ID.name, UUID::class.java),
+                    rs.getInt(PART_INDEX.name),
+                    rs.getString(OBJECT_KEY.name)
+                )
+            }.toList()
+
+            parts.forEach { (_, _, key) -> byteBlobDataManager.deleteObject(key) }
+            storageResolver.getPlatformStorage().connection.use { connection ->
+                connection.prepareStatement(DELETE_PART_SQL).use { ps ->
+                    parts.forEach { (jobId, index, _) ->
+                        ps.setObject(1, jobId)
+                        ps.setInt(2, index)
+                        ps.addBatch()
+                    }
+                    ps.executeBatch()
+                }
+            }
+            deleted += parts.size
+        } while (parts.size == EXPIRED_PARTS_BATCH_SIZE)
+
+        if (deleted > 0) {
+            logger.info("Deleted {} parts of expired exports.", deleted)
+        }
+    }
+
+    private fun getPresignedUrls(keys: List<String>) = try {
+        byteBlobDataManager.getPresignedUrlsWithDispositions(keys.associateWith { null })
+    } catch (ex: UnsupportedOperationException) {
+        logger.warn("Blob storage does not support pre-signed urls, export parts can only be listed.")
+        mapOf()
+    }
+}
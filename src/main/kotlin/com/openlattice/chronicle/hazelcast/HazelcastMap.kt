@@ -24,6 +24,8 @@ import com.geekbeast.hazelcast.DelegatedStringSet
 import com.hazelcast.core.HazelcastInstance
 import com.hazelcast.map.IMap
 import com.openlattice.chronicle.authorization.*
+import com.openlattice.chronicle.data.ParticipationStatus
+import com.openlattice.chronicle.mapstores.enrollment.DeviceKey
 import com.openlattice.chronicle.mapstores.ids.Range
 import com.geekbeast.postgres.mapstores.TypedMapIdentifier
 import com.geekbeast.rhizome.KotlinDelegatedStringSet
@@ -70,6 +72,7 @@ class HazelcastMap<K, V> internal constructor(val name: String) : TypedMapIdenti
 //        @JvmField val CODEX_LOCKS = HazelcastMap<SmsInformationKey, Long>("CODEX_LOCKS")
 //        @JvmField val CODEX_MEDIA = HazelcastMap<UUID, Base64Media>("CODEX_MEDIA")
 //        @JvmField val DB_CREDS = HazelcastMap<AclKey, MaterializedViewAccount>("DB_CREDS")
+        @JvmField val DEVICE_REGISTRATIONS = HazelcastMap<DeviceKey, UUID>("DEVICE_REGISTRATIONS")
 //        @JvmField val EXTERNAL_COLUMNS = HazelcastMap<UUID, ExternalColumn>("EXTERNAL_COLUMNS")
 //        @JvmField val EXTERNAL_TABLES = HazelcastMap<UUID, ExternalTable>("EXTERNAL_TABLES")
         @JvmField val FILTERED_APPS = HazelcastMap<UUID, KotlinDelegatedStringSet>("FILTERED_APPS")
@@ -83,7 +86,9 @@ class HazelcastMap<K, V> internal constructor(val name: String) : TypedMapIdenti
 //        @JvmField val ORGANIZATION_DATABASES = HazelcastMap<UUID, OrganizationDatabase>("ORGANIZATION_DATABASES")
 //        @JvmField val ORGANIZATIONS = HazelcastMap<UUID, Organization>("ORGANIZATIONS")
         @JvmField val PARTICIPANT_STATS = HazelcastMap<ParticipantKey,ParticipantStats>("PARTICIPANT_STATS")
+        @JvmField val PARTICIPATION_STATUSES = HazelcastMap<ParticipantKey, ParticipationStatus>("PARTICIPATION_STATUSES")
         @JvmField val PERMISSIONS = HazelcastMap<AceKey, AceValue>("PERMISSIONS")
+        @JvmField val PRINCIPAL_TREE_PARENTS = HazelcastMap<AclKey, AclKeySet>("PRINCIPAL_TREE_PARENTS")
         @JvmField val PRINCIPAL_TREES = HazelcastMap<AclKey, AclKeySet>("PRINCIPAL_TREES")
         @JvmField val PRINCIPALS = HazelcastMap<AclKey, SecurablePrincipal>("PRINCIPALS")
 //        @JvmField val REQUESTS = HazelcastMap<AceKey, Status>("REQUESTS")
@@ -95,6 +100,7 @@ class HazelcastMap<K, V> internal constructor(val name: String) : TypedMapIdenti
         @JvmField val STUDIES = HazelcastMap<UUID,Study>("STUDIES")
         @JvmField val STUDY_LIMITS = HazelcastMap<UUID, StudyLimits>("STUDY_LIMITS")
 //      @JvmField val SMS_INFORMATION = HazelcastMap<SmsInformationKey, SmsEntitySetInformation>("SMS_INFORMATION")
+        @JvmField val UPLOAD_DRAIN_LOCKS = HazelcastMap<String, Long>("UPLOAD_DRAIN_LOCKS")
         @JvmField val USERS = HazelcastMap<String, User>("USERS")
 
         // @formatter:on
@@ -332,4 +332,8 @@ enum class StreamSerializerTypeIds {
     KOTLIN_DELEGATED_STRING_SET,
     PARTICIPANT_STATS,
     PARTICIPANT_KEY,
+    DEVICE_KEY,
+    PARTICIPANT_STATS_BATCH_MERGER,
+    RECENT_UPLOADS_AGGREGATOR,
+    AUTHORIZATION_SETS_AGGREGATOR,
 }
\ No newline at end of file
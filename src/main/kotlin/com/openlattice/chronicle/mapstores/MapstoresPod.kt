@@ -20,6 +20,7 @@
 package com.openlattice.chronicle.mapstores
 
 import com.auth0.json.mgmt.users.User
+import com.codahale.metrics.MetricRegistry
 import com.geekbeast.postgres.PostgresPod
 import com.geekbeast.auth0.Auth0Pod
 import com.geekbeast.postgres.PostgresTableManager
@@ -41,7 +42,10 @@ import com.openlattice.chronicle.ids.mapstores.IdGenerationMapstore
 import com.openlattice.chronicle.ids.mapstores.LongIdsMapstore
 import com.openlattice.chronicle.mapstores.apps.FilteredAppsMapstore
 import com.openlattice.chronicle.mapstores.authorization.PermissionMapstore
+import com.openlattice.chronicle.mapstores.authorization.PrincipalTreeParentsMapstore
 import com.openlattice.chronicle.mapstores.authorization.PrincipalTreesMapstore
+import com.openlattice.chronicle.mapstores.enrollment.DeviceRegistrationMapstore
+import com.openlattice.chronicle.mapstores.enrollment.ParticipationStatusMapstore
 import com.openlattice.chronicle.mapstores.ids.Range
 import com.openlattice.chronicle.mapstores.stats.ParticipantStatsMapstore
 import com.openlattice.chronicle.mapstores.storage.StudyLimitsMapstore
@@ -72,6 +76,9 @@ class MapstoresPod {
     @Inject
     private lateinit var jdbi: Jdbi
 
+    @Inject
+    private lateinit var metricRegistry: MetricRegistry
+
     @Bean
     fun studyLimitsMapstore(): StudyLimitsMapstore {
         return StudyLimitsMapstore(storageResolver.getPlatformStorage())
@@ -141,11 +148,26 @@ class MapstoresPod {
         return PrincipalTreesMapstore(storageResolver.getPlatformStorage())
     }
 
+    @Bean
+    fun principalTreeParentsMapstore(): PrincipalTreeParentsMapstore {
+        return PrincipalTreeParentsMapstore(storageResolver.getPlatformStorage())
+    }
+
     @Bean
     fun participantStatsMapstore(): ParticipantStatsMapstore {
         return ParticipantStatsMapstore(storageResolver.getPlatformStorage())
     }
 
+    @Bean
+    fun participationStatusMapstore(): ParticipationStatusMapstore {
+        return ParticipationStatusMapstore(storageResolver.getPlatformStorage(), metricRegistry)
+    }
+
+    @Bean
+    fun deviceRegistrationMapstore(): DeviceRegistrationMapstore {
+        return DeviceRegistrationMapstore(storageResolver.getPlatformStorage(), metricRegistry)
+    }
+
     //    @Bean
     //    public SecurablePrincipalsMapLoader securablePrincipalsMapLoader() {
     //        return new SecurablePrincipalsMapLoader();
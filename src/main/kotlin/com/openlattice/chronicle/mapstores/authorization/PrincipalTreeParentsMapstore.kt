@@ -0,0 +1,106 @@
+package com.openlattice.chronicle.mapstores.authorization
+
+import com.codahale.metrics.annotation.Timed
+import com.geekbeast.postgres.streams.BasePostgresIterable
+import com.geekbeast.postgres.streams.StatementHolderSupplier
+import com.geekbeast.rhizome.mapstores.TestableSelfRegisteringMapStore
+import com.hazelcast.config.MapConfig
+import com.hazelcast.config.MapStoreConfig
+import com.openlattice.chronicle.authorization.AclKey
+import com.openlattice.chronicle.authorization.AclKeySet
+import com.openlattice.chronicle.hazelcast.HazelcastMap
+import com.openlattice.chronicle.postgres.ResultSetAdapters
+import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.PRINCIPAL_TREES
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.PRINCIPAL_OF_ACL_KEY
+import com.openlattice.chronicle.util.tests.TestDataFactory
+import com.zaxxer.hikari.HikariDataSource
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Service
+
+/**
+ * Loads the reverse edges of the principal trees, mapping each principal to the principals that have it, from the same
+ * table as [PrincipalTreesMapstore].
+ *
+ * The table is only written through [PrincipalTreesMapstore], so stores and deletes are no-ops and the map is kept in
+ * step with the principal trees by [com.openlattice.chronicle.authorization.principals.PrincipalTreeClosure].
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+@Service //This is here to allow this class to be automatically open for @Timed to work correctly
+class PrincipalTreeParentsMapstore(val hds: HikariDataSource) : TestableSelfRegisteringMapStore<AclKey, AclKeySet> {
+    companion object {
+        private val logger = LoggerFactory.getLogger(PrincipalTreeParentsMapstore::class.java)
+    }
+
+    override fun storeAll(map: Map<AclKey, AclKeySet>) {
+    }
+
+    override fun store(key: AclKey, value: AclKeySet) {
+    }
+
+    override fun deleteAll(keys: Collection<AclKey>) {
+    }
+
+    override fun delete(key: AclKey) {
+    }
+
+    private fun toPostgres(aclKey: AclKey): String {
+        return "'{\"" + aclKey.joinToString("\",\"") + "\"}'::uuid[]"
+    }
+
+    override fun loadAllKeys(): Iterable<AclKey> {
+        val sql = "SELECT distinct(${PRINCIPAL_OF_ACL_KEY.name}) from ${PRINCIPAL_TREES.name}"
+        logger.info("Load all iterator requested for ${this.mapName}")
+
+        return BasePostgresIterable(StatementHolderSupplier(hds, sql)) { ResultSetAdapters.principalOfAclKey(it) }
+    }
+
+    @Timed
+    override fun loadAll(keys: Collection<AclKey>): Map<AclKey, AclKeySet> {
+        val sql = "SELECT * from ${PRINCIPAL_TREES.name} " +
+                "WHERE ${PRINCIPAL_OF_ACL_KEY.name} " +
+                "IN (" + keys.joinToString(",") { toPostgres(it) } + ")"
+
+        val data = BasePostgresIterable(StatementHolderSupplier(hds, sql)) {
+            ResultSetAdapters.principalOfAclKey(it) to ResultSetAdapters.aclKey(it)
+        }
+
+        val map = mutableMapOf<AclKey, AclKeySet>()
+        data.forEach { map.getOrPut(it.first) { AclKeySet(mutableSetOf()) }.add(it.second) }
+
+        return map
+    }
+
+    @Timed
+    override fun load(key: AclKey): AclKeySet? {
+        return loadAll(listOf(key))[key]
+    }
+
+    override fun generateTestKey(): AclKey {
+        return TestDataFactory.aclKey()
+    }
+
+    override fun generateTestValue(): AclKeySet {
+        return AclKeySet(mutableSetOf(generateTestKey(), generateTestKey(), generateTestKey()))
+    }
+
+    override fun getMapStoreConfig(): MapStoreConfig {
+        return MapStoreConfig()
+            .setInitialLoadMode(MapStoreConfig.InitialLoadMode.EAGER)
+            .setImplementation(this)
+            .setEnabled(true)
+            .setWriteDelaySeconds(0)
+    }
+
+    override fun getMapName(): String {
+        return HazelcastMap.PRINCIPAL_TREE_PARENTS.name
+    }
+
+    override fun getTable(): String {
+        return PRINCIPAL_TREES.name
+    }
+
+    override fun getMapConfig(): MapConfig {
+        return MapConfig(mapName).setMapStoreConfig(mapStoreConfig)
+    }
+}
@@ -0,0 +1,14 @@
+package com.openlattice.chronicle.mapstores.enrollment
+
+import java.util.*
+
+/**
+ * Identifies a source device registered by a participant in a study.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@getmethodic.com&gt;
+ */
+data class DeviceKey(
+    val studyId: UUID,
+    val participantId: String,
+    val sourceDeviceId: String
+)
@@ -0,0 +1,108 @@
+package com.openlattice.chronicle.mapstores.enrollment
+
+import com.codahale.metrics.Meter
+import com.codahale.metrics.MetricRegistry
+import com.geekbeast.rhizome.mapstores.TestableSelfRegisteringMapStore
+import com.hazelcast.config.InMemoryFormat
+import com.hazelcast.config.MapConfig
+import com.hazelcast.config.MapStoreConfig
+import com.hazelcast.config.NearCacheConfig
+import com.openlattice.chronicle.hazelcast.HazelcastMap
+import com.openlattice.chronicle.postgres.ResultSetAdapters
+import com.openlattice.chronicle.services.enrollment.EnrollmentService.Companion.GET_DEVICE_ID
+import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.DEVICES
+import com.zaxxer.hikari.HikariDataSource
+import org.apache.commons.lang3.RandomStringUtils
+import java.util.*
+
+/**
+ * Read only, lazily loaded cache of registered source devices used to avoid a round trip to postgres on every upload.
+ *
+ * Unregistered devices are not cached, so they will always be checked against postgres.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class DeviceRegistrationMapstore(
+    val hds: HikariDataSource,
+    metricRegistry: MetricRegistry
+) : TestableSelfRegisteringMapStore<DeviceKey, UUID> {
+    companion object {
+        const val TTL_SECONDS = 600
+    }
+
+    private val loads: Meter = metricRegistry.meter(
+        MetricRegistry.name(DeviceRegistrationMapstore::class.java, "loads")
+    )
+
+    private val mapStoreConfig = MapStoreConfig()
+        .setInitialLoadMode(MapStoreConfig.InitialLoadMode.LAZY)
+        .setImplementation(this)
+        .setEnabled(true)
+        .setWriteDelaySeconds(0)
+
+    private val mapConfig = MapConfig(mapName)
+        .setMapStoreConfig(mapStoreConfig)
+        .setTimeToLiveSeconds(TTL_SECONDS)
+        .setNearCacheConfig(
+            NearCacheConfig(mapName)
+                .setInMemoryFormat(InMemoryFormat.OBJECT)
+                .setInvalidateOnChange(true)
+                .setCacheLocalEntries(true)
+                .setTimeToLiveSeconds(TTL_SECONDS)
+        )
+
+    override fun getMapConfig(): MapConfig = mapConfig
+
+    override fun getMapStoreConfig(): MapStoreConfig = mapStoreConfig
+
+    override fun generateTestKey(): DeviceKey = DeviceKey(
+        UUID.randomUUID(),
+        RandomStringUtils.randomAlphanumeric(8),
+        RandomStringUtils.randomAlphanumeric(16)
+    )
+
+    override fun generateTestValue(): UUID = UUID.randomUUID()
+
+    override fun load(key: DeviceKey): UUID? {
+        loads.mark()
+        return hds.connection.use { connection ->
+            connection.prepareStatement(GET_DEVICE_ID).use { ps ->
+                ps.setObject(1, key.studyId)
+                ps.setString(2, key.participantId)
+                ps.setString(3, key.sourceDeviceId)
+                ps.executeQuery().use { rs ->
+                    if (rs.next()) ResultSetAdapters.deviceId(rs) else null
+                }
+            }
+        }
+    }
+
+    override fun loadAll(keys: Collection<DeviceKey>): Map<DeviceKey, UUID> {
+        return keys.mapNotNull { key -> load(key)?.let { key to it } }.toMap()
+    }
+
+    /**
+     * Entries are only loaded on demand.
+     */
+    override fun loadAllKeys(): Iterable<DeviceKey> = listOf()
+
+    override fun store(key: DeviceKey, value: UUID) {
+        throw UnsupportedOperationException("The Device Registration Mapstore is a READ ONLY cache.")
+    }
+
+    override fun storeAll(map: Map<DeviceKey, UUID>) {
+        throw UnsupportedOperationException("The Device Registration Mapstore is a READ ONLY cache.")
+    }
+
+    override fun delete(key: DeviceKey) {
+        throw UnsupportedOperationException("The Device Registration Mapstore is a READ ONLY cache.")
+    }
+
+    override fun deleteAll(keys: MutableCollection<DeviceKey>) {
+        throw UnsupportedOperationException("The Device Registration Mapstore is a READ ONLY cache.")
+    }
+
+    override fun getMapName(): String = HazelcastMap.DEVICE_REGISTRATIONS.name
+
+    override fun getTable(): String = DEVICES.name
+}
@@ -0,0 +1,110 @@
+package com.openlattice.chronicle.mapstores.enrollment
+
+import com.codahale.metrics.Meter
+import com.codahale.metrics.MetricRegistry
+import com.geekbeast.rhizome.mapstores.TestableSelfRegisteringMapStore
+import com.hazelcast.config.InMemoryFormat
+import com.hazelcast.config.MapConfig
+import com.hazelcast.config.MapStoreConfig
+import com.hazelcast.config.NearCacheConfig
+import com.openlattice.chronicle.data.ParticipationStatus
+import com.openlattice.chronicle.hazelcast.HazelcastMap
+import com.openlattice.chronicle.mapstores.stats.ParticipantKey
+import com.openlattice.chronicle.postgres.ResultSetAdapters
+import com.openlattice.chronicle.services.enrollment.EnrollmentService.Companion.GET_PARTICIPATION_STATUS
+import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.STUDY_PARTICIPANTS
+import com.zaxxer.hikari.HikariDataSource
+import org.apache.commons.lang3.RandomStringUtils
+import java.util.*
+
+/**
+ * Read only, lazily loaded cache of participation status used to avoid a round trip to postgres on every upload.
+ *
+ * Entries are evicted by [com.openlattice.chronicle.services.enrollment.EnrollmentService] once a change to
+ * participation status or the removal of participants has committed. The time to live bounds staleness in case a load
+ * that read the old row finishes after the eviction.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class ParticipationStatusMapstore(
+    val hds: HikariDataSource,
+    metricRegistry: MetricRegistry
+) : TestableSelfRegisteringMapStore<ParticipantKey, ParticipationStatus> {
+    companion object {
+        const val TTL_SECONDS = 600
+    }
+
+    private val loads: Meter = metricRegistry.meter(
+        MetricRegistry.name(ParticipationStatusMapstore::class.java, "loads")
+    )
+
+    private val mapStoreConfig = MapStoreConfig()
+        .setInitialLoadMode(MapStoreConfig.InitialLoadMode.LAZY)
+        .setImplementation(this)
+        .setEnabled(true)
+        .setWriteDelaySeconds(0)
+
+    private val mapConfig = MapConfig(mapName)
+        .setMapStoreConfig(mapStoreConfig)
+        .setTimeToLiveSeconds(TTL_SECONDS)
+        .setNearCacheConfig(
+            NearCacheConfig(mapName)
+                .setInMemoryFormat(InMemoryFormat.OBJECT)
+                .setInvalidateOnChange(true)
+                .setCacheLocalEntries(true)
+                .setTimeToLiveSeconds(TTL_SECONDS)
+        )
+
+    override fun getMapConfig(): MapConfig = mapConfig
+
+    override fun getMapStoreConfig(): MapStoreConfig = mapStoreConfig
+
+    override fun generateTestKey(): ParticipantKey = ParticipantKey(
+        UUID.randomUUID(),
+        RandomStringUtils.randomAlphanumeric(8)
+    )
+
+    override fun generateTestValue(): ParticipationStatus = ParticipationStatus.ENROLLED
+
+    override fun load(key: ParticipantKey): ParticipationStatus? {
+        loads.mark()
+        return hds.connection.use { connection ->
+            connection.prepareStatement(GET_PARTICIPATION_STATUS).use { ps ->
+                ps.setObject(1, key.studyId)
+                ps.setString(2, key.participantId)
+                ps.executeQuery().use { rs ->
+                    if (rs.next()) ResultSetAdapters.participantStatus(rs) else null
+                }
+            }
+        }
+    }
+
+    override fun loadAll(keys: Collection<ParticipantKey>): Map<ParticipantKey, ParticipationStatus> {
+        return keys.mapNotNull { key -> load(key)?.let { key to it } }.toMap()
+    }
+
+    /**
+     * Entries are only loaded on demand.
+     */
+    override fun loadAllKeys(): Iterable<ParticipantKey> = listOf()
+
+    override fun store(key: ParticipantKey, value: ParticipationStatus) {
+        throw UnsupportedOperationException("The Participation Status Mapstore is a READ ONLY cache.")
+    }
+
+    override fun storeAll(map: Map<ParticipantKey, ParticipationStatus>) {
+        throw UnsupportedOperationException("The Participation Status Mapstore is a READ ONLY cache.")
+    }
+
+    override fun delete(key: ParticipantKey) {
+        throw UnsupportedOperationException("The Participation Status Mapstore is a READ ONLY cache.")
+    }
+
+    override fun deleteAll(keys: MutableCollection<ParticipantKey>) {
+        throw UnsupportedOperationException("The Participation Status Mapstore is a READ ONLY cache.")
+    }
+
+    override fun getMapName(): String = HazelcastMap.PARTICIPATION_STATUSES.name
+
+    override fun getTable(): String = STUDY_PARTICIPANTS.name
+}
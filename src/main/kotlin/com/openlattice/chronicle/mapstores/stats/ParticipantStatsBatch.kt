@@ -0,0 +1,33 @@
+package com.openlattice.chronicle.mapstores.stats
+
+import com.openlattice.chronicle.participants.ParticipantStats
+
+/**
+ * Folds the participant stats deltas produced while processing a batch of uploads into one delta per participant, so
+ * that they can be applied with a single [ParticipantStatsBatchMerger].
+ *
+ * Not thread safe.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@getmethodic.com&gt;
+ */
+class ParticipantStatsBatch {
+    private val statsByParticipant = mutableMapOf<ParticipantKey, ParticipantStats>()
+
+    /**
+     * The number of deltas added to this batch.
+     */
+    var deltas: Int = 0
+        private set
+
+    fun add(stats: ParticipantStats) {
+        val key = ParticipantKey(stats.studyId, stats.participantId)
+        statsByParticipant[key] = ParticipantStatsMerger.merge(statsByParticipant[key], stats)
+        deltas++
+    }
+
+    fun addAll(stats: Iterable<ParticipantStats>) = stats.forEach(::add)
+
+    fun isEmpty(): Boolean = statsByParticipant.isEmpty()
+
+    fun getStatsByParticipant(): Map<ParticipantKey, ParticipantStats> = statsByParticipant
+}
@@ -0,0 +1,27 @@
+package com.openlattice.chronicle.mapstores.stats
+
+import com.geekbeast.rhizome.hazelcast.processors.AbstractRhizomeEntryProcessor
+import com.openlattice.chronicle.participants.ParticipantStats
+
+/**
+ * Merges a stats delta per participant in a single `executeOnKeys` call instead of running a [ParticipantStatsMerger]
+ * for every delta.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@getmethodic.com&gt;
+ */
+class ParticipantStatsBatchMerger(val statsByParticipant: Map<ParticipantKey, ParticipantStats>) :
+    AbstractRhizomeEntryProcessor<ParticipantKey, ParticipantStats, Void?>() {
+    override fun process(entry: MutableMap.MutableEntry<ParticipantKey, ParticipantStats?>): Void? {
+        val statsToMerge = statsByParticipant[entry.key] ?: return null
+        entry.setValue(ParticipantStatsMerger.merge(entry.value, statsToMerge))
+        return null
+    }
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is ParticipantStatsBatchMerger) return false
+        return statsByParticipant == other.statsByParticipant
+    }
+
+    override fun hashCode(): Int = statsByParticipant.hashCode()
+}
@@ -1,11 +1,13 @@
 package com.openlattice.chronicle.pods
 
+import com.codahale.metrics.MetricRegistry
 import com.geekbeast.hazelcast.PreHazelcastUpgradeService
 import com.geekbeast.jdbc.DataSourceManager
 import com.geekbeast.mail.MailServiceConfig
 import com.geekbeast.rhizome.pods.ConfigurationLoader
 import com.openlattice.chronicle.configuration.ChronicleConfiguration
 import com.openlattice.chronicle.configuration.TwilioConfiguration
+import com.openlattice.chronicle.storage.DataSourcePoolMetrics
 import com.openlattice.chronicle.storage.StorageResolver
 import com.openlattice.chronicle.upgrades.*
 import org.springframework.context.annotation.Bean
@@ -24,6 +26,9 @@ class ChronicleConfigurationPod {
     @Inject
     private lateinit var configurationLoader: ConfigurationLoader
 
+    @Inject
+    private lateinit var metricRegistry: MetricRegistry
+
     @Bean
     fun chronicleConfiguration(): ChronicleConfiguration {
         return configurationLoader.logAndLoad("Chronicle Configuration", ChronicleConfiguration::class.java)
@@ -41,7 +46,11 @@ class ChronicleConfigurationPod {
 
     @Bean
     fun storageResolver(): StorageResolver {
-        return StorageResolver(dataSourceManager, chronicleConfiguration().storageConfiguration)
+        return StorageResolver(
+            dataSourceManager,
+            chronicleConfiguration().storageConfiguration,
+            DataSourcePoolMetrics(metricRegistry)
+        )
     }
 
     @Bean
@@ -73,4 +82,9 @@ class ChronicleConfigurationPod {
     fun participantStatsUpgrade(): PreHazelcastUpgradeService {
         return ParticipantStatsUpgrade(storageResolver(), upgradeService())
     }
+
+    @Bean
+    fun uploadBufferEncodingUpgrade(): PreHazelcastUpgradeService {
+        return UploadBufferEncodingUpgrade(storageResolver(), upgradeService())
+    }
 }
\ No newline at end of file
@@ -10,8 +10,11 @@ import com.google.common.util.concurrent.ListeningExecutorService
 import com.hazelcast.core.HazelcastInstance
 import com.openlattice.chronicle.configuration.ChronicleConfiguration
 import com.openlattice.chronicle.deletion.*
+import com.openlattice.chronicle.export.ExportParticipantDataRunner
+import com.openlattice.chronicle.services.download.DataDownloadManager
 import com.openlattice.chronicle.services.notifications.NotificationJobRunner
 import com.openlattice.chronicle.services.twilio.TwilioService
+import com.openlattice.chronicle.storage.ByteBlobDataManager
 import com.openlattice.chronicle.storage.StorageResolver
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
@@ -55,6 +58,12 @@ class ChronicleJobRunnersPod {
         @Inject
         private lateinit var mailService: MailService
 
+        @Inject
+        private lateinit var dataDownloadManager: DataDownloadManager
+
+        @Inject
+        private lateinit var byteBlobDataManager: ByteBlobDataManager
+
         @Bean
         fun deleteStudyUsageDataRunner() : DeleteStudyUsageDataRunner {
             return DeleteStudyUsageDataRunner(storageResolver)
@@ -85,6 +94,16 @@ class ChronicleJobRunnersPod {
                 return DeleteParticipantAppUsageSurveyDataRunner()
         }
 
+        @Bean
+        fun exportParticipantDataRunner() : ExportParticipantDataRunner {
+                return ExportParticipantDataRunner(
+                        dataDownloadManager,
+                        byteBlobDataManager,
+                        storageResolver,
+                        chronicleConfiguration.downloadConfiguration
+                )
+        }
+
         @Bean
         fun notificationJobRunner() : NotificationJobRunner {
                 return NotificationJobRunner(twilioService, mailService)
@@ -19,6 +19,7 @@
  */
 package com.openlattice.chronicle.pods
 
+import com.codahale.metrics.MetricRegistry
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.geekbeast.auth0.*
 import com.geekbeast.authentication.Auth0Configuration
@@ -35,6 +36,7 @@ import com.hazelcast.core.HazelcastInstance
 import com.openlattice.chronicle.auditing.AuditingManager
 import com.openlattice.chronicle.auditing.RedshiftAuditingManager
 import com.openlattice.chronicle.authorization.AuthorizationManager
+import com.openlattice.chronicle.authorization.EffectivePermissionCache
 import com.openlattice.chronicle.authorization.HazelcastAuthorizationService
 import com.openlattice.chronicle.authorization.initializers.AuthorizationInitializationDependencies
 import com.openlattice.chronicle.authorization.initializers.AuthorizationInitializationTask
@@ -45,6 +47,7 @@ import com.openlattice.chronicle.configuration.TwilioConfiguration
 import com.openlattice.chronicle.directory.Auth0UserDirectoryService
 import com.openlattice.chronicle.directory.LocalUserDirectoryService
 import com.openlattice.chronicle.directory.UserDirectoryService
+import com.openlattice.chronicle.export.ExportService
 import com.openlattice.chronicle.ids.HazelcastIdGenerationService
 import com.openlattice.chronicle.organizations.ChronicleOrganizationService
 import com.openlattice.chronicle.organizations.initializers.OrganizationsInitializationDependencies
@@ -56,6 +59,7 @@ import com.openlattice.chronicle.services.delete.DataDeletionManager
 import com.openlattice.chronicle.services.delete.DataDeletionService
 import com.openlattice.chronicle.services.download.DataDownloadManager
 import com.openlattice.chronicle.services.download.DataDownloadService
+import com.openlattice.chronicle.services.download.FanOutQueryExecutor
 import com.openlattice.chronicle.services.enrollment.EnrollmentManager
 import com.openlattice.chronicle.services.enrollment.EnrollmentService
 import com.openlattice.chronicle.services.jobs.JobService
@@ -72,6 +76,9 @@ import com.openlattice.chronicle.services.twilio.TwilioService
 import com.openlattice.chronicle.services.upload.AppDataUploadManager
 import com.openlattice.chronicle.services.upload.AppDataUploadService
 import com.openlattice.chronicle.services.upload.SensorDataUploadService
+import com.openlattice.chronicle.services.upload.UploadBufferGroupCommitter
+import com.openlattice.chronicle.services.upload.UploadContentDecoder
+import com.openlattice.chronicle.storage.ByteBlobDataManager
 import com.openlattice.chronicle.storage.StorageResolver
 import com.openlattice.chronicle.storage.tasks.*
 import com.openlattice.chronicle.studies.tasks.StudyLimitsEnforcementTask
@@ -126,6 +133,12 @@ class ChronicleServerServicesPod {
     @Inject
     private lateinit var mailServiceConfig: MailServiceConfig
 
+    @Inject
+    private lateinit var metricRegistry: MetricRegistry
+
+    @Inject
+    private lateinit var byteBlobDataManager: ByteBlobDataManager
+
     @Bean
     fun defaultObjectMapper(): ObjectMapper {
         val mapper = ObjectMappers.getJsonMapper()
@@ -201,7 +214,16 @@ class ChronicleServerServicesPod {
     @Bean
     @Throws(IOException::class, ExecutionException::class)
     fun dataDownloadManager(): DataDownloadManager {
-        return DataDownloadService(storageResolver)
+        return DataDownloadService(
+            storageResolver,
+            chronicleConfiguration.downloadConfiguration,
+            fanOutQueryExecutor()
+        )
+    }
+
+    @Bean
+    fun fanOutQueryExecutor(): FanOutQueryExecutor {
+        return FanOutQueryExecutor(chronicleConfiguration.downloadConfiguration, metricRegistry)
     }
 
     @Bean
@@ -211,6 +233,8 @@ class ChronicleServerServicesPod {
             storageResolver,
             idGenerationService(),
             candidateService(),
+            hazelcast,
+            metricRegistry,
         )
     }
 
@@ -226,10 +250,23 @@ class ChronicleServerServicesPod {
         return AppDataUploadService(
             storageResolver,
             enrollmentManager(),
-            studyService()
+            studyService(),
+            chronicleConfiguration.uploadConfiguration,
+            uploadBufferGroupCommitter(),
+            moveToEventStorageTaskDependencies().usageEvents
         )
     }
 
+    @Bean
+    fun uploadBufferGroupCommitter(): UploadBufferGroupCommitter {
+        return UploadBufferGroupCommitter(storageResolver, chronicleConfiguration.uploadConfiguration, metricRegistry)
+    }
+
+    @Bean
+    fun uploadContentDecoder(): UploadContentDecoder {
+        return UploadContentDecoder(chronicleConfiguration.uploadConfiguration, metricRegistry)
+    }
+
     @Bean
     @Throws(IOException::class, ExecutionException::class)
     fun surveysManager(): SurveysManager {
@@ -240,6 +277,7 @@ class ChronicleServerServicesPod {
             scheduledTasksManager(),
             auditingManager(),
             idGenerationService(),
+            moveToEventStorageTaskDependencies().dailyAppUsageRollups
         )
     }
 
@@ -270,7 +308,21 @@ class ChronicleServerServicesPod {
 
     @Bean
     fun authorizationService(): AuthorizationManager {
-        return HazelcastAuthorizationService(hazelcast, storageResolver, eventBus, principalsMapManager())
+        //Without the permission cache every authorization check reads the permissions map directly.
+        val authorizationConfiguration = chronicleConfiguration.authorizationConfiguration
+        val permissionCache = if (authorizationConfiguration.permissionCache) {
+            EffectivePermissionCache(eventBus, authorizationConfiguration, metricRegistry)
+        } else {
+            null
+        }
+        return HazelcastAuthorizationService(
+            hazelcast,
+            storageResolver,
+            eventBus,
+            principalsMapManager(),
+            permissionCache,
+            authorizationConfiguration.authorizedObjectsIndex
+        )
     }
 
     @Bean
@@ -280,10 +332,16 @@ class ChronicleServerServicesPod {
             aclKeyReservationService(),
             authorizationService(),
             principalsMapManager(),
-            auditingManager()
+            auditingManager(),
+            principalTreeClosure()
         )
     }
 
+    @Bean
+    fun principalTreeClosure(): PrincipalTreeClosure {
+        return PrincipalTreeClosure(hazelcast)
+    }
+
     @Bean
     fun mailService(): MailService {
         return MailService(mailServiceConfig)
@@ -291,7 +349,7 @@ class ChronicleServerServicesPod {
 
     @Bean
     fun auth0SyncService(): Auth0SyncService {
-        return Auth0SyncService(hazelcast, principalsManager())
+        return Auth0SyncService(hazelcast, principalsManager(), principalTreeClosure())
     }
 
     @Bean
@@ -325,6 +383,17 @@ class ChronicleServerServicesPod {
         )
     }
 
+    @Bean
+    fun exportService(): ExportService {
+        return ExportService(
+            storageResolver,
+            byteBlobDataManager,
+            jobService(),
+            idGenerationService(),
+            chronicleConfiguration.downloadConfiguration
+        )
+    }
+
     @Bean
     fun studyService(): StudyService {
         return StudyService(
@@ -336,7 +405,8 @@ class ChronicleServerServicesPod {
             idGenerationService(),
             studyLimitsManager(),
             auditingManager(),
-            hazelcast
+            hazelcast,
+            metricRegistry
         )
     }
 
@@ -380,7 +450,7 @@ class ChronicleServerServicesPod {
 
     @Bean
     fun auditingManager(): AuditingManager {
-        return RedshiftAuditingManager(storageResolver)
+        return RedshiftAuditingManager(storageResolver, chronicleConfiguration.auditConfiguration, metricRegistry)
     }
 
     @Bean
@@ -425,7 +495,13 @@ class ChronicleServerServicesPod {
 
     @Bean
     fun sensorDataUploadService(): SensorDataUploadService {
-        return SensorDataUploadService(storageResolver, studyService())
+        return SensorDataUploadService(
+            storageResolver,
+            studyService(),
+            chronicleConfiguration.uploadConfiguration,
+            uploadBufferGroupCommitter(),
+            moveToEventStorageTaskDependencies().usageEvents
+        )
     }
 
     @Bean
@@ -449,7 +525,12 @@ class ChronicleServerServicesPod {
 
     @Bean
     fun studyComplianceManager(): StudyComplianceManager {
-        return StudyComplianceService(storageResolver, auditingManager(), hazelcast)
+        return StudyComplianceService(
+            storageResolver,
+            auditingManager(),
+            hazelcast,
+            chronicleConfiguration.complianceConfiguration
+        )
     }
 
     @Bean
@@ -469,7 +550,13 @@ class ChronicleServerServicesPod {
 
     @Bean
     fun moveToEventStorageTaskDependencies(): MoveToEventStorageTaskDependencies {
-        return MoveToEventStorageTaskDependencies(storageResolver, studyService())
+        return MoveToEventStorageTaskDependencies(
+            storageResolver,
+            studyService(),
+            hazelcast,
+            chronicleConfiguration.uploadConfiguration,
+            metricRegistry
+        )
     }
 
     @Bean
@@ -492,6 +579,21 @@ class ChronicleServerServicesPod {
         return RecalculateParticipantStatsTask()
     }
 
+    @Bean
+    fun eventStoragePartitionTaskDependencies(): EventStoragePartitionTaskDependencies {
+        return EventStoragePartitionTaskDependencies(
+            storageResolver,
+            studyService(),
+            studyLimitsManager(),
+            chronicleConfiguration.storageConfiguration
+        )
+    }
+
+    @Bean
+    fun eventStoragePartitionTask(): EventStoragePartitionTask {
+        return EventStoragePartitionTask()
+    }
+
     companion object {
         private val logger = LoggerFactory.getLogger(ChronicleServerServicesPod::class.java)
     }
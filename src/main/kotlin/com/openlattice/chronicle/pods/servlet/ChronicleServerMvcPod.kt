@@ -23,8 +23,12 @@ import com.openlattice.chronicle.constants.CustomMediaType
 import com.openlattice.chronicle.controllers.*
 import com.openlattice.chronicle.controllers.legacy.ChronicleController
 import com.openlattice.chronicle.controllers.v2.ChronicleControllerV2
+import com.openlattice.chronicle.converters.ArrowStreamHttpMessageConverter
+import com.openlattice.chronicle.converters.ColumnarDownloads
 import com.openlattice.chronicle.converters.LegacyPostgresDownloadCsvHttpMessageConverter
+import com.openlattice.chronicle.converters.ParquetHttpMessageConverter
 import com.openlattice.chronicle.converters.PostgresDownloadCsvHttpMessageConverter
+import com.openlattice.chronicle.converters.PostgresRowDownloadHttpMessageConverter
 import com.openlattice.chronicle.converters.TimeUseDiaryDownloadCsvHttpMessageConverter
 import com.openlattice.chronicle.converters.YamlHttpMessageConverter
 import com.openlattice.chronicle.services.twilio.TwilioService
@@ -79,9 +83,13 @@ class ChronicleServerMvcPod : WebMvcConfigurationSupport() {
                 converter.objectMapper = defaultObjectMapper
             }
         }
+        //Must come before the default json converter, which would otherwise serialize row downloads as a bean.
+        converters.add(0, PostgresRowDownloadHttpMessageConverter())
         converters.add(PostgresDownloadCsvHttpMessageConverter())
         converters.add(LegacyPostgresDownloadCsvHttpMessageConverter())
         converters.add(TimeUseDiaryDownloadCsvHttpMessageConverter())
+        converters.add(ArrowStreamHttpMessageConverter())
+        converters.add(ParquetHttpMessageConverter())
         converters.add(YamlHttpMessageConverter())
     }
 
@@ -101,6 +109,8 @@ class ChronicleServerMvcPod : WebMvcConfigurationSupport() {
             .mediaType("csv", CustomMediaType.TEXT_CSV)
             .mediaType("json", MediaType.APPLICATION_JSON)
             .mediaType("yaml", CustomMediaType.TEXT_YAML)
+            .mediaType("arrow", ColumnarDownloads.ARROW_STREAM)
+            .mediaType("parquet", ColumnarDownloads.PARQUET)
             .defaultContentType(MediaType.APPLICATION_JSON)
     }
 
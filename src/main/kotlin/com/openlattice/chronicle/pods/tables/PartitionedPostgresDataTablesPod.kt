@@ -0,0 +1,29 @@
+package com.openlattice.chronicle.pods.tables
+
+import com.geekbeast.postgres.PostgresTableDefinition
+import com.geekbeast.postgres.PostgresTables
+import com.openlattice.chronicle.storage.PartitionedPostgresDataTables
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import org.springframework.context.annotation.Profile
+import java.util.stream.Stream
+
+/**
+ * When included as a pod this class registers the partitioned event tables, along with the remaining data tables, in
+ * place of [PostgresDataTablesPod]. The partitions themselves are created by the event storage partition task.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+@Configuration
+@Profile(PartitionedPostgresDataTables.POSTGRES_PARTITIONED_DATA_ENVIRONMENT)
+class PartitionedPostgresDataTablesPod {
+    @Bean
+    fun partitionedPostgresDataTables(): PostgresTables {
+        return PostgresTables {
+            Stream.concat(
+                PartitionedPostgresDataTables.TABLES.stream().map<PostgresTableDefinition> { it },
+                PartitionedPostgresDataTables.UNPARTITIONED_TABLES.stream()
+            )
+        }
+    }
+}
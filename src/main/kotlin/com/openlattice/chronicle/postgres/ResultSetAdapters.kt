@@ -28,6 +28,7 @@ import com.geekbeast.rhizome.jobs.JobStatus
 import com.openlattice.chronicle.authorization.*
 import com.openlattice.chronicle.candidates.Candidate
 import com.openlattice.chronicle.data.ParticipationStatus
+import com.openlattice.chronicle.export.ExportPartManifest
 import com.openlattice.chronicle.mapstores.ids.Range
 import com.openlattice.chronicle.mapstores.stats.ParticipantKey
 import com.openlattice.chronicle.notifications.DeliveryType
@@ -86,6 +87,13 @@ import com.openlattice.chronicle.storage.PostgresColumns.Companion.NAME
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.NOTIFICATIONS_ENABLED
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.NOTIFICATION_ID
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.NOTIFICATION_TYPE
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.OBJECT_KEY
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.PARTICIPANT_IDS
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.PART_INDEX
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.RANGE_END
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.RANGE_START
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.ROW_COUNT
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.SIZE_BYTES
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.ORGANIZATION_ID
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.ORGANIZATION_IDS
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.PARTICIPANT_ID
@@ -125,6 +133,7 @@ import com.openlattice.chronicle.storage.PostgresColumns.Companion.TUD_UNIQUE_DA
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPDATED_AT
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOADED_AT
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOAD_DATA
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOAD_DATA_BINARY
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.URL
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APPLICATION_LABEL
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_CATEGORY
@@ -461,6 +470,20 @@ class ResultSetAdapters {
             )
         }
 
+        @Throws(SQLException::class)
+        fun exportPartManifest(rs: ResultSet): ExportPartManifest {
+            return ExportPartManifest(
+                rs.getInt(PART_INDEX.name),
+                PostgresArrays.getTextArray(rs, PARTICIPANT_IDS.name).toList(),
+                rs.getObject(RANGE_START.name, OffsetDateTime::class.java),
+                rs.getObject(RANGE_END.name, OffsetDateTime::class.java),
+                rs.getString(OBJECT_KEY.name),
+                rs.getLong(ROW_COUNT.name),
+                rs.getLong(SIZE_BYTES.name),
+                null
+            )
+        }
+
         @Throws(SQLException::class)
         fun participant(rs: ResultSet): Participant {
             return Participant(
@@ -544,7 +567,12 @@ class ResultSetAdapters {
         fun usageEventQueueEntries(rs: ResultSet): UsageEventQueueEntries {
             val studyId = rs.getObject(STUDY_ID.name, UUID::class.java)
             val participantId = rs.getString(PARTICIPANT_ID.name)
-            val data = mapper.readValue<List<Map<String, UsageEventColumn>>>(rs.getString(UPLOAD_DATA.name))
+            val binary = rs.getBytes(UPLOAD_DATA_BINARY.name)
+            val data = if (binary == null) {
+                mapper.readValue<List<Map<String, UsageEventColumn>>>(rs.getString(UPLOAD_DATA.name))
+            } else {
+                UploadBufferCodec.decodeUsageEvents(mapper, binary)
+            }
             val uploadedAt = rs.getObject(UPLOADED_AT.name, OffsetDateTime::class.java)
             return UsageEventQueueEntries(studyId, participantId, data, uploadedAt)
         }
@@ -553,7 +581,12 @@ class ResultSetAdapters {
         fun sensorDataSamples(rs: ResultSet): SensorDataEntries {
             val studyId = rs.getObject(STUDY_ID.name, UUID::class.java)
             val participantId = rs.getString(PARTICIPANT_ID.name)
-            val samples = mapper.readValue<List<SensorDataSample>>(rs.getString(UPLOAD_DATA.name))
+            val binary = rs.getBytes(UPLOAD_DATA_BINARY.name)
+            val samples = if (binary == null) {
+                mapper.readValue<List<SensorDataSample>>(rs.getString(UPLOAD_DATA.name))
+            } else {
+                UploadBufferCodec.decodeSensorDataSamples(mapper, binary)
+            }
             val uploadedAt = rs.getObject(UPLOADED_AT.name, OffsetDateTime::class.java)
             val sourceDeviceId = rs.getString(SOURCE_DEVICE_ID.name)
             return SensorDataEntries(studyId, participantId, samples, uploadedAt, sourceDeviceId)
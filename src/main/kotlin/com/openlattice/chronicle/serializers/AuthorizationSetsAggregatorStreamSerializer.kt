@@ -0,0 +1,62 @@
+package com.openlattice.chronicle.serializers
+
+import com.geekbeast.rhizome.pods.hazelcast.SelfRegisteringStreamSerializer
+import com.hazelcast.nio.ObjectDataInput
+import com.hazelcast.nio.ObjectDataOutput
+import com.openlattice.chronicle.authorization.AclKey
+import com.openlattice.chronicle.authorization.Permission
+import com.openlattice.chronicle.authorization.aggregators.AuthorizationSetsAggregator
+import com.openlattice.chronicle.hazelcast.StreamSerializerTypeIds
+import org.springframework.stereotype.Component
+import java.util.*
+
+/**
+ * Each acl key is written once with its permissions and the sets are written as the positions of their acl keys.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+@Component
+class AuthorizationSetsAggregatorStreamSerializer : SelfRegisteringStreamSerializer<AuthorizationSetsAggregator> {
+
+    override fun getTypeId(): Int {
+        return StreamSerializerTypeIds.AUTHORIZATION_SETS_AGGREGATOR.ordinal
+    }
+
+    override fun getClazz(): Class<out AuthorizationSetsAggregator> {
+        return AuthorizationSetsAggregator::class.java
+    }
+
+    override fun write(output: ObjectDataOutput, obj: AuthorizationSetsAggregator) {
+        val positions = HashMap<AclKey, Int>(obj.permissionsMap.size)
+        output.writeInt(obj.permissionsMap.size)
+        obj.permissionsMap.forEach {
+            positions[it.key] = positions.size
+            AclKeyStreamSerializer.serialize(output, it.key)
+            DelegatedPermissionEnumSetStreamSerializer.serialize(output, it.value)
+        }
+
+        output.writeInt(obj.aclKeySets.size)
+        obj.aclKeySets.forEach { aclKeySet ->
+            output.writeInt(aclKeySet.size)
+            aclKeySet.forEach { output.writeInt(positions.getValue(it)) }
+        }
+    }
+
+    override fun read(input: ObjectDataInput): AuthorizationSetsAggregator {
+        val size = input.readInt()
+        val aclKeys = ArrayList<AclKey>(size)
+        val permissionsMap = LinkedHashMap<AclKey, EnumSet<Permission>>(size)
+
+        (1..size).forEach { _ ->
+            val key = AclKeyStreamSerializer.deserialize(input)
+            aclKeys.add(key)
+            permissionsMap[key] = DelegatedPermissionEnumSetStreamSerializer.deserialize(input)
+        }
+
+        val aclKeySets = (1..input.readInt()).map {
+            (1..input.readInt()).mapTo(LinkedHashSet()) { aclKeys[input.readInt()] }
+        }
+
+        return AuthorizationSetsAggregator(aclKeySets, permissionsMap)
+    }
+}
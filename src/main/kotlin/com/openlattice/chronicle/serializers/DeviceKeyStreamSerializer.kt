@@ -0,0 +1,43 @@
+package com.openlattice.chronicle.serializers
+
+import com.geekbeast.hazelcast.serializers.TestableSelfRegisteringStreamSerializer
+import com.hazelcast.internal.serialization.impl.defaultserializers.ConstantSerializers.UuidSerializer
+import com.hazelcast.nio.ObjectDataInput
+import com.hazelcast.nio.ObjectDataOutput
+import com.openlattice.chronicle.hazelcast.StreamSerializerTypeIds
+import com.openlattice.chronicle.mapstores.enrollment.DeviceKey
+import org.apache.commons.lang3.RandomStringUtils
+import org.springframework.stereotype.Component
+import java.util.UUID
+
+/**
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@getmethodic.com&gt;
+ */
+@Component
+class DeviceKeyStreamSerializer : TestableSelfRegisteringStreamSerializer<DeviceKey> {
+    private val uuidSerializer = UuidSerializer()
+    override fun generateTestValue(): DeviceKey = DeviceKey(
+        UUID.randomUUID(),
+        RandomStringUtils.randomAlphanumeric(10),
+        RandomStringUtils.randomAlphanumeric(16)
+    )
+
+    override fun getTypeId(): Int = StreamSerializerTypeIds.DEVICE_KEY.ordinal
+
+    override fun read(input: ObjectDataInput): DeviceKey {
+        return DeviceKey(
+            studyId = uuidSerializer.read(input),
+            participantId = input.readString()!!,
+            sourceDeviceId = input.readString()!!
+        )
+    }
+
+    override fun write(out: ObjectDataOutput, obj: DeviceKey) {
+        uuidSerializer.write(out, obj.studyId)
+        out.writeString(obj.participantId)
+        out.writeString(obj.sourceDeviceId)
+    }
+
+    override fun getClazz(): Class<out DeviceKey> = DeviceKey::class.java
+}
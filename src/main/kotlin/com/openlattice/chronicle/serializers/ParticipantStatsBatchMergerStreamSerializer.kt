@@ -0,0 +1,47 @@
+package com.openlattice.chronicle.serializers
+
+import com.geekbeast.hazelcast.serializers.TestableSelfRegisteringStreamSerializer
+import com.hazelcast.nio.ObjectDataInput
+import com.hazelcast.nio.ObjectDataOutput
+import com.openlattice.chronicle.hazelcast.StreamSerializerTypeIds
+import com.openlattice.chronicle.mapstores.stats.ParticipantKey
+import com.openlattice.chronicle.mapstores.stats.ParticipantStatsBatchMerger
+import com.openlattice.chronicle.participants.ParticipantStats
+import com.openlattice.chronicle.util.tests.TestDataFactory
+import org.springframework.stereotype.Component
+
+/**
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@getmethodic.com&gt;
+ */
+@Component
+class ParticipantStatsBatchMergerStreamSerializer : TestableSelfRegisteringStreamSerializer<ParticipantStatsBatchMerger> {
+    private val participantKeySerializer = ParticipantKeyStreamSerializer()
+    private val participantStatsSerializer = ParticipantStatsStreamSerializer()
+
+    override fun generateTestValue(): ParticipantStatsBatchMerger {
+        val stats = (0 until 3).map { TestDataFactory.participantStats() }
+        return ParticipantStatsBatchMerger(stats.associateBy { ParticipantKey(it.studyId, it.participantId) })
+    }
+
+    override fun getTypeId(): Int = StreamSerializerTypeIds.PARTICIPANT_STATS_BATCH_MERGER.ordinal
+
+    override fun read(input: ObjectDataInput): ParticipantStatsBatchMerger {
+        val size = input.readInt()
+        val statsByParticipant = LinkedHashMap<ParticipantKey, ParticipantStats>(size)
+        repeat(size) {
+            statsByParticipant[participantKeySerializer.read(input)] = participantStatsSerializer.read(input)
+        }
+        return ParticipantStatsBatchMerger(statsByParticipant)
+    }
+
+    override fun write(out: ObjectDataOutput, obj: ParticipantStatsBatchMerger) {
+        out.writeInt(obj.statsByParticipant.size)
+        obj.statsByParticipant.forEach { (key, stats) ->
+            participantKeySerializer.write(out, key)
+            participantStatsSerializer.write(out, stats)
+        }
+    }
+
+    override fun getClazz(): Class<out ParticipantStatsBatchMerger> = ParticipantStatsBatchMerger::class.java
+}
@@ -0,0 +1,77 @@
+package com.openlattice.chronicle.serializers
+
+import com.geekbeast.hazelcast.serializers.TestableSelfRegisteringStreamSerializer
+import com.hazelcast.internal.nio.IOUtil
+import com.hazelcast.internal.serialization.impl.defaultserializers.ConstantSerializers.UuidSerializer
+import com.hazelcast.nio.ObjectDataInput
+import com.hazelcast.nio.ObjectDataOutput
+import com.openlattice.chronicle.hazelcast.StreamSerializerTypeIds
+import com.openlattice.chronicle.services.studies.aggregators.RecentUploadsAggregator
+import org.apache.commons.lang3.RandomStringUtils
+import org.springframework.stereotype.Component
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+import java.util.*
+
+/**
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+@Component
+class RecentUploadsAggregatorStreamSerializer : TestableSelfRegisteringStreamSerializer<RecentUploadsAggregator> {
+    private val uuidSerializer = UuidSerializer()
+
+    override fun generateTestValue(): RecentUploadsAggregator {
+        val studyId = UUID.randomUUID()
+        return RecentUploadsAggregator(
+            mapOf(studyId to OffsetDateTime.now(ZoneOffset.UTC)),
+            mutableMapOf(studyId to mutableSetOf(RandomStringUtils.randomAlphanumeric(8))),
+            mutableMapOf(studyId to mutableSetOf(RandomStringUtils.randomAlphanumeric(8)))
+        )
+    }
+
+    override fun getTypeId(): Int = StreamSerializerTypeIds.RECENT_UPLOADS_AGGREGATOR.ordinal
+
+    override fun write(out: ObjectDataOutput, obj: RecentUploadsAggregator) {
+        out.writeInt(obj.cutoffs.size)
+        obj.cutoffs.forEach { (studyId, cutoff) ->
+            uuidSerializer.write(out, studyId)
+            IOUtil.writeOffsetDateTime(out, cutoff)
+        }
+        writeParticipants(out, obj.android)
+        writeParticipants(out, obj.ios)
+    }
+
+    override fun read(input: ObjectDataInput): RecentUploadsAggregator {
+        val size = input.readInt()
+        val cutoffs = HashMap<UUID, OffsetDateTime>(size)
+        repeat(size) {
+            cutoffs[uuidSerializer.read(input)] = IOUtil.readOffsetDateTime(input)
+        }
+        return RecentUploadsAggregator(cutoffs, readParticipants(input), readParticipants(input))
+    }
+
+    private fun writeParticipants(out: ObjectDataOutput, participants: Map<UUID, Set<String>>) {
+        out.writeInt(participants.size)
+        participants.forEach { (studyId, participantIds) ->
+            uuidSerializer.write(out, studyId)
+            out.writeInt(participantIds.size)
+            participantIds.forEach { out.writeString(it) }
+        }
+    }
+
+    private fun readParticipants(input: ObjectDataInput): MutableMap<UUID, MutableSet<String>> {
+        val size = input.readInt()
+        val participants = HashMap<UUID, MutableSet<String>>(size)
+        repeat(size) {
+            val studyId = uuidSerializer.read(input)
+            val participantCount = input.readInt()
+            val participantIds = HashSet<String>(participantCount)
+            repeat(participantCount) { participantIds.add(input.readString()!!) }
+            participants[studyId] = participantIds
+        }
+        return participants
+    }
+
+    override fun getClazz(): Class<out RecentUploadsAggregator> = RecentUploadsAggregator::class.java
+}
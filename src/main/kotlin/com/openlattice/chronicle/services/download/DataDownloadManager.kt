@@ -1,11 +1,15 @@
 package com.openlattice.chronicle.services.download
 
 import com.openlattice.chronicle.constants.ParticipantDataType
+import com.openlattice.chronicle.converters.PostgresRowDownload
 import com.openlattice.chronicle.sensorkit.SensorType
 import java.time.OffsetDateTime
 import java.util.*
 
 /**
+ * Participant downloads with a concurrency greater than one are split into slices by participant and time range, which
+ * are queried concurrently and merged back into a single download in slice order.
+ *
  * @author alfoncenzioka &lt;alfonce@openlattice.com&gt;
  * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
  */
@@ -23,32 +27,88 @@ interface DataDownloadManager {
         participantIds: Set<String>,
         sensors: Set<SensorType>,
         startDateTime: OffsetDateTime,
-        endDateTime: OffsetDateTime
+        endDateTime: OffsetDateTime,
+        concurrency: Int = 1
     ): Iterable<Map<String, Any>>
 
     fun getParticipantsAppUsageSurveyData(
         studyId: UUID,
         participantIds: Set<String>,
         startDateTime: OffsetDateTime,
-        endDateTime: OffsetDateTime
+        endDateTime: OffsetDateTime,
+        concurrency: Int = 1
     ): Iterable<Map<String, Any>>
 
     fun getParticipantsUsageEventsData(
         studyId: UUID,
         participantIds: Set<String>,
         startDateTime: OffsetDateTime,
-        endDateTime: OffsetDateTime
+        endDateTime: OffsetDateTime,
+        concurrency: Int = 1
     ): Iterable<Map<String, Any>>
 
     fun getPreprocessedUsageEventsData(
         studyId: UUID,
         participantIds: Set<String>,
         startDateTime: OffsetDateTime,
-        endDateTime: OffsetDateTime
+        endDateTime: OffsetDateTime,
+        concurrency: Int = 1
     ): Iterable<Map<String, Any>>
 
     fun getQuestionnaireResponses(
         studyId: UUID,
         questionnaireId: UUID
     ): Iterable<Map<String, Any>>
-}
\ No newline at end of file
+
+    fun getParticipantsUsageEventsRows(
+        studyId: UUID,
+        participantIds: Set<String>,
+        startDateTime: OffsetDateTime,
+        endDateTime: OffsetDateTime,
+        concurrency: Int = 1
+    ): PostgresRowDownload
+
+    fun getPreprocessedUsageEventsRows(
+        studyId: UUID,
+        participantIds: Set<String>,
+        startDateTime: OffsetDateTime,
+        endDateTime: OffsetDateTime,
+        concurrency: Int = 1
+    ): PostgresRowDownload
+
+    fun getParticipantsAppUsageSurveyRows(
+        studyId: UUID,
+        participantIds: Set<String>,
+        startDateTime: OffsetDateTime,
+        endDateTime: OffsetDateTime,
+        concurrency: Int = 1
+    ): PostgresRowDownload
+
+    /**
+     * Sensor data rows for the requested sensors. With no sensors the download only has the shared sensor columns and
+     * matches no rows.
+     */
+    fun getParticipantsSensorRows(
+        studyId: UUID,
+        participantIds: Set<String>,
+        sensors: Set<SensorType>,
+        startDateTime: OffsetDateTime,
+        endDateTime: OffsetDateTime,
+        concurrency: Int = 1
+    ): PostgresRowDownload
+
+    /**
+     * A page of participant data starting at [pageToken], or the first page if [pageToken] is null. Pages are read
+     * with keyset pagination and the data of usage events is limited to rows uploaded before the first page was read.
+     */
+    fun getParticipantsDataPage(
+        studyId: UUID,
+        dataType: ParticipantDataType,
+        participantIds: Set<String>,
+        sensors: Set<SensorType>,
+        startDateTime: OffsetDateTime,
+        endDateTime: OffsetDateTime,
+        pageToken: String?,
+        pageSize: Int
+    ): ParticipantDataPage
+}
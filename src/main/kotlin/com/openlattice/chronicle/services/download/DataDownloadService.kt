@@ -5,9 +5,12 @@ import com.geekbeast.postgres.PostgresColumnDefinition
 import com.geekbeast.postgres.PostgresDatatype
 import com.geekbeast.postgres.streams.BasePostgresIterable
 import com.geekbeast.postgres.streams.PreparedStatementHolderSupplier
+import com.openlattice.chronicle.configuration.ChronicleDownloadConfiguration
 import com.openlattice.chronicle.constants.OutputConstants
 import com.openlattice.chronicle.constants.ParticipantDataType
+import com.openlattice.chronicle.converters.FanOutRowDownload
 import com.openlattice.chronicle.converters.PostgresDownloadWrapper
+import com.openlattice.chronicle.converters.PostgresRowDownload
 import com.openlattice.chronicle.sensorkit.SensorType
 import com.openlattice.chronicle.services.surveys.SurveysService
 import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.APP_USAGE_SURVEY
@@ -18,6 +21,7 @@ import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_DATETIME_
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_PACKAGE_NAME
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_TIMEZONE
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.DEVICE_USAGE_SENSOR_COLS
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.EVENT_TYPE
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.INTERACTION_TYPE
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.KEYBOARD_METRICS_SENSOR_COLS
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.MESSAGES_USAGE_SENSOR_COLS
@@ -29,16 +33,22 @@ import com.openlattice.chronicle.storage.RedshiftColumns.Companion.SHARED_SENSOR
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.STUDY_ID
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.TIMESTAMP
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.TIMEZONE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.UPLOADED_AT
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.USERNAME
 import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.CHRONICLE_USAGE_EVENTS
 import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.IOS_SENSOR_DATA
 import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.PREPROCESSED_USAGE_EVENTS
 import com.openlattice.chronicle.storage.StorageResolver
 import com.openlattice.chronicle.util.ChronicleServerUtil
+import com.zaxxer.hikari.HikariDataSource
 import org.slf4j.LoggerFactory
+import java.sql.Connection
+import java.sql.PreparedStatement
 import java.sql.ResultSet
 import java.time.OffsetDateTime
 import java.time.ZoneId
+import java.time.ZoneOffset
+import java.time.temporal.ChronoUnit
 import java.util.*
 
 /**
@@ -47,6 +57,8 @@ import java.util.*
  */
 class DataDownloadService(
     private val storageResolver: StorageResolver,
+    private val downloadConfiguration: ChronicleDownloadConfiguration = ChronicleDownloadConfiguration(),
+    private val fanOutQueryExecutor: FanOutQueryExecutor? = null,
 ) : DataDownloadManager {
     companion object {
         private val logger = LoggerFactory.getLogger(DataDownloadService::class.java)
@@ -110,7 +122,7 @@ class DataDownloadService(
         fun associateObject(rs: ResultSet, pcd: PostgresColumnDefinition, clazz: Class<*>) =
             pcd.name to rs.getObject(pcd.name, clazz)
 
-        private fun getSensorDataColsAndSql(
+        internal fun getSensorDataColsAndSql(
             sensors: Set<SensorType>,
         ): Pair<Set<PostgresColumnDefinition>, String> {
             val mapping = mapOf(
@@ -135,6 +147,255 @@ class DataDownloadService(
             return Pair(cols, sql)
         }
 
+        /**
+         * Columns of the usage events download. Event type and upload time are part of the header, but are not
+         * included in downloads.
+         */
+        val USAGE_EVENTS_DOWNLOAD_COLUMNS = CHRONICLE_USAGE_EVENTS.columns.map {
+            when (it.name) {
+                EVENT_TYPE.name, UPLOADED_AT.name -> DownloadColumn.absent(it)
+                TIMESTAMP.name -> DownloadColumn.offsetDateTimeWithTimezone(TIMESTAMP, TIMEZONE)
+                else -> DownloadColumn.string(it)
+            }
+        }
+
+        internal val APP_USAGE_SURVEY_DOWNLOAD_COLUMNS = APP_USAGE_SURVEY.columns.map {
+            when (it.name) {
+                STUDY_ID.name -> DownloadColumn.uuid(it)
+                PostgresColumns.SUBMISSION_DATE.name -> DownloadColumn.absent(it)
+                TIMESTAMP.name -> DownloadColumn.offsetDateTimeWithTimezone(TIMESTAMP, TIMEZONE)
+                else -> DownloadColumn.string(it)
+            }
+        }
+
+        internal val PREPROCESSED_DOWNLOAD_COLUMNS = PREPROCESSED_USAGE_EVENTS.columns.map {
+            val pcd = PostgresColumnDefinition(it.name.replace("\"", ""), it.datatype)
+            when (pcd.datatype) {
+                PostgresDatatype.TEXT,
+                PostgresDatatype.TEXT_128,
+                PostgresDatatype.TEXT_256,
+                PostgresDatatype.TEXT_UUID -> DownloadColumn.string(pcd)
+                PostgresDatatype.TIMESTAMPTZ -> DownloadColumn.offsetDateTimeWithTimezone(pcd, APP_TIMEZONE)
+                PostgresDatatype.INTEGER -> DownloadColumn.integer(pcd)
+                PostgresDatatype.DOUBLE -> DownloadColumn.double(pcd)
+                else -> throw RuntimeException("Invalid column type: ${pcd.datatype}")
+            }
+        }
+
+        internal val PREPROCESSED_RESULT_SET_COLUMNS = PREPROCESSED_USAGE_EVENTS.columns.map {
+            PostgresColumnDefinition(it.name.replace("\"", ""), it.datatype)
+        }
+
+        private val USAGE_EVENTS_PAGE_QUERY = KeysetPageQuery(
+            CHRONICLE_USAGE_EVENT_SQL,
+            4,
+            CHRONICLE_USAGE_EVENTS.columns,
+            TIMESTAMP,
+            UPLOADED_AT
+        )
+
+        private val PREPROCESSED_PAGE_QUERY = KeysetPageQuery(
+            PREPROCESSED_DATA_SQL,
+            4,
+            PREPROCESSED_USAGE_EVENTS.columns,
+            APP_DATETIME_START,
+            null
+        )
+
+        private val APP_USAGE_SURVEY_PAGE_QUERY = KeysetPageQuery(
+            APP_USAGE_SURVEY_SQL,
+            4,
+            APP_USAGE_SURVEY.columns,
+            TIMESTAMP,
+            null
+        )
+
+        internal fun readUsageEvent(rs: ResultSet): Map<String, Any> = mapOf(
+            associateString(rs, STUDY_ID),
+            associateString(rs, PARTICIPANT_ID),
+            associateString(rs, APP_PACKAGE_NAME),
+            associateString(rs, INTERACTION_TYPE),
+            associateOffsetDatetimeWithTimezone(rs, TIMEZONE, TIMESTAMP),
+            associateString(rs, TIMEZONE),
+            associateString(rs, USERNAME),
+            associateString(rs, APPLICATION_LABEL)
+        )
+
+        internal fun readAppUsageSurvey(rs: ResultSet): Map<String, Any> = mapOf(
+            associateObject(rs, STUDY_ID, UUID::class.java),
+            associateString(rs, PARTICIPANT_ID),
+            associateString(rs, APPLICATION_LABEL),
+            associateString(rs, APP_PACKAGE_NAME),
+            associateOffsetDatetimeWithTimezone(rs, TIMEZONE, TIMESTAMP),
+            associateString(rs, TIMEZONE),
+            associateString(rs, APP_USERS)
+        )
+
+        internal fun readPreprocessedUsageEvent(rs: ResultSet): Map<String, Any> {
+            return PREPROCESSED_RESULT_SET_COLUMNS.associate {
+                when (it.datatype) {
+                    PostgresDatatype.TEXT -> associateString(rs, it)
+                    PostgresDatatype.TEXT_128 -> associateString(rs, it)
+                    PostgresDatatype.TEXT_256 -> associateString(rs, it)
+                    PostgresDatatype.TIMESTAMPTZ -> associateOffsetDatetimeWithTimezone(rs, APP_TIMEZONE, it)
+                    PostgresDatatype.TEXT_UUID -> associateString(rs, it)
+                    PostgresDatatype.INTEGER -> associateInteger(rs, it)
+                    PostgresDatatype.DOUBLE -> associateDouble(rs, it)
+                    else -> throw RuntimeException("Invalid column type: ${it.datatype}")
+                }
+            }
+        }
+
+        internal fun sensorReader(cols: Set<PostgresColumnDefinition>): (ResultSet) -> Map<String, Any> = { rs ->
+            cols.associate { col ->
+                when (col.datatype) {
+                    PostgresDatatype.TIMESTAMPTZ -> associateOffsetDatetimeWithTimezone(rs, TIMEZONE, col)
+                    else -> associateString(rs, col)
+                }
+            }
+        }
+
+        internal fun sensorDownloadColumns(cols: Set<PostgresColumnDefinition>) = cols.map { col ->
+            when (col.datatype) {
+                PostgresDatatype.TIMESTAMPTZ -> DownloadColumn.offsetDateTimeWithTimezone(col, TIMEZONE)
+                else -> DownloadColumn.string(col)
+            }
+        }
+    }
+
+    fun isStreamingDownloadEnabled(): Boolean = downloadConfiguration.streamingDownload
+
+    /**
+     * The concurrency of a participant download, which is always one if fan out is not configured.
+     */
+    fun getDownloadConcurrency(requested: Int?): Int = fanOutQueryExecutor?.concurrency(requested) ?: 1
+
+    /**
+     * The number of rows in a page of a paged download, bounded by the configured maximum page size.
+     */
+    fun getDownloadPageSize(requested: Int?): Int {
+        return (requested ?: downloadConfiguration.downloadPageSize)
+            .coerceIn(1, downloadConfiguration.maxDownloadPageSize.coerceAtLeast(1))
+    }
+
+    private fun slices(
+        participantIds: Set<String>,
+        startDateTime: OffsetDateTime,
+        endDateTime: OffsetDateTime,
+        concurrency: Int
+    ): List<QuerySlice> {
+        val request = QuerySlice(participantIds, startDateTime, endDateTime)
+        return if (fanOutQueryExecutor == null || concurrency <= 1) {
+            listOf(request)
+        } else {
+            request.split(
+                downloadConfiguration.downloadParticipantsPerSlice,
+                downloadConfiguration.downloadDaysPerSlice
+            )
+        }
+    }
+
+    private fun participantsIterable(
+        dataSourceName: String,
+        hds: HikariDataSource,
+        sql: String,
+        slices: List<QuerySlice>,
+        concurrency: Int,
+        bind: (Connection, PreparedStatement, QuerySlice) -> Unit,
+        read: (ResultSet) -> Map<String, Any>
+    ): Iterable<Map<String, Any>> {
+        if (slices.size == 1) {
+            val slice = slices.single()
+            return BasePostgresIterable<Map<String, Any>>(
+                PreparedStatementHolderSupplier(hds, sql, FETCH_SIZE) { ps -> bind(ps.connection, ps, slice) },
+                read
+            )
+        }
+
+        val executor = checkNotNull(fanOutQueryExecutor) { "Fan out downloads are not configured." }
+        return Iterable {
+            executor.execute<Map<String, Any>>(
+                dataSourceName,
+                hds,
+                slices,
+                concurrency,
+                downloadConfiguration.downloadSliceBufferSize
+            ) { slice, emit ->
+                val bindSlice = { connection: Connection, ps: PreparedStatement -> bind(connection, ps, slice) }
+                FanOutQueryExecutor.query(hds, sql, FETCH_SIZE, bindSlice) { rs ->
+                    while (rs.next()) {
+                        emit(read(rs))
+                    }
+                }
+            }
+        }
+    }
+
+    private fun rowDownload(
+        dataSourceName: String,
+        hds: HikariDataSource,
+        sql: String,
+        columns: List<DownloadColumn>,
+        slices: List<QuerySlice>,
+        concurrency: Int,
+        bind: (Connection, PreparedStatement, QuerySlice) -> Unit
+    ): PostgresRowDownload {
+        if (slices.size == 1) {
+            val slice = slices.single()
+            return PostgresRowDownload(hds, sql, columns, downloadConfiguration.fetchSize) { connection, ps ->
+                bind(connection, ps, slice)
+            }
+        }
+
+        return FanOutRowDownload(
+            checkNotNull(fanOutQueryExecutor) { "Fan out downloads are not configured." },
+            dataSourceName,
+            hds,
+            sql,
+            columns,
+            downloadConfiguration.fetchSize,
+            slices,
+            concurrency,
+            downloadConfiguration.downloadSliceBufferSize,
+            bind
+        )
+    }
+
+    /**
+     * Binds the study, participants and time range of a slice of an event storage query.
+     */
+    private fun bindEventStorageSlice(studyId: UUID): (Connection, PreparedStatement, QuerySlice) -> Unit {
+        return { connection, ps, slice ->
+            var index = 0
+            ps.setString(++index, studyId.toString())
+            ps.setArray(++index, PostgresArrays.createTextArray(connection, slice.participantIds))
+            ps.setObject(++index, slice.startDateTime)
+            ps.setObject(++index, slice.endDateTime)
+        }
+    }
+
+    private fun bindAppUsageSurveySlice(studyId: UUID): (Connection, PreparedStatement, QuerySlice) -> Unit {
+        return { connection, ps, slice ->
+            var index = 0
+            ps.setObject(++index, studyId)
+            ps.setArray(++index, PostgresArrays.createTextArray(connection, slice.participantIds))
+            ps.setObject(++index, slice.startDateTime)
+            ps.setObject(++index, slice.endDateTime)
+        }
+    }
+
+    private fun bindSensorSlice(
+        studyId: UUID,
+        sensors: Set<SensorType>
+    ): (Connection, PreparedStatement, QuerySlice) -> Unit {
+        return { connection, ps, slice ->
+            var index = 0
+            ps.setString(++index, studyId.toString())
+            ps.setArray(++index, PostgresArrays.createTextArray(connection, slice.participantIds))
+            ps.setArray(++index, PostgresArrays.createTextArray(connection, sensors.map { it.name }))
+            ps.setObject(++index, slice.startDateTime)
+            ps.setObject(++index, slice.endDateTime)
+        }
     }
 
     private fun getParticipantDataHelper(
@@ -185,7 +446,8 @@ class DataDownloadService(
         participantIds: Set<String>,
         sensors: Set<SensorType>,
         startDateTime: OffsetDateTime,
-        endDateTime: OffsetDateTime
+        endDateTime: OffsetDateTime,
+        concurrency: Int
     ): Iterable<Map<String, Any>> {
         if (sensors.isEmpty()) {
             logger.warn(
@@ -196,32 +458,21 @@ class DataDownloadService(
             return listOf()
         }
 
-        val (_, hds) = storageResolver.resolveAndGetFlavor(studyId)
+        val dataSourceName = storageResolver.resolveDataSourceName(studyId)
+        val (_, hds) = storageResolver.getDataSource(dataSourceName)
         val colsAndSql = getSensorDataColsAndSql(sensors)
         val cols = colsAndSql.first
         val sql = colsAndSql.second
 
-        val iterable = BasePostgresIterable<Map<String, Any>>(
-            PreparedStatementHolderSupplier(
-                hds,
-                sql,
-                FETCH_SIZE
-            ) { ps ->
-                var index = 0
-                ps.setString(++index, studyId.toString())
-                ps.setArray(++index, PostgresArrays.createTextArray(hds.connection, participantIds))
-                ps.setArray(++index, PostgresArrays.createTextArray(hds.connection, sensors.map { it.name }))
-                ps.setObject(++index, startDateTime)
-                ps.setObject(++index, endDateTime)
-            }
-        ) { rs ->
-            cols.associate { col ->
-                when (col.datatype) {
-                    PostgresDatatype.TIMESTAMPTZ -> associateOffsetDatetimeWithTimezone(rs, TIMEZONE, col)
-                    else -> associateString(rs, col)
-                }
-            }
-        }
+        val iterable = participantsIterable(
+            dataSourceName,
+            hds,
+            sql,
+            slices(participantIds, startDateTime, endDateTime, concurrency),
+            concurrency,
+            bindSensorSlice(studyId, sensors),
+            sensorReader(cols)
+        )
 
         return PostgresDownloadWrapper(iterable).withColumnAdvice(cols.map { it.name })
     }
@@ -230,33 +481,20 @@ class DataDownloadService(
         studyId: UUID,
         participantIds: Set<String>,
         startDateTime: OffsetDateTime,
-        endDateTime: OffsetDateTime
+        endDateTime: OffsetDateTime,
+        concurrency: Int
     ): Iterable<Map<String, Any>> {
 
         val hds = storageResolver.getPlatformStorage()
-        val iterable = BasePostgresIterable<Map<String, Any>>(
-            PreparedStatementHolderSupplier(
-                hds,
-                APP_USAGE_SURVEY_SQL,
-                FETCH_SIZE
-            ) { ps ->
-                var index = 0
-                ps.setObject(++index, studyId)
-                ps.setArray(++index, PostgresArrays.createTextArray(hds.connection, participantIds))
-                ps.setObject(++index, startDateTime)
-                ps.setObject(++index, endDateTime)
-            }
-        ) { rs ->
-            mapOf(
-                associateObject(rs, STUDY_ID, UUID::class.java),
-                associateString(rs, PARTICIPANT_ID),
-                associateString(rs, APPLICATION_LABEL),
-                associateString(rs, APP_PACKAGE_NAME),
-                associateOffsetDatetimeWithTimezone(rs, TIMEZONE, TIMESTAMP),
-                associateString(rs, TIMEZONE),
-                associateString(rs, APP_USERS)
-            )
-        }
+        val iterable = participantsIterable(
+            storageResolver.getPlatformStorageName(),
+            hds,
+            APP_USAGE_SURVEY_SQL,
+            slices(participantIds, startDateTime, endDateTime, concurrency),
+            concurrency,
+            bindAppUsageSurveySlice(studyId),
+            ::readAppUsageSurvey
+        )
 
         return PostgresDownloadWrapper(iterable).withColumnAdvice(APP_USAGE_SURVEY.columns.map { it.name })
     }
@@ -265,32 +503,20 @@ class DataDownloadService(
         studyId: UUID,
         participantIds: Set<String>,
         startDateTime: OffsetDateTime,
-        endDateTime: OffsetDateTime
+        endDateTime: OffsetDateTime,
+        concurrency: Int
     ): Iterable<Map<String, Any>> {
-        val (_, hds) = storageResolver.resolveAndGetFlavor(studyId)
-        val pgIter = BasePostgresIterable<Map<String, Any>>(
-            PreparedStatementHolderSupplier(
-                hds,
-                CHRONICLE_USAGE_EVENT_SQL,
-                FETCH_SIZE
-            ) { ps ->
-                var index = 0
-                ps.setString(++index, studyId.toString())
-                ps.setArray(++index, PostgresArrays.createTextArray(hds.connection, participantIds))
-                ps.setObject(++index, startDateTime)
-                ps.setObject(++index, endDateTime)
-            }) { rs ->
-            mapOf(
-                associateString(rs, STUDY_ID),
-                associateString(rs, PARTICIPANT_ID),
-                associateString(rs, APP_PACKAGE_NAME),
-                associateString(rs, INTERACTION_TYPE),
-                associateOffsetDatetimeWithTimezone(rs, TIMEZONE, TIMESTAMP),
-                associateString(rs, TIMEZONE),
-                associateString(rs, USERNAME),
-                associateString(rs, APPLICATION_LABEL)
-            )
-        }
+        val dataSourceName = storageResolver.resolveDataSourceName(studyId)
+        val (_, hds) = storageResolver.getDataSource(dataSourceName)
+        val pgIter = participantsIterable(
+            dataSourceName,
+            hds,
+            CHRONICLE_USAGE_EVENT_SQL,
+            slices(participantIds, startDateTime, endDateTime, concurrency),
+            concurrency,
+            bindEventStorageSlice(studyId),
+            ::readUsageEvent
+        )
 
         return PostgresDownloadWrapper(pgIter).withColumnAdvice(CHRONICLE_USAGE_EVENTS.columns.map { it.name })
     }
@@ -299,42 +525,23 @@ class DataDownloadService(
         studyId: UUID,
         participantIds: Set<String>,
         startDateTime: OffsetDateTime,
-        endDateTime: OffsetDateTime
+        endDateTime: OffsetDateTime,
+        concurrency: Int
     ): Iterable<Map<String, Any>> {
-        val (_, hds) = storageResolver.resolveAndGetFlavor(studyId)
+        val dataSourceName = storageResolver.resolveDataSourceName(studyId)
+        val (_, hds) = storageResolver.getDataSource(dataSourceName)
 
-        val resultSetAwareCols = PREPROCESSED_USAGE_EVENTS.columns.map {
-            val name = it.name.replace("\"", "")
-            PostgresColumnDefinition(name, it.datatype)
-        }
-        val pgIterable = BasePostgresIterable<Map<String, Any>>(
-            PreparedStatementHolderSupplier(
-                hds,
-                PREPROCESSED_DATA_SQL,
-                FETCH_SIZE
-            ) { ps ->
-                var index = 0
-                ps.setString(++index, studyId.toString())
-                ps.setArray(++index, PostgresArrays.createTextArray(hds.connection, participantIds))
-                ps.setObject(++index, startDateTime)
-                ps.setObject(++index, endDateTime)
-            }
-        ) { rs ->
-            resultSetAwareCols.associate {
-                when(it.datatype) {
-                    PostgresDatatype.TEXT -> associateString(rs, it)
-                    PostgresDatatype.TEXT_128 -> associateString(rs, it)
-                    PostgresDatatype.TEXT_256 -> associateString(rs, it)
-                    PostgresDatatype.TIMESTAMPTZ -> associateOffsetDatetimeWithTimezone(rs, APP_TIMEZONE, it)
-                    PostgresDatatype.TEXT_UUID -> associateString(rs, it)
-                    PostgresDatatype.INTEGER -> associateInteger(rs, it)
-                    PostgresDatatype.DOUBLE -> associateDouble(rs, it)
-                    else -> throw RuntimeException("Invalid column type: ${it.datatype}")
-                }
-            }
-        }
+        val pgIterable = participantsIterable(
+            dataSourceName,
+            hds,
+            PREPROCESSED_DATA_SQL,
+            slices(participantIds, startDateTime, endDateTime, concurrency),
+            concurrency,
+            bindEventStorageSlice(studyId),
+            ::readPreprocessedUsageEvent
+        )
 
-        return PostgresDownloadWrapper(pgIterable).withColumnAdvice(resultSetAwareCols.map { it.name })
+        return PostgresDownloadWrapper(pgIterable).withColumnAdvice(PREPROCESSED_RESULT_SET_COLUMNS.map { it.name })
     }
 
     override fun getQuestionnaireResponses(
@@ -367,4 +574,173 @@ class DataDownloadService(
 
         return PostgresDownloadWrapper(iterable).withColumnAdvice(cols.map { it.name })
     }
+
+    override fun getParticipantsUsageEventsRows(
+        studyId: UUID,
+        participantIds: Set<String>,
+        startDateTime: OffsetDateTime,
+        endDateTime: OffsetDateTime,
+        concurrency: Int
+    ): PostgresRowDownload {
+        val dataSourceName = storageResolver.resolveDataSourceName(studyId)
+        val (_, hds) = storageResolver.getDataSource(dataSourceName)
+        return rowDownload(
+            dataSourceName,
+            hds,
+            CHRONICLE_USAGE_EVENT_SQL,
+            USAGE_EVENTS_DOWNLOAD_COLUMNS,
+            slices(participantIds, startDateTime, endDateTime, concurrency),
+            concurrency,
+            bindEventStorageSlice(studyId)
+        )
+    }
+
+    override fun getPreprocessedUsageEventsRows(
+        studyId: UUID,
+        participantIds: Set<String>,
+        startDateTime: OffsetDateTime,
+        endDateTime: OffsetDateTime,
+        concurrency: Int
+    ): PostgresRowDownload {
+        val dataSourceName = storageResolver.resolveDataSourceName(studyId)
+        val (_, hds) = storageResolver.getDataSource(dataSourceName)
+        return rowDownload(
+            dataSourceName,
+            hds,
+            PREPROCESSED_DATA_SQL,
+            PREPROCESSED_DOWNLOAD_COLUMNS,
+            slices(participantIds, startDateTime, endDateTime, concurrency),
+            concurrency,
+            bindEventStorageSlice(studyId)
+        )
+    }
+
+    override fun getParticipantsAppUsageSurveyRows(
+        studyId: UUID,
+        participantIds: Set<String>,
+        startDateTime: OffsetDateTime,
+        endDateTime: OffsetDateTime,
+        concurrency: Int
+    ): PostgresRowDownload {
+        return rowDownload(
+            storageResolver.getPlatformStorageName(),
+            storageResolver.getPlatformStorage(),
+            APP_USAGE_SURVEY_SQL,
+            APP_USAGE_SURVEY_DOWNLOAD_COLUMNS,
+            slices(participantIds, startDateTime, endDateTime, concurrency),
+            concurrency,
+            bindAppUsageSurveySlice(studyId)
+        )
+    }
+
+    override fun getParticipantsSensorRows(
+        studyId: UUID,
+        participantIds: Set<String>,
+        sensors: Set<SensorType>,
+        startDateTime: OffsetDateTime,
+        endDateTime: OffsetDateTime,
+        concurrency: Int
+    ): PostgresRowDownload {
+        if (sensors.isEmpty()) {
+            logger.warn(
+                "study does not have any configured sensors" + ChronicleServerUtil.STUDY_PARTICIPANTS,
+                studyId,
+                participantIds
+            )
+        }
+
+        val dataSourceName = storageResolver.resolveDataSourceName(studyId)
+        val (_, hds) = storageResolver.getDataSource(dataSourceName)
+        val (cols, sql) = getSensorDataColsAndSql(sensors)
+        return rowDownload(
+            dataSourceName,
+            hds,
+            sql,
+            sensorDownloadColumns(cols),
+            slices(participantIds, startDateTime, endDateTime, concurrency),
+            concurrency,
+            bindSensorSlice(studyId, sensors)
+        )
+    }
+
+    override fun getParticipantsDataPage(
+        studyId: UUID,
+        dataType: ParticipantDataType,
+        participantIds: Set<String>,
+        sensors: Set<SensorType>,
+        startDateTime: OffsetDateTime,
+        endDateTime: OffsetDateTime,
+        pageToken: String?,
+        pageSize: Int
+    ): ParticipantDataPage {
+        val slice = QuerySlice(participantIds, startDateTime, endDateTime)
+        return when (dataType) {
+            ParticipantDataType.UsageEvents -> readPage(
+                storageResolver.resolveAndGetFlavor(studyId).second,
+                USAGE_EVENTS_PAGE_QUERY,
+                pageToken,
+                pageSize,
+                { connection, ps -> bindEventStorageSlice(studyId)(connection, ps, slice) },
+                ::readUsageEvent
+            )
+
+            ParticipantDataType.Preprocessed -> readPage(
+                storageResolver.resolveAndGetFlavor(studyId).second,
+                PREPROCESSED_PAGE_QUERY,
+                pageToken,
+                pageSize,
+                { connection, ps -> bindEventStorageSlice(studyId)(connection, ps, slice) },
+                ::readPreprocessedUsageEvent
+            )
+
+            ParticipantDataType.AppUsageSurvey -> readPage(
+                storageResolver.getPlatformStorage(),
+                APP_USAGE_SURVEY_PAGE_QUERY,
+                pageToken,
+                pageSize,
+                { connection, ps -> bindAppUsageSurveySlice(studyId)(connection, ps, slice) },
+                ::readAppUsageSurvey
+            )
+
+            ParticipantDataType.IOSSensor -> {
+                if (sensors.isEmpty()) {
+                    return ParticipantDataPage(listOf(), null, null)
+                }
+                val (cols, sql) = getSensorDataColsAndSql(sensors)
+                readPage(
+                    storageResolver.resolveAndGetFlavor(studyId).second,
+                    KeysetPageQuery(sql, 5, cols, RECORDED_DATE_TIME, null),
+                    pageToken,
+                    pageSize,
+                    { connection, ps -> bindSensorSlice(studyId, sensors)(connection, ps, slice) },
+                    sensorReader(cols)
+                )
+            }
+        }
+    }
+
+    private fun readPage(
+        hds: HikariDataSource,
+        query: KeysetPageQuery,
+        pageToken: String?,
+        pageSize: Int,
+        bind: (Connection, PreparedStatement) -> Unit,
+        readRow: (ResultSet) -> Map<String, Any>
+    ): ParticipantDataPage {
+        val token = if (pageToken == null) {
+            //Postgres stores timestamps with microsecond precision, which is also the precision of encoded tokens.
+            val now = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.MICROS)
+            DownloadPageToken.first(if (query.watermarkColumn == null) null else now)
+        } else {
+            DownloadPageToken.decode(pageToken)
+        }
+
+        return hds.connection.use { connection ->
+            connection.prepareStatement(query.sql).use { ps ->
+                bind(connection, ps)
+                query.bind(ps, token, pageSize)
+                ps.executeQuery().use { rs -> query.read(rs, token, pageSize, readRow) }
+            }
+        }
+    }
 }
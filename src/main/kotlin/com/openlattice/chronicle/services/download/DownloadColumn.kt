@@ -0,0 +1,119 @@
+package com.openlattice.chronicle.services.download
+
+import com.fasterxml.jackson.core.JsonGenerator
+import com.geekbeast.postgres.PostgresColumnDefinition
+import com.geekbeast.postgres.PostgresDatatype
+import com.openlattice.chronicle.constants.OutputConstants
+import java.sql.ResultSet
+import java.time.OffsetDateTime
+import java.time.ZoneId
+import java.time.format.DateTimeFormatter
+import java.util.*
+
+/**
+ * Writes the current row of a result set for a single column of a download.
+ */
+fun interface ColumnWriter {
+    fun write(rs: ResultSet, generator: JsonGenerator)
+}
+
+/**
+ * A column of a streaming download. Each column is bound once per result set, which resolves the column index and
+ * picks the typed getter for the column, so writing a row does not look up columns by name or box values into a map.
+ *
+ * Values are written exactly as the map based download renders them, so the csv and json output of both paths match.
+ *
+ * @param present False for columns that are part of the csv header but never selected. These are written as empty
+ * csv cells and omitted from json objects.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class DownloadColumn private constructor(
+    val name: String,
+    val datatype: PostgresDatatype,
+    val present: Boolean,
+    private val binder: (ResultSet, ZoneIdCache) -> ColumnWriter,
+) {
+    companion object {
+        private val EMPTY = ColumnWriter { _, generator -> generator.writeString("") }
+
+        @JvmStatic
+        fun string(pcd: PostgresColumnDefinition) = DownloadColumn(pcd.name, pcd.datatype, true) { rs, _ ->
+            val index = rs.findColumn(pcd.name)
+            ColumnWriter { row, generator ->
+                val value = row.getString(index)
+                if (value == null) generator.writeNull() else generator.writeString(value)
+            }
+        }
+
+        @JvmStatic
+        fun integer(pcd: PostgresColumnDefinition) = DownloadColumn(pcd.name, pcd.datatype, true) { rs, _ ->
+            val index = rs.findColumn(pcd.name)
+            ColumnWriter { row, generator -> generator.writeNumber(row.getInt(index)) }
+        }
+
+        @JvmStatic
+        fun double(pcd: PostgresColumnDefinition) = DownloadColumn(pcd.name, pcd.datatype, true) { rs, _ ->
+            val index = rs.findColumn(pcd.name)
+            ColumnWriter { row, generator -> generator.writeNumber(row.getDouble(index)) }
+        }
+
+        @JvmStatic
+        fun uuid(pcd: PostgresColumnDefinition) = DownloadColumn(pcd.name, pcd.datatype, true) { rs, _ ->
+            val index = rs.findColumn(pcd.name)
+            ColumnWriter { row, generator ->
+                val value = row.getObject(index, UUID::class.java)
+                if (value == null) generator.writeNull() else generator.writeString(value.toString())
+            }
+        }
+
+        @JvmStatic
+        fun offsetDateTime(pcd: PostgresColumnDefinition) = DownloadColumn(pcd.name, pcd.datatype, true) { rs, _ ->
+            val index = rs.findColumn(pcd.name)
+            ColumnWriter { row, generator ->
+                val odt = row.getObject(index, OffsetDateTime::class.java)
+                if (odt == null) generator.writeNull()
+                else generator.writeString(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(odt))
+            }
+        }
+
+        /**
+         * A timestamp rendered in the timezone recorded in [timezoneColumn], falling back to the default timezone.
+         * Missing timestamps are written as an empty string.
+         */
+        @JvmStatic
+        fun offsetDateTimeWithTimezone(
+            pcd: PostgresColumnDefinition,
+            timezoneColumn: PostgresColumnDefinition,
+        ) = DownloadColumn(pcd.name, pcd.datatype, true) { rs, zoneIds ->
+            val index = rs.findColumn(pcd.name)
+            val timezoneIndex = rs.findColumn(timezoneColumn.name)
+            ColumnWriter { row, generator ->
+                val odt = row.getObject(index, OffsetDateTime::class.java)
+                if (odt == null) {
+                    generator.writeString("")
+                } else {
+                    val zoneId = zoneIds.get(row.getString(timezoneIndex))
+                    generator.writeString(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(odt.atZoneSameInstant(zoneId)))
+                }
+            }
+        }
+
+        @JvmStatic
+        fun absent(pcd: PostgresColumnDefinition) = DownloadColumn(pcd.name, pcd.datatype, false) { _, _ -> EMPTY }
+    }
+
+    fun bind(rs: ResultSet, zoneIds: ZoneIdCache): ColumnWriter = binder(rs, zoneIds)
+}
+
+/**
+ * Caches parsed timezones for the lifetime of a single download. Not thread safe.
+ */
+class ZoneIdCache {
+    private val zoneIds = HashMap<String, ZoneId>()
+
+    fun get(timezone: String?): ZoneId {
+        val id = timezone ?: OutputConstants.DEFAULT_TIMEZONE
+        return zoneIds.getOrPut(id) { ZoneId.of(id) }
+    }
+}
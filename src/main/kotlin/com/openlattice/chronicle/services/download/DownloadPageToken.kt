@@ -0,0 +1,78 @@
+package com.openlattice.chronicle.services.download
+
+import java.time.Instant
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+import java.util.*
+
+/**
+ * Where the next page of a paged participant data download starts. The page starts at the first row ordered after
+ * [participantId] and [timestamp], after skipping the first [offset] rows that have exactly that participant and
+ * timestamp.
+ *
+ * @param watermark The upload time of the snapshot being paged through. Rows uploaded after the watermark are excluded
+ * from every page. Null for data types that do not record an upload time.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+data class DownloadPageToken(
+    val participantId: String,
+    val timestamp: OffsetDateTime,
+    val offset: Int,
+    val watermark: OffsetDateTime?,
+) {
+    companion object {
+        private const val SEPARATOR = "|"
+
+        /**
+         * The token of the first page, which starts before every row.
+         */
+        @JvmStatic
+        fun first(watermark: OffsetDateTime?): DownloadPageToken {
+            return DownloadPageToken("", OffsetDateTime.MIN, 0, watermark)
+        }
+
+        @JvmStatic
+        fun decode(token: String): DownloadPageToken {
+            val parts = try {
+                String(Base64.getUrlDecoder().decode(token), Charsets.UTF_8).split(SEPARATOR, limit = 4)
+            } catch (ex: IllegalArgumentException) {
+                listOf()
+            }
+            require(parts.size == 4) { "Invalid page token." }
+
+            val (timestamp, offset, watermark, participantId) = parts
+            return DownloadPageToken(
+                participantId,
+                parseInstant(timestamp),
+                requireNotNull(offset.toIntOrNull()) { "Invalid page token." },
+                if (watermark.isEmpty()) null else parseInstant(watermark)
+            )
+        }
+
+        private fun parseInstant(value: String): OffsetDateTime {
+            val epochMicros = requireNotNull(value.toLongOrNull()) { "Invalid page token." }
+            val instant = Instant.ofEpochSecond(
+                Math.floorDiv(epochMicros, 1_000_000L),
+                Math.floorMod(epochMicros, 1_000_000L) * 1_000L
+            )
+            return OffsetDateTime.ofInstant(instant, ZoneOffset.UTC)
+        }
+
+        private fun formatInstant(value: OffsetDateTime): String {
+            val instant = value.toInstant()
+            return (instant.epochSecond * 1_000_000L + instant.nano / 1_000).toString()
+        }
+    }
+
+    /**
+     * Encodes the token as url safe text. Timestamps are encoded with microsecond precision, which is the precision
+     * postgres stores them with.
+     */
+    fun encode(): String {
+        val watermarkValue = watermark?.let { formatInstant(it) } ?: ""
+        val value = listOf(formatInstant(timestamp), offset.toString(), watermarkValue, participantId)
+            .joinToString(SEPARATOR)
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.toByteArray(Charsets.UTF_8))
+    }
+}
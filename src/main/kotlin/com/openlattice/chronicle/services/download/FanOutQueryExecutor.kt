@@ -0,0 +1,277 @@
+package com.openlattice.chronicle.services.download
+
+import com.codahale.metrics.Meter
+import com.codahale.metrics.MetricRegistry
+import com.codahale.metrics.Timer
+import com.openlattice.chronicle.configuration.ChronicleDownloadConfiguration
+import com.zaxxer.hikari.HikariDataSource
+import org.slf4j.LoggerFactory
+import java.io.Closeable
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.BlockingQueue
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+
+/**
+ * Runs a download as a list of [QuerySlice] subqueries and merges their results into a single stream, in slice order.
+ *
+ * Each data source gets a fixed number of permits, sized from the maximum size of its connection pool less
+ * [ChronicleDownloadConfiguration.downloadReservedConnections], which are shared by all downloads against that data
+ * source. A download runs at most its requested concurrency of subqueries at once. The first slice that has not been
+ * read yet is always started, waiting for a permit if necessary, while slices after it only start if a permit is free.
+ * A download therefore always makes progress and never holds permits while waiting for one.
+ *
+ * Running subqueries read up to [ChronicleDownloadConfiguration.downloadSliceBufferSize] rows ahead of the response.
+ * A subquery with a full buffer waits for as long as the consumer keeps reading rows, even while the consumer is
+ * still reading earlier slices. Once the consumer has not asked for a row for
+ * [ChronicleDownloadConfiguration.downloadStallTimeoutMillis], for example because the client went away, running
+ * subqueries fail and release their connections. Closing the iterator cancels the download right away.
+ *
+ * For each data source this records
+ *
+ * - a slice timer with the time from starting a subquery until all of its rows were handed off
+ * - a first row timer with the time from starting a subquery until its first row was read
+ * - a permit wait timer with the time downloads waited for a permit
+ * - a meter of failed subqueries
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class FanOutQueryExecutor(
+    private val downloadConfiguration: ChronicleDownloadConfiguration,
+    private val metricRegistry: MetricRegistry,
+) {
+    companion object {
+        private val logger = LoggerFactory.getLogger(FanOutQueryExecutor::class.java)
+        private val END = Any()
+
+        @JvmStatic
+        fun metricName(dataSourceName: String, name: String): String {
+            return MetricRegistry.name(FanOutQueryExecutor::class.java, dataSourceName, name)
+        }
+
+        /**
+         * Runs a single query with the given fetch size and reads its result set.
+         */
+        @JvmStatic
+        fun <R> query(
+            hds: HikariDataSource,
+            sql: String,
+            fetchSize: Int,
+            bind: (Connection, PreparedStatement) -> Unit,
+            read: (ResultSet) -> R
+        ): R {
+            return hds.connection.use { connection ->
+                //Postgres only honors the fetch size inside of a transaction.
+                connection.autoCommit = false
+                try {
+                    connection.prepareStatement(sql).use { ps ->
+                        ps.fetchSize = fetchSize
+                        bind(connection, ps)
+                        ps.executeQuery().use { rs -> read(rs) }
+                    }
+                } finally {
+                    connection.autoCommit = true
+                }
+            }
+        }
+    }
+
+    private val executor = Executors.newCachedThreadPool()
+    private val permits = ConcurrentHashMap<String, Semaphore>()
+    private val stallTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(downloadConfiguration.downloadStallTimeoutMillis)
+
+    //Waits are checked several times per stall timeout, so a waiting consumer never looks stalled.
+    private val pollMillis = (downloadConfiguration.downloadStallTimeoutMillis / 4).coerceIn(1, 1000)
+
+    /**
+     * An iterator over the values of a download. It must be closed if iteration stops early, for example because the
+     * response failed, so that running subqueries stop and release their connections.
+     */
+    interface SliceIterator<T> : Iterator<T>, Closeable
+
+    /**
+     * The concurrency of a download, defaulting to the configured concurrency and capped at the configured maximum.
+     */
+    fun concurrency(requested: Int?): Int {
+        return (requested ?: downloadConfiguration.downloadConcurrency)
+            .coerceIn(1, downloadConfiguration.maxDownloadConcurrency.coerceAtLeast(1))
+    }
+
+    /**
+     * @param dataSourceName The name the data source is configured under, which permits and metrics are keyed by.
+     * @param bufferSize The number of values each running slice may produce ahead of the consumer.
+     * @param query Runs the subquery for a slice on the calling thread, passing each value it produces to the callback
+     * in order.
+     * @return An iterator over the values of all slices, in slice order. Subqueries only start once iteration starts.
+     * Closing it cancels the download.
+     */
+    fun <T> execute(
+        dataSourceName: String,
+        hds: HikariDataSource,
+        slices: List<QuerySlice>,
+        concurrency: Int,
+        bufferSize: Int,
+        query: (QuerySlice, (T) -> Unit) -> Unit
+    ): SliceIterator<T> {
+        val dataSourcePermits = permits.computeIfAbsent(dataSourceName) {
+            val size = (hds.maximumPoolSize - downloadConfiguration.downloadReservedConnections).coerceAtLeast(1)
+            logger.info("Allowing {} concurrent download subqueries against data source {}", size, dataSourceName)
+            Semaphore(size, true)
+        }
+        return FanOutIterator(
+            dataSourceName,
+            dataSourcePermits,
+            slices,
+            concurrency.coerceAtLeast(1),
+            bufferSize.coerceAtLeast(1),
+            query
+        )
+    }
+
+    private inner class FanOutIterator<T>(
+        private val dataSourceName: String,
+        private val permits: Semaphore,
+        private val slices: List<QuerySlice>,
+        private val concurrency: Int,
+        private val bufferSize: Int,
+        private val query: (QuerySlice, (T) -> Unit) -> Unit
+    ) : SliceIterator<T> {
+        private val sliceTimer: Timer = metricRegistry.timer(metricName(dataSourceName, "slice"))
+        private val firstRowTimer: Timer = metricRegistry.timer(metricName(dataSourceName, "first-row"))
+        private val permitWaitTimer: Timer = metricRegistry.timer(metricName(dataSourceName, "permit-wait"))
+        private val failures: Meter = metricRegistry.meter(metricName(dataSourceName, "failures"))
+
+        private val runs = arrayOfNulls<SliceRun>(slices.size)
+        private var started = 0
+        private var current = 0
+        private var next: Any? = END
+
+        @Volatile
+        private var cancelled = false
+
+        /**
+         * The last time the consumer asked for a value, which running subqueries use to tell a slow consumer from a
+         * stalled one.
+         */
+        @Volatile
+        private var consumedAt = System.nanoTime()
+
+        override fun hasNext(): Boolean {
+            while (next === END) {
+                if (current >= slices.size || cancelled) {
+                    return false
+                }
+                startSlices()
+                val value = runs[current]!!.take()
+                if (value === END) {
+                    runs[current++] = null
+                } else {
+                    next = value
+                }
+            }
+            return true
+        }
+
+        @Suppress("UNCHECKED_CAST")
+        override fun next(): T {
+            if (!hasNext()) {
+                throw NoSuchElementException("No more rows in download.")
+            }
+            val value = next
+            next = END
+            return value as T
+        }
+
+        /**
+         * Cancels the download. Slices that have not started are never started and running subqueries stop the next
+         * time they check for cancellation.
+         */
+        override fun close() {
+            cancelled = true
+            started = slices.size
+            current = slices.size
+            next = END
+            runs.fill(null)
+        }
+
+        private fun startSlices() {
+            while (started < slices.size && started - current < concurrency) {
+                if (started == current) {
+                    permitWaitTimer.time().use { permits.acquire() }
+                } else if (!permits.tryAcquire()) {
+                    return
+                }
+                val run = SliceRun(slices[started])
+                runs[started++] = run
+                executor.execute(run)
+            }
+        }
+
+        private inner class SliceRun(private val slice: QuerySlice) : Runnable {
+            private val queue: BlockingQueue<Any> = ArrayBlockingQueue(bufferSize)
+
+            @Volatile
+            private var failure: Exception? = null
+
+            override fun run() {
+                val startedAt = System.nanoTime()
+                var firstRow = true
+                try {
+                    query(slice) { value ->
+                        if (firstRow) {
+                            firstRowTimer.update(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS)
+                            firstRow = false
+                        }
+                        put(value as Any)
+                    }
+                    put(END)
+                } catch (ex: Exception) {
+                    if (!cancelled) {
+                        logger.error("Download subquery against data source {} failed.", dataSourceName, ex)
+                        failures.mark()
+                    }
+                    failure = ex
+                } finally {
+                    permits.release()
+                    sliceTimer.update(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS)
+                }
+            }
+
+            /**
+             * Waits for room in the buffer for as long as the consumer is making progress on any slice.
+             */
+            private fun put(value: Any) {
+                while (!queue.offer(value, pollMillis, TimeUnit.MILLISECONDS)) {
+                    check(!cancelled) { "Download was cancelled." }
+                    check(System.nanoTime() - consumedAt < stallTimeoutNanos) {
+                        "Timed out waiting for the download to accept rows."
+                    }
+                }
+            }
+
+            /**
+             * Rows that were read before a failure are still returned, since the failure is only checked once the
+             * queue is empty.
+             */
+            fun take(): Any {
+                while (true) {
+                    consumedAt = System.nanoTime()
+                    val value = queue.poll(pollMillis, TimeUnit.MILLISECONDS)
+                    if (value != null) {
+                        return value
+                    }
+                    val ex = failure
+                    if (ex != null) {
+                        cancelled = true
+                        throw IllegalStateException("Unable to download participant data.", ex)
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.openlattice.chronicle.services.download
+
+import com.geekbeast.postgres.PostgresColumnDefinition
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.PARTICIPANT_ID
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.time.OffsetDateTime
+
+/**
+ * Reads a participant data download one page at a time with keyset pagination. Rows are ordered by participant, then
+ * by [timeColumn] and then by every other column, and each page is a short range query that starts where the previous
+ * page ended instead of a cursor held open across requests.
+ *
+ * Event tables have no row id, so rows with the same participant and time are told apart by their position in that
+ * order, which is kept as the offset of the [DownloadPageToken]. Rows that are equal in every column can't be told
+ * apart, so skipping them by position still returns each of them once.
+ *
+ * @param baseSql A query filtering on study, participants and time range, whose parameters are bound first.
+ * @param baseParameters The number of parameters of [baseSql].
+ * @param watermarkColumn The upload time column used to exclude rows uploaded after the first page was read.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class KeysetPageQuery(
+    baseSql: String,
+    private val baseParameters: Int,
+    columns: Collection<PostgresColumnDefinition>,
+    private val timeColumn: PostgresColumnDefinition,
+    val watermarkColumn: PostgresColumnDefinition?,
+) {
+    private val timeColumnLabel = timeColumn.name.replace("\"", "")
+
+    val sql: String = listOfNotNull(
+        baseSql,
+        "AND (${PARTICIPANT_ID.name} > ? OR (${PARTICIPANT_ID.name} = ? AND ${timeColumn.name} >= ?))",
+        watermarkColumn?.let { "AND ${it.name} <= ?" },
+        "ORDER BY " + (listOf(PARTICIPANT_ID.name, timeColumn.name) + columns.map { it.name })
+            .distinct()
+            .joinToString(", "),
+        "LIMIT ?"
+    ).joinToString("\n")
+
+    /**
+     * Binds the start of the page described by [token], after the parameters of the base query.
+     */
+    fun bind(ps: PreparedStatement, token: DownloadPageToken, pageSize: Int) {
+        var index = baseParameters
+        ps.setString(++index, token.participantId)
+        ps.setString(++index, token.participantId)
+        ps.setObject(++index, token.timestamp)
+        if (watermarkColumn != null) {
+            ps.setObject(++index, checkNotNull(token.watermark) { "Page token is missing its watermark." })
+        }
+        ps.setInt(++index, token.offset + pageSize)
+    }
+
+    /**
+     * Reads up to [pageSize] rows starting at [token]. The next page token is only set when the page is full.
+     */
+    fun read(
+        rs: ResultSet,
+        token: DownloadPageToken,
+        pageSize: Int,
+        readRow: (ResultSet) -> Map<String, Any>
+    ): ParticipantDataPage {
+        val rows = ArrayList<Map<String, Any>>(pageSize)
+        var skipped = 0
+        var lastParticipantId = token.participantId
+        var lastTimestamp = token.timestamp
+        var tied = token.offset
+
+        while (rows.size < pageSize && rs.next()) {
+            val participantId = rs.getString(PARTICIPANT_ID.name)
+            val timestamp = rs.getObject(timeColumnLabel, OffsetDateTime::class.java)
+            if (skipped < token.offset && participantId == token.participantId && timestamp.isEqual(token.timestamp)) {
+                skipped++
+                continue
+            }
+
+            rows.add(readRow(rs))
+            if (participantId == lastParticipantId && timestamp.isEqual(lastTimestamp)) {
+                tied++
+            } else {
+                lastParticipantId = participantId
+                lastTimestamp = timestamp
+                tied = 1
+            }
+        }
+
+        val next = if (rows.size == pageSize) {
+            DownloadPageToken(lastParticipantId, lastTimestamp, tied, token.watermark).encode()
+        } else {
+            null
+        }
+        return ParticipantDataPage(rows, next, token.watermark)
+    }
+}
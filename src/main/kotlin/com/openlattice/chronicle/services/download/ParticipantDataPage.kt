@@ -0,0 +1,18 @@
+package com.openlattice.chronicle.services.download
+
+import java.time.OffsetDateTime
+
+/**
+ * A page of a participant data download.
+ *
+ * @param nextPageToken The encoded [DownloadPageToken] of the next page, or null if this is the last page.
+ * @param watermark The upload time of the snapshot the pages are read from. Null for data types that do not record
+ * an upload time.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+data class ParticipantDataPage(
+    val data: List<Map<String, Any>>,
+    val nextPageToken: String?,
+    val watermark: OffsetDateTime?,
+)
@@ -0,0 +1,56 @@
+package com.openlattice.chronicle.services.download
+
+import java.time.OffsetDateTime
+
+/**
+ * The participants and time range covered by a single subquery of a participant data download.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+data class QuerySlice(
+    val participantIds: Set<String>,
+    val startDateTime: OffsetDateTime,
+    val endDateTime: OffsetDateTime,
+) {
+    companion object {
+        /**
+         * Splits the range from [start] to [end] into consecutive ranges of at most [days] days. Ranges that are
+         * unbounded or empty are not split.
+         */
+        @JvmStatic
+        fun timeRanges(
+            start: OffsetDateTime,
+            end: OffsetDateTime,
+            days: Long
+        ): List<Pair<OffsetDateTime, OffsetDateTime>> {
+            if (days <= 0 || start == OffsetDateTime.MIN || end == OffsetDateTime.MAX || !start.isBefore(end)) {
+                return listOf(start to end)
+            }
+
+            val ranges = mutableListOf<Pair<OffsetDateTime, OffsetDateTime>>()
+            var rangeStart = start
+            while (rangeStart.isBefore(end)) {
+                val rangeEnd = rangeStart.plusDays(days)
+                val boundedEnd = if (rangeEnd.isBefore(end)) rangeEnd else end
+                ranges.add(rangeStart to boundedEnd)
+                rangeStart = boundedEnd
+            }
+            return ranges
+        }
+    }
+
+    /**
+     * Splits this slice into slices of at most [participantsPerSlice] participants and [daysPerSlice] days. Slices are
+     * ordered by participant and then by time, so concatenating their results in order groups rows by participant.
+     */
+    fun split(participantsPerSlice: Int, daysPerSlice: Long): List<QuerySlice> {
+        val ranges = timeRanges(startDateTime, endDateTime, daysPerSlice)
+        return participantIds
+            .sorted()
+            .chunked(participantsPerSlice.coerceAtLeast(1))
+            .flatMap { participants ->
+                val participantSet = participants.toSet()
+                ranges.map { (start, end) -> QuerySlice(participantSet, start, end) }
+            }
+    }
+}
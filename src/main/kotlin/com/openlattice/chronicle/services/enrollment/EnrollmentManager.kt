@@ -33,6 +33,18 @@ interface EnrollmentManager {
     fun getOrganizationIdForStudy(studyId: UUID): UUID
     fun getDeviceId(studyId: UUID, participantId: String, sourceDeviceId: String): UUID
 
+    /**
+     * Evicts cached participation status and device registrations for the given participants. Must be called after
+     * the changes have committed, otherwise a concurrent read can cache the old rows again.
+     */
+    fun invalidateParticipants(studyId: UUID, participantIds: Collection<String>)
+
+    /**
+     * Evicts cached participation status and device registrations for all participants in the given studies. Must be
+     * called after the changes have committed.
+     */
+    fun invalidateStudies(studyIds: Collection<UUID>)
+
     fun registerParticipant(
         connection: Connection,
         studyId: UUID,
@@ -1,12 +1,21 @@
 package com.openlattice.chronicle.services.enrollment
 
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.MetricRegistry
 import com.geekbeast.controllers.exceptions.ResourceNotFoundException
 import com.geekbeast.mappers.mappers.ObjectMappers
 import com.geekbeast.postgres.PostgresArrays
 import com.geekbeast.postgres.streams.BasePostgresIterable
 import com.geekbeast.postgres.streams.PreparedStatementHolderSupplier
+import com.hazelcast.core.HazelcastInstance
+import com.hazelcast.map.IMap
+import com.hazelcast.query.Predicate
+import com.hazelcast.query.Predicates
 import com.openlattice.chronicle.data.ParticipationStatus
+import com.openlattice.chronicle.hazelcast.HazelcastMap
 import com.openlattice.chronicle.ids.HazelcastIdGenerationService
+import com.openlattice.chronicle.mapstores.enrollment.DeviceKey
+import com.openlattice.chronicle.mapstores.stats.ParticipantKey
 import com.openlattice.chronicle.participants.Participant
 import com.openlattice.chronicle.postgres.ResultSetAdapters
 import com.openlattice.chronicle.services.candidates.CandidateManager
@@ -41,7 +50,16 @@ class EnrollmentService(
     private val storageResolver: StorageResolver,
     private val idGenerationService: HazelcastIdGenerationService,
     private val candidateManager: CandidateManager,
+    hazelcast: HazelcastInstance,
+    metricRegistry: MetricRegistry,
 ) : EnrollmentManager {
+    private val participationStatuses = HazelcastMap.PARTICIPATION_STATUSES.getMap(hazelcast)
+    private val deviceRegistrations = HazelcastMap.DEVICE_REGISTRATIONS.getMap(hazelcast)
+
+    init {
+        registerNearCacheGauges(metricRegistry, "participation-status", participationStatuses)
+        registerNearCacheGauges(metricRegistry, "device-registrations", deviceRegistrations)
+    }
 
     companion object {
         private val logger = LoggerFactory.getLogger(EnrollmentService::class.java)
@@ -68,7 +86,7 @@ class EnrollmentService(
          * 2. participant id
          * 3. source device id
          */
-        private val GET_DEVICE_ID = """
+        val GET_DEVICE_ID = """
             SELECT ${DEVICE_ID.name} FROM ${DEVICES.name} 
                 WHERE ${STUDY_ID.name} = ? AND ${PARTICIPANT_ID.name} = ? AND ${SOURCE_DEVICE_ID.name} = ? 
         """.trimIndent()
@@ -85,16 +103,6 @@ class EnrollmentService(
             GROUP BY ${STUDY_ID.name}, ${PARTICIPANT_ID.name}
         """.trimIndent()
 
-        /**
-         * 1. study id
-         * 2. participant id
-         * 3. source device id
-         */
-        private val COUNT_DEVICE_ID = """
-            SELECT count(*) FROM ${DEVICES.name} 
-                WHERE ${STUDY_ID.name} = ? AND ${PARTICIPANT_ID.name} = ? AND ${SOURCE_DEVICE_ID.name} = ? 
-        """.trimIndent()
-
         private val COUNT_STUDY_PARTICIPANTS = """
             SELECT count(*) FROM ${STUDY_PARTICIPANTS.name} WHERE ${STUDY_ID.name} = ? AND ${PARTICIPANT_ID.name} = ?
         """.trimIndent()
@@ -121,10 +129,21 @@ class EnrollmentService(
          * 1. study id
          * 2. participant id
          */
-        private val GET_PARTICIPATION_STATUS = """
+        val GET_PARTICIPATION_STATUS = """
             SELECT ${PARTICIPATION_STATUS.name} FROM ${STUDY_PARTICIPANTS.name} WHERE ${STUDY_ID.name} = ? AND ${PARTICIPANT_ID.name} = ?
         """.trimIndent()
 
+        private const val STUDY_ID_ATTRIBUTE = "__key.studyId"
+        private const val PARTICIPANT_ID_ATTRIBUTE = "__key.participantId"
+
+        private fun registerNearCacheGauges(metricRegistry: MetricRegistry, cache: String, map: IMap<*, *>) {
+            metricRegistry.gauge(MetricRegistry.name(EnrollmentService::class.java, cache, "hits")) {
+                Gauge { map.localMapStats.nearCacheStats?.hits ?: 0L }
+            }
+            metricRegistry.gauge(MetricRegistry.name(EnrollmentService::class.java, cache, "misses")) {
+                Gauge { map.localMapStats.nearCacheStats?.misses ?: 0L }
+            }
+        }
     }
 
     override fun registerDevice(
@@ -196,6 +215,7 @@ class EnrollmentService(
                 ps.executeUpdate()
             }
         }
+        deviceRegistrations.evict(DeviceKey(studyId, participantId, sourceDeviceId))
 
         if (insertCount > 0) {
             return deviceId
@@ -210,22 +230,8 @@ class EnrollmentService(
     }
 
     override fun getDeviceId(studyId: UUID, participantId: String, sourceDeviceId: String): UUID {
-        val hds = storageResolver.getPlatformStorage()
-
-        return hds.connection.use { connection ->
-            connection.prepareStatement(GET_DEVICE_ID).use { ps ->
-                ps.setObject(1, studyId)
-                ps.setString(2, participantId)
-                ps.setString(3, sourceDeviceId)
-                ps.executeQuery().use { rs ->
-                    if (rs.next()) {
-                        ResultSetAdapters.deviceId(rs)
-                    } else {
-                        throw ResourceNotFoundException("Unable to find device for study=$studyId, participant=$participantId, sourceDeviceId=$sourceDeviceId")
-                    }
-                }
-            }
-        }
+        return deviceRegistrations[DeviceKey(studyId, participantId, sourceDeviceId)]
+            ?: throw ResourceNotFoundException("Unable to find device for study=$studyId, participant=$participantId, sourceDeviceId=$sourceDeviceId")
     }
 
     override fun registerParticipant(
@@ -249,19 +255,8 @@ class EnrollmentService(
         participantId: String,
         sourceDeviceId: String,
     ): Boolean {
-        val hds = storageResolver.getPlatformStorage()
-
-        return hds.connection.use { connection ->
-            connection.prepareStatement(COUNT_DEVICE_ID).use { ps ->
-                ps.setObject(1, studyId)
-                ps.setString(2, participantId)
-                ps.setString(3, sourceDeviceId)
-                ps.executeQuery().use { rs ->
-                    check(rs.next()) { "No count returned for study=$studyId, participant=$participantId, sourceDeviceId=$sourceDeviceId" }
-                    ResultSetAdapters.count(rs) > 0 //could also check equal to one, but unique index exists in db
-                }
-            }
-        }
+        //Unregistered devices are never cached, so a miss here always falls through to postgres.
+        return deviceRegistrations[DeviceKey(studyId, participantId, sourceDeviceId)] != null
     }
 
     override fun isKnownParticipant(studyId: UUID, participantId: String): Boolean {
@@ -304,20 +299,38 @@ class EnrollmentService(
             participantId
         )
 
-        val hds = storageResolver.getPlatformStorage()
-
-        return hds.connection.use { connection ->
-            connection.prepareStatement(GET_PARTICIPATION_STATUS).use { ps ->
-                ps.setObject(1, studyId)
-                ps.setString(2, participantId)
-                ps.executeQuery().use {
-                    check(it.next()) { "No row returned for study=$studyId, participant=$participantId" }
-                    ResultSetAdapters.participantStatus(it)
-                }
-            }
+        return checkNotNull(participationStatuses[ParticipantKey(studyId, participantId)]) {
+            "No row returned for study=$studyId, participant=$participantId"
         }
     }
 
+    override fun invalidateParticipants(studyId: UUID, participantIds: Collection<String>) {
+        participantIds.forEach { participantId -> participationStatuses.evict(ParticipantKey(studyId, participantId)) }
+        evictDeviceRegistrations(
+            Predicates.and(
+                Predicates.equal(STUDY_ID_ATTRIBUTE, studyId),
+                Predicates.`in`(PARTICIPANT_ID_ATTRIBUTE, *participantIds.toTypedArray())
+            )
+        )
+    }
+
+    override fun invalidateStudies(studyIds: Collection<UUID>) {
+        val studyIdPredicate = Predicates.`in`<ParticipantKey, ParticipationStatus>(
+            STUDY_ID_ATTRIBUTE,
+            *studyIds.toTypedArray()
+        )
+        participationStatuses.keySet(studyIdPredicate).forEach { participationStatuses.evict(it) }
+        evictDeviceRegistrations(Predicates.`in`(STUDY_ID_ATTRIBUTE, *studyIds.toTypedArray()))
+    }
+
+    /**
+     * Only entries that are already in memory can match the predicate, which are exactly the ones that need to be
+     * evicted.
+     */
+    private fun evictDeviceRegistrations(predicate: Predicate<DeviceKey, UUID>) {
+        deviceRegistrations.keySet(predicate).forEach { deviceRegistrations.evict(it) }
+    }
+
     override fun getStudyParticipantIds(studyId: UUID): Set<String> {
         TODO("Not yet implemented")
     }
@@ -6,11 +6,13 @@ import com.geekbeast.postgres.streams.StatementHolderSupplier
 import com.hazelcast.core.HazelcastInstance
 import com.hazelcast.query.Predicates
 import com.openlattice.chronicle.auditing.*
+import com.openlattice.chronicle.configuration.ChronicleComplianceConfiguration
 import com.openlattice.chronicle.data.ParticipationStatus
 import com.openlattice.chronicle.hazelcast.HazelcastMap
 import com.openlattice.chronicle.mapstores.storage.StudyMapstore.Companion.NOTIFY_RESEARCHERS_INDEX
 import com.openlattice.chronicle.notifications.StudyNotificationSettings
 import com.openlattice.chronicle.postgres.ResultSetAdapters
+import com.openlattice.chronicle.services.studies.aggregators.RecentUploadsAggregator
 import com.openlattice.chronicle.sources.SourceDeviceType
 import com.openlattice.chronicle.storage.*
 import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.DEVICES
@@ -21,6 +23,7 @@ import com.openlattice.chronicle.storage.PostgresColumns.Companion.STUDY_ID
 import com.openlattice.chronicle.study.*
 import org.slf4j.LoggerFactory
 import org.springframework.stereotype.Service
+import java.time.OffsetDateTime
 import java.util.*
 
 /**
@@ -32,8 +35,10 @@ class StudyComplianceService(
     private val storageResolver: StorageResolver,
     override val auditingManager: AuditingManager,
     hazelcast: HazelcastInstance,
+    private val complianceConfiguration: ChronicleComplianceConfiguration = ChronicleComplianceConfiguration(),
 ) : StudyComplianceManager, AuditingComponent {
     private val studies = HazelcastMap.STUDIES.getMap(hazelcast)
+    private val participantStats = HazelcastMap.PARTICIPANT_STATS.getMap(hazelcast)
 
     companion object {
         private val logger = LoggerFactory.getLogger(StudyComplianceService::class.java)
@@ -86,7 +91,7 @@ class StudyComplianceService(
         """.trimIndent()
         }
 
-        private fun buildSql(
+        fun buildSql(
             dataTable: String,
             timestampColumn: String,
             enabledStudiesSettings: Map<UUID, Map<StudySettingType, StudySetting>>,
@@ -106,6 +111,21 @@ class StudyComplianceService(
 
         }
 
+        /**
+         * @return The earliest data date that counts as a recent upload for each study.
+         */
+        fun getCutoffs(
+            enabledStudiesSettings: Map<UUID, Map<StudySettingType, StudySetting>>,
+            now: OffsetDateTime = OffsetDateTime.now(),
+        ): Map<UUID, OffsetDateTime> {
+            return enabledStudiesSettings.keys.associateWith { studyId ->
+                val studyDuration = getDurationPolicy(studyId, enabledStudiesSettings)
+                now.minusYears(studyDuration.years.toLong())
+                    .minusMonths(studyDuration.months.toLong())
+                    .minusDays(studyDuration.days.toLong())
+            }
+        }
+
         fun getDurationPolicy(
             studyId: UUID,
             enabledStudiesSettings: Map<UUID, Map<StudySettingType, StudySetting>>,
@@ -135,28 +155,38 @@ class StudyComplianceService(
         }
 
         val activeParticipants = getActiveStudyParticipants(enabledStudiesSettings.keys)
+        val recentUploads = if (complianceConfiguration.statsDriven) {
+            getRecentUploadsFromStats(enabledStudiesSettings)
+        } else {
+            null
+        }
 
         return activeParticipants.flatMap { (sourceDeviceType, participants) ->
             when (sourceDeviceType) {
                 SourceDeviceType.Android -> getStudyParticipantsWithoutRecentUploads(
-                    buildSql(
-                        RedshiftDataTables.CHRONICLE_USAGE_EVENTS.name,
-                        RedshiftColumns.TIMESTAMP.name,
-                        enabledStudiesSettings,
-                        true,
-                        storageResolver.getDefaultEventStorage().first
-                    ), enabledStudiesSettings,
+                    recentUploads?.android ?: getRecentUploadsFromEventStorage(
+                        buildSql(
+                            RedshiftDataTables.CHRONICLE_USAGE_EVENTS.name,
+                            RedshiftColumns.TIMESTAMP.name,
+                            enabledStudiesSettings,
+                            true,
+                            storageResolver.getDefaultEventStorage().first
+                        )
+                    ),
+                    enabledStudiesSettings,
                     participants,
                     sourceDeviceType
                 ).asSequence()
 
                 SourceDeviceType.Ios -> getStudyParticipantsWithoutRecentUploads(
-                    buildSql(
-                        RedshiftDataTables.IOS_SENSOR_DATA.name,
-                        RedshiftColumns.RECORDED_DATE_TIME.name,
-                        enabledStudiesSettings,
-                        true,
-                        storageResolver.getDefaultEventStorage().first
+                    recentUploads?.ios ?: getRecentUploadsFromEventStorage(
+                        buildSql(
+                            RedshiftDataTables.IOS_SENSOR_DATA.name,
+                            RedshiftColumns.RECORDED_DATE_TIME.name,
+                            enabledStudiesSettings,
+                            true,
+                            storageResolver.getDefaultEventStorage().first
+                        )
                     ),
                     enabledStudiesSettings,
                     participants,
@@ -175,6 +205,35 @@ class StudyComplianceService(
             }
     }
 
+    /**
+     * Finds participants with recent uploads from the last android and ios data dates in participant stats. The
+     * aggregation runs on the partitions owned by each member, so it only touches one entry per participant.
+     */
+    private fun getRecentUploadsFromStats(
+        enabledStudiesSettings: Map<UUID, Map<StudySettingType, StudySetting>>,
+    ): RecentUploadsAggregator {
+        return participantStats.aggregate(RecentUploadsAggregator(getCutoffs(enabledStudiesSettings)))
+    }
+
+    /**
+     * Finds participants with recent uploads by grouping the events of every enabled study in event storage.
+     */
+    private fun getRecentUploadsFromEventStorage(sql: String): Map<UUID, Set<String>> {
+        val studyParticipants = mutableMapOf<UUID, MutableSet<String>>()
+        BasePostgresIterable(
+            StatementHolderSupplier(
+                storageResolver.getDefaultEventStorage().second,
+                sql
+            )
+        ) { rs ->
+            UUID.fromString(rs.getString(RedshiftColumns.STUDY_ID.name)) to rs.getString(RedshiftColumns.PARTICIPANT_ID.name)
+        }
+            .forEach { (studyId, participantId) ->
+                studyParticipants.getOrPut(studyId) { mutableSetOf() }.add(participantId)
+            }
+        return studyParticipants
+    }
+
     private fun getStudyParticipantsWithUploads(
         sql: String,
         enabledStudiesSettings: Map<UUID, Map<StudySettingType, StudySetting>>,
@@ -211,25 +270,11 @@ class StudyComplianceService(
     }
 
     private fun getStudyParticipantsWithoutRecentUploads(
-        sql: String,
+        studyParticipants: Map<UUID, Set<String>>,
         enabledStudiesSettings: Map<UUID, Map<StudySettingType, StudySetting>>,
         activeParticipants: Map<UUID, Set<String>>,
         sourceDeviceType: SourceDeviceType,
     ): Map<UUID, List<Pair<String, ComplianceViolation>>> {
-        val studyParticipants = mutableMapOf<UUID, MutableSet<String>>()
-        //Load all participants with recent uploads.
-        BasePostgresIterable(
-            StatementHolderSupplier(
-                storageResolver.getDefaultEventStorage().second,
-                sql
-            )
-        ) { rs ->
-            UUID.fromString(rs.getString(RedshiftColumns.STUDY_ID.name)) to rs.getString(RedshiftColumns.PARTICIPANT_ID.name)
-        }
-            .forEach { (studyId, participantId) ->
-                studyParticipants.getOrPut(studyId) { mutableSetOf() }.add(participantId)
-            }
-
         //Take all active participants and remove any who have recently uploaded data.
         return activeParticipants.mapValues { (studyId, participantIds) ->
             val violation = ComplianceViolation(
@@ -1,6 +1,7 @@
 package com.openlattice.chronicle.services.studies
 
 import com.openlattice.chronicle.data.ParticipationStatus
+import com.openlattice.chronicle.mapstores.stats.ParticipantStatsBatch
 import com.openlattice.chronicle.participants.Participant
 import com.openlattice.chronicle.participants.ParticipantStats
 import com.openlattice.chronicle.sensorkit.SensorType
@@ -31,6 +32,11 @@ interface StudyManager {
     fun getStudySettings(studyId: UUID): Map<StudySettingType, StudySetting>
     fun getStudySettings(studyIds: Collection<UUID>): Map<UUID, Map<StudySettingType, StudySetting>>
     fun insertOrUpdateParticipantStats(stats: ParticipantStats)
+
+    /**
+     * Applies the stats deltas of a whole batch with a single entry processor call, instead of one per delta.
+     */
+    fun insertOrUpdateParticipantStats(batch: ParticipantStatsBatch)
     fun isNotificationsEnabled(studyId: UUID): Boolean
     fun isValidStudy(studyId: UUID): Boolean
     fun refreshStudyCache(studyIds: Set<UUID>)
@@ -40,7 +46,15 @@ interface StudyManager {
      */
     fun registerParticipant(connection: Connection, studyId: UUID, participant: Participant): UUID
     fun registerParticipant(studyId: UUID, participant: Participant): UUID
+
+    /**
+     * Callers of this function must invalidate the enrollment of the studies after they commit changes.
+     */
     fun removeAllParticipantsFromStudies(connection: Connection, studyIds: Collection<UUID>): Int
+
+    /**
+     * Callers of this function must invalidate the enrollment of the participants after they commit changes.
+     */
     fun removeParticipantsFromStudy(connection: Connection, studyId: UUID, participantIds: Collection<String>): Int
     fun removeStudiesFromOrganizations(connection: Connection, studyIds: Collection<UUID>): Int
     fun updateStudy(connection: Connection, studyId: UUID, study: StudyUpdate)
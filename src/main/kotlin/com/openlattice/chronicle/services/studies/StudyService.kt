@@ -8,6 +8,8 @@ import com.geekbeast.postgres.PostgresDatatype
 import com.geekbeast.postgres.streams.BasePostgresIterable
 import com.geekbeast.postgres.streams.PreparedStatementHolderSupplier
 import com.geekbeast.postgres.streams.StatementHolderSupplier
+import com.codahale.metrics.Histogram
+import com.codahale.metrics.MetricRegistry
 import com.hazelcast.core.HazelcastInstance
 import com.openlattice.chronicle.auditing.*
 import com.openlattice.chronicle.authorization.*
@@ -18,6 +20,8 @@ import com.openlattice.chronicle.hazelcast.HazelcastMap
 import com.openlattice.chronicle.ids.HazelcastIdGenerationService
 import com.openlattice.chronicle.ids.IdConstants
 import com.openlattice.chronicle.mapstores.stats.ParticipantKey
+import com.openlattice.chronicle.mapstores.stats.ParticipantStatsBatch
+import com.openlattice.chronicle.mapstores.stats.ParticipantStatsBatchMerger
 import com.openlattice.chronicle.mapstores.stats.ParticipantStatsMerger
 import com.openlattice.chronicle.notifications.DeliveryType
 import com.openlattice.chronicle.notifications.NotificationType
@@ -95,9 +99,13 @@ class StudyService(
     private val studyLimitsMgr: StudyLimitsManager,
     override val auditingManager: AuditingManager,
     hazelcast: HazelcastInstance,
+    metricRegistry: MetricRegistry,
 ) : StudyManager, AuditingComponent {
     private val studies = HazelcastMap.STUDIES.getMap(hazelcast)
     private val participantStats = HazelcastMap.PARTICIPANT_STATS.getMap(hazelcast)
+    private val savedStatsInvocations: Histogram = metricRegistry.histogram(
+        MetricRegistry.name(StudyService::class.java, "participant-stats", "saved-invocations")
+    )
 
     @Inject
     @org.springframework.context.annotation.Lazy
@@ -552,6 +560,7 @@ class StudyService(
                     )
                 }.buildAndRun()
         }
+        enrollmentService.invalidateParticipants(studyId, listOf(participantId))
     }
 
     override fun registerParticipant(studyId: UUID, participant: Participant): UUID {
@@ -781,6 +790,13 @@ class StudyService(
 
     }
 
+    override fun insertOrUpdateParticipantStats(batch: ParticipantStatsBatch) {
+        if (batch.isEmpty()) return
+        val statsByParticipant = batch.getStatsByParticipant()
+        participantStats.executeOnKeys(statsByParticipant.keys, ParticipantStatsBatchMerger(statsByParticipant))
+        savedStatsInvocations.update(batch.deltas - statsByParticipant.size)
+    }
+
     override fun getStudyParticipants(studyId: UUID): Iterable<Participant> {
         return selectStudyParticipants(studyId)
     }
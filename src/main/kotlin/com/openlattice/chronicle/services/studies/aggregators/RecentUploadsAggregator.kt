@@ -0,0 +1,54 @@
+package com.openlattice.chronicle.services.studies.aggregators
+
+import com.hazelcast.aggregation.Aggregator
+import com.openlattice.chronicle.mapstores.stats.ParticipantKey
+import com.openlattice.chronicle.participants.ParticipantStats
+import java.time.OffsetDateTime
+import java.util.*
+
+/**
+ * Collects the participants of each study whose last android or ios data is at or after the study's cutoff. Runs
+ * against the participant stats map, so each member only reads the stats in its own partitions and compliance checks
+ * scale with the number of participants instead of the number of events.
+ *
+ * @param cutoffs The earliest data date that counts as a recent upload, by study. Participants of other studies are
+ * ignored.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+data class RecentUploadsAggregator(
+    val cutoffs: Map<UUID, OffsetDateTime>,
+    val android: MutableMap<UUID, MutableSet<String>> = mutableMapOf(),
+    val ios: MutableMap<UUID, MutableSet<String>> = mutableMapOf(),
+) : Aggregator<MutableMap.MutableEntry<ParticipantKey, ParticipantStats>, RecentUploadsAggregator> {
+
+    override fun accumulate(input: MutableMap.MutableEntry<ParticipantKey, ParticipantStats>) {
+        val studyId = input.key.studyId
+        val cutoff = cutoffs[studyId] ?: return
+        val stats = input.value
+
+        if (stats.androidLastDate?.let { it >= cutoff } == true) {
+            android.getOrPut(studyId) { mutableSetOf() }.add(input.key.participantId)
+        }
+        if (stats.iosLastDate?.let { it >= cutoff } == true) {
+            ios.getOrPut(studyId) { mutableSetOf() }.add(input.key.participantId)
+        }
+    }
+
+    override fun combine(aggregator: Aggregator<*, *>) {
+        if (aggregator is RecentUploadsAggregator) {
+            merge(android, aggregator.android)
+            merge(ios, aggregator.ios)
+        }
+    }
+
+    override fun aggregate(): RecentUploadsAggregator {
+        return this
+    }
+
+    private fun merge(into: MutableMap<UUID, MutableSet<String>>, from: Map<UUID, Set<String>>) {
+        from.forEach { (studyId, participantIds) ->
+            into.getOrPut(studyId) { mutableSetOf() }.addAll(participantIds)
+        }
+    }
+}
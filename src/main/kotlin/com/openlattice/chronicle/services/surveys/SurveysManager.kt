@@ -34,13 +34,24 @@ interface SurveysManager {
         surveyResponses: List<AppUsage>,
     )
 
+    /**
+     * @param appPackageNames When present, only usage events of these apps are read.
+     */
     fun getAndroidAppUsageData(
         studyId: UUID,
         participantId: String,
         startDateTime: OffsetDateTime,
         endDateTime: OffsetDateTime,
+        appPackageNames: Set<String>? = null,
     ): List<AppUsage>
 
+    fun getAndroidAggregateUsage(
+        studyId: UUID,
+        participantId: String,
+        startDateTime: OffsetDateTime,
+        endDateTime: OffsetDateTime,
+    ): Map<String, Double>
+
     fun createQuestionnaire(
         studyId: UUID,
         questionnaire: Questionnaire,
@@ -7,7 +7,6 @@ import com.geekbeast.postgres.PostgresDatatype
 import com.geekbeast.postgres.streams.BasePostgresIterable
 import com.geekbeast.postgres.streams.PreparedStatementHolderSupplier
 import com.hazelcast.core.HazelcastInstance
-import com.openlattice.chronicle.android.ChronicleUsageEventType
 import com.openlattice.chronicle.auditing.*
 import com.openlattice.chronicle.authorization.AclKey
 import com.openlattice.chronicle.constants.EdmConstants
@@ -17,6 +16,7 @@ import com.openlattice.chronicle.ids.HazelcastIdGenerationService
 import com.openlattice.chronicle.postgres.ResultSetAdapters
 import com.openlattice.chronicle.services.ScheduledTasksManager
 import com.openlattice.chronicle.services.enrollment.EnrollmentManager
+import com.openlattice.chronicle.services.upload.UploadType
 import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.APP_USAGE_SURVEY
 import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.QUESTIONNAIRES
 import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.QUESTIONNAIRE_SUBMISSIONS
@@ -33,20 +33,15 @@ import com.openlattice.chronicle.storage.PostgresColumns.Companion.RECURRENCE_RU
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.RESPONSES
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.STUDY_ID
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.TITLE
-import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APPLICATION_LABEL
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_CATEGORY
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_PACKAGE_NAME
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_USAGE_TIME
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.BUNDLE_IDENTIFIER
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.END_DATE_TIME
-import com.openlattice.chronicle.storage.RedshiftColumns.Companion.EVENT_TYPE
-import com.openlattice.chronicle.storage.RedshiftColumns.Companion.INTERACTION_TYPE
-import com.openlattice.chronicle.storage.RedshiftColumns.Companion.TIMESTAMP
-import com.openlattice.chronicle.storage.RedshiftColumns.Companion.TIMEZONE
-import com.openlattice.chronicle.storage.RedshiftColumns.Companion.USERNAME
-import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.CHRONICLE_USAGE_EVENTS
 import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.IOS_SENSOR_DATA
 import com.openlattice.chronicle.storage.StorageResolver
+import com.openlattice.chronicle.storage.preprocessing.DailyAppUsageRollups
+import com.openlattice.chronicle.storage.preprocessing.RolledUpUsage
 import com.openlattice.chronicle.survey.*
 import com.openlattice.chronicle.util.ChronicleServerUtil.STUDY_PARTICIPANT
 import com.zaxxer.hikari.HikariDataSource
@@ -56,8 +51,6 @@ import org.springframework.stereotype.Service
 import java.sql.Connection
 import java.time.LocalDate
 import java.time.OffsetDateTime
-import java.time.ZoneOffset
-import java.time.temporal.ChronoUnit
 import java.util.*
 
 /**
@@ -76,6 +69,7 @@ class SurveysService(
     private val scheduledTasksManager: ScheduledTasksManager,
     override val auditingManager: AuditingManager,
     val idGenerationService: HazelcastIdGenerationService,
+    private val dailyAppUsageRollups: DailyAppUsageRollups? = null,
 ) : SurveysManager, AuditingComponent {
     private val filteredApps = HazelcastMap.FILTERED_APPS.getMap(hazelcast)
 
@@ -83,37 +77,10 @@ class SurveysService(
         private val logger = LoggerFactory.getLogger(SurveysService::class.java)
         private val mapper = ObjectMappers.newJsonMapper()
 
-        const val UNKNOWN_BUNDLE = "Unknown"
-        private val DEVICE_USAGE_EVENT_TYPES = setOf(
-            ChronicleUsageEventType.MOVE_TO_BACKGROUND.value,
-            ChronicleUsageEventType.MOVE_TO_FOREGROUND.value,
-            ChronicleUsageEventType.ACTIVITY_PAUSED.value,
-            ChronicleUsageEventType.ACTIVITY_RESUMED.value
-        )
+        const val UNKNOWN_BUNDLE = DailyAppUsageRollups.UNKNOWN_BUNDLE
         private val APP_USAGE_SURVEY_COLS = APP_USAGE_SURVEY.columns.joinToString(",") { it.name }
         private val APP_USAGE_SURVEY_PARAMS = APP_USAGE_SURVEY.columns.joinToString(",") { "?" }
 
-        /**
-         * PreparedStatement bind order
-         * 1) studyId
-         * 2) participantId
-         * 3) date
-         */
-        val GET_APP_USAGE_SQL = """
-            SELECT ${APP_PACKAGE_NAME.name}, ${APPLICATION_LABEL.name}, ${TIMESTAMP.name}, ${TIMEZONE.name}, ${EVENT_TYPE.name}
-            FROM ${CHRONICLE_USAGE_EVENTS.name}
-            WHERE ${STUDY_ID.name} = ?
-                AND ${PARTICIPANT_ID.name} = ?
-                AND ${TIMESTAMP.name} >=  ?
-                AND ${TIMESTAMP.name} < ?
-                AND ( ${EVENT_TYPE.name} = 1 
-                      OR ${EVENT_TYPE.name} = 2
-                      OR ${INTERACTION_TYPE.name} = 'Move to Foreground' 
-                      OR ${INTERACTION_TYPE.name} = 'Move to Background' )
-                AND (${USERNAME.name} IS NULL OR ${USERNAME.name} = '')
-            ORDER BY ${TIMESTAMP.name},${APP_PACKAGE_NAME.name}
-        """.trimIndent()
-
         const val TOTAL_USAGE_FIELD = "total_usage"
         val GET_APP_USAGE_IOS_SQL = """
             SELECT ${STUDY_ID.name}, ${PARTICIPANT_ID.name}, ${BUNDLE_IDENTIFIER.name}, sum(${APP_USAGE_TIME.name}) as $TOTAL_USAGE_FIELD
@@ -349,39 +316,50 @@ class SurveysService(
         startDateTime: OffsetDateTime,
         appUsage: List<AppUsage>,
     ): Map<String, Double> {
+        return DailyAppUsageRollups.aggregateUsage(startDateTime, appUsage)
+    }
 
-        return appUsage
-            .filter { DEVICE_USAGE_EVENT_TYPES.contains(it.eventType) } // Filter out any usage events unrelated to calculated time.
-            .groupBy { it.appPackageName }
-            .mapValues { (_, au) ->
-                //We start counting usage from the beginning of the block when it the first event isn't an activity resumed.
-                var currentStartTime = startDateTime
-
-                au.fold(0.0) { s, a ->
-                    val result = when (a.eventType) {
-                        /*
-                         * When an activity is resumed start counter waiting for the activity to terminate. Even if it
-                         * is the last event, it will be fine as we just won't count the time for an unpaired event.
-                         */
-                        ChronicleUsageEventType.ACTIVITY_RESUMED.value, ChronicleUsageEventType.MOVE_TO_FOREGROUND.value -> {
-                            s
-                        }
-                        /*
-                         * When an activity is paused our backgrounded add the total time it was used for in the
-                         * current time block.
-                         */
-                        ChronicleUsageEventType.ACTIVITY_PAUSED.value, ChronicleUsageEventType.MOVE_TO_BACKGROUND.value -> {
-                            s + ChronoUnit.SECONDS.between(currentStartTime, a.timestamp).toDouble()
-                        }
-
-                        else -> throw IllegalStateException("Unrecognized event type.")
-                    }
-                    //We always advanced currentStartTime to avoid double counting multiple sequential ACTIVITY_PAUSED_EVENTS.
-                    //This seems to usually happen when a system modal takes focus without backgrounding the application.
-                    currentStartTime = a.timestamp
-                    result
-                }
+    /**
+     * Sums android app usage from the daily rollups for days that have been rolled up, and from raw usage events for
+     * the rest of the window, which is usually only the current partial day.
+     */
+    override fun getAndroidAggregateUsage(
+        studyId: UUID,
+        participantId: String,
+        startDateTime: OffsetDateTime,
+        endDateTime: OffsetDateTime,
+    ): Map<String, Double> {
+        val rolledUp = getRolledUpUsage(UploadType.Android, studyId, participantId, startDateTime, endDateTime)
+        val filtered = filteredApps[studyId] ?: scheduledTasksManager.systemAppPackageNames
+        val aggregate = mutableMapOf<String, Double>()
+
+        rolledUp.usage
+            .filterNot { filtered.contains(it.appPackageName) }
+            .forEach { aggregate.merge(it.appPackageName, it.usageSeconds, Double::plus) }
+
+        rolledUp.gaps(startDateTime, endDateTime).forEach { (gapStart, gapEnd) ->
+            val appUsage = getAndroidAppUsageData(studyId, participantId, gapStart, gapEnd)
+            computeAggregateUsage(gapStart, appUsage).forEach { (appPackageName, usage) ->
+                aggregate.merge(appPackageName, usage, Double::plus)
             }
+        }
+        return aggregate
+    }
+
+    private fun getRolledUpUsage(
+        uploadType: UploadType,
+        studyId: UUID,
+        participantId: String,
+        startDateTime: OffsetDateTime,
+        endDateTime: OffsetDateTime,
+    ): RolledUpUsage {
+        return try {
+            dailyAppUsageRollups?.getRolledUpUsage(uploadType, studyId, participantId, startDateTime, endDateTime)
+                ?: RolledUpUsage.NONE
+        } catch (ex: Exception) {
+            logger.error("unable to read daily app usage rollups, falling back to raw events $STUDY_PARTICIPANT", studyId, participantId, ex)
+            RolledUpUsage.NONE
+        }
     }
 
     /**
@@ -399,25 +377,33 @@ class SurveysService(
         try {
 
             val (_, hds) = storageResolver.resolveAndGetFlavor(studyId)
+            val rolledUp = getRolledUpUsage(UploadType.Ios, studyId, participantId, startDateTime, endDateTime)
 
             //category = categoryByPackage[package]
             val categoryByPackage = mutableMapOf<String, String>()
+            val result = mutableMapOf<String, Double>()
 
-            val result = BasePostgresIterable(
-                PreparedStatementHolderSupplier(hds, GET_DEVICE_USAGE_IOS_SQL) { ps ->
-                    ps.setString(1, studyId.toString())
-                    ps.setString(2, participantId)
-                    ps.setObject(3, startDateTime)
-                    ps.setObject(4, endDateTime)
-                }
-            ) { ResultSetAdapters.iosDeviceUsageByCategory(it) }
-                .groupBy { it.category }
-                .mapValues { (category, usageByCategory) ->
-                    usageByCategory.fold(0.0) { totalUsage, packageUsage ->
-                        categoryByPackage[packageUsage.bundleIdentifier ?: UNKNOWN_BUNDLE] = category
-                        totalUsage + packageUsage.usageInSeconds
+            rolledUp.usage.forEach { packageUsage ->
+                val category = packageUsage.category ?: return@forEach
+                categoryByPackage[packageUsage.appPackageName] = category
+                result.merge(category, packageUsage.usageSeconds, Double::plus)
+            }
+
+            //Only the parts of the window that haven't been rolled up are read from sensor data.
+            rolledUp.gaps(startDateTime, endDateTime).forEach { (gapStart, gapEnd) ->
+                BasePostgresIterable(
+                    PreparedStatementHolderSupplier(hds, GET_DEVICE_USAGE_IOS_SQL) { ps ->
+                        ps.setString(1, studyId.toString())
+                        ps.setString(2, participantId)
+                        ps.setObject(3, gapStart)
+                        ps.setObject(4, gapEnd)
                     }
-                }
+                ) { ResultSetAdapters.iosDeviceUsageByCategory(it) }
+                    .forEach { packageUsage ->
+                        categoryByPackage[packageUsage.bundleIdentifier ?: UNKNOWN_BUNDLE] = packageUsage.category
+                        result.merge(packageUsage.category, packageUsage.usageInSeconds, Double::plus)
+                    }
+            }
 
 
             logger.info(
@@ -442,10 +428,9 @@ class SurveysService(
         startDateTime: OffsetDateTime,
         endDateTime: OffsetDateTime,
     ): DeviceUsage {
-        val appUsage = getAndroidAppUsageData(realStudyId, participantId, startDateTime, endDateTime)
+        val filtered = getAndroidAggregateUsage(realStudyId, participantId, startDateTime, endDateTime)
         val iosDeviceUsage = getIosDeviceUsageData(realStudyId, participantId, startDateTime, endDateTime)
 
-        val filtered = computeAggregateUsage(startDateTime, appUsage)
         val totalTime = filtered.values.sum()
         val androidDeviceUsage = DeviceUsage(totalTime, filtered, mapOf())
         return DeviceUsage(
@@ -462,18 +447,27 @@ class SurveysService(
         participantId: String,
         startDateTime: OffsetDateTime,
         endDateTime: OffsetDateTime,
+        appPackageNames: Set<String>?,
     ): List<AppUsage> {
         try {
 
             val (_, hds) = storageResolver.resolveAndGetFlavor(studyId)
             val filtered = filteredApps[studyId] ?: scheduledTasksManager.systemAppPackageNames
+            val sql = if (appPackageNames == null) {
+                DailyAppUsageRollups.ANDROID_APP_USAGE_SQL
+            } else {
+                DailyAppUsageRollups.ANDROID_PACKAGES_APP_USAGE_SQL
+            }
 
             val result = BasePostgresIterable(
-                PreparedStatementHolderSupplier(hds, GET_APP_USAGE_SQL) { ps ->
+                PreparedStatementHolderSupplier(hds, sql) { ps ->
                     ps.setString(1, studyId.toString())
                     ps.setString(2, participantId)
                     ps.setObject(3, startDateTime)
                     ps.setObject(4, endDateTime)
+                    if (appPackageNames != null) {
+                        ps.setArray(5, PostgresArrays.createTextArray(ps.connection, appPackageNames))
+                    }
                 }
             ) {
                 ResultSetAdapters.appUsage(it)
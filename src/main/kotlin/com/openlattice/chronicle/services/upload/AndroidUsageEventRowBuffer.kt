@@ -0,0 +1,376 @@
+package com.openlattice.chronicle.services.upload
+
+import com.fasterxml.jackson.core.JsonGenerator
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.geekbeast.postgres.PostgresColumnDefinition
+import com.google.common.collect.Interners
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APPLICATION_LABEL
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_PACKAGE_NAME
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.EVENT_TYPE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.INTERACTION_TYPE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.TIMESTAMP
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.TIMEZONE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.USERNAME
+import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.getInsertUsageEventColumnIndex
+import java.io.DataInput
+import java.io.DataOutput
+import java.io.Writer
+import java.time.Instant
+import java.time.LocalDate
+import java.time.LocalDateTime
+import java.time.OffsetDateTime
+import java.time.ZoneId
+import java.time.ZoneOffset
+import java.time.format.DateTimeFormatter
+import java.util.*
+
+/**
+ * Columnar buffer of android usage events for a single upload. Timestamps are kept as primitives and repeated text
+ * values (package names, interaction types, timezones, labels) are interned so that a large upload costs a handful of
+ * arrays instead of a map of [UsageEventColumn] per event.
+ *
+ * The buffer serializes itself in exactly the same shape as the `List<Map<String, UsageEventColumn>>` written by the
+ * object mapping path so that the move to event storage tasks can drain it without any changes.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class AndroidUsageEventRowBuffer(initialCapacity: Int = 256) {
+    companion object {
+        private val interner = Interners.newWeakInterner<String>()
+
+        /**
+         * Mirrors the column order produced by [AppDataUploadService.mapToStorageModel]
+         */
+        private val COLUMNS = listOf(
+            APP_PACKAGE_NAME,
+            INTERACTION_TYPE,
+            EVENT_TYPE,
+            TIMESTAMP,
+            TIMEZONE,
+            USERNAME,
+            APPLICATION_LABEL
+        )
+
+        private val COLUMN_INDICES = COLUMNS.associate { it.name to getInsertUsageEventColumnIndex(it) }
+
+        @JvmStatic
+        fun intern(value: String?): String? = if (value == null) null else interner.intern(value)
+
+        /**
+         * Reads a buffer written by [writeBinary].
+         */
+        @JvmStatic
+        fun readBinary(input: DataInput): AndroidUsageEventRowBuffer {
+            val size = input.readInt()
+            val dictionary = Array(input.readInt()) { intern(input.readUTF())!! }
+            fun readText(): Array<String?> = Array(size) { input.readInt().let { if (it == -1) null else dictionary[it] } }
+            fun readBitSet(): BitSet = BitSet.valueOf(LongArray(input.readInt()) { input.readLong() })
+
+            val buffer = AndroidUsageEventRowBuffer(maxOf(size, 1))
+            buffer.size = size
+            buffer.appPackageNames = readText().copyOf(buffer.appPackageNames.size)
+            buffer.interactionTypes = readText().copyOf(buffer.interactionTypes.size)
+            buffer.eventTypeNulls.or(readBitSet())
+            for (row in 0 until size) buffer.eventTypes[row] = input.readInt()
+            buffer.timestampNulls.or(readBitSet())
+            for (row in 0 until size) {
+                buffer.epochSeconds[row] = input.readLong()
+                buffer.nanos[row] = input.readInt()
+                buffer.offsetSeconds[row] = input.readInt()
+            }
+            buffer.timezones = readText().copyOf(buffer.timezones.size)
+            buffer.usernames = readText().copyOf(buffer.usernames.size)
+            buffer.applicationLabels = readText().copyOf(buffer.applicationLabels.size)
+            return buffer
+        }
+    }
+
+    var size: Int = 0
+        private set
+
+    private var appPackageNames = arrayOfNulls<String>(initialCapacity)
+    private var interactionTypes = arrayOfNulls<String>(initialCapacity)
+    private var eventTypes = IntArray(initialCapacity)
+    private val eventTypeNulls = BitSet(initialCapacity)
+    private var epochSeconds = LongArray(initialCapacity)
+    private var nanos = IntArray(initialCapacity)
+    private var offsetSeconds = IntArray(initialCapacity)
+    private val timestampNulls = BitSet(initialCapacity)
+    private var timezones = arrayOfNulls<String>(initialCapacity)
+    private var usernames = arrayOfNulls<String>(initialCapacity)
+    private var applicationLabels = arrayOfNulls<String>(initialCapacity)
+
+    /**
+     * Appends a row to the buffer. String values are expected to already be interned by the caller.
+     */
+    fun add(
+        appPackageName: String?,
+        interactionType: String?,
+        eventType: Int?,
+        timestamp: OffsetDateTime?,
+        timezone: String?,
+        username: String?,
+        applicationLabel: String?
+    ) {
+        if (timestamp == null) {
+            add(appPackageName, interactionType, eventType, 0L, 0, 0, true, timezone, username, applicationLabel)
+        } else {
+            add(
+                appPackageName,
+                interactionType,
+                eventType,
+                timestamp.toEpochSecond(),
+                timestamp.nano,
+                timestamp.offset.totalSeconds,
+                false,
+                timezone,
+                username,
+                applicationLabel
+            )
+        }
+    }
+
+    fun add(
+        appPackageName: String?,
+        interactionType: String?,
+        eventType: Int?,
+        epochSecond: Long,
+        nano: Int,
+        offsetSecond: Int,
+        timestampIsNull: Boolean,
+        timezone: String?,
+        username: String?,
+        applicationLabel: String?
+    ) {
+        ensureCapacity(size + 1)
+        appPackageNames[size] = appPackageName
+        interactionTypes[size] = interactionType
+        if (eventType == null) {
+            eventTypeNulls.set(size)
+        } else {
+            eventTypes[size] = eventType
+        }
+        if (timestampIsNull) {
+            timestampNulls.set(size)
+        } else {
+            epochSeconds[size] = epochSecond
+            nanos[size] = nano
+            offsetSeconds[size] = offsetSecond
+        }
+        timezones[size] = timezone
+        usernames[size] = username
+        applicationLabels[size] = applicationLabel
+        size++
+    }
+
+    fun appPackageName(row: Int): String? = appPackageNames[row]
+    fun timezone(row: Int): String? = timezones[row]
+    fun hasTimestamp(row: Int): Boolean = !timestampNulls[row]
+    fun epochSecond(row: Int): Long = epochSeconds[row]
+
+    fun timestamp(row: Int): OffsetDateTime? {
+        if (timestampNulls[row]) return null
+        val offset = ZoneOffset.ofTotalSeconds(offsetSeconds[row])
+        return OffsetDateTime.of(LocalDateTime.ofEpochSecond(epochSeconds[row], nanos[row], offset), offset)
+    }
+
+    /**
+     * Applies the same filtering rules as the object mapping path: rows without a timestamp or with a malformed
+     * package name are dropped and a missing package name fails the whole upload.
+     *
+     * @return A new buffer containing only the rows that passed the filter, or this buffer if no rows were removed.
+     */
+    fun filter(): AndroidUsageEventRowBuffer {
+        var keep = 0
+        for (row in 0 until size) {
+            val appPackageName = checkNotNull(appPackageNames[row]) { "Application package name cannot be null." }
+            if (!timestampNulls[row] && !appPackageName.contains("[")) keep++
+        }
+
+        if (keep == size) return this
+
+        val filtered = AndroidUsageEventRowBuffer(keep)
+        for (row in 0 until size) {
+            if (timestampNulls[row] || appPackageNames[row]!!.contains("[")) continue
+            filtered.add(
+                appPackageNames[row],
+                interactionTypes[row],
+                if (eventTypeNulls[row]) null else eventTypes[row],
+                epochSeconds[row],
+                nanos[row],
+                offsetSeconds[row],
+                false,
+                timezones[row],
+                usernames[row],
+                applicationLabels[row]
+            )
+        }
+        return filtered
+    }
+
+    /**
+     * Computes the unique local dates, along with the first and last event timestamps (in the timezone of the event)
+     * for updating participant stats. Zone ids are resolved once per distinct timezone in the buffer.
+     */
+    fun computeDateStats(): AndroidUsageEventDateStats? {
+        val zoneIds = mutableMapOf<String, ZoneId>()
+        val uniqueDates = mutableSetOf<LocalDate>()
+        var minRow = -1
+        var maxRow = -1
+
+        for (row in 0 until size) {
+            if (timestampNulls[row]) continue
+            val timezone = timezones[row] ?: continue
+            val zoneId = zoneIds.getOrPut(timezone) { ZoneId.of(timezone) }
+            val instant = Instant.ofEpochSecond(epochSeconds[row], nanos[row].toLong())
+            uniqueDates.add(LocalDate.ofInstant(instant, zoneId))
+            if (minRow == -1 || compareTimestamps(row, minRow) < 0) minRow = row
+            if (maxRow == -1 || compareTimestamps(row, maxRow) > 0) maxRow = row
+        }
+
+        if (minRow == -1) return null
+
+        return AndroidUsageEventDateStats(
+            uniqueDates,
+            zonedOffsetDateTime(minRow, zoneIds.getValue(timezones[minRow]!!)),
+            zonedOffsetDateTime(maxRow, zoneIds.getValue(timezones[maxRow]!!))
+        )
+    }
+
+    /**
+     * Writes the buffer as a JSON array of column maps compatible with [UsageEventColumn].
+     */
+    fun writeUploadData(mapper: ObjectMapper, writer: Writer) {
+        mapper.createGenerator(writer).use { gen ->
+            gen.writeStartArray()
+            for (row in 0 until size) {
+                gen.writeStartObject()
+                writeTextColumn(gen, APP_PACKAGE_NAME, appPackageNames[row])
+                writeTextColumn(gen, INTERACTION_TYPE, interactionTypes[row])
+                writeColumnHeader(gen, EVENT_TYPE)
+                if (eventTypeNulls[row]) gen.writeNull() else gen.writeNumber(eventTypes[row])
+                gen.writeEndObject()
+                writeColumnHeader(gen, TIMESTAMP)
+                if (timestampNulls[row]) {
+                    gen.writeNull()
+                } else {
+                    gen.writeString(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(timestamp(row)))
+                }
+                gen.writeEndObject()
+                writeTextColumn(gen, TIMEZONE, timezones[row])
+                writeTextColumn(gen, USERNAME, usernames[row])
+                writeTextColumn(gen, APPLICATION_LABEL, applicationLabels[row])
+                gen.writeEndObject()
+            }
+            gen.writeEndArray()
+        }
+    }
+
+    /**
+     * Writes the buffer column by column with every distinct text value written once to a leading dictionary. This is
+     * the body of the columnar upload buffer encoding and is read back with [readBinary].
+     */
+    fun writeBinary(output: DataOutput) {
+        val textColumns = listOf(appPackageNames, interactionTypes, timezones, usernames, applicationLabels)
+        val dictionary = LinkedHashMap<String, Int>()
+        textColumns.forEach { column ->
+            for (row in 0 until size) column[row]?.let { dictionary.putIfAbsent(it, dictionary.size) }
+        }
+
+        fun writeText(column: Array<String?>) {
+            for (row in 0 until size) output.writeInt(column[row]?.let(dictionary::getValue) ?: -1)
+        }
+
+        fun writeBitSet(bits: BitSet) {
+            val words = bits.toLongArray()
+            output.writeInt(words.size)
+            words.forEach(output::writeLong)
+        }
+
+        output.writeInt(size)
+        output.writeInt(dictionary.size)
+        dictionary.keys.forEach(output::writeUTF)
+        writeText(appPackageNames)
+        writeText(interactionTypes)
+        writeBitSet(eventTypeNulls)
+        for (row in 0 until size) output.writeInt(eventTypes[row])
+        writeBitSet(timestampNulls)
+        for (row in 0 until size) {
+            output.writeLong(epochSeconds[row])
+            output.writeInt(nanos[row])
+            output.writeInt(offsetSeconds[row])
+        }
+        writeText(timezones)
+        writeText(usernames)
+        writeText(applicationLabels)
+    }
+
+    /**
+     * Expands the buffer into the column maps consumed by the move to event storage tasks. Timestamps are returned as
+     * [OffsetDateTime] so they do not have to be parsed again when written to event storage.
+     */
+    fun toUsageEventColumns(): List<Map<String, UsageEventColumn>> {
+        return (0 until size).map { row ->
+            mapOf(
+                usageEventColumn(APP_PACKAGE_NAME, appPackageNames[row]),
+                usageEventColumn(INTERACTION_TYPE, interactionTypes[row]),
+                usageEventColumn(EVENT_TYPE, if (eventTypeNulls[row]) null else eventTypes[row]),
+                usageEventColumn(TIMESTAMP, timestamp(row)),
+                usageEventColumn(TIMEZONE, timezones[row]),
+                usageEventColumn(USERNAME, usernames[row]),
+                usageEventColumn(APPLICATION_LABEL, applicationLabels[row])
+            )
+        }
+    }
+
+    private fun usageEventColumn(pcd: PostgresColumnDefinition, value: Any?): Pair<String, UsageEventColumn> {
+        return pcd.name to UsageEventColumn(pcd.name, pcd.datatype, COLUMN_INDICES.getValue(pcd.name), value)
+    }
+
+    private fun writeTextColumn(gen: JsonGenerator, pcd: PostgresColumnDefinition, value: String?) {
+        writeColumnHeader(gen, pcd)
+        if (value == null) gen.writeNull() else gen.writeString(value)
+        gen.writeEndObject()
+    }
+
+    private fun writeColumnHeader(gen: JsonGenerator, pcd: PostgresColumnDefinition) {
+        gen.writeFieldName(pcd.name)
+        gen.writeStartObject()
+        gen.writeStringField(UsageEventColumn::name.name, pcd.name)
+        gen.writeFieldName(UsageEventColumn::datatype.name)
+        gen.writeObject(pcd.datatype)
+        gen.writeNumberField(UsageEventColumn::colIndex.name, COLUMN_INDICES.getValue(pcd.name))
+        gen.writeFieldName(UsageEventColumn::value.name)
+    }
+
+    private fun compareTimestamps(a: Int, b: Int): Int {
+        val c = epochSeconds[a].compareTo(epochSeconds[b])
+        return if (c != 0) c else nanos[a].compareTo(nanos[b])
+    }
+
+    private fun zonedOffsetDateTime(row: Int, zoneId: ZoneId): OffsetDateTime {
+        return Instant.ofEpochSecond(epochSeconds[row], nanos[row].toLong())
+            .atZone(zoneId)
+            .toOffsetDateTime()
+    }
+
+    private fun ensureCapacity(capacity: Int) {
+        if (capacity <= appPackageNames.size) return
+        val newCapacity = maxOf(capacity, appPackageNames.size * 2)
+        appPackageNames = appPackageNames.copyOf(newCapacity)
+        interactionTypes = interactionTypes.copyOf(newCapacity)
+        eventTypes = eventTypes.copyOf(newCapacity)
+        epochSeconds = epochSeconds.copyOf(newCapacity)
+        nanos = nanos.copyOf(newCapacity)
+        offsetSeconds = offsetSeconds.copyOf(newCapacity)
+        timezones = timezones.copyOf(newCapacity)
+        usernames = usernames.copyOf(newCapacity)
+        applicationLabels = applicationLabels.copyOf(newCapacity)
+    }
+}
+
+data class AndroidUsageEventDateStats(
+    val uniqueDates: MutableSet<LocalDate>,
+    val firstDate: OffsetDateTime,
+    val lastDate: OffsetDateTime,
+)
@@ -2,6 +2,7 @@ package com.openlattice.chronicle.services.upload
 
 import com.google.common.collect.SetMultimap
 import com.openlattice.chronicle.android.ChronicleUsageEvent
+import java.io.InputStream
 import java.time.OffsetDateTime
 import java.util.*
 
@@ -25,5 +26,18 @@ interface AppDataUploadManager {
         uploadedAt: OffsetDateTime = OffsetDateTime.now(),
     ): Int
 
+    /**
+     * Streams a `ChronicleData` request body directly into the upload buffer.
+     */
+    fun uploadAndroidUsageEvents(
+        studyId: UUID,
+        participantId: String,
+        sourceDeviceId: String,
+        input: InputStream,
+        uploadedAt: OffsetDateTime = OffsetDateTime.now(),
+    ): Int
+
+    fun isStreamingIngestEnabled(): Boolean
+
     fun moveToEventStorage()
 }
\ No newline at end of file
@@ -1,26 +1,26 @@
 package com.openlattice.chronicle.services.upload
 
-import com.geekbeast.configuration.postgres.PostgresFlavor
 import com.geekbeast.mappers.mappers.ObjectMappers
-import com.geekbeast.postgres.PostgresArrays
 import com.geekbeast.postgres.PostgresColumnDefinition
 import com.geekbeast.postgres.PostgresDatatype
 import com.geekbeast.util.StopWatch
 import com.google.common.collect.SetMultimap
 import com.openlattice.chronicle.android.ChronicleUsageEvent
 import com.openlattice.chronicle.android.fromInteractionType
+import com.openlattice.chronicle.configuration.ChronicleUploadConfiguration
+import com.openlattice.chronicle.controllers.UploadQueueSaturatedException
+import com.openlattice.chronicle.controllers.UploadTooLargeException
 import com.openlattice.chronicle.constants.EdmConstants.*
 import com.openlattice.chronicle.data.ParticipationStatus
 import com.openlattice.chronicle.participants.ParticipantStats
-import com.openlattice.chronicle.postgres.ResultSetAdapters
 import com.openlattice.chronicle.services.enrollment.EnrollmentManager
 import com.openlattice.chronicle.services.legacy.LegacyEdmResolver
 import com.openlattice.chronicle.services.studies.StudyManager
 import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.UPLOAD_BUFFER
-import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.getMoveSql
 import com.openlattice.chronicle.storage.PostgresColumns
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOAD_TYPE
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOAD_DATA
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOAD_DATA_BINARY
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APPLICATION_LABEL
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_PACKAGE_NAME
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.EVENT_TYPE
@@ -30,29 +30,19 @@ import com.openlattice.chronicle.storage.RedshiftColumns.Companion.PARTICIPANT_I
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.STUDY_ID
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.TIMESTAMP
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.TIMEZONE
-import com.openlattice.chronicle.storage.RedshiftColumns.Companion.UPLOADED_AT
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.USERNAME
-import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.CHRONICLE_USAGE_EVENTS
-import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.buildMultilineInsertUsageEvents
-import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.buildTempTableOfDuplicates
-import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.createTempTableOfDuplicates
-import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.getDeleteUsageEventsFromTempTable
 import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.getInsertUsageEventColumnIndex
 import com.openlattice.chronicle.storage.StorageResolver
 import com.openlattice.chronicle.storage.odtFromUsageEventColumn
+import com.openlattice.chronicle.storage.tasks.UsageEventStorageDrain
 import com.openlattice.chronicle.storage.zdtFromAndroidColumns
 import com.openlattice.chronicle.util.ChronicleServerUtil
-import com.zaxxer.hikari.HikariDataSource
-import org.apache.commons.lang3.RandomStringUtils
 import org.slf4j.LoggerFactory
 import org.slf4j.event.Level
-import java.security.InvalidParameterException
-import java.time.LocalDate
+import java.io.InputStream
+import java.io.StringWriter
 import java.time.OffsetDateTime
-import java.time.ZonedDateTime
 import java.util.*
-import java.util.concurrent.Semaphore
-import kotlin.math.min
 
 /**
  * @author alfoncenzioka &lt;alfonce@openlattice.com&gt;
@@ -63,27 +53,73 @@ class AppDataUploadService(
     private val storageResolver: StorageResolver,
     private val enrollmentManager: EnrollmentManager,
     private val studyManager: StudyManager,
+    private val uploadConfiguration: ChronicleUploadConfiguration = ChronicleUploadConfiguration(),
+    private val groupCommitter: UploadBufferGroupCommitter? = null,
+    private val usageEventDrain: UsageEventStorageDrain? = null,
 ) : AppDataUploadManager {
     companion object {
         private val logger = LoggerFactory.getLogger(AppDataUploadService::class.java)
-        private val UPLOAD_AT_INDEX = getInsertUsageEventColumnIndex(UPLOADED_AT)
         private val mapper = ObjectMappers.getJsonMapper()
-        private val semaphore = Semaphore(10)
-        private const val RS_BATCH_SIZE = 3276
 
+        /**
+         * Rough size of a single serialized usage event in the upload buffer, used to presize the writer.
+         */
+        private const val SERIALIZED_EVENT_SIZE_HINT = 640
 
         /**
          * 1. study id
          * 2. participant id
-         * 3. upload data
+         * 3. upload data (nullable)
          * 4. uploaded at
+         * 5. binary upload data (nullable)
          *
          */
         private val INSERT_USAGE_EVENTS_SQL = """
-                    INSERT INTO ${UPLOAD_BUFFER.name} (${STUDY_ID.name},${PARTICIPANT_ID.name},${UPLOAD_DATA.name}, ${PostgresColumns.UPLOADED_AT.name}, ${UPLOAD_TYPE.name}) 
-                    VALUES (?,?,?::jsonb,?,'${UploadType.Android.name}')
+                    INSERT INTO ${UPLOAD_BUFFER.name} (${STUDY_ID.name},${PARTICIPANT_ID.name},${UPLOAD_DATA.name}, ${PostgresColumns.UPLOADED_AT.name}, ${UPLOAD_TYPE.name}, ${UPLOAD_DATA_BINARY.name}) 
+                    VALUES (?,?,?::jsonb,?,'${UploadType.Android.name}',?)
                 """.trimIndent()
 
+        /**
+         * This filters out events that have a null date logged and handles both String date time times from legacy events
+         * and typed OffsetDateTime objects from non-legacy events.
+         */
+        @JvmStatic
+        fun filter(mappedData: Sequence<Map<String, UsageEventColumn>>): Sequence<Map<String, UsageEventColumn>> {
+            return mappedData.filter { mappedUsageEventCols ->
+                val eventDate = mappedUsageEventCols[FQNS_TO_COLUMNS.getValue(DATE_LOGGED_FQN).name]?.value
+                val dateLogged = odtFromUsageEventColumn(eventDate)
+
+                val appPackageName = checkNotNull(mappedUsageEventCols[APP_PACKAGE_NAME.name]?.value as String?) {
+                    "Application package name cannot be null."
+                }
+
+                dateLogged != null && !appPackageName.contains("[")
+            }
+        }
+
+        private fun <T> getUsageEventColumn(
+            pcd: PostgresColumnDefinition,
+            selector: () -> T,
+        ): Pair<String, UsageEventColumn> {
+            return pcd.name to UsageEventColumn(pcd.name, pcd.datatype, getInsertUsageEventColumnIndex(pcd), selector())
+        }
+
+        @JvmStatic
+        fun mapToStorageModel(data: List<ChronicleUsageEvent>): Sequence<Map<String, UsageEventColumn>> {
+            return data.asSequence().map { usageEvent ->
+                mapOf(
+//                    getUsageEventColumn(STUDY_ID) { usageEvent.studyId },
+//                    getUsageEventColumn(PARTICIPANT_ID) { usageEvent.participantId },
+                    getUsageEventColumn(APP_PACKAGE_NAME) { usageEvent.appPackageName },
+                    getUsageEventColumn(INTERACTION_TYPE) { usageEvent.interactionType },
+                    getUsageEventColumn(EVENT_TYPE) { usageEvent.eventType },
+                    getUsageEventColumn(TIMESTAMP) { usageEvent.timestamp },
+                    getUsageEventColumn(TIMEZONE) { usageEvent.timezone },
+                    getUsageEventColumn(USERNAME) { usageEvent.user },
+                    getUsageEventColumn(APPLICATION_LABEL) { usageEvent.applicationLabel }
+                )
+            }
+        }
     }
 
     init {
@@ -159,6 +195,9 @@ class AppDataUploadService(
                 doWrite(studyId, participantId, mappedData, expectedSize, uploadedAt)
 
                 return data.size
+            } catch (saturated: UploadQueueSaturatedException) {
+                //Let the device know to back off and retry instead of reporting zero rows written.
+                throw saturated
             } catch (exception: Exception) {
                 logger.error(
                     "error logging data" + ChronicleServerUtil.STUDY_PARTICIPANT_DATASOURCE,
@@ -172,6 +211,119 @@ class AppDataUploadService(
         }
     }
 
+    override fun isStreamingIngestEnabled(): Boolean = uploadConfiguration.streamingIngest
+
+    /**
+     * Streaming variant of [uploadAndroidUsageEvents] that decodes the request body directly into a columnar row buffer
+     * and writes it to the upload buffer without materializing a [ChronicleUsageEvent] or a column map per event. It
+     * provides the same once and only once semantics as the object mapping path.
+     */
+    override fun uploadAndroidUsageEvents(
+        studyId: UUID,
+        participantId: String,
+        sourceDeviceId: String,
+        input: InputStream,
+        uploadedAt: OffsetDateTime,
+    ): Int {
+        StopWatch(
+            log = "streaming entries for ${ChronicleServerUtil.STUDY_PARTICIPANT_DATASOURCE}",
+            level = Level.INFO,
+            logger = logger,
+            studyId,
+            participantId,
+            sourceDeviceId
+        ).use {
+            try {
+                if (!isUploadAllowed(studyId, participantId, sourceDeviceId)) return 0
+
+                val rows = StreamingUsageEventReader(mapper).read(input)
+                val filtered = rows.filter()
+
+                val written = StopWatch(
+                    log = "Writing ${filtered.size} entites (expected: ${rows.size}) to Aurora for studyId = $studyId, participantId = $participantId ",
+                    level = Level.INFO,
+                    logger = logger,
+                ).use {
+                    val uploadData = if (UploadType.Android in uploadConfiguration.binaryUploadBuffer) {
+                        UploadBufferPayload.binary(UploadBufferCodec.encodeUsageEvents(filtered))
+                    } else {
+                        val json = StringWriter(filtered.size * SERIALIZED_EVENT_SIZE_HINT)
+                        filtered.writeUploadData(mapper, json)
+                        UploadBufferPayload.json(json.toString())
+                    }
+                    writeUploadBuffer(studyId, participantId, uploadData, uploadedAt)
+                }
+
+                filtered.computeDateStats()?.let { dateStats ->
+                    studyManager.insertOrUpdateParticipantStats(
+                        ParticipantStats(
+                            studyId = studyId,
+                            participantId = participantId,
+                            androidLastPing = OffsetDateTime.now(),
+                            androidUniqueDates = dateStats.uniqueDates,
+                            androidFirstDate = dateStats.firstDate,
+                            androidLastDate = dateStats.lastDate,
+                        )
+                    )
+                }
+
+                if (rows.size != filtered.size) {
+                    logger.warn("Wrote ${filtered.size} entities, but expected to write ${rows.size} entities")
+                }
+
+                //Currently nothing is done with written, but here in case we need it in the future.
+                logger.debug("Inserted $written rows into ${UPLOAD_BUFFER.name}")
+                return rows.size
+            } catch (saturated: UploadQueueSaturatedException) {
+                //Let the device know to back off and retry instead of reporting zero rows written.
+                throw saturated
+            } catch (tooLarge: UploadTooLargeException) {
+                //Let the device know the upload was rejected instead of reporting zero rows written.
+                throw tooLarge
+            } catch (exception: Exception) {
+                logger.error(
+                    "error logging data" + ChronicleServerUtil.STUDY_PARTICIPANT_DATASOURCE,
+                    studyId,
+                    participantId,
+                    sourceDeviceId,
+                    exception
+                )
+                return 0
+            }
+        }
+    }
+
+    private fun isUploadAllowed(studyId: UUID, participantId: String, sourceDeviceId: String): Boolean {
+        val status = enrollmentManager.getParticipationStatus(studyId, participantId)
+        if (ParticipationStatus.NOT_ENROLLED == status) {
+            logger.warn(
+                "participant is not enrolled, ignoring upload" + ChronicleServerUtil.STUDY_PARTICIPANT_DATASOURCE,
+                studyId,
+                participantId,
+                sourceDeviceId
+            )
+            return false
+        }
+
+        if (!enrollmentManager.isKnownDatasource(studyId, participantId, sourceDeviceId)) {
+            logger.error(
+                "data source not found, ignoring upload" + ChronicleServerUtil.STUDY_PARTICIPANT_DATASOURCE,
+                studyId,
+                participantId,
+                sourceDeviceId
+            )
+            return false
+        }
+
+        logger.info(
+            "attempting to log data" + ChronicleServerUtil.STUDY_PARTICIPANT_DATASOURCE,
+            studyId,
+            participantId,
+            sourceDeviceId
+        )
+        return true
+    }
+
     /**
      * This routine implements once and only once append of client data.
      *
@@ -237,6 +389,9 @@ class AppDataUploadService(
                 doWrite(studyId, participantId, mappedData, expectedSize, uploadedAt)
 
                 return expectedSize
+            } catch (saturated: UploadQueueSaturatedException) {
+                //Let the device know to back off and retry instead of reporting zero rows written.
+                throw saturated
             } catch (exception: Exception) {
                 logger.error(
                     "error logging data" + ChronicleServerUtil.STUDY_PARTICIPANT_DATASOURCE,
@@ -263,18 +418,15 @@ class AppDataUploadService(
             level = Level.INFO,
             logger = logger,
         ).use {
-            storageResolver.getPlatformStorage().connection.use { connection ->
-                connection.prepareStatement(INSERT_USAGE_EVENTS_SQL).use { ps ->
-                    ps.setObject(1, studyId)
-                    ps.setString(2, participantId)
-                    ps.setString(3, mapper.writeValueAsString(dataList))
-                    ps.setObject(4, uploadedAt)
-                    ps.executeUpdate()
-                }
+            val uploadData = if (UploadType.Android in uploadConfiguration.binaryUploadBuffer) {
+                UploadBufferPayload.binary(UploadBufferCodec.encodeJson(mapper, dataList))
+            } else {
+                UploadBufferPayload.json(mapper.writeValueAsString(dataList))
             }
+            writeUploadBuffer(studyId, participantId, uploadData, uploadedAt)
         }
 
-        updateParticipantStats(dataList, studyId, participantId)
+        studyManager.insertOrUpdateParticipantStats(participantStatsDelta(dataList, studyId, participantId))
 
 //        val written = StopWatch(log = "Writing ${expectedSize} entites to DB ").use {
 //            when (flavor) {
@@ -296,91 +448,32 @@ class AppDataUploadService(
     }
 
 
-    override fun moveToEventStorage() {
-        try {
-            if (!semaphore.tryAcquire()) return
-            logger.info("Moving data from aurora to event storage.")
-            val queueEntriesByFlavor: MutableMap<PostgresFlavor, MutableList<UsageEventQueueEntry>> = mutableMapOf()
-            storageResolver.getPlatformStorage().connection.use { platform ->
-                platform.autoCommit = false
-                platform.createStatement().use { stmt ->
-                    stmt.executeQuery(getMoveSql(128, UploadType.Android)).use { rs ->
-                        while (rs.next()) {
-                            val usageEventQueueEntries = ResultSetAdapters.usageEventQueueEntries(rs)
-                            val (flavor, _) = storageResolver.resolveAndGetFlavor(usageEventQueueEntries.studyId)
-                            queueEntriesByFlavor.getOrPut(flavor) { mutableListOf() }
-                                .addAll(usageEventQueueEntries.toEntryList())
-                        }
-                    }
-                    logger.info("Total number of entries for redshift: ${(queueEntriesByFlavor[PostgresFlavor.REDSHIFT] ?: listOf()).size}")
-                    logger.info("Total number of entries for postgres: ${(queueEntriesByFlavor[PostgresFlavor.VANILLA] ?: listOf()).size}")
-                    queueEntriesByFlavor.forEach { (postgresFlavor, usageEventQueueEntries) ->
-                        if (usageEventQueueEntries.isEmpty()) return@forEach
-                        when (postgresFlavor) {
-                            PostgresFlavor.REDSHIFT -> writeToRedshift(
-                                storageResolver.getEventStorageWithFlavor(PostgresFlavor.REDSHIFT),
-                                usageEventQueueEntries
-                            )
-
-                            PostgresFlavor.VANILLA -> writeToPostgres(
-                                storageResolver.getEventStorageWithFlavor(PostgresFlavor.VANILLA),
-                                usageEventQueueEntries
-                            )
-
-                            else -> throw InvalidParameterException("Invalid postgres flavor: ${postgresFlavor.name}")
-                        }
-                    }
-                }
-                platform.commit()
-                platform.autoCommit = true
-            }
-            logger.info("Successfully moved data to event storage.")
-        } catch (ex: Exception) {
-            logger.info("Unable to move data from aurora to redshift.", ex)
-            throw ex
-        } finally {
-            semaphore.release()
+    private fun writeUploadBuffer(
+        studyId: UUID,
+        participantId: String,
+        uploadData: UploadBufferPayload,
+        uploadedAt: OffsetDateTime,
+    ): Int {
+        if (uploadConfiguration.groupCommit && groupCommitter != null) {
+            return groupCommitter.write(studyId, participantId, uploadData, uploadedAt, UploadType.Android)
         }
-    }
 
-    /**
-     * This filters out events that have a null date logged and handles both String date time times from legacy events
-     * and typed OffsetDateTime objects from non-legacy events.
-     */
-    private fun filter(mappedData: Sequence<Map<String, UsageEventColumn>>): Sequence<Map<String, UsageEventColumn>> {
-        return mappedData.filter { mappedUsageEventCols ->
-            val eventDate = mappedUsageEventCols[FQNS_TO_COLUMNS.getValue(DATE_LOGGED_FQN).name]?.value
-            val dateLogged = odtFromUsageEventColumn(eventDate)
-
-            val appPackageName = checkNotNull(mappedUsageEventCols[APP_PACKAGE_NAME.name]?.value as String?) {
-                "Application package name cannot be null."
+        return storageResolver.getPlatformStorage().connection.use { connection ->
+            connection.prepareStatement(INSERT_USAGE_EVENTS_SQL).use { ps ->
+                ps.setObject(1, studyId)
+                ps.setString(2, participantId)
+                ps.setString(3, uploadData.json)
+                ps.setObject(4, uploadedAt)
+                ps.setBytes(5, uploadData.binary)
+                ps.executeUpdate()
             }
-
-            dateLogged != null && !appPackageName.contains("[")
         }
     }
 
-    private fun <T> getUsageEventColumn(
-        pcd: PostgresColumnDefinition,
-        selector: () -> T,
-    ): Pair<String, UsageEventColumn> {
-        return pcd.name to UsageEventColumn(pcd.name, pcd.datatype, getInsertUsageEventColumnIndex(pcd), selector())
-    }
 
-    private fun mapToStorageModel(data: List<ChronicleUsageEvent>): Sequence<Map<String, UsageEventColumn>> {
-        return data.asSequence().map { usageEvent ->
-            mapOf(
-//                getUsageEventColumn(STUDY_ID) { usageEvent.studyId },
-//                getUsageEventColumn(PARTICIPANT_ID) { usageEvent.participantId },
-                getUsageEventColumn(APP_PACKAGE_NAME) { usageEvent.appPackageName },
-                getUsageEventColumn(INTERACTION_TYPE) { usageEvent.interactionType },
-                getUsageEventColumn(EVENT_TYPE) { usageEvent.eventType },
-                getUsageEventColumn(TIMESTAMP) { usageEvent.timestamp },
-                getUsageEventColumn(TIMEZONE) { usageEvent.timezone },
-                getUsageEventColumn(USERNAME) { usageEvent.user },
-                getUsageEventColumn(APPLICATION_LABEL) { usageEvent.applicationLabel }
-            )
-        }
+    override fun moveToEventStorage() {
+        checkNotNull(usageEventDrain) { "Moving android data to event storage is not configured." }
+            .moveToEventStorage(storageResolver.getPlatformStorage())
     }
 
     private fun mapLegacyDataToStorageModel(data: List<SetMultimap<UUID, Any>>): Sequence<Map<String, UsageEventColumn>> {
@@ -402,201 +495,11 @@ class AppDataUploadService(
         }
     }
 
-    private fun writeToRedshift(
-        hds: HikariDataSource,
-        data: List<UsageEventQueueEntry>,
-        includeOnConflict: Boolean = false,
-    ): Int {
-        if (data.isEmpty()) return 0
-
-        return hds.connection.use { connection ->
-            //Create the temporary merge table
-            try {
-                var minEventTimestamp: OffsetDateTime = OffsetDateTime.MAX
-                var maxEventTimestamp: OffsetDateTime = OffsetDateTime.MIN
-
-                val studies = data.map { it.studyId.toString() }.toSet()
-                val participants = data.map { it.participantId }.toSet()
-
-                // There are two prepared statements one for the data array from 0 up to RS_BATCH_SIZE elements.
-                // After RS_BATCH_SIZE elements the insert prepared statement covers all the chunks except the last chunk of RS_BATCH_SIZE elements
-                // finalInsert won't be used subList.size is never unequal to the insertBatchSize (shoudl only happen for data.size > RS_BATCH_SIZE and data.size % RS_BATCH_SIZE != 0
-
-                val insertBatchSize = min(data.size, RS_BATCH_SIZE)
-                logger.info("Preparing primary insert statement with batch size $insertBatchSize")
-                val insertSql = buildMultilineInsertUsageEvents(
-                    insertBatchSize,
-                    includeOnConflict
-                )
-
-                val dr = data.size % RS_BATCH_SIZE
-
-                val finalInsertSql = if (data.size > RS_BATCH_SIZE && dr != 0) {
-                    logger.info("Preparing secondary insert statement with batch size $dr")
-                    buildMultilineInsertUsageEvents(
-                        dr,
-                        includeOnConflict
-                    )
-                } else {
-                    insertSql
-                }
-
-                val wc = data.chunked(RS_BATCH_SIZE).sumOf { subList ->
-                    logger.info("Processing sublist of length ${subList.size}")
-                    connection.prepareStatement(if (subList.size == insertBatchSize) insertSql else finalInsertSql)
-                        .use { ps ->
-
-                            //Should only need to set these once for prepared statement.
-                            StopWatch(
-                                log = "Inserting ${data.size} entries into ${CHRONICLE_USAGE_EVENTS.name} with studies = {} and participants = {}",
-                                level = Level.INFO,
-                                logger = logger,
-                                studies,
-                                participants
-                            ).use {
-                                var indexBase = 0
-                                subList.forEach { usageEventCols ->
-                                    ps.setString(indexBase + 1, usageEventCols.studyId.toString())
-                                    ps.setString(indexBase + 2, usageEventCols.participantId)
-                                    usageEventCols.data.values.forEach { usageEventCol ->
-                                        //TODO: If we ever change the columns, we need to do a lookup for colIndex by name every time.
-                                        val colIndex = indexBase + usageEventCol.colIndex
-                                        val value = usageEventCol.value
-
-                                        try {
-                                            //Set insert value to null, if value was not provided.
-                                            if (value == null) {
-                                                ps.setObject(colIndex, null)
-                                            } else {
-                                                when (usageEventCol.datatype) {
-                                                    PostgresDatatype.TEXT -> ps.setString(colIndex, value as String)
-                                                    PostgresDatatype.TIMESTAMPTZ -> {
-                                                        val odt = odtFromUsageEventColumn(value)
-                                                        ps.setObject(
-                                                            colIndex,
-                                                            odt
-                                                        )
-                                                        //We need to keep track the min and max event timestamps for this batch
-                                                        if (odt != null && usageEventCol.name == TIMESTAMP.name) {
-                                                            if (odt.isBefore(minEventTimestamp)) {
-                                                                minEventTimestamp = odt
-                                                            }
-                                                            if (odt.isAfter(maxEventTimestamp)) {
-                                                                maxEventTimestamp = odt
-                                                            }
-                                                        }
-                                                    }
-
-                                                    PostgresDatatype.INTEGER -> ps.setInt(colIndex, value as Int)
-                                                    PostgresDatatype.BIGINT -> ps.setLong(colIndex, value as Long)
-                                                    else -> ps.setObject(colIndex, value)
-                                                }
-                                            }
-                                        } catch (ex: Exception) {
-                                            logger.info("Error writing $usageEventCol", ex)
-                                            throw ex
-                                        }
-                                    }
-                                    ps.setObject(indexBase + UPLOAD_AT_INDEX, usageEventCols.uploadedAt)
-                                    indexBase += CHRONICLE_USAGE_EVENTS.columns.size
-//                                    logger.info(
-//                                        "Added batch for ${ChronicleServerUtil.STUDY_PARTICIPANT}",
-//                                        usageEventCols.studyId,
-//                                        usageEventCols.participantId
-//                                    )
-
-                                }
-
-                                StopWatch(
-                                    log = "Executing update on ${subList.size} entries into ${CHRONICLE_USAGE_EVENTS.name} with studies = {} and participants = {}",
-                                    level = Level.INFO,
-                                    logger = logger,
-                                    studies,
-                                    participants
-                                ).use {
-                                    val insertCount = ps.executeUpdate()
-                                    logger.info(
-                                        "Inserted $insertCount entities for ${CHRONICLE_USAGE_EVENTS.name} studies = {}, participantIds = {}",
-                                        studies,
-                                        participants
-                                    )
-                                    insertCount
-                                }
-                            }
-
-                        }
-                }
-
-
-//                StopWatch(
-//                    log = "Merging entries for $tempInsertTableName with studies = {} and participants = {}",
-//                    level = Level.INFO,
-//                    logger = logger,
-//                    studies,
-//                    participants
-//                ).use {
-//                    connection.createStatement().use { stmt ->
-//                        stmt.execute(getAppendTempTableSql(tempInsertTableName));
-//                        stmt.execute("DROP TABLE $tempInsertTableName")
-//                    }
-//                }
-//
-                val tempTableName = "duplicate_events_${RandomStringUtils.randomAlphanumeric(10)}"
-
-
-                //Create a table that contains any duplicate values introduced by this latest upload for the minimum upload_at value
-                StopWatch(
-                    log = "Creating duplicates table for studies = {} and participants = {} ",
-                    level = Level.INFO,
-                    logger = logger,
-                    studies,
-                    participants
-                ).use {
-                    connection.createStatement()
-                        .use { stmt -> stmt.execute(createTempTableOfDuplicates(tempTableName)) }
-                    connection.prepareStatement(buildTempTableOfDuplicates(tempTableName)).use { ps ->
-                        ps.setArray(1, PostgresArrays.createTextArray(connection, studies))
-                        ps.setArray(2, PostgresArrays.createTextArray(connection, participants))
-                        ps.setObject(3, minEventTimestamp)
-                        ps.setObject(4, maxEventTimestamp)
-                        ps.execute()
-                    }
-                }
-
-                //Delete the duplicates, if any from chronicle_usage_events and drop the temporary table.
-                StopWatch(
-                    log = "Deleting duplicates for studies = {} and participants = {} ",
-                    level = Level.INFO,
-                    logger = logger,
-                    studies,
-                    participants
-                ).use {
-                    connection.createStatement().use { stmt ->
-                        stmt.execute(getDeleteUsageEventsFromTempTable(tempTableName))
-                        stmt.execute("DROP TABLE $tempTableName")
-                    }
-                }
-
-                //TODO: Make this more efficient
-                data.groupBy { it.studyId to it.participantId }.forEach { (key, qe) ->
-                    val (studyId, participantId) = key
-                    updateParticipantStats(qe.map { it.data }, studyId, participantId)
-                }
-
-                return@use wc
-            } catch (ex: Exception) {
-                logger.error("Unable to save data to redshift.", ex)
-                throw ex
-            }
-        }
-    }
-
-
-    private fun updateParticipantStats(
+    private fun participantStatsDelta(
         data: List<Map<String, UsageEventColumn>>,
         studyId: UUID,
         participantId: String,
-    ) {
+    ): ParticipantStats {
         // unique dates
         val dates = data
             .mapNotNull {
@@ -612,7 +515,7 @@ class AppDataUploadService(
         val minDate = dates.min().toOffsetDateTime()
         val maxDate = dates.max().toOffsetDateTime()
 
-        val participantStats = ParticipantStats(
+        return ParticipantStats(
             studyId = studyId,
             participantId = participantId,
             androidLastPing = OffsetDateTime.now(),
@@ -620,17 +523,6 @@ class AppDataUploadService(
             androidFirstDate = minDate,
             androidLastDate = maxDate,
         )
-        studyManager.insertOrUpdateParticipantStats(participantStats)
-    }
-
-    private fun writeToPostgres(
-        hds: HikariDataSource,
-        data: List<UsageEventQueueEntry>,
-    ): Int {
-        return writeToRedshift(
-            hds,
-            data
-        )
     }
 }
 
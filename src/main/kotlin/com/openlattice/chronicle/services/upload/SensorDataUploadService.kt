@@ -9,6 +9,7 @@ import com.geekbeast.postgres.PostgresDatatype
 import com.geekbeast.util.StopWatch
 import com.google.common.util.concurrent.ListeningExecutorService
 import com.google.common.util.concurrent.MoreExecutors
+import com.openlattice.chronicle.configuration.ChronicleUploadConfiguration
 import com.openlattice.chronicle.participants.ParticipantStats
 import com.openlattice.chronicle.postgres.ResultSetAdapters
 import com.openlattice.chronicle.sensorkit.DeviceUsageData
@@ -26,6 +27,7 @@ import com.openlattice.chronicle.storage.PostgresColumns.Companion.SOURCE_DEVICE
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOADED_AT
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOAD_TYPE
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOAD_DATA
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOAD_DATA_BINARY
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_CATEGORY
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_CATEGORY_WEB_DURATION
 import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_USAGE_TIME
@@ -108,7 +110,9 @@ import kotlin.math.min
  */
 class SensorDataUploadService(
     private val storageResolver: StorageResolver,
-    private val studyService: StudyService
+    private val studyService: StudyService,
+    private val uploadConfiguration: ChronicleUploadConfiguration = ChronicleUploadConfiguration(),
+    private val groupCommitter: UploadBufferGroupCommitter? = null,
 ) : SensorDataUploadManager {
 
     companion object {
@@ -118,13 +122,14 @@ class SensorDataUploadService(
         /**
          * 1. study id
          * 2. participant id
-         * 3. upload data
+         * 3. upload data (nullable)
          * 4. source device id (nullable)
+         * 5. binary upload data (nullable)
          *
          */
         private val INSERT_UPLOAD_BUFFER_SQL = """
-            INSERT INTO ${ChroniclePostgresTables.UPLOAD_BUFFER.name} (${STUDY_ID.name},${PARTICIPANT_ID.name},${UPLOAD_DATA.name}, ${UPLOADED_AT.name}, ${UPLOAD_TYPE.name}, ${SOURCE_DEVICE_ID.name}) 
-            VALUES (?,?,?::jsonb,now(),'${UploadType.Ios.name}',?)
+            INSERT INTO ${ChroniclePostgresTables.UPLOAD_BUFFER.name} (${STUDY_ID.name},${PARTICIPANT_ID.name},${UPLOAD_DATA.name}, ${UPLOADED_AT.name}, ${UPLOAD_TYPE.name}, ${SOURCE_DEVICE_ID.name}, ${UPLOAD_DATA_BINARY.name}) 
+            VALUES (?,?,?::jsonb,now(),'${UploadType.Ios.name}',?,?)
         """.trimIndent()
     }
 
@@ -139,13 +144,30 @@ class SensorDataUploadService(
             level = Level.INFO,
             logger = logger,
         ).use {
-            storageResolver.getPlatformStorage().connection.use { connection ->
-                connection.prepareStatement(INSERT_UPLOAD_BUFFER_SQL).use { ps ->
-                    ps.setObject(1, studyId)
-                    ps.setString(2, participantId)
-                    ps.setString(3, mapper.writeValueAsString(data))
-                    ps.setString(4, sourceDeviceId)
-                    ps.executeUpdate()
+            val uploadData = if (UploadType.Ios in uploadConfiguration.binaryUploadBuffer) {
+                UploadBufferPayload.binary(UploadBufferCodec.encodeJson(mapper, data))
+            } else {
+                UploadBufferPayload.json(mapper.writeValueAsString(data))
+            }
+            if (uploadConfiguration.groupCommit && groupCommitter != null) {
+                groupCommitter.write(
+                    studyId,
+                    participantId,
+                    uploadData,
+                    OffsetDateTime.now(),
+                    UploadType.Ios,
+                    sourceDeviceId
+                )
+            } else {
+                storageResolver.getPlatformStorage().connection.use { connection ->
+                    connection.prepareStatement(INSERT_UPLOAD_BUFFER_SQL).use { ps ->
+                        ps.setObject(1, studyId)
+                        ps.setString(2, participantId)
+                        ps.setString(3, uploadData.json)
+                        ps.setString(4, sourceDeviceId)
+                        ps.setBytes(5, uploadData.binary)
+                        ps.executeUpdate()
+                    }
                 }
             }
         }
@@ -0,0 +1,137 @@
+package com.openlattice.chronicle.services.upload
+
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.core.JsonToken
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.openlattice.chronicle.android.ChronicleUsageEvent
+import java.io.InputStream
+import java.math.BigDecimal
+import java.time.ZoneOffset
+import java.time.format.DateTimeFormatter
+import java.time.temporal.ChronoField
+
+/**
+ * Incrementally decodes a `ChronicleData` request body directly into an [AndroidUsageEventRowBuffer] without
+ * materializing a [ChronicleUsageEvent] per sample.
+ *
+ * Polymorphic type information is accepted either as a property (any field starting with `@`) or as a wrapper array of
+ * `[typeId, sample]`. Samples whose type id does not refer to a [ChronicleUsageEvent] are skipped, which matches the
+ * behavior of the object mapping path that ignores every other sample class.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class StreamingUsageEventReader(private val mapper: ObjectMapper) {
+    companion object {
+        /**
+         * The type ids jackson writes for [ChronicleUsageEvent]: the class name, the minimal class name and the simple
+         * name used as the default logical type name.
+         */
+        private val USAGE_EVENT_TYPE_IDS = setOf(
+            ChronicleUsageEvent::class.java.name,
+            ".${ChronicleUsageEvent::class.java.simpleName}",
+            ChronicleUsageEvent::class.java.simpleName
+        )
+
+        private const val APP_PACKAGE_NAME = "appPackageName"
+        private const val INTERACTION_TYPE = "interactionType"
+        private const val EVENT_TYPE = "eventType"
+        private const val TIMESTAMP = "timestamp"
+        private const val TIMEZONE = "timezone"
+        private const val USER = "user"
+        private const val APPLICATION_LABEL = "applicationLabel"
+    }
+
+    /**
+     * Reads all usage events from the input stream. The stream is not closed.
+     */
+    fun read(input: InputStream): AndroidUsageEventRowBuffer {
+        return mapper.factory.createParser(input).use { parser ->
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+            read(parser)
+        }
+    }
+
+    fun read(parser: JsonParser): AndroidUsageEventRowBuffer {
+        val buffer = AndroidUsageEventRowBuffer()
+        val first = parser.currentToken ?: parser.nextToken()
+        check(first == JsonToken.START_ARRAY) { "Expected an array of chronicle samples but found $first" }
+
+        while (true) {
+            when (parser.nextToken()) {
+                JsonToken.END_ARRAY -> return buffer
+                JsonToken.START_OBJECT -> readSample(parser, buffer, null)
+                JsonToken.START_ARRAY -> {
+                    //Wrapper array style type information: [ typeId, { ... } ]
+                    check(parser.nextToken() == JsonToken.VALUE_STRING) { "Expected type id in wrapper array." }
+                    val typeId = parser.text
+                    check(parser.nextToken() == JsonToken.START_OBJECT) { "Expected sample in wrapper array." }
+                    readSample(parser, buffer, typeId)
+                    check(parser.nextToken() == JsonToken.END_ARRAY) { "Expected end of wrapper array." }
+                }
+                null -> throw IllegalStateException("Unexpected end of input while reading chronicle samples.")
+                else -> throw IllegalStateException("Unexpected token ${parser.currentToken} while reading chronicle samples.")
+            }
+        }
+    }
+
+    private fun readSample(parser: JsonParser, buffer: AndroidUsageEventRowBuffer, wrapperTypeId: String?) {
+        var typeId = wrapperTypeId
+        var appPackageName: String? = null
+        var interactionType: String? = null
+        var eventType: Int? = null
+        var epochSecond = 0L
+        var nano = 0
+        var offsetSecond = 0
+        var timestampIsNull = true
+        var timezone: String? = null
+        var user: String? = null
+        var applicationLabel: String? = null
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            val field = parser.currentName
+            val token = parser.nextToken()
+            val isNull = token == JsonToken.VALUE_NULL
+            when {
+                field.startsWith("@") -> typeId = parser.valueAsString
+                isNull -> Unit
+                field == APP_PACKAGE_NAME -> appPackageName = AndroidUsageEventRowBuffer.intern(parser.text)
+                field == INTERACTION_TYPE -> interactionType = AndroidUsageEventRowBuffer.intern(parser.text)
+                field == EVENT_TYPE -> eventType = parser.valueAsInt
+                field == TIMESTAMP -> {
+                    timestampIsNull = false
+                    if (token == JsonToken.VALUE_STRING) {
+                        val parsed = DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(parser.text)
+                        epochSecond = parsed.getLong(ChronoField.INSTANT_SECONDS)
+                        nano = parsed.get(ChronoField.NANO_OF_SECOND)
+                        offsetSecond = parsed.get(ChronoField.OFFSET_SECONDS)
+                    } else {
+                        //Numeric timestamps are written by jackson as decimal epoch seconds in UTC.
+                        val seconds = parser.decimalValue
+                        epochSecond = seconds.toLong()
+                        nano = seconds.subtract(BigDecimal.valueOf(epochSecond)).movePointRight(9).toInt()
+                        offsetSecond = ZoneOffset.UTC.totalSeconds
+                    }
+                }
+                field == TIMEZONE -> timezone = AndroidUsageEventRowBuffer.intern(parser.text)
+                field == USER -> user = AndroidUsageEventRowBuffer.intern(parser.text)
+                field == APPLICATION_LABEL -> applicationLabel = AndroidUsageEventRowBuffer.intern(parser.text)
+                else -> parser.skipChildren()
+            }
+        }
+
+        if (typeId != null && typeId !in USAGE_EVENT_TYPE_IDS) return
+
+        buffer.add(
+            appPackageName,
+            interactionType,
+            eventType,
+            epochSecond,
+            nano,
+            offsetSecond,
+            timestampIsNull,
+            timezone,
+            user,
+            applicationLabel
+        )
+    }
+}
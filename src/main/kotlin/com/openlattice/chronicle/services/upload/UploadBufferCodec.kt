@@ -0,0 +1,91 @@
+package com.openlattice.chronicle.services.upload
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.module.kotlin.readValue
+import com.openlattice.chronicle.sensorkit.SensorDataSample
+import net.jpountz.lz4.LZ4Factory
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.nio.ByteBuffer
+
+/**
+ * Binary encodings for upload buffer payloads stored in the `data_binary` column.
+ *
+ * Every payload starts with a single format byte followed by the uncompressed length of the body and the LZ4
+ * compressed body:
+ *
+ * - [COLUMNAR_USAGE_EVENTS]: an [AndroidUsageEventRowBuffer] written with [AndroidUsageEventRowBuffer.writeBinary].
+ * - [COMPRESSED_JSON]: the same json that would have been written to the `data` column.
+ *
+ * New formats must be given a new format byte so that rows already in the buffer remain readable.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+object UploadBufferCodec {
+    const val COLUMNAR_USAGE_EVENTS: Byte = 1
+    const val COMPRESSED_JSON: Byte = 2
+
+    private const val HEADER_SIZE = 1 + Integer.BYTES
+
+    private val lz4 = LZ4Factory.fastestInstance()
+
+    @JvmStatic
+    fun encodeUsageEvents(rows: AndroidUsageEventRowBuffer): ByteArray {
+        val body = ByteArrayOutputStream()
+        DataOutputStream(body).use { rows.writeBinary(it) }
+        return compress(COLUMNAR_USAGE_EVENTS, body.toByteArray())
+    }
+
+    @JvmStatic
+    fun encodeJson(mapper: ObjectMapper, value: Any): ByteArray {
+        return compress(COMPRESSED_JSON, mapper.writeValueAsBytes(value))
+    }
+
+    @JvmStatic
+    fun decodeUsageEvents(mapper: ObjectMapper, payload: ByteArray): List<Map<String, UsageEventColumn>> {
+        return when (val format = payload[0]) {
+            COLUMNAR_USAGE_EVENTS -> DataInputStream(decompress(payload).inputStream()).use {
+                AndroidUsageEventRowBuffer.readBinary(it).toUsageEventColumns()
+            }
+            COMPRESSED_JSON -> mapper.readValue(decompress(payload))
+            else -> throw IllegalStateException("Unsupported upload buffer format $format for usage events.")
+        }
+    }
+
+    @JvmStatic
+    fun decodeSensorDataSamples(mapper: ObjectMapper, payload: ByteArray): List<SensorDataSample> {
+        return when (val format = payload[0]) {
+            COMPRESSED_JSON -> mapper.readValue(decompress(payload))
+            else -> throw IllegalStateException("Unsupported upload buffer format $format for sensor data.")
+        }
+    }
+
+    private fun compress(format: Byte, body: ByteArray): ByteArray {
+        val compressor = lz4.fastCompressor()
+        val payload = ByteArray(HEADER_SIZE + compressor.maxCompressedLength(body.size))
+        val buffer = ByteBuffer.wrap(payload).put(format).putInt(body.size)
+        val compressedLength = compressor.compress(body, 0, body.size, payload, buffer.position())
+        return payload.copyOf(HEADER_SIZE + compressedLength)
+    }
+
+    private fun decompress(payload: ByteArray): ByteArray {
+        val length = ByteBuffer.wrap(payload, 1, Integer.BYTES).int
+        val body = ByteArray(length)
+        lz4.fastDecompressor().decompress(payload, HEADER_SIZE, body, 0, length)
+        return body
+    }
+}
+
+/**
+ * The payload of a single upload buffer row. Exactly one of [json] and [binary] is set.
+ */
+class UploadBufferPayload private constructor(val json: String?, val binary: ByteArray?) {
+    companion object {
+        @JvmStatic
+        fun json(json: String) = UploadBufferPayload(json, null)
+
+        @JvmStatic
+        fun binary(binary: ByteArray) = UploadBufferPayload(null, binary)
+    }
+}
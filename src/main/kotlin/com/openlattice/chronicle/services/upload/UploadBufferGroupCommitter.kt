@@ -0,0 +1,221 @@
+package com.openlattice.chronicle.services.upload
+
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.Histogram
+import com.codahale.metrics.Meter
+import com.codahale.metrics.MetricRegistry
+import com.codahale.metrics.Timer
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import com.openlattice.chronicle.configuration.ChronicleUploadConfiguration
+import com.openlattice.chronicle.controllers.UploadQueueSaturatedException
+import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.MAX_BIND_PARAMETERS
+import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.UPLOAD_BUFFER
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.PARTICIPANT_ID
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.SOURCE_DEVICE_ID
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.STUDY_ID
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOADED_AT
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOAD_DATA
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOAD_DATA_BINARY
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOAD_TYPE
+import com.openlattice.chronicle.storage.StorageResolver
+import com.zaxxer.hikari.HikariDataSource
+import org.slf4j.LoggerFactory
+import java.time.OffsetDateTime
+import java.util.*
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+
+/**
+ * Group commits device uploads into the upload buffer.
+ *
+ * Uploads are placed on a bounded per node queue. Committer threads take whatever has accumulated within
+ * [ChronicleUploadConfiguration.groupCommitLingerMillis] of the first queued upload, up to
+ * [ChronicleUploadConfiguration.groupCommitMaxBatch] uploads, and write them with a single multi-row insert in one
+ * transaction. A caller of [write] is only acknowledged once the transaction containing its upload has committed, so
+ * a device never receives a successful response for an upload that was not durably written and the once and only once
+ * semantics of the upload services are preserved.
+ *
+ * When the queue is full, [write] fails fast with an [UploadQueueSaturatedException], which is returned to devices as
+ * a 429 with a `Retry-After` header, instead of tying up more request threads waiting on the database.
+ *
+ * @param platformStorage Supplies the platform storage each batch is written to.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class UploadBufferGroupCommitter internal constructor(
+    private val platformStorage: () -> HikariDataSource,
+    private val uploadConfiguration: ChronicleUploadConfiguration,
+    metricRegistry: MetricRegistry,
+) {
+    constructor(
+        storageResolver: StorageResolver,
+        uploadConfiguration: ChronicleUploadConfiguration,
+        metricRegistry: MetricRegistry,
+    ) : this({ storageResolver.getPlatformStorage() }, uploadConfiguration, metricRegistry)
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(UploadBufferGroupCommitter::class.java)
+
+        private val INSERT_COLUMNS = listOf(
+            STUDY_ID,
+            PARTICIPANT_ID,
+            UPLOAD_DATA,
+            UPLOADED_AT,
+            UPLOAD_TYPE,
+            SOURCE_DEVICE_ID,
+            UPLOAD_DATA_BINARY
+        )
+            .joinToString(",") { it.name }
+
+        /**
+         * Builds a multi-row insert into the upload buffer. Each row binds:
+         * 1. study id
+         * 2. participant id
+         * 3. upload data (nullable)
+         * 4. uploaded at
+         * 5. upload type
+         * 6. source device id (nullable)
+         * 7. binary upload data (nullable)
+         */
+        private const val INSERT_PARAMETERS = 7
+
+        private fun buildInsertSql(rows: Int): String {
+            val values = (1..rows).joinToString(",") { "(?,?,?::jsonb,?,?,?,?)" }
+            return "INSERT INTO ${UPLOAD_BUFFER.name} ($INSERT_COLUMNS) VALUES $values"
+        }
+    }
+
+    private val queue = ArrayBlockingQueue<PendingUpload>(uploadConfiguration.groupCommitQueueCapacity)
+
+    private val committers = Executors.newFixedThreadPool(
+        uploadConfiguration.groupCommitWriters,
+        ThreadFactoryBuilder().setNameFormat("upload-group-commit-%d").setDaemon(true).build()
+    )
+
+    private val rejected: Meter = metricRegistry.meter(metricName("rejected"))
+    private val batchSizes: Histogram = metricRegistry.histogram(metricName("batch-size"))
+    private val commits: Timer = metricRegistry.timer(metricName("commits"))
+
+    init {
+        check(uploadConfiguration.groupCommitMaxBatch * INSERT_PARAMETERS < MAX_BIND_PARAMETERS) {
+            "Group commit batch size ${uploadConfiguration.groupCommitMaxBatch} exceeds the maximum number of bind parameters."
+        }
+        metricRegistry.gauge(metricName("queue-depth")) { Gauge { queue.size } }
+        repeat(uploadConfiguration.groupCommitWriters) { committers.execute { commitLoop() } }
+    }
+
+    /**
+     * Queues an upload for the next group commit and blocks until it has been committed.
+     *
+     * @return The number of rows written to the upload buffer.
+     * @throws UploadQueueSaturatedException if the queue for this node is full.
+     */
+    fun write(
+        studyId: UUID,
+        participantId: String,
+        uploadData: UploadBufferPayload,
+        uploadedAt: OffsetDateTime,
+        uploadType: UploadType,
+        sourceDeviceId: String? = null,
+    ): Int {
+        val upload = PendingUpload(studyId, participantId, uploadData, uploadedAt, uploadType, sourceDeviceId)
+        if (!queue.offer(upload)) {
+            rejected.mark()
+            throw UploadQueueSaturatedException(
+                uploadConfiguration.groupCommitRetryAfterSeconds,
+                "Upload queue is saturated, retry after ${uploadConfiguration.groupCommitRetryAfterSeconds} seconds."
+            )
+        }
+
+        return try {
+            upload.committed.get(uploadConfiguration.groupCommitTimeoutMillis, TimeUnit.MILLISECONDS)
+        } catch (ex: ExecutionException) {
+            throw IllegalStateException("Unable to write upload to upload buffer.", ex.cause)
+        } catch (ex: TimeoutException) {
+            //The upload may still be committed, in which case the device retry will be removed as a duplicate.
+            throw IllegalStateException("Timed out waiting for upload to be written to upload buffer.", ex)
+        }
+    }
+
+    private fun commitLoop() {
+        val batch = ArrayList<PendingUpload>(uploadConfiguration.groupCommitMaxBatch)
+        val lingerNanos = TimeUnit.MILLISECONDS.toNanos(uploadConfiguration.groupCommitLingerMillis)
+
+        while (!Thread.currentThread().isInterrupted) {
+            try {
+                batch.add(queue.take())
+                val deadline = System.nanoTime() + lingerNanos
+                while (batch.size < uploadConfiguration.groupCommitMaxBatch) {
+                    val remaining = deadline - System.nanoTime()
+                    if (remaining <= 0) break
+                    batch.add(queue.poll(remaining, TimeUnit.NANOSECONDS) ?: break)
+                }
+                commit(batch)
+            } catch (ex: InterruptedException) {
+                Thread.currentThread().interrupt()
+            } catch (ex: Exception) {
+                //Should be unreachable since commit completes every upload, but never let the committer die.
+                logger.error("Unexpected error in upload group commit loop.", ex)
+            } finally {
+                batch.forEach { it.committed.completeExceptionally(IllegalStateException("Upload was not committed.")) }
+                batch.clear()
+            }
+        }
+    }
+
+    private fun commit(batch: List<PendingUpload>) {
+        batchSizes.update(batch.size)
+        try {
+            val written = commits.time().use {
+                platformStorage().connection.use { connection ->
+                    connection.autoCommit = false
+                    try {
+                        val written = connection.prepareStatement(buildInsertSql(batch.size)).use { ps ->
+                            var index = 0
+                            batch.forEach { upload ->
+                                ps.setObject(++index, upload.studyId)
+                                ps.setString(++index, upload.participantId)
+                                ps.setString(++index, upload.uploadData.json)
+                                ps.setObject(++index, upload.uploadedAt)
+                                ps.setString(++index, upload.uploadType.name)
+                                ps.setString(++index, upload.sourceDeviceId)
+                                ps.setBytes(++index, upload.uploadData.binary)
+                            }
+                            ps.executeUpdate()
+                        }
+                        connection.commit()
+                        written
+                    } catch (ex: Exception) {
+                        connection.rollback()
+                        throw ex
+                    } finally {
+                        connection.autoCommit = true
+                    }
+                }
+            }
+            logger.debug("Group committed {} uploads ({} rows) to {}", batch.size, written, UPLOAD_BUFFER.name)
+            batch.forEach { it.committed.complete(1) }
+        } catch (ex: Exception) {
+            logger.error("Unable to group commit {} uploads to {}", batch.size, UPLOAD_BUFFER.name, ex)
+            batch.forEach { it.committed.completeExceptionally(ex) }
+        }
+    }
+
+    private fun metricName(name: String): String =
+        MetricRegistry.name(UploadBufferGroupCommitter::class.java, name)
+
+    private class PendingUpload(
+        val studyId: UUID,
+        val participantId: String,
+        val uploadData: UploadBufferPayload,
+        val uploadedAt: OffsetDateTime,
+        val uploadType: UploadType,
+        val sourceDeviceId: String?,
+    ) {
+        val committed = CompletableFuture<Int>()
+    }
+}
@@ -0,0 +1,106 @@
+package com.openlattice.chronicle.services.upload
+
+import com.codahale.metrics.Meter
+import com.codahale.metrics.MetricRegistry
+import com.github.luben.zstd.ZstdInputStream
+import com.openlattice.chronicle.configuration.ChronicleUploadConfiguration
+import com.openlattice.chronicle.controllers.UnsupportedContentEncodingException
+import com.openlattice.chronicle.controllers.UploadTooLargeException
+import java.io.BufferedInputStream
+import java.io.FilterInputStream
+import java.io.InputStream
+import java.util.zip.GZIPInputStream
+
+/**
+ * Decodes device upload request bodies sent with a `Content-Encoding` of `gzip` or `zstd`.
+ *
+ * Decompression is streamed into the caller (usually a jackson parser) through fixed size buffers, so a compressed
+ * upload is never inflated in memory. The number of decompressed bytes that may be read from a single compressed
+ * request is capped by [ChronicleUploadConfiguration.maxDecompressedUploadBytes] to protect against decompression
+ * bombs. Uploads without a content encoding are bounded by the request size limits of the server instead.
+ *
+ * Compressed (on the wire) and uncompressed bytes are metered per endpoint. Uploads without a content encoding are
+ * metered as well, with both meters advancing together.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class UploadContentDecoder(
+    private val uploadConfiguration: ChronicleUploadConfiguration,
+    private val metricRegistry: MetricRegistry,
+) {
+    companion object {
+        const val GZIP = "gzip"
+        const val X_GZIP = "x-gzip"
+        const val ZSTD = "zstd"
+        const val IDENTITY = "identity"
+    }
+
+    /**
+     * Wraps the request body of an upload to [endpoint] with the decoder for its content encoding.
+     *
+     * @param endpoint The name used for this endpoint's byte meters.
+     * @param contentEncoding The value of the `Content-Encoding` header, if present.
+     * @throws UnsupportedContentEncodingException if the content encoding is not supported.
+     */
+    fun decode(endpoint: String, contentEncoding: String?, input: InputStream): InputStream {
+        val encoding = contentEncoding?.trim()?.lowercase() ?: IDENTITY
+        val compressed = MeteredInputStream(input, meter(endpoint, "compressed-bytes"), Long.MAX_VALUE)
+        val bufferSize = uploadConfiguration.decompressionBufferSize
+        val decoded = when (encoding) {
+            "", IDENTITY -> compressed
+            GZIP, X_GZIP -> GZIPInputStream(compressed, bufferSize)
+            ZSTD -> BufferedInputStream(ZstdInputStream(compressed), bufferSize)
+            else -> throw UnsupportedContentEncodingException(
+                "Content encoding $contentEncoding is not supported. Supported encodings are $GZIP and $ZSTD."
+            )
+        }
+        return MeteredInputStream(
+            decoded,
+            meter(endpoint, "uncompressed-bytes"),
+            if (decoded === compressed) Long.MAX_VALUE else uploadConfiguration.maxDecompressedUploadBytes
+        )
+    }
+
+    private fun meter(endpoint: String, name: String): Meter {
+        return metricRegistry.meter(MetricRegistry.name(UploadContentDecoder::class.java, endpoint, name))
+    }
+
+    /**
+     * Marks every byte read on the provided meter and fails the read once more than [limit] bytes have been read.
+     */
+    private class MeteredInputStream(
+        input: InputStream,
+        private val meter: Meter,
+        private val limit: Long,
+    ) : FilterInputStream(input) {
+        private var count = 0L
+
+        override fun read(): Int {
+            val b = super.read()
+            if (b != -1) advance(1)
+            return b
+        }
+
+        override fun read(b: ByteArray, off: Int, len: Int): Int {
+            val n = super.read(b, off, len)
+            if (n > 0) advance(n.toLong())
+            return n
+        }
+
+        override fun skip(n: Long): Long {
+            val skipped = super.skip(n)
+            if (skipped > 0) advance(skipped)
+            return skipped
+        }
+
+        override fun markSupported(): Boolean = false
+
+        private fun advance(n: Long) {
+            count += n
+            meter.mark(n)
+            if (count > limit) {
+                throw UploadTooLargeException("Upload exceeds the maximum decompressed size of $limit bytes.")
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.openlattice.chronicle.storage
 
 import com.amazonaws.HttpMethod
 import java.net.URL
+import java.nio.file.Path
 import java.util.*
 
 
@@ -21,6 +22,11 @@ interface ByteBlobDataManager {
 
     fun putObject(s3Key: String, binaryObjectWithMetadata: BinaryObjectWithMetadata)
 
+    /**
+     * Uploads the contents of a file without reading it into memory. Large files are uploaded in parts.
+     */
+    fun putFile(s3Key: String, file: Path, contentType: String, contentDisposition: String? = null)
+
     fun deleteObject(s3Key: String)
 
     fun getObjects(keys: Collection<Any>): List<Any>
@@ -18,6 +18,7 @@ import com.openlattice.chronicle.storage.PostgresColumns.Companion.CONTACT
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.CREATED_AT
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.DATA_EXPIRES
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.DATA_RETENTION
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.DATA_SOURCE_NAME
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.DATE_OF_BIRTH
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.DELETED_ROWS
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.DELIVERY_TYPE
@@ -26,8 +27,11 @@ import com.openlattice.chronicle.storage.PostgresColumns.Companion.DESTINATION
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.DEVICE_ID
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.DEVICE_TOKEN
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.DEVICE_TYPE
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.DIRTY_SINCE
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.EMAIL
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.ENDED_AT
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.EVENT_DATE
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.EVENT_HASH
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.EXPIRATION
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.EXPIRATION_DATE
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.FEATURES
@@ -53,6 +57,17 @@ import com.openlattice.chronicle.storage.PostgresColumns.Companion.NAME
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.NOTIFICATIONS_ENABLED
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.NOTIFICATION_ID
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.NOTIFICATION_TYPE
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.OBJECT_KEY
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.OPEN_APPLICATION_LABEL
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.OPEN_APP_PACKAGE_NAME
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.OPEN_SESSION_START
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.OPEN_SESSION_TIMEZONE
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.PARTICIPANT_IDS
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.PART_INDEX
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.RANGE_END
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.RANGE_START
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.ROW_COUNT
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.SIZE_BYTES
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.ORGANIZATION_ID
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.PARTICIPANT_ID
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.PARTICIPANT_LIMIT
@@ -62,6 +77,7 @@ import com.openlattice.chronicle.storage.PostgresColumns.Companion.PHONE_NUMBER
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.PRINCIPAL_ID
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.PRINCIPAL_OF_ACL_KEY
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.PRINCIPAL_TYPE
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.PROCESSED_THROUGH
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.QUESTIONNAIRE_ID
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.QUESTIONS
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.QUESTION_TITLE
@@ -99,6 +115,7 @@ import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPGRADE_STATU
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOADED_AT
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOAD_TYPE
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOAD_DATA
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOAD_DATA_BINARY
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.USER_DATA
 import com.openlattice.chronicle.storage.PostgresColumns.Companion.USER_ID
 
@@ -393,6 +410,26 @@ class ChroniclePostgresTables {
             )
             .primaryKey(JOB_ID)
 
+        /**
+         * Parts of participant data exports that have been written to blob storage. Parts are recorded as they finish
+         * so that an export that is interrupted only needs to write the parts that are missing.
+         */
+        @JvmField
+        val EXPORT_PARTS = PostgresTableDefinition("export_parts")
+            .addColumns(
+                JOB_ID,
+                PART_INDEX,
+                STUDY_ID,
+                PARTICIPANT_IDS,
+                RANGE_START,
+                RANGE_END,
+                OBJECT_KEY,
+                ROW_COUNT,
+                SIZE_BYTES,
+                COMPLETED_AT
+            )
+            .primaryKey(JOB_ID, PART_INDEX)
+
         @JvmField
         val UPLOAD_BUFFER = PostgresTableDefinition("upload_buffer")
             .addColumns(
@@ -401,8 +438,119 @@ class ChroniclePostgresTables {
                 UPLOAD_DATA,
                 UPLOADED_AT,
                 UPLOAD_TYPE,
-                SOURCE_DEVICE_ID
+                SOURCE_DEVICE_ID,
+                UPLOAD_DATA_BINARY
+            )
+
+        /**
+         * Per participant index of content hashes of events already written to event storage. Used to drop duplicate
+         * events before they are inserted instead of deleting them afterwards.
+         */
+        @JvmField
+        val EVENT_HASHES = PostgresTableDefinition("event_hashes")
+            .addColumns(
+                STUDY_ID,
+                PARTICIPANT_ID,
+                UPLOAD_TYPE,
+                EVENT_HASH,
+                EVENT_DATE
+            )
+            .primaryKey(STUDY_ID, PARTICIPANT_ID, UPLOAD_TYPE, EVENT_HASH)
+
+        /**
+         * Participants with a write to event storage in flight. Rows are committed before events are written and
+         * removed by the transaction that drains the upload buffer, so a row left behind means event storage may
+         * already hold events whose hashes were rolled back.
+         */
+        @JvmField
+        val EVENT_HASH_PENDING = PostgresTableDefinition("event_hash_pending")
+            .addColumns(
+                STUDY_ID,
+                PARTICIPANT_ID,
+                UPLOAD_TYPE,
+                CREATED_AT
             )
+            .primaryKey(STUDY_ID, PARTICIPANT_ID, UPLOAD_TYPE)
+
+        /**
+         * When the dedup index started covering each upload type. Events older than this may have been written
+         * without their hashes being claimed.
+         */
+        @JvmField
+        val EVENT_HASH_COVERAGE = PostgresTableDefinition("event_hash_coverage")
+            .addColumns(
+                UPLOAD_TYPE,
+                STARTED_AT
+            )
+            .primaryKey(UPLOAD_TYPE)
+
+        /**
+         * Per participant state of incremental preprocessing. Holds the app session that was still open at the last
+         * processed event, and the earliest event written since the participant was last preprocessed.
+         */
+        @JvmField
+        val PREPROCESSING_STATE = PostgresTableDefinition("preprocessing_state")
+            .addColumns(
+                STUDY_ID,
+                PARTICIPANT_ID,
+                DIRTY_SINCE,
+                PROCESSED_THROUGH,
+                OPEN_APP_PACKAGE_NAME,
+                OPEN_APPLICATION_LABEL,
+                OPEN_SESSION_START,
+                OPEN_SESSION_TIMEZONE,
+                UPDATED_AT
+            )
+            .primaryKey(STUDY_ID, PARTICIPANT_ID)
+
+        /**
+         * Expired studies whose event data has been purged from the partitioned event tables of an event storage, so
+         * that later runs of the partition task skip them.
+         */
+        @JvmField
+        val PURGED_EVENT_STORAGE_STUDIES = PostgresTableDefinition("purged_event_storage_studies")
+            .addColumns(
+                STUDY_ID,
+                DATA_SOURCE_NAME,
+                CREATED_AT
+            )
+            .primaryKey(STUDY_ID, DATA_SOURCE_NAME)
+
+        /**
+         * Participant days that have device usage in event storage. A day is rolled up into [DAILY_APP_USAGE] once it
+         * has ended in the participant's timezone, and is marked dirty again whenever events for it are written.
+         */
+        @JvmField
+        val USAGE_ROLLUP_DAYS = PostgresTableDefinition("usage_rollup_days")
+            .addColumns(
+                STUDY_ID,
+                PARTICIPANT_ID,
+                UPLOAD_TYPE,
+                EVENT_DATE,
+                RedshiftColumns.TIMEZONE,
+                RANGE_START,
+                RANGE_END,
+                DIRTY_SINCE,
+                UPDATED_AT
+            )
+            .primaryKey(STUDY_ID, PARTICIPANT_ID, UPLOAD_TYPE, EVENT_DATE)
+
+        /**
+         * Seconds each app was used per participant day, for the days in [USAGE_ROLLUP_DAYS] that are not dirty.
+         */
+        @JvmField
+        val DAILY_APP_USAGE = PostgresTableDefinition("daily_app_usage")
+            .addColumns(
+                STUDY_ID,
+                PARTICIPANT_ID,
+                UPLOAD_TYPE,
+                EVENT_DATE,
+                RedshiftColumns.APP_PACKAGE_NAME,
+                RedshiftColumns.APPLICATION_LABEL,
+                RedshiftColumns.APP_CATEGORY,
+                RedshiftColumns.APP_USAGE_TIME
+            )
+            .primaryKey(STUDY_ID, PARTICIPANT_ID, UPLOAD_TYPE, EVENT_DATE, RedshiftColumns.APP_PACKAGE_NAME)
 
         @JvmField
         val AUDIT_BUFFER = PostgresTableDefinition("audit_buffer")
@@ -437,6 +585,37 @@ class ChroniclePostgresTables {
                 RETURNING *
                 """.trimIndent()
 
+        /**
+         * Constructs the move SQL for a single hash partition of (study id, participant id). Workers draining different
+         * partitions never contend for the same participant's rows.
+         *
+         * 1. partition
+         */
+        @JvmStatic
+        fun getPartitionedMoveSql(batchSize: Int, uploadType: UploadType, partitions: Int) = """
+                DELETE FROM ${UPLOAD_BUFFER.name} WHERE (${RedshiftColumns.STUDY_ID.name}, ${RedshiftColumns.PARTICIPANT_ID.name}) IN (
+                    SELECT ${RedshiftColumns.STUDY_ID.name},${RedshiftColumns.PARTICIPANT_ID.name}
+                    FROM ${UPLOAD_BUFFER.name}
+                    WHERE ${UPLOAD_TYPE.name} = '${uploadType.name}'
+                    AND mod(hashtext(${RedshiftColumns.STUDY_ID.name}::text || ${RedshiftColumns.PARTICIPANT_ID.name})::bigint + 2147483648, $partitions) = ?
+                    ORDER BY ${RedshiftColumns.STUDY_ID.name},${RedshiftColumns.PARTICIPANT_ID.name}
+                    FOR UPDATE SKIP LOCKED
+                    LIMIT $batchSize)
+                    AND ${UPLOAD_TYPE.name} = '${uploadType.name}'
+                RETURNING *
+                """.trimIndent()
+
+        /**
+         * Returns the number of buffered uploads and the oldest upload time.
+         *
+         * 1. upload type
+         */
+        val UPLOAD_BUFFER_DEPTH_SQL = """
+            SELECT count(*), min(${UPLOADED_AT.name}) AS ${UPLOADED_AT.name}
+            FROM ${UPLOAD_BUFFER.name}
+            WHERE ${UPLOAD_TYPE.name} = ?
+        """.trimIndent()
+
         init {
             ORGANIZATION_STUDIES
                 .addIndexes(PostgresColumnsIndexDefinition(ORGANIZATION_STUDIES, ORGANIZATION_ID).ifNotExists())
@@ -461,6 +640,16 @@ class ChroniclePostgresTables {
             FILTERED_APPS.addIndexes(
                 PostgresColumnsIndexDefinition(FILTERED_APPS, STUDY_ID).ifNotExists()
             )
+            //Lets the reverse edges of principal trees be loaded without scanning the table.
+            PRINCIPAL_TREES.addIndexes(
+                PostgresColumnsIndexDefinition(PRINCIPAL_TREES, PRINCIPAL_OF_ACL_KEY).ifNotExists()
+            )
+            EVENT_HASHES.addIndexes(
+                PostgresColumnsIndexDefinition(EVENT_HASHES, EVENT_DATE).ifNotExists()
+            )
+            USAGE_ROLLUP_DAYS.addIndexes(
+                PostgresColumnsIndexDefinition(USAGE_ROLLUP_DAYS, DIRTY_SINCE).ifNotExists()
+            )
             UPLOAD_BUFFER.addIndexes(
                 PostgresColumnsIndexDefinition(
                     UPLOAD_BUFFER,
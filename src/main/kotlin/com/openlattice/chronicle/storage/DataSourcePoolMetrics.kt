@@ -0,0 +1,97 @@
+package com.openlattice.chronicle.storage
+
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.Histogram
+import com.codahale.metrics.Meter
+import com.codahale.metrics.MetricRegistry
+import com.codahale.metrics.Timer
+import com.zaxxer.hikari.HikariDataSource
+import com.zaxxer.hikari.metrics.IMetricsTracker
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory
+import com.zaxxer.hikari.metrics.PoolStats
+import org.slf4j.LoggerFactory
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Publishes hikari pool metrics for each data source under its data source name, so that pool saturation can be
+ * compared across event stores. For each data source this records
+ *
+ * - active, idle, pending and total connection gauges
+ * - a borrow timer with the time spent waiting for a connection
+ * - a usage histogram with how long connections were held, in milliseconds
+ * - a meter of borrows that timed out
+ *
+ * Data sources are instrumented the first time they are resolved, since hikari allows a metrics tracker to be
+ * installed on a running pool.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class DataSourcePoolMetrics(private val metricRegistry: MetricRegistry) {
+    companion object {
+        private val logger = LoggerFactory.getLogger(DataSourcePoolMetrics::class.java)
+
+        @JvmStatic
+        fun metricName(dataSourceName: String, name: String): String {
+            return MetricRegistry.name(DataSourcePoolMetrics::class.java, dataSourceName, name)
+        }
+    }
+
+    private val instrumented: MutableSet<String> = ConcurrentHashMap.newKeySet()
+
+    fun instrument(dataSourceName: String, hds: HikariDataSource) {
+        if (!instrumented.add(dataSourceName)) {
+            return
+        }
+
+        synchronized(hds) {
+            if (hds.metricRegistry != null || hds.metricsTrackerFactory != null) {
+                logger.warn("Data source {} already has pool metrics configured and will not be instrumented.", dataSourceName)
+                return
+            }
+            hds.metricsTrackerFactory = MetricsTrackerFactory { _, poolStats ->
+                PoolMetricsTracker(dataSourceName, poolStats)
+            }
+        }
+        logger.info("Instrumented connection pool for data source {}", dataSourceName)
+    }
+
+    private inner class PoolMetricsTracker(
+        private val dataSourceName: String,
+        poolStats: PoolStats
+    ) : IMetricsTracker {
+        private val names = mutableListOf<String>()
+        private val borrows: Timer = metricRegistry.timer(register("borrow"))
+        private val usage: Histogram = metricRegistry.histogram(register("usage"))
+        private val timeouts: Meter = metricRegistry.meter(register("timeouts"))
+
+        init {
+            metricRegistry.gauge(register("active")) { Gauge { poolStats.activeConnections } }
+            metricRegistry.gauge(register("idle")) { Gauge { poolStats.idleConnections } }
+            metricRegistry.gauge(register("pending")) { Gauge { poolStats.pendingThreads } }
+            metricRegistry.gauge(register("total")) { Gauge { poolStats.totalConnections } }
+        }
+
+        private fun register(name: String): String {
+            val metricName = metricName(dataSourceName, name)
+            names.add(metricName)
+            return metricName
+        }
+
+        override fun recordConnectionAcquiredNanos(elapsedAcquiredNanos: Long) {
+            borrows.update(elapsedAcquiredNanos, TimeUnit.NANOSECONDS)
+        }
+
+        override fun recordConnectionUsageMillis(elapsedBorrowedMillis: Long) {
+            usage.update(elapsedBorrowedMillis)
+        }
+
+        override fun recordConnectionTimeout() {
+            timeouts.mark()
+        }
+
+        override fun close() {
+            names.forEach { metricRegistry.remove(it) }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.openlattice.chronicle.storage
+
+import com.geekbeast.postgres.PostgresColumnsIndexDefinition
+
+/**
+ * Partitioned layouts of the vanilla postgres event tables. Usage events are partitioned by event timestamp and sensor
+ * data by recorded date time, each month further split by study id.
+ *
+ * The tables have the same names and columns as [PostgresDataTables], so only one of the two profiles may be active.
+ * Existing unpartitioned tables are left as they are. The data tables that are not partitioned are listed in
+ * [UNPARTITIONED_TABLES] so that the profile registers every data table.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class PartitionedPostgresDataTables {
+    companion object {
+        const val POSTGRES_PARTITIONED_DATA_ENVIRONMENT = "postgres_partitioned_data"
+        const val HASH_PARTITIONS = 8
+
+        @JvmField
+        val CHRONICLE_USAGE_EVENTS = PartitionedPostgresTableDefinition(
+            PostgresDataTables.CHRONICLE_USAGE_EVENTS.name,
+            RedshiftColumns.TIMESTAMP,
+            RedshiftColumns.STUDY_ID,
+            HASH_PARTITIONS
+        ).apply {
+            addColumns(*PostgresDataTables.CHRONICLE_USAGE_EVENTS.columns.toTypedArray())
+            primaryKey(*PostgresDataTables.CHRONICLE_USAGE_EVENTS.primaryKey.toTypedArray())
+            addDataSourceNames(RedshiftDataTables.REDSHIFT_DATASOURCE_NAME)
+            addIndexes(
+                PostgresColumnsIndexDefinition(
+                    this,
+                    RedshiftColumns.STUDY_ID,
+                    RedshiftColumns.PARTICIPANT_ID,
+                    RedshiftColumns.TIMESTAMP
+                ).ifNotExists()
+            )
+        }
+
+        @JvmField
+        val IOS_SENSOR_DATA = PartitionedPostgresTableDefinition(
+            PostgresDataTables.IOS_SENSOR_DATA.name,
+            RedshiftColumns.RECORDED_DATE_TIME,
+            RedshiftColumns.STUDY_ID,
+            HASH_PARTITIONS
+        ).apply {
+            addColumns(*PostgresDataTables.IOS_SENSOR_DATA.columns.toTypedArray())
+            primaryKey(*PostgresDataTables.IOS_SENSOR_DATA.primaryKey.toTypedArray())
+            addDataSourceNames(RedshiftDataTables.REDSHIFT_DATASOURCE_NAME)
+            addIndexes(
+                PostgresColumnsIndexDefinition(
+                    this,
+                    RedshiftColumns.STUDY_ID,
+                    RedshiftColumns.PARTICIPANT_ID,
+                    RedshiftColumns.RECORDED_DATE_TIME
+                ).ifNotExists()
+            )
+        }
+
+        @JvmStatic
+        val TABLES = listOf(CHRONICLE_USAGE_EVENTS, IOS_SENSOR_DATA)
+
+        /**
+         * The remaining [PostgresDataTables], which are registered as they are alongside the partitioned tables.
+         */
+        @JvmStatic
+        val UNPARTITIONED_TABLES = listOf(
+            PostgresDataTables.CHRONICLE_USAGE_STATS,
+            PostgresDataTables.AUDIT,
+            PostgresDataTables.PREPROCESSED_USAGE_EVENTS
+        )
+    }
+}
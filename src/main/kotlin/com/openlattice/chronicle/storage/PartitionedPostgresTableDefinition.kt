@@ -0,0 +1,105 @@
+package com.openlattice.chronicle.storage
+
+import com.geekbeast.postgres.PostgresColumnDefinition
+import com.geekbeast.postgres.PostgresTableDefinition
+import java.time.OffsetDateTime
+import java.time.YearMonth
+import java.time.ZoneOffset
+import java.time.format.DateTimeFormatter
+
+/**
+ * A table that is range partitioned by month on [rangeColumn], with each month hash partitioned on [hashColumn] into
+ * [hashPartitions] partitions. Queries that filter on both columns only scan the partitions of the requested months
+ * and studies.
+ *
+ * Creating the table only creates the partitioned parent and a default partition, which catches rows outside of the
+ * months that have partitions. Monthly partitions are created ahead of time with [createPartitionQueries]. Months are
+ * aligned to UTC.
+ *
+ * The primary key of a partitioned table must include both partition columns.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class PartitionedPostgresTableDefinition(
+    name: String,
+    val rangeColumn: PostgresColumnDefinition,
+    val hashColumn: PostgresColumnDefinition,
+    val hashPartitions: Int,
+) : PostgresTableDefinition(name) {
+    companion object {
+        private val MONTH_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM")
+    }
+
+    val defaultPartitionName = "${name}_default"
+
+    override fun createTableQuery(): String {
+        return "${super.createTableQuery().trimEnd().removeSuffix(";")} PARTITION BY RANGE (${rangeColumn.name})"
+    }
+
+    fun partitionName(month: YearMonth): String = "${name}_p${month.format(MONTH_SUFFIX)}"
+
+    fun hashPartitionName(month: YearMonth, remainder: Int): String = "${partitionName(month)}_h$remainder"
+
+    fun createDefaultPartitionQuery(): String {
+        return "CREATE TABLE IF NOT EXISTS $defaultPartitionName PARTITION OF $name DEFAULT"
+    }
+
+    /**
+     * Creates the partition for [month] and its hash partitions. Fails if the default partition already has rows in
+     * [month], in which case the partition must be created with [createPartitionFromDefaultQueries].
+     */
+    fun createPartitionQueries(month: YearMonth): List<String> {
+        val (start, end) = monthRange(month)
+        val monthPartition = partitionName(month)
+        return listOf(
+            """
+                CREATE TABLE IF NOT EXISTS $monthPartition PARTITION OF $name
+                FOR VALUES FROM ('$start') TO ('$end')
+                PARTITION BY HASH (${hashColumn.name})
+            """.trimIndent()
+        ) + (0 until hashPartitions).map { remainder ->
+            """
+                CREATE TABLE IF NOT EXISTS ${hashPartitionName(month, remainder)} PARTITION OF $monthPartition
+                FOR VALUES WITH (MODULUS $hashPartitions, REMAINDER $remainder)
+            """.trimIndent()
+        }
+    }
+
+    /**
+     * Selects a row of the default partition in [month], if any.
+     */
+    fun defaultPartitionRowsQuery(month: YearMonth): String {
+        return "SELECT 1 FROM $defaultPartitionName WHERE ${monthFilter(month)} LIMIT 1"
+    }
+
+    /**
+     * Creates the partition for [month] when the default partition already has rows in it, for example from a device
+     * with its clock set months ahead. The default partition is detached while the partition is created, its rows in
+     * [month] are moved to the new partition and it is attached again. The queries must run in a single transaction.
+     */
+    fun createPartitionFromDefaultQueries(month: YearMonth): List<String> {
+        return listOf("ALTER TABLE $name DETACH PARTITION $defaultPartitionName") +
+                createPartitionQueries(month) +
+                listOf(
+                    "INSERT INTO $name SELECT * FROM $defaultPartitionName WHERE ${monthFilter(month)}",
+                    "DELETE FROM $defaultPartitionName WHERE ${monthFilter(month)}",
+                    "ALTER TABLE $name ATTACH PARTITION $defaultPartitionName DEFAULT"
+                )
+    }
+
+    fun detachPartitionQuery(month: YearMonth): String {
+        return "ALTER TABLE $name DETACH PARTITION ${partitionName(month)}"
+    }
+
+    fun dropPartitionQuery(month: YearMonth): String = "DROP TABLE IF EXISTS ${partitionName(month)}"
+
+    private fun monthRange(month: YearMonth): Pair<OffsetDateTime, OffsetDateTime> {
+        return month.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC) to
+                month.plusMonths(1).atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC)
+    }
+
+    private fun monthFilter(month: YearMonth): String {
+        val (start, end) = monthRange(month)
+        return "${rangeColumn.name} >= '$start' AND ${rangeColumn.name} < '$end'"
+    }
+}
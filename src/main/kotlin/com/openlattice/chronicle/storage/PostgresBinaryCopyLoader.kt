@@ -0,0 +1,214 @@
+package com.openlattice.chronicle.storage
+
+import com.geekbeast.postgres.PostgresDatatype
+import com.geekbeast.postgres.PostgresTableDefinition
+import org.apache.commons.lang3.RandomStringUtils
+import org.postgresql.PGConnection
+import org.postgresql.copy.PGCopyOutputStream
+import org.slf4j.LoggerFactory
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.nio.charset.StandardCharsets
+import java.sql.Connection
+import java.sql.SQLException
+import java.time.Instant
+import java.time.LocalDate
+import java.time.OffsetDateTime
+import java.time.ZonedDateTime
+import java.time.temporal.ChronoUnit
+import java.util.*
+
+/**
+ * Bulk loads rows into a vanilla postgres table using the binary `COPY ... FROM STDIN` protocol, streaming each row
+ * to the server as it is encoded instead of binding it parameter by parameter into a multi-row insert.
+ *
+ * Rows are provided as arrays of values in the same order as the columns of the table definition. Since `COPY` does
+ * not support `ON CONFLICT`, when conflicts must be ignored rows are copied into a temporary table first and then
+ * inserted into the target table.
+ *
+ * COPY is only available when the connection is backed by the postgres driver (redshift does not support
+ * `COPY FROM STDIN`) and every column of the table has a binary encoding below. Callers are expected to check
+ * [isAvailable] and fall back to a multi-row insert otherwise.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class PostgresBinaryCopyLoader(private val table: PostgresTableDefinition) {
+    companion object {
+        private val logger = LoggerFactory.getLogger(PostgresBinaryCopyLoader::class.java)
+
+        private const val BUFFER_SIZE = 65536
+
+        private val SIGNATURE = byteArrayOf(
+            'P'.code.toByte(), 'G'.code.toByte(), 'C'.code.toByte(), 'O'.code.toByte(), 'P'.code.toByte(),
+            'Y'.code.toByte(), '\n'.code.toByte(), 0xFF.toByte(), '\r'.code.toByte(), '\n'.code.toByte(), 0
+        )
+
+        /**
+         * Postgres binary timestamps and dates are relative to 2000-01-01 UTC.
+         */
+        private val POSTGRES_EPOCH: Instant = Instant.parse("2000-01-01T00:00:00Z")
+        private val POSTGRES_EPOCH_DATE: LocalDate = LocalDate.of(2000, 1, 1)
+
+        private val TEXT_DATATYPES = EnumSet.of(
+            PostgresDatatype.TEXT,
+            PostgresDatatype.TEXT_UUID,
+            PostgresDatatype.TEXT_128,
+            PostgresDatatype.TEXT_256,
+            PostgresDatatype.VARCHAR_MAX
+        )
+
+        private val SUPPORTED_DATATYPES = EnumSet.of(
+            PostgresDatatype.UUID,
+            PostgresDatatype.BOOLEAN,
+            PostgresDatatype.SMALLINT,
+            PostgresDatatype.INTEGER,
+            PostgresDatatype.BIGINT,
+            PostgresDatatype.REAL,
+            PostgresDatatype.DOUBLE,
+            PostgresDatatype.DATE,
+            PostgresDatatype.TIMESTAMPTZ
+        ) + TEXT_DATATYPES
+    }
+
+    private val datatypes = table.columns.map { it.datatype }.toTypedArray()
+    private val columns = table.columns.joinToString(",") { it.name }
+    private val supported = datatypes.all { SUPPORTED_DATATYPES.contains(it) }
+
+    init {
+        if (!supported) {
+            logger.info(
+                "Binary copy is not supported for table {} due to columns {}",
+                table.name,
+                table.columns.filter { !SUPPORTED_DATATYPES.contains(it.datatype) }.map { it.name }
+            )
+        }
+    }
+
+    /**
+     * @return True if rows can be copied into the table using this connection.
+     */
+    fun isAvailable(connection: Connection): Boolean {
+        return try {
+            supported && connection.isWrapperFor(PGConnection::class.java)
+        } catch (ex: SQLException) {
+            false
+        }
+    }
+
+    /**
+     * Copies rows into the table. The caller is responsible for transaction management.
+     *
+     * @param rows Values for each row ordered as the columns of the table definition.
+     * @param onConflictDoNothing Whether rows violating a unique constraint should be skipped instead of failing the
+     * copy.
+     * @return The number of rows written to the table.
+     */
+    fun copy(connection: Connection, rows: Sequence<Array<Any?>>, onConflictDoNothing: Boolean = false): Long {
+        if (!onConflictDoNothing) return copyInto(connection, table.name, rows)
+
+        val stagingTable = "copy_staging_${RandomStringUtils.randomAlphanumeric(10).lowercase()}"
+        connection.createStatement().use { stmt ->
+            stmt.execute("CREATE TEMPORARY TABLE $stagingTable (LIKE ${table.name} INCLUDING DEFAULTS)")
+        }
+        try {
+            copyInto(connection, stagingTable, rows)
+            return connection.createStatement().use { stmt ->
+                stmt.executeUpdate(
+                    "INSERT INTO ${table.name} ($columns) SELECT $columns FROM $stagingTable ON CONFLICT DO NOTHING"
+                ).toLong()
+            }
+        } finally {
+            connection.createStatement().use { stmt -> stmt.execute("DROP TABLE IF EXISTS $stagingTable") }
+        }
+    }
+
+    private fun copyInto(connection: Connection, tableName: String, rows: Sequence<Array<Any?>>): Long {
+        val copyStream = PGCopyOutputStream(
+            connection.unwrap(PGConnection::class.java),
+            "COPY $tableName ($columns) FROM STDIN WITH (FORMAT binary)",
+            BUFFER_SIZE
+        )
+
+        try {
+            val out = DataOutputStream(BufferedOutputStream(copyStream, BUFFER_SIZE))
+            out.write(SIGNATURE)
+            out.writeInt(0) //flags
+            out.writeInt(0) //header extension length
+
+            rows.forEach { row ->
+                check(row.size == datatypes.size) {
+                    "Expected ${datatypes.size} values for ${table.name} but got ${row.size}"
+                }
+                out.writeShort(row.size)
+                row.forEachIndexed { index, value -> writeValue(out, datatypes[index], value) }
+            }
+
+            out.writeShort(-1) //trailer
+            out.flush()
+            return copyStream.endCopy()
+        } finally {
+            if (copyStream.isActive) copyStream.cancelCopy()
+        }
+    }
+
+    private fun writeValue(out: DataOutputStream, datatype: PostgresDatatype, value: Any?) {
+        if (value == null) {
+            out.writeInt(-1)
+            return
+        }
+
+        when {
+            TEXT_DATATYPES.contains(datatype) -> {
+                val bytes = value.toString().toByteArray(StandardCharsets.UTF_8)
+                out.writeInt(bytes.size)
+                out.write(bytes)
+            }
+            datatype == PostgresDatatype.UUID -> {
+                val uuid = if (value is UUID) value else UUID.fromString(value.toString())
+                out.writeInt(16)
+                out.writeLong(uuid.mostSignificantBits)
+                out.writeLong(uuid.leastSignificantBits)
+            }
+            datatype == PostgresDatatype.BOOLEAN -> {
+                out.writeInt(1)
+                out.writeBoolean(value as Boolean)
+            }
+            datatype == PostgresDatatype.SMALLINT -> {
+                out.writeInt(2)
+                out.writeShort((value as Number).toInt())
+            }
+            datatype == PostgresDatatype.INTEGER -> {
+                out.writeInt(4)
+                out.writeInt((value as Number).toInt())
+            }
+            datatype == PostgresDatatype.BIGINT -> {
+                out.writeInt(8)
+                out.writeLong((value as Number).toLong())
+            }
+            datatype == PostgresDatatype.REAL -> {
+                out.writeInt(4)
+                out.writeFloat((value as Number).toFloat())
+            }
+            datatype == PostgresDatatype.DOUBLE -> {
+                out.writeInt(8)
+                out.writeDouble((value as Number).toDouble())
+            }
+            datatype == PostgresDatatype.DATE -> {
+                val date = if (value is LocalDate) value else LocalDate.parse(value.toString())
+                out.writeInt(4)
+                out.writeInt(ChronoUnit.DAYS.between(POSTGRES_EPOCH_DATE, date).toInt())
+            }
+            datatype == PostgresDatatype.TIMESTAMPTZ -> {
+                val instant = when (value) {
+                    is Instant -> value
+                    is ZonedDateTime -> value.toInstant()
+                    is OffsetDateTime -> value.toInstant()
+                    else -> odtFromUsageEventColumn(value)!!.toInstant()
+                }
+                out.writeInt(8)
+                out.writeLong(ChronoUnit.MICROS.between(POSTGRES_EPOCH, instant))
+            }
+            else -> throw UnsupportedOperationException("Binary copy of $datatype is not supported.")
+        }
+    }
+}
@@ -29,14 +29,18 @@ class PostgresColumns {
         @JvmField val DATA_EXPIRES = PostgresColumnDefinition("data_expires", PostgresDatatype.TIMESTAMPTZ).notNull()
         @JvmField val DATE_OF_BIRTH = PostgresColumnDefinition("dob", PostgresDatatype.DATE)
         @JvmField val DATA_RETENTION = PostgresColumnDefinition("data_retention", PostgresDatatype.JSONB).notNull()
+        @JvmField val DATA_SOURCE_NAME = PostgresColumnDefinition("data_source_name", PostgresDatatype.TEXT).notNull()
         @JvmField val DELETED_ROWS = PostgresColumnDefinition("deleted_rows", PostgresDatatype.BIGINT).notNull()
         @JvmField val DESCRIPTION = PostgresColumnDefinition("description", PostgresDatatype.TEXT)
         @JvmField val DEVICE_ID = PostgresColumnDefinition("device_id", PostgresDatatype.UUID).notNull()
         @JvmField val DEVICE_TOKEN = PostgresColumnDefinition("device_token", PostgresDatatype.TEXT)
         @JvmField val DEVICE_TYPE = PostgresColumnDefinition("device_type", PostgresDatatype.TEXT)
+        @JvmField val DIRTY_SINCE = PostgresColumnDefinition("dirty_since", PostgresDatatype.TIMESTAMPTZ)
         @JvmField val EMAIL = PostgresColumnDefinition("email", PostgresDatatype.TEXT).unique()
         @JvmField val EMAIL_NOT_UNIQUE = PostgresColumnDefinition("email", PostgresDatatype.TEXT)
         @JvmField val ENDED_AT = PostgresColumnDefinition("ended_at", PostgresDatatype.TIMESTAMPTZ).notNull().withDefault("'infinity'")
+        @JvmField val EVENT_DATE = PostgresColumnDefinition("event_date", PostgresDatatype.DATE).notNull()
+        @JvmField val EVENT_HASH = PostgresColumnDefinition("event_hash", PostgresDatatype.BIGINT).notNull()
         @JvmField val EXPIRATION = PostgresColumnDefinition("expiration", PostgresDatatype.BIGINT)
         @JvmField val EXPIRATION_DATE = PostgresColumnDefinition("expiration_date", PostgresDatatype.TIMESTAMPTZ).withDefault("'infinity'").notNull()
         @JvmField val FIRST_NAME = PostgresColumnDefinition("first_name", PostgresDatatype.TEXT)
@@ -56,12 +60,19 @@ class PostgresColumns {
         @JvmField val MSB = PostgresColumnDefinition("msb", PostgresDatatype.BIGINT).notNull()
         @JvmField val NAME = PostgresColumnDefinition("name", PostgresDatatype.TEXT)
         @JvmField val NOTIFICATIONS_ENABLED = PostgresColumnDefinition("notifications_enabled", PostgresDatatype.BOOLEAN)
+        @JvmField val OBJECT_KEY = PostgresColumnDefinition("object_key", PostgresDatatype.TEXT).notNull()
+        @JvmField val OPEN_APP_PACKAGE_NAME = PostgresColumnDefinition("open_app_package_name", PostgresDatatype.TEXT)
+        @JvmField val OPEN_APPLICATION_LABEL = PostgresColumnDefinition("open_application_label", PostgresDatatype.TEXT)
+        @JvmField val OPEN_SESSION_START = PostgresColumnDefinition("open_session_start", PostgresDatatype.TIMESTAMPTZ)
+        @JvmField val OPEN_SESSION_TIMEZONE = PostgresColumnDefinition("open_session_timezone", PostgresDatatype.TEXT)
         @JvmField val ORGANIZATION_ID = PostgresColumnDefinition("organization_id", PostgresDatatype.UUID).notNull()
         @JvmField val ORGANIZATION_IDS = PostgresColumnDefinition("organization_ids", PostgresDatatype.UUID_ARRAY).notNull()
         @JvmField val PARTICIPANT_LIMIT = PostgresColumnDefinition("participant_limit", PostgresDatatype.INTEGER).notNull()
         @JvmField val PARTICIPANT_ID = PostgresColumnDefinition("participant_id", PostgresDatatype.TEXT).notNull()
+        @JvmField val PARTICIPANT_IDS = PostgresColumnDefinition("participant_ids", PostgresDatatype.TEXT_ARRAY).notNull()
         @JvmField val PARTICIPATION_STATUS = PostgresColumnDefinition("participation_status", PostgresDatatype.TEXT).notNull()
         @JvmField val PARTITION_INDEX = PostgresColumnDefinition("partition_index", PostgresDatatype.BIGINT).notNull()
+        @JvmField val PART_INDEX = PostgresColumnDefinition("part_index", PostgresDatatype.INTEGER).notNull()
         @JvmField val PERMISSION = PostgresColumnDefinition("permission", PostgresDatatype.TEXT)
         @JvmField val PERMISSIONS = PostgresColumnDefinition("permissions", PostgresDatatype.TEXT_ARRAY)
         @JvmField val PHONE_NUMBER = PostgresColumnDefinition("phone_number", PostgresDatatype.TEXT).unique()
@@ -70,17 +81,22 @@ class PostgresColumns {
         @JvmField val PRINCIPAL_ID = PostgresColumnDefinition("principal_id", PostgresDatatype.TEXT)
         @JvmField val PRINCIPAL_OF_ACL_KEY = PostgresColumnDefinition("principal_of_acl_key", PostgresDatatype.UUID_ARRAY)
         @JvmField val PRINCIPAL_TYPE = PostgresColumnDefinition("principal_type", PostgresDatatype.TEXT)
+        @JvmField val PROCESSED_THROUGH = PostgresColumnDefinition("processed_through", PostgresDatatype.TIMESTAMPTZ)
         @JvmField val QUESTIONNAIRE_ID = PostgresColumnDefinition("questionnaire_id", PostgresDatatype.UUID).notNull()
         @JvmField val QUESTIONS = PostgresColumnDefinition("questions", PostgresDatatype.JSONB).notNull()
         @JvmField val QUESTION_TITLE = PostgresColumnDefinition("question_title", PostgresDatatype.TEXT).notNull()
+        @JvmField val RANGE_END = PostgresColumnDefinition("range_end", PostgresDatatype.TIMESTAMPTZ)
+        @JvmField val RANGE_START = PostgresColumnDefinition("range_start", PostgresDatatype.TIMESTAMPTZ)
         @JvmField val RECURRENCE_RULE = PostgresColumnDefinition("recurrence_rule", PostgresDatatype.TEXT)
         @JvmField val RESPONSES = PostgresColumnDefinition("response", PostgresDatatype.TEXT_ARRAY)
+        @JvmField val ROW_COUNT = PostgresColumnDefinition("row_count", PostgresDatatype.BIGINT).notNull()
         @JvmField val SCOPE = PostgresColumnDefinition("scope", PostgresDatatype.TEXT).notNull()
         @JvmField val SECURABLE_OBJECT_ID = PostgresColumnDefinition("id", PostgresDatatype.UUID).unique().notNull()
         @JvmField val SECURABLE_OBJECT_NAME = PostgresColumnDefinition("name", PostgresDatatype.TEXT).notNull().unique()
         @JvmField val SECURABLE_OBJECT_TYPE = PostgresColumnDefinition("securable_object_type", PostgresDatatype.TEXT).notNull()
         @JvmField val SECURABLE_PRINCIPAL_ID = PostgresColumnDefinition("securable_principal_id", PostgresDatatype.UUID).notNull()
         @JvmField val SETTINGS = PostgresColumnDefinition("settings", PostgresDatatype.JSONB).withDefault("'{}'::jsonb")
+        @JvmField val SIZE_BYTES = PostgresColumnDefinition("size_bytes", PostgresDatatype.BIGINT).notNull()
         @JvmField val MODULES = PostgresColumnDefinition("modules", PostgresDatatype.JSONB).withDefault("'{}'::jsonb")
         @JvmField val SOURCE_DEVICE = PostgresColumnDefinition("source_device", PostgresDatatype.JSONB).notNull()
         @JvmField val SOURCE_DEVICE_ID = PostgresColumnDefinition("source_device_id", PostgresDatatype.TEXT)
@@ -107,7 +123,8 @@ class PostgresColumns {
         @JvmField val UPGRADE_CLASS = PostgresColumnDefinition("upgrade_class", PostgresDatatype.TEXT).notNull()
         @JvmField val UPGRADE_STATUS = PostgresColumnDefinition("upgrade_status",PostgresDatatype.TEXT).notNull().withDefault("'${UpgradeStatus.Registered.name}'")
         @JvmField val LAST_UPDATE = PostgresColumnDefinition("last_update",PostgresDatatype.TIMESTAMPTZ).notNull().withDefault("now()")
-        @JvmField val UPLOAD_DATA = PostgresColumnDefinition("data", PostgresDatatype.JSONB).notNull()
+        @JvmField val UPLOAD_DATA = PostgresColumnDefinition("data", PostgresDatatype.JSONB)
+        @JvmField val UPLOAD_DATA_BINARY = PostgresColumnDefinition("data_binary", PostgresDatatype.BYTEA)
         @JvmField val UPLOADED_AT = PostgresColumnDefinition("uploaded_at", PostgresDatatype.TIMESTAMPTZ).withDefault("now()")
         @JvmField val UPLOAD_TYPE = PostgresColumnDefinition("upload_type", PostgresDatatype.TEXT).notNull()
 
@@ -1,5 +1,6 @@
 package com.openlattice.chronicle.storage
 
+import com.geekbeast.postgres.PostgresColumnsIndexDefinition
 import com.geekbeast.postgres.PostgresTableDefinition
 
 /**
@@ -34,5 +35,35 @@ class PostgresDataTables {
             .primaryKey(*RedshiftDataTables.IOS_SENSOR_DATA.columns.toTypedArray().sliceArray(0 until 32))
             .addDataSourceNames(RedshiftDataTables.REDSHIFT_DATASOURCE_NAME)
 
+        @JvmField
+        val PREPROCESSED_USAGE_EVENTS = PostgresTableDefinition(RedshiftDataTables.PREPROCESSED_USAGE_EVENTS.name)
+            .addColumns(*RedshiftDataTables.PREPROCESSED_USAGE_EVENTS.columns.toTypedArray())
+            .primaryKey(
+                RedshiftColumns.STUDY_ID,
+                RedshiftColumns.PARTICIPANT_ID,
+                RedshiftColumns.APP_DATETIME_START,
+                RedshiftColumns.APP_FULL_NAME
+            )
+            .addDataSourceNames(RedshiftDataTables.REDSHIFT_DATASOURCE_NAME)
+
+        init {
+            //Supports keyset paginated downloads, which read ranges of (participant id, timestamp) within a study.
+            CHRONICLE_USAGE_EVENTS.addIndexes(
+                PostgresColumnsIndexDefinition(
+                    CHRONICLE_USAGE_EVENTS,
+                    RedshiftColumns.STUDY_ID,
+                    RedshiftColumns.PARTICIPANT_ID,
+                    RedshiftColumns.TIMESTAMP
+                ).ifNotExists()
+            )
+            IOS_SENSOR_DATA.addIndexes(
+                PostgresColumnsIndexDefinition(
+                    IOS_SENSOR_DATA,
+                    RedshiftColumns.STUDY_ID,
+                    RedshiftColumns.PARTICIPANT_ID,
+                    RedshiftColumns.RECORDED_DATE_TIME
+                ).ifNotExists()
+            )
+        }
     }
-}
\ No newline at end of file
+}
@@ -19,7 +19,8 @@ import java.util.*
  */
 class StorageResolver constructor(
     private val dataSourceManager: DataSourceManager,
-    private val storageConfiguration: ChronicleStorageConfiguration
+    private val storageConfiguration: ChronicleStorageConfiguration,
+    private val poolMetrics: DataSourcePoolMetrics? = null
 ) {
     private lateinit var studyStorage: IMap<UUID, Study>
 
@@ -46,13 +47,13 @@ class StorageResolver constructor(
     }
 
     fun getDataSource(dataSourceName: String): Pair<PostgresFlavor, HikariDataSource> {
-        return dataSourceManager.getFlavor(dataSourceName) to dataSourceManager.getDataSource(dataSourceName)
+        val hds = dataSourceManager.getDataSource(dataSourceName)
+        poolMetrics?.instrument(dataSourceName, hds)
+        return dataSourceManager.getFlavor(dataSourceName) to hds
     }
 
     fun getAuditStorage(): Pair<PostgresFlavor, HikariDataSource> {
-        return with(dataSourceManager) {
-            getFlavor(storageConfiguration.auditStorage) to getDataSource(storageConfiguration.auditStorage)
-        }
+        return getDataSource(storageConfiguration.auditStorage)
     }
 
     fun getEventStorageWithFlavor(requiredFlavor: PostgresFlavor = PostgresFlavor.REDSHIFT): HikariDataSource {
@@ -67,16 +68,14 @@ class StorageResolver constructor(
         return hds
     }
 
+    fun getPlatformStorageName(): String = storageConfiguration.platformStorage
+
     fun getDefaultPlatformStorage(): Pair<PostgresFlavor, HikariDataSource> {
-        return with(dataSourceManager) {
-            getFlavor(storageConfiguration.platformStorage) to getDataSource(storageConfiguration.platformStorage)
-        }
+        return getDataSource(storageConfiguration.platformStorage)
     }
 
     fun getDefaultEventStorage(): Pair<PostgresFlavor, HikariDataSource> {
-        return with(dataSourceManager) {
-            getFlavor(storageConfiguration.defaultEventStorage) to getDataSource(storageConfiguration.defaultEventStorage)
-        }
+        return getDataSource(storageConfiguration.defaultEventStorage)
     }
 
     fun setStudyStorage( hazelcastInstance: HazelcastInstance ) {
@@ -20,6 +20,8 @@ import com.openlattice.chronicle.storage.ByteBlobDataManager
 import org.slf4j.LoggerFactory
 import org.springframework.stereotype.Service
 import java.net.URL
+import java.nio.file.Files
+import java.nio.file.Path
 import java.util.*
 import java.util.concurrent.Callable
 import java.util.concurrent.Semaphore
@@ -69,6 +71,23 @@ class AwsBlobDataService(
         transferManager.shutdownNow(false)
     }
 
+    override fun putFile(s3Key: String, file: Path, contentType: String, contentDisposition: String?) {
+        val metadata = ObjectMetadata()
+        metadata.contentLength = Files.size(file)
+        metadata.contentType = contentType
+        contentDisposition?.let { metadata.contentDisposition = it }
+
+        //The transfer manager switches to a multipart upload for large files.
+        val putRequest = PutObjectRequest(datastoreConfiguration.bucketName, s3Key, file.toFile())
+            .withMetadata(metadata)
+        val transferManager = TransferManagerBuilder.standard().withS3Client(s3).build()
+        try {
+            transferManager.upload(putRequest).waitForCompletion()
+        } finally {
+            transferManager.shutdownNow(false)
+        }
+    }
+
     override fun deleteObjects(s3Keys: List<String>) {
         s3Keys.chunked(MAX_NUM_OF_OBJECTS_FOR_S3_DELETE).map { s3KeyBatch ->
             val keysToDelete = s3KeyBatch.map { DeleteObjectsRequest.KeyVersion(it) }.toList()
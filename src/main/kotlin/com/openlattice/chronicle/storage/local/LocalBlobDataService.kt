@@ -10,6 +10,8 @@ import com.zaxxer.hikari.HikariDataSource
 import org.slf4j.LoggerFactory
 import org.springframework.stereotype.Service
 import java.net.URL
+import java.nio.file.Files
+import java.nio.file.Path
 import java.util.*
 
 private val logger = LoggerFactory.getLogger(LocalBlobDataService::class.java)
@@ -52,6 +54,18 @@ class LocalBlobDataService(private val hds: HikariDataSource) : ByteBlobDataMana
         insertEntity(s3Key, binaryObjectWithMetadata.data)
     }
 
+    override fun putFile(s3Key: String, file: Path, contentType: String, contentDisposition: String?) {
+        hds.connection.use { connection ->
+            connection.prepareStatement(insertEntitySql()).use { ps ->
+                Files.newInputStream(file).use { input ->
+                    ps.setString(1, s3Key)
+                    ps.setBinaryStream(2, input, Files.size(file))
+                    ps.execute()
+                }
+            }
+        }
+    }
+
     override fun deleteObject(s3Key: String) {
         deleteEntity(s3Key)
     }
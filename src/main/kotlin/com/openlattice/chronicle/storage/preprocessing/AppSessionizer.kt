@@ -0,0 +1,118 @@
+package com.openlattice.chronicle.storage.preprocessing
+
+import java.time.DayOfWeek
+import java.time.Duration
+import java.time.OffsetDateTime
+import java.time.ZoneId
+import java.time.ZoneOffset
+
+/**
+ * An app moving to the foreground or background on a participant's device.
+ */
+data class AppUsageEvent(
+    val appPackageName: String,
+    val applicationLabel: String?,
+    val timestamp: OffsetDateTime,
+    val timezone: String?,
+    val foreground: Boolean,
+)
+
+/**
+ * An app that was in the foreground as of the last processed event. Carried across preprocessing runs so that a
+ * session is not cut in two when its background event arrives in a later upload.
+ */
+data class OpenAppSession(
+    val appPackageName: String,
+    val applicationLabel: String?,
+    val start: OffsetDateTime,
+    val timezone: String?,
+)
+
+/**
+ * A completed foreground session of an app.
+ *
+ * @param switchedApp True if the session was ended by another app moving to the foreground instead of by its own
+ * background event.
+ */
+data class AppSession(
+    val appPackageName: String,
+    val applicationLabel: String?,
+    val start: OffsetDateTime,
+    val end: OffsetDateTime,
+    val timezone: String?,
+    val switchedApp: Boolean,
+) {
+    companion object {
+        const val APP_USAGE_RECORD_TYPE = "App Usage"
+        const val MISSING_BACKGROUND_FLAG = "missing background event"
+        private const val ENGAGED_SECONDS = 30
+    }
+
+    val durationSeconds: Double
+        get() = Duration.between(start, end).toMillis() / 1000.0
+
+    val engaged: Boolean
+        get() = durationSeconds >= ENGAGED_SECONDS
+
+    /**
+     * The day of the week the session started on in the participant's timezone, from 1 (Monday) to 7 (Sunday).
+     */
+    val day: DayOfWeek
+        get() = start.atZoneSameInstant(zoneId()).dayOfWeek
+
+    val flags: String?
+        get() = if (switchedApp) MISSING_BACKGROUND_FLAG else null
+
+    fun localStart(): OffsetDateTime = start.atZoneSameInstant(zoneId()).toOffsetDateTime()
+
+    fun localEnd(): OffsetDateTime = end.atZoneSameInstant(zoneId()).toOffsetDateTime()
+
+    private fun zoneId(): ZoneId = try {
+        if (timezone.isNullOrBlank()) ZoneOffset.UTC else ZoneId.of(timezone)
+    } catch (ex: Exception) {
+        ZoneOffset.UTC
+    }
+}
+
+/**
+ * Turns an ordered stream of foreground and background events into app sessions. A session starts when an app moves
+ * to the foreground and ends when it moves to the background or another app moves to the foreground. Background
+ * events for apps that are not in the foreground are ignored, as are repeated foreground events for the open app.
+ *
+ * @param open The session left open by the previous preprocessing run, if any.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class AppSessionizer(open: OpenAppSession? = null) {
+    var open: OpenAppSession? = open
+        private set
+
+    /**
+     * @return The session closed by this event, if any.
+     */
+    fun accept(event: AppUsageEvent): AppSession? {
+        val current = open
+        if (event.foreground) {
+            if (current != null && current.appPackageName == event.appPackageName) {
+                return null
+            }
+            open = OpenAppSession(event.appPackageName, event.applicationLabel, event.timestamp, event.timezone)
+            return current?.let { close(it, event.timestamp, true) }
+        }
+
+        if (current == null || current.appPackageName != event.appPackageName) {
+            return null
+        }
+        open = null
+        return close(current, event.timestamp, false)
+    }
+
+    private fun close(session: OpenAppSession, end: OffsetDateTime, switchedApp: Boolean) = AppSession(
+        session.appPackageName,
+        session.applicationLabel,
+        session.start,
+        end,
+        session.timezone,
+        switchedApp
+    )
+}
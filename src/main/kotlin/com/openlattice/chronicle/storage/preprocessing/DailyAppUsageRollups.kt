@@ -0,0 +1,565 @@
+package com.openlattice.chronicle.storage.preprocessing
+
+import com.openlattice.chronicle.android.ChronicleUsageEventType
+import com.openlattice.chronicle.configuration.ChronicleUploadConfiguration
+import com.openlattice.chronicle.postgres.ResultSetAdapters
+import com.openlattice.chronicle.services.upload.UploadType
+import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.DAILY_APP_USAGE
+import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.USAGE_ROLLUP_DAYS
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.DIRTY_SINCE
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.EVENT_DATE
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.PARTICIPANT_ID
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.RANGE_END
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.RANGE_START
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.STUDY_ID
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPDATED_AT
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOAD_TYPE
+import com.openlattice.chronicle.storage.RedshiftColumns
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APPLICATION_LABEL
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_CATEGORY
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_PACKAGE_NAME
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_USAGE_TIME
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.BUNDLE_IDENTIFIER
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.END_DATE_TIME
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.EVENT_TYPE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.INTERACTION_TYPE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.TIMESTAMP
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.TIMEZONE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.USERNAME
+import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.CHRONICLE_USAGE_EVENTS
+import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.IOS_SENSOR_DATA
+import com.openlattice.chronicle.storage.StorageResolver
+import com.openlattice.chronicle.survey.AppUsage
+import org.slf4j.LoggerFactory
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.time.LocalDate
+import java.time.OffsetDateTime
+import java.time.ZoneId
+import java.time.ZoneOffset
+import java.time.temporal.ChronoUnit
+import java.util.*
+
+/**
+ * A day of device usage for a participant, in the timezone of the events that fall on it.
+ *
+ * Rolled up days are keyed by date without the timezone, so the timezone recorded first for a date fixes the range of
+ * that day. Events recorded on the same date in another timezone are still counted, since a day is recomputed from
+ * every event in its range.
+ */
+data class UsageDay(
+    val studyId: UUID,
+    val participantId: String,
+    val date: LocalDate,
+    val timezone: String,
+) {
+    companion object {
+        @JvmStatic
+        fun of(studyId: UUID, participantId: String, timestamp: OffsetDateTime, timezone: String?): UsageDay {
+            val zoneId = zoneId(timezone)
+            return UsageDay(studyId, participantId, timestamp.atZoneSameInstant(zoneId).toLocalDate(), zoneId.id)
+        }
+
+        private fun zoneId(timezone: String?): ZoneId = try {
+            if (timezone.isNullOrBlank()) ZoneOffset.UTC else ZoneId.of(timezone)
+        } catch (ex: Exception) {
+            ZoneOffset.UTC
+        }
+    }
+
+    val start: OffsetDateTime
+        get() = date.atStartOfDay(zoneId(timezone)).toOffsetDateTime()
+
+    val end: OffsetDateTime
+        get() = date.plusDays(1).atStartOfDay(zoneId(timezone)).toOffsetDateTime()
+}
+
+/**
+ * Seconds an app was used on a rolled up day.
+ */
+data class DailyAppUsage(
+    val appPackageName: String,
+    val applicationLabel: String?,
+    val category: String?,
+    val usageSeconds: Double,
+)
+
+/**
+ * The rolled up days that fall entirely within a time window, and the app usage on those days.
+ */
+data class RolledUpUsage(
+    val days: List<Pair<OffsetDateTime, OffsetDateTime>>,
+    val usage: List<DailyAppUsage>,
+) {
+    companion object {
+        @JvmField
+        val NONE = RolledUpUsage(listOf(), listOf())
+    }
+
+    /**
+     * @return The parts of the window that are not covered by a rolled up day, and must be read from raw events.
+     */
+    fun gaps(startDateTime: OffsetDateTime, endDateTime: OffsetDateTime): List<Pair<OffsetDateTime, OffsetDateTime>> {
+        val gaps = mutableListOf<Pair<OffsetDateTime, OffsetDateTime>>()
+        var cursor = startDateTime
+        days.sortedBy { it.first }.forEach { (dayStart, dayEnd) ->
+            if (dayStart > cursor) {
+                gaps.add(cursor to dayStart)
+            }
+            if (dayEnd > cursor) {
+                cursor = dayEnd
+            }
+        }
+        if (cursor < endDateTime) {
+            gaps.add(cursor to endDateTime)
+        }
+        return gaps
+    }
+}
+
+/**
+ * Maintains a per participant, per day, per app rollup of device usage in [DAILY_APP_USAGE] so that app usage
+ * surveys do not have to fold raw events on every request.
+ *
+ * Drains mark each participant day they write events for as dirty in [USAGE_ROLLUP_DAYS]. [process] only rolls up
+ * days that have ended in the participant's timezone, by recomputing the whole day from event storage, so the current
+ * partial day is always read from raw events. A day that receives late events is marked dirty again and served from
+ * raw events until it is recomputed.
+ *
+ * Android usage for a day is folded the same way as [aggregateUsage], starting from midnight. iOS usage is the sum of
+ * app usage time of samples ending on the day.
+ *
+ * A participant day keeps the timezone it was first marked dirty with (see [UsageDay]). When a participant changes
+ * timezone, the ranges of the days on either side of the change are off by the difference in offsets. A gap between
+ * them is read from raw events, but hours where they overlap are counted on both days, so usage on the day of the
+ * change can be overcounted by at most that difference.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class DailyAppUsageRollups(
+    private val storageResolver: StorageResolver,
+    private val uploadConfiguration: ChronicleUploadConfiguration,
+) {
+    companion object {
+        private val logger = LoggerFactory.getLogger(DailyAppUsageRollups::class.java)
+
+        const val UNKNOWN_BUNDLE = "Unknown"
+
+        private val DEVICE_USAGE_EVENT_TYPES = setOf(
+            ChronicleUsageEventType.MOVE_TO_BACKGROUND.value,
+            ChronicleUsageEventType.MOVE_TO_FOREGROUND.value,
+            ChronicleUsageEventType.ACTIVITY_PAUSED.value,
+            ChronicleUsageEventType.ACTIVITY_RESUMED.value
+        )
+
+        private val DAY_KEY = listOf(STUDY_ID, PARTICIPANT_ID, UPLOAD_TYPE, EVENT_DATE).joinToString(",") { it.name }
+
+        private val DAY_KEY_CLAUSE =
+            listOf(STUDY_ID, PARTICIPANT_ID, UPLOAD_TYPE, EVENT_DATE).joinToString(" AND ") { "${it.name} = ?" }
+
+        /**
+         * Marking a day dirty again keeps the timezone and range it was first marked with.
+         *
+         * 1) study id
+         * 2) participant id
+         * 3) upload type
+         * 4) date
+         * 5) timezone
+         * 6) start of day
+         * 7) end of day
+         */
+        private val MARK_DIRTY_SQL = """
+            INSERT INTO ${USAGE_ROLLUP_DAYS.name} ($DAY_KEY,${TIMEZONE.name},${RANGE_START.name},${RANGE_END.name},${DIRTY_SINCE.name})
+            VALUES (?,?,?,?,?,?,?,now())
+            ON CONFLICT ($DAY_KEY) DO UPDATE
+            SET ${DIRTY_SINCE.name} = COALESCE(${USAGE_ROLLUP_DAYS.name}.${DIRTY_SINCE.name}, EXCLUDED.${DIRTY_SINCE.name})
+        """.trimIndent()
+
+        private fun claimDirtySql(batchSize: Int) = """
+            SELECT $DAY_KEY, ${TIMEZONE.name}
+            FROM ${USAGE_ROLLUP_DAYS.name}
+            WHERE ${DIRTY_SINCE.name} IS NOT NULL AND ${RANGE_END.name} <= now()
+            ORDER BY ${DIRTY_SINCE.name}
+            LIMIT $batchSize
+            FOR UPDATE SKIP LOCKED
+        """.trimIndent()
+
+        /**
+         * 1) study id
+         * 2) participant id
+         * 3) upload type
+         * 4) date
+         */
+        private val DELETE_DAILY_USAGE_SQL = "DELETE FROM ${DAILY_APP_USAGE.name} WHERE $DAY_KEY_CLAUSE"
+
+        private val INSERT_DAILY_USAGE_SQL = """
+            INSERT INTO ${DAILY_APP_USAGE.name} (${DAILY_APP_USAGE.columns.joinToString(",") { it.name }})
+            VALUES (${DAILY_APP_USAGE.columns.joinToString(",") { "?" }})
+        """.trimIndent()
+
+        /**
+         * 1) study id
+         * 2) participant id
+         * 3) upload type
+         * 4) date
+         */
+        private val MARK_ROLLED_UP_SQL = """
+            UPDATE ${USAGE_ROLLUP_DAYS.name}
+            SET ${DIRTY_SINCE.name} = NULL, ${UPDATED_AT.name} = now()
+            WHERE $DAY_KEY_CLAUSE
+        """.trimIndent()
+
+        /**
+         * 1) study id
+         * 2) participant id
+         * 3) upload type
+         * 4) start of time window
+         * 5) end of time window
+         */
+        private val GET_ROLLED_UP_USAGE_SQL = """
+            SELECT ${RANGE_START.name}, ${RANGE_END.name}, ${APP_PACKAGE_NAME.name}, ${APPLICATION_LABEL.name}, ${APP_CATEGORY.name}, ${APP_USAGE_TIME.name}
+            FROM ${USAGE_ROLLUP_DAYS.name} LEFT JOIN ${DAILY_APP_USAGE.name} USING ($DAY_KEY)
+            WHERE ${STUDY_ID.name} = ?
+                AND ${PARTICIPANT_ID.name} = ?
+                AND ${UPLOAD_TYPE.name} = ?
+                AND ${DIRTY_SINCE.name} IS NULL
+                AND ${RANGE_START.name} >= ?
+                AND ${RANGE_END.name} <= ?
+        """.trimIndent()
+
+        /**
+         * Builds the query for the android usage events that app usage is folded from, in the order they are folded.
+         *
+         * 1) study id
+         * 2) participant id
+         * 3) start of time window
+         * 4) end of time window
+         * 5) app package names, only if [packageFilter] is true
+         */
+        private fun androidAppUsageSql(packageFilter: Boolean) = """
+            SELECT ${APP_PACKAGE_NAME.name}, ${APPLICATION_LABEL.name}, ${TIMESTAMP.name}, ${TIMEZONE.name}, ${EVENT_TYPE.name}
+            FROM ${CHRONICLE_USAGE_EVENTS.name}
+            WHERE ${RedshiftColumns.STUDY_ID.name} = ?
+                AND ${RedshiftColumns.PARTICIPANT_ID.name} = ?
+                AND ${TIMESTAMP.name} >= ?
+                AND ${TIMESTAMP.name} < ?
+                AND ( ${EVENT_TYPE.name} = 1
+                      OR ${EVENT_TYPE.name} = 2
+                      OR ${INTERACTION_TYPE.name} = 'Move to Foreground'
+                      OR ${INTERACTION_TYPE.name} = 'Move to Background' )
+                AND (${USERNAME.name} IS NULL OR ${USERNAME.name} = '')
+                ${if (packageFilter) "AND ${APP_PACKAGE_NAME.name} = ANY(?)" else ""}
+            ORDER BY ${TIMESTAMP.name},${APP_PACKAGE_NAME.name}
+        """.trimIndent()
+
+        /**
+         * Android usage events of a participant within a time window. Used both to roll up a day and by app usage
+         * surveys for the parts of their window that have not been rolled up.
+         */
+        @JvmField
+        val ANDROID_APP_USAGE_SQL = androidAppUsageSql(false)
+
+        /**
+         * Android usage events of a participant within a time window, for a set of apps only.
+         */
+        @JvmField
+        val ANDROID_PACKAGES_APP_USAGE_SQL = androidAppUsageSql(true)
+
+        /**
+         * 1) study id
+         * 2) participant id
+         * 3) start of day
+         * 4) end of day
+         */
+        private val IOS_DAY_USAGE_SQL = """
+            SELECT ${BUNDLE_IDENTIFIER.name}, max(${APP_CATEGORY.name}) as ${APP_CATEGORY.name}, sum(${APP_USAGE_TIME.name}) as ${APP_USAGE_TIME.name}
+            FROM ${IOS_SENSOR_DATA.name}
+            WHERE ${RedshiftColumns.STUDY_ID.name} = ?
+                AND ${RedshiftColumns.PARTICIPANT_ID.name} = ?
+                AND ${END_DATE_TIME.name} > ?
+                AND ${END_DATE_TIME.name} <= ?
+                AND ${APP_USAGE_TIME.name} > 0
+                AND ${APP_CATEGORY.name} IS NOT NULL
+            GROUP BY ${BUNDLE_IDENTIFIER.name}
+        """.trimIndent()
+
+        /**
+         * Sums the seconds each app was in use, counting from [startDateTime] when the first event for an app isn't
+         * the app being resumed.
+         */
+        @JvmStatic
+        fun aggregateUsage(startDateTime: OffsetDateTime, appUsage: List<AppUsage>): Map<String, Double> {
+            return appUsage
+                .filter { DEVICE_USAGE_EVENT_TYPES.contains(it.eventType) } // Filter out any usage events unrelated to calculated time.
+                .groupBy { it.appPackageName }
+                .mapValues { (_, au) ->
+                    //We start counting usage from the beginning of the block when it the first event isn't an activity resumed.
+                    var currentStartTime = startDateTime
+
+                    au.fold(0.0) { s, a ->
+                        val result = when (a.eventType) {
+                            /*
+                             * When an activity is resumed start counter waiting for the activity to terminate. Even if it
+                             * is the last event, it will be fine as we just won't count the time for an unpaired event.
+                             */
+                            ChronicleUsageEventType.ACTIVITY_RESUMED.value, ChronicleUsageEventType.MOVE_TO_FOREGROUND.value -> {
+                                s
+                            }
+                            /*
+                             * When an activity is paused our backgrounded add the total time it was used for in the
+                             * current time block.
+                             */
+                            ChronicleUsageEventType.ACTIVITY_PAUSED.value, ChronicleUsageEventType.MOVE_TO_BACKGROUND.value -> {
+                                s + ChronoUnit.SECONDS.between(currentStartTime, a.timestamp).toDouble()
+                            }
+
+                            else -> throw IllegalStateException("Unrecognized event type.")
+                        }
+                        //We always advanced currentStartTime to avoid double counting multiple sequential ACTIVITY_PAUSED_EVENTS.
+                        //This seems to usually happen when a system modal takes focus without backgrounding the application.
+                        currentStartTime = a.timestamp
+                        result
+                    }
+                }
+        }
+    }
+
+    /**
+     * Records the participant days of written events as needing to be rolled up.
+     */
+    fun markDirty(uploadType: UploadType, days: Collection<UsageDay>) {
+        if (!uploadConfiguration.dailyUsageRollups || days.isEmpty()) return
+
+        storageResolver.getPlatformStorage().connection.use { connection ->
+            connection.prepareStatement(MARK_DIRTY_SQL).use { ps ->
+                //Sorted so that concurrent drains lock day rows in the same order.
+                days.distinctBy { Triple(it.studyId, it.participantId, it.date) }
+                    .sortedWith(compareBy({ it.studyId }, { it.participantId }, { it.date }))
+                    .forEach { day ->
+                        ps.setObject(1, day.studyId)
+                        ps.setString(2, day.participantId)
+                        ps.setString(3, uploadType.name)
+                        ps.setObject(4, day.date)
+                        ps.setString(5, day.timezone)
+                        ps.setObject(6, day.start)
+                        ps.setObject(7, day.end)
+                        ps.addBatch()
+                    }
+                ps.executeBatch()
+            }
+        }
+    }
+
+    /**
+     * Rolls up dirty participant days that have ended until there are none left.
+     *
+     * @return The number of participant days rolled up.
+     */
+    fun process(): Int {
+        if (!uploadConfiguration.dailyUsageRollups) return 0
+
+        var rolledUp = 0
+        do {
+            val (claimed, processed) = processBatch()
+            rolledUp += processed
+        } while (claimed == uploadConfiguration.rollupBatchSize && processed > 0)
+
+        if (rolledUp > 0) {
+            logger.info("Rolled up app usage of {} participant days", rolledUp)
+        }
+        return rolledUp
+    }
+
+    /**
+     * Reads the rolled up days that fall entirely within a time window. Days that are dirty or have not ended are
+     * left out, so that callers read them from raw events.
+     */
+    fun getRolledUpUsage(
+        uploadType: UploadType,
+        studyId: UUID,
+        participantId: String,
+        startDateTime: OffsetDateTime,
+        endDateTime: OffsetDateTime,
+    ): RolledUpUsage {
+        if (!uploadConfiguration.dailyUsageRollups) return RolledUpUsage.NONE
+
+        val days = mutableSetOf<Pair<OffsetDateTime, OffsetDateTime>>()
+        val usage = mutableListOf<DailyAppUsage>()
+        storageResolver.getPlatformStorage().connection.use { connection ->
+            connection.prepareStatement(GET_ROLLED_UP_USAGE_SQL).use { ps ->
+                ps.setObject(1, studyId)
+                ps.setString(2, participantId)
+                ps.setString(3, uploadType.name)
+                ps.setObject(4, startDateTime)
+                ps.setObject(5, endDateTime)
+                ps.executeQuery().use { rs ->
+                    while (rs.next()) {
+                        days.add(
+                            rs.getObject(RANGE_START.name, OffsetDateTime::class.java) to
+                                    rs.getObject(RANGE_END.name, OffsetDateTime::class.java)
+                        )
+                        val appPackageName = rs.getString(APP_PACKAGE_NAME.name) ?: continue
+                        usage.add(
+                            DailyAppUsage(
+                                appPackageName,
+                                rs.getString(APPLICATION_LABEL.name),
+                                rs.getString(APP_CATEGORY.name),
+                                rs.getDouble(APP_USAGE_TIME.name)
+                            )
+                        )
+                    }
+                }
+            }
+        }
+        return RolledUpUsage(days.toList(), usage)
+    }
+
+    /**
+     * @return The number of days claimed and the number of those that were rolled up.
+     */
+    private fun processBatch(): Pair<Int, Int> {
+        return storageResolver.getPlatformStorage().connection.use { platform ->
+            platform.autoCommit = false
+            try {
+                val days = platform.createStatement().use { stmt ->
+                    stmt.executeQuery(claimDirtySql(uploadConfiguration.rollupBatchSize)).use { rs ->
+                        val days = mutableListOf<Pair<UploadType, UsageDay>>()
+                        while (rs.next()) {
+                            days.add(day(rs))
+                        }
+                        days
+                    }
+                }
+
+                val rolledUp = days.mapNotNull { (uploadType, day) ->
+                    try {
+                        Triple(uploadType, day, rollUp(uploadType, day))
+                    } catch (ex: Exception) {
+                        logger.error(
+                            "Unable to roll up {} app usage on {} of participant {} in study {}",
+                            uploadType,
+                            day.date,
+                            day.participantId,
+                            day.studyId,
+                            ex
+                        )
+                        null
+                    }
+                }
+
+                replace(platform, rolledUp)
+                platform.commit()
+                days.size to rolledUp.size
+            } catch (ex: Exception) {
+                platform.rollback()
+                throw ex
+            } finally {
+                platform.autoCommit = true
+            }
+        }
+    }
+
+    private fun replace(platform: Connection, rolledUp: List<Triple<UploadType, UsageDay, List<DailyAppUsage>>>) {
+        platform.prepareStatement(DELETE_DAILY_USAGE_SQL).use { ps ->
+            rolledUp.forEach { (uploadType, day, _) ->
+                bindDay(ps, uploadType, day)
+                ps.addBatch()
+            }
+            ps.executeBatch()
+        }
+        platform.prepareStatement(INSERT_DAILY_USAGE_SQL).use { ps ->
+            rolledUp.forEach { (uploadType, day, usage) ->
+                usage.forEach { appUsage ->
+                    DAILY_APP_USAGE.columns.forEachIndexed { index, column ->
+                        val value: Any? = when (column.name) {
+                            STUDY_ID.name -> day.studyId
+                            PARTICIPANT_ID.name -> day.participantId
+                            UPLOAD_TYPE.name -> uploadType.name
+                            EVENT_DATE.name -> day.date
+                            APP_PACKAGE_NAME.name -> appUsage.appPackageName
+                            APPLICATION_LABEL.name -> appUsage.applicationLabel
+                            APP_CATEGORY.name -> appUsage.category
+                            APP_USAGE_TIME.name -> appUsage.usageSeconds
+                            else -> null
+                        }
+                        ps.setObject(index + 1, value)
+                    }
+                    ps.addBatch()
+                }
+            }
+            ps.executeBatch()
+        }
+        platform.prepareStatement(MARK_ROLLED_UP_SQL).use { ps ->
+            rolledUp.forEach { (uploadType, day, _) ->
+                bindDay(ps, uploadType, day)
+                ps.addBatch()
+            }
+            ps.executeBatch()
+        }
+    }
+
+    private fun rollUp(uploadType: UploadType, day: UsageDay): List<DailyAppUsage> {
+        val (_, hds) = storageResolver.resolveAndGetFlavor(day.studyId)
+        val sql = when (uploadType) {
+            UploadType.Android -> ANDROID_APP_USAGE_SQL
+            UploadType.Ios -> IOS_DAY_USAGE_SQL
+        }
+        return hds.connection.use { connection ->
+            connection.prepareStatement(sql).use { ps ->
+                ps.setString(1, day.studyId.toString())
+                ps.setString(2, day.participantId)
+                ps.setObject(3, day.start)
+                ps.setObject(4, day.end)
+                ps.executeQuery().use { rs ->
+                    when (uploadType) {
+                        UploadType.Android -> androidUsage(day, rs)
+                        UploadType.Ios -> iosUsage(rs)
+                    }
+                }
+            }
+        }
+    }
+
+    private fun androidUsage(day: UsageDay, rs: ResultSet): List<DailyAppUsage> {
+        val events = mutableListOf<AppUsage>()
+        while (rs.next()) {
+            events.add(ResultSetAdapters.appUsage(rs))
+        }
+        val labels = events.associate { it.appPackageName to it.appLabel }
+        return aggregateUsage(day.start, events).map { (appPackageName, usageSeconds) ->
+            DailyAppUsage(appPackageName, labels[appPackageName], null, usageSeconds)
+        }
+    }
+
+    private fun iosUsage(rs: ResultSet): List<DailyAppUsage> {
+        val usage = mutableListOf<DailyAppUsage>()
+        while (rs.next()) {
+            usage.add(
+                DailyAppUsage(
+                    rs.getString(BUNDLE_IDENTIFIER.name) ?: UNKNOWN_BUNDLE,
+                    null,
+                    rs.getString(APP_CATEGORY.name),
+                    rs.getDouble(APP_USAGE_TIME.name)
+                )
+            )
+        }
+        return usage
+    }
+
+    private fun bindDay(ps: PreparedStatement, uploadType: UploadType, day: UsageDay) {
+        ps.setObject(1, day.studyId)
+        ps.setString(2, day.participantId)
+        ps.setString(3, uploadType.name)
+        ps.setObject(4, day.date)
+    }
+
+    private fun day(rs: ResultSet): Pair<UploadType, UsageDay> {
+        return UploadType.valueOf(rs.getString(UPLOAD_TYPE.name)) to UsageDay(
+            rs.getObject(STUDY_ID.name, UUID::class.java),
+            rs.getString(PARTICIPANT_ID.name),
+            rs.getObject(EVENT_DATE.name, LocalDate::class.java),
+            rs.getString(TIMEZONE.name)
+        )
+    }
+}
@@ -0,0 +1,416 @@
+package com.openlattice.chronicle.storage.preprocessing
+
+import com.openlattice.chronicle.configuration.ChronicleUploadConfiguration
+import com.openlattice.chronicle.services.upload.UsageEventQueueEntry
+import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.PREPROCESSING_STATE
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.DIRTY_SINCE
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.OPEN_APPLICATION_LABEL
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.OPEN_APP_PACKAGE_NAME
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.OPEN_SESSION_START
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.OPEN_SESSION_TIMEZONE
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.PARTICIPANT_ID
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.PROCESSED_THROUGH
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.STUDY_ID
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPDATED_AT
+import com.openlattice.chronicle.storage.RedshiftColumns
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APPLICATION_LABEL
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_DATETIME_START
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_PACKAGE_NAME
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.EVENT_TYPE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.INTERACTION_TYPE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.TIMESTAMP
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.TIMEZONE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.USERNAME
+import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.CHRONICLE_USAGE_EVENTS
+import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.PREPROCESSED_USAGE_EVENTS
+import com.openlattice.chronicle.storage.StorageResolver
+import com.openlattice.chronicle.storage.odtFromUsageEventColumn
+import org.slf4j.LoggerFactory
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.sql.Types
+import java.time.DayOfWeek
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+import java.time.temporal.ChronoUnit
+import java.util.*
+
+/**
+ * Incrementally sessionizes android usage events into [PREPROCESSED_USAGE_EVENTS].
+ *
+ * Drains mark each participant they write events for as dirty in [PREPROCESSING_STATE], keeping the earliest
+ * timestamp written. [process] then claims dirty participants and only reads the events they need:
+ *
+ * - If every new event is after the last processed event, sessionizing continues from the carried open session.
+ * - If an event arrived late, everything from the start of the UTC day it falls on through the participant's latest
+ * event is recomputed from scratch. Sessions that started before that day are kept as they are.
+ *
+ * Only sessions starting in the recomputed range are replaced in event storage. Late events come from device upload
+ * buffers that are usually drained within days, so a run touches a few days per participant and at worst everything
+ * since the late event, which is never more than preprocessing the participant from scratch.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class UsageEventPreprocessor(
+    private val storageResolver: StorageResolver,
+    private val uploadConfiguration: ChronicleUploadConfiguration,
+) {
+    companion object {
+        private val logger = LoggerFactory.getLogger(UsageEventPreprocessor::class.java)
+
+        private const val FOREGROUND_EVENT_TYPE = 1
+        private const val BACKGROUND_EVENT_TYPE = 2
+        private const val FOREGROUND_INTERACTION_TYPE = "Move to Foreground"
+        private const val BACKGROUND_INTERACTION_TYPE = "Move to Background"
+
+        private val STATE_COLUMNS = listOf(
+            STUDY_ID,
+            PARTICIPANT_ID,
+            PROCESSED_THROUGH,
+            OPEN_APP_PACKAGE_NAME,
+            OPEN_APPLICATION_LABEL,
+            OPEN_SESSION_START,
+            OPEN_SESSION_TIMEZONE
+        ).joinToString(",") { it.name }
+
+        /**
+         * 1) study id
+         * 2) participant id
+         * 3) earliest written event timestamp
+         */
+        private val MARK_DIRTY_SQL = """
+            INSERT INTO ${PREPROCESSING_STATE.name} (${STUDY_ID.name},${PARTICIPANT_ID.name},${DIRTY_SINCE.name})
+            VALUES (?,?,?)
+            ON CONFLICT (${STUDY_ID.name},${PARTICIPANT_ID.name}) DO UPDATE
+            SET ${DIRTY_SINCE.name} = LEAST(${PREPROCESSING_STATE.name}.${DIRTY_SINCE.name}, EXCLUDED.${DIRTY_SINCE.name})
+        """.trimIndent()
+
+        private fun claimDirtySql(batchSize: Int) = """
+            SELECT $STATE_COLUMNS, ${DIRTY_SINCE.name}
+            FROM ${PREPROCESSING_STATE.name}
+            WHERE ${DIRTY_SINCE.name} IS NOT NULL
+            ORDER BY ${DIRTY_SINCE.name}
+            LIMIT $batchSize
+            FOR UPDATE SKIP LOCKED
+        """.trimIndent()
+
+        /**
+         * 1) processed through
+         * 2) open app package name
+         * 3) open application label
+         * 4) open session start
+         * 5) open session timezone
+         * 6) study id
+         * 7) participant id
+         */
+        private val UPDATE_STATE_SQL = """
+            UPDATE ${PREPROCESSING_STATE.name}
+            SET ${PROCESSED_THROUGH.name} = ?,
+                ${OPEN_APP_PACKAGE_NAME.name} = ?,
+                ${OPEN_APPLICATION_LABEL.name} = ?,
+                ${OPEN_SESSION_START.name} = ?,
+                ${OPEN_SESSION_TIMEZONE.name} = ?,
+                ${DIRTY_SINCE.name} = NULL,
+                ${UPDATED_AT.name} = now()
+            WHERE ${STUDY_ID.name} = ? AND ${PARTICIPANT_ID.name} = ?
+        """.trimIndent()
+
+        private val APP_USAGE_EVENTS_SQL = """
+            SELECT ${APP_PACKAGE_NAME.name}, ${APPLICATION_LABEL.name}, ${TIMESTAMP.name}, ${TIMEZONE.name}, ${EVENT_TYPE.name}, ${INTERACTION_TYPE.name}
+            FROM ${CHRONICLE_USAGE_EVENTS.name}
+            WHERE ${RedshiftColumns.STUDY_ID.name} = ?
+                AND ${RedshiftColumns.PARTICIPANT_ID.name} = ?
+                AND ${TIMESTAMP.name} %s ?
+                AND ( ${EVENT_TYPE.name} = $FOREGROUND_EVENT_TYPE
+                      OR ${EVENT_TYPE.name} = $BACKGROUND_EVENT_TYPE
+                      OR ${INTERACTION_TYPE.name} = '$FOREGROUND_INTERACTION_TYPE'
+                      OR ${INTERACTION_TYPE.name} = '$BACKGROUND_INTERACTION_TYPE' )
+                AND (${USERNAME.name} IS NULL OR ${USERNAME.name} = '')
+            ORDER BY ${TIMESTAMP.name},${APP_PACKAGE_NAME.name}
+        """.trimIndent()
+
+        /**
+         * 1) study id
+         * 2) participant id
+         * 3) last processed event timestamp
+         */
+        private val NEW_APP_USAGE_EVENTS_SQL = APP_USAGE_EVENTS_SQL.format(">")
+
+        /**
+         * 1) study id
+         * 2) participant id
+         * 3) start of the recomputed range
+         */
+        private val RECOMPUTED_APP_USAGE_EVENTS_SQL = APP_USAGE_EVENTS_SQL.format(">=")
+
+        /**
+         * 1) study id
+         * 2) participant id
+         * 3) start of the replaced range
+         */
+        private val DELETE_PREPROCESSED_SQL = """
+            DELETE FROM ${PREPROCESSED_USAGE_EVENTS.name}
+            WHERE ${RedshiftColumns.STUDY_ID.name} = ?
+                AND ${RedshiftColumns.PARTICIPANT_ID.name} = ?
+                AND ${APP_DATETIME_START.name} >= ?
+        """.trimIndent()
+
+        private val INSERT_PREPROCESSED_SQL = """
+            INSERT INTO ${PREPROCESSED_USAGE_EVENTS.name} (${PREPROCESSED_USAGE_EVENTS.columns.joinToString(",") { it.name }})
+            VALUES (${PREPROCESSED_USAGE_EVENTS.columns.joinToString(",") { "?" }})
+        """.trimIndent()
+    }
+
+    /**
+     * Records the participants of written events as needing preprocessing.
+     */
+    fun markDirty(events: List<UsageEventQueueEntry>) {
+        if (!uploadConfiguration.incrementalPreprocessing || events.isEmpty()) return
+
+        val dirtySince = mutableMapOf<Pair<UUID, String>, OffsetDateTime>()
+        events.forEach { event ->
+            val timestamp = odtFromUsageEventColumn(event.data[TIMESTAMP.name]?.value) ?: return@forEach
+            dirtySince.merge(event.studyId to event.participantId, timestamp) { a, b -> if (a < b) a else b }
+        }
+        if (dirtySince.isEmpty()) return
+
+        storageResolver.getPlatformStorage().connection.use { connection ->
+            connection.prepareStatement(MARK_DIRTY_SQL).use { ps ->
+                //Sorted so that concurrent drains lock state rows in the same order.
+                dirtySince.entries
+                    .sortedWith(compareBy({ it.key.first }, { it.key.second }))
+                    .forEach { (key, timestamp) ->
+                        ps.setObject(1, key.first)
+                        ps.setString(2, key.second)
+                        ps.setObject(3, timestamp)
+                        ps.addBatch()
+                    }
+                ps.executeBatch()
+            }
+        }
+    }
+
+    /**
+     * Preprocesses dirty participants until there are none left or a batch fails to preprocess any of them.
+     *
+     * @return The number of participants preprocessed.
+     */
+    fun process(): Int {
+        if (!uploadConfiguration.incrementalPreprocessing) return 0
+
+        val runId = UUID.randomUUID().toString()
+        var processed = 0
+        do {
+            //Participants that fail stay dirty and would be claimed again, so stop once a batch makes no progress.
+            val (claimed, batchProcessed) = processBatch(runId)
+            processed += batchProcessed
+        } while (claimed == uploadConfiguration.preprocessingBatchSize && batchProcessed > 0)
+
+        if (processed > 0) {
+            logger.info("Preprocessed usage events of {} participants (run = {})", processed, runId)
+        }
+        return processed
+    }
+
+    /**
+     * Claims a batch of dirty participants and preprocesses them.
+     *
+     * @return The number of participants claimed and the number of those that were preprocessed.
+     */
+    private fun processBatch(runId: String): Pair<Int, Int> {
+        return storageResolver.getPlatformStorage().connection.use { platform ->
+            platform.autoCommit = false
+            try {
+                val states = platform.createStatement().use { stmt ->
+                    stmt.executeQuery(claimDirtySql(uploadConfiguration.preprocessingBatchSize)).use { rs ->
+                        val states = mutableListOf<PreprocessingState>()
+                        while (rs.next()) {
+                            states.add(state(rs))
+                        }
+                        states
+                    }
+                }
+
+                var processed = 0
+                platform.prepareStatement(UPDATE_STATE_SQL).use { ps ->
+                    states.forEach { state ->
+                        try {
+                            val updated = preprocess(runId, state)
+                            bindState(ps, updated)
+                            ps.addBatch()
+                            processed++
+                        } catch (ex: Exception) {
+                            logger.error(
+                                "Unable to preprocess usage events of participant {} in study {}",
+                                state.participantId,
+                                state.studyId,
+                                ex
+                            )
+                        }
+                    }
+                    ps.executeBatch()
+                }
+                platform.commit()
+                states.size to processed
+            } catch (ex: Exception) {
+                platform.rollback()
+                throw ex
+            } finally {
+                platform.autoCommit = true
+            }
+        }
+    }
+
+    /**
+     * Sessionizes the participant's unprocessed events and replaces the affected sessions in event storage.
+     *
+     * @return The state to carry into the next run.
+     */
+    private fun preprocess(runId: String, state: PreprocessingState): PreprocessingState {
+        val processedThrough = state.processedThrough
+        val incremental = processedThrough != null && state.dirtySince!! > processedThrough
+
+        val (sql, from, replaceFrom) = if (incremental) {
+            //Nothing after the open session has been written, but a failed run may have left rows behind.
+            Triple(
+                NEW_APP_USAGE_EVENTS_SQL,
+                processedThrough!!,
+                state.open?.start ?: processedThrough.plus(1, ChronoUnit.MICROS)
+            )
+        } else {
+            //Recomputes from the start of the late event's UTC day through the latest event, since every session after
+            //the late event may have changed.
+            val dayStart = state.dirtySince!!.withOffsetSameInstant(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS)
+            Triple(RECOMPUTED_APP_USAGE_EVENTS_SQL, dayStart, dayStart)
+        }
+
+        //A session opened before the recomputed range was not closed by any event before the late ones, so it is
+        //still open at the start of the range.
+        val sessionizer = AppSessionizer(state.open?.takeIf { incremental || it.start < from })
+        val sessions = mutableListOf<AppSession>()
+        var lastEvent = if (incremental) processedThrough else null
+
+        val (_, hds) = storageResolver.resolveAndGetFlavor(state.studyId)
+        hds.connection.use { connection ->
+            connection.prepareStatement(sql).use { ps ->
+                ps.setString(1, state.studyId.toString())
+                ps.setString(2, state.participantId)
+                ps.setObject(3, from)
+                ps.executeQuery().use { rs ->
+                    while (rs.next()) {
+                        val event = appUsageEvent(rs) ?: continue
+                        sessionizer.accept(event)?.let { sessions.add(it) }
+                        lastEvent = event.timestamp
+                    }
+                }
+            }
+
+            connection.autoCommit = false
+            try {
+                connection.prepareStatement(DELETE_PREPROCESSED_SQL).use { ps ->
+                    ps.setString(1, state.studyId.toString())
+                    ps.setString(2, state.participantId)
+                    ps.setObject(3, replaceFrom)
+                    ps.executeUpdate()
+                }
+                connection.prepareStatement(INSERT_PREPROCESSED_SQL).use { ps ->
+                    sessions.forEach { session ->
+                        bindSession(ps, runId, state, session)
+                        ps.addBatch()
+                    }
+                    ps.executeBatch()
+                }
+                connection.commit()
+            } catch (ex: Exception) {
+                connection.rollback()
+                throw ex
+            } finally {
+                connection.autoCommit = true
+            }
+        }
+
+        return state.copy(processedThrough = lastEvent ?: processedThrough, open = sessionizer.open)
+    }
+
+    private fun appUsageEvent(rs: ResultSet): AppUsageEvent? {
+        val eventType = rs.getInt(EVENT_TYPE.name)
+        val interactionType = rs.getString(INTERACTION_TYPE.name)
+        val foreground = when {
+            eventType == FOREGROUND_EVENT_TYPE || interactionType == FOREGROUND_INTERACTION_TYPE -> true
+            eventType == BACKGROUND_EVENT_TYPE || interactionType == BACKGROUND_INTERACTION_TYPE -> false
+            else -> return null
+        }
+        return AppUsageEvent(
+            rs.getString(APP_PACKAGE_NAME.name) ?: return null,
+            rs.getString(APPLICATION_LABEL.name),
+            rs.getObject(TIMESTAMP.name, OffsetDateTime::class.java) ?: return null,
+            rs.getString(TIMEZONE.name),
+            foreground
+        )
+    }
+
+    private fun bindSession(ps: PreparedStatement, runId: String, state: PreprocessingState, session: AppSession) {
+        val day = session.day
+        PREPROCESSED_USAGE_EVENTS.columns.forEachIndexed { index, column ->
+            val value: Any? = when (column.name) {
+                RedshiftColumns.RUN_ID.name -> runId
+                RedshiftColumns.STUDY_ID.name -> state.studyId.toString()
+                RedshiftColumns.PARTICIPANT_ID.name -> state.participantId
+                RedshiftColumns.APP_RECORD_TYPE.name -> AppSession.APP_USAGE_RECORD_TYPE
+                RedshiftColumns.APP_TITLE.name -> session.applicationLabel ?: session.appPackageName
+                RedshiftColumns.APP_FULL_NAME.name -> session.appPackageName
+                RedshiftColumns.APP_DATETIME_START.name -> session.localStart()
+                RedshiftColumns.APP_DATETIME_END.name -> session.localEnd()
+                RedshiftColumns.APP_TIMEZONE.name -> session.timezone
+                RedshiftColumns.APP_DURATION_SECONDS.name -> session.durationSeconds
+                RedshiftColumns.DAY.name -> day.value
+                RedshiftColumns.WEEKDAY_MONDAY_FRIDAY.name -> flag(day <= DayOfWeek.FRIDAY)
+                RedshiftColumns.WEEKDAY_MONDAY_THURSDAY.name -> flag(day <= DayOfWeek.THURSDAY)
+                RedshiftColumns.WEEKDAY_SUNDAY_THURSDAY.name -> flag(day <= DayOfWeek.THURSDAY || day == DayOfWeek.SUNDAY)
+                RedshiftColumns.APP_ENGAGE_30S.name -> flag(session.engaged)
+                RedshiftColumns.APP_SWITCHED_APP.name -> flag(session.switchedApp)
+                RedshiftColumns.APP_USAGE_FLAGS.name -> session.flags
+                else -> null
+            }
+            if (value == null) ps.setNull(index + 1, Types.NULL) else ps.setObject(index + 1, value)
+        }
+    }
+
+    private fun flag(value: Boolean): Int = if (value) 1 else 0
+
+    private fun bindState(ps: PreparedStatement, state: PreprocessingState) {
+        var index = 0
+        ps.setObject(++index, state.processedThrough)
+        ps.setString(++index, state.open?.appPackageName)
+        ps.setString(++index, state.open?.applicationLabel)
+        ps.setObject(++index, state.open?.start)
+        ps.setString(++index, state.open?.timezone)
+        ps.setObject(++index, state.studyId)
+        ps.setString(++index, state.participantId)
+    }
+
+    private fun state(rs: ResultSet): PreprocessingState {
+        val openStart = rs.getObject(OPEN_SESSION_START.name, OffsetDateTime::class.java)
+        val openPackageName = rs.getString(OPEN_APP_PACKAGE_NAME.name)
+        return PreprocessingState(
+            rs.getObject(STUDY_ID.name, UUID::class.java),
+            rs.getString(PARTICIPANT_ID.name),
+            rs.getObject(DIRTY_SINCE.name, OffsetDateTime::class.java),
+            rs.getObject(PROCESSED_THROUGH.name, OffsetDateTime::class.java),
+            if (openStart == null || openPackageName == null) null else OpenAppSession(
+                openPackageName,
+                rs.getString(OPEN_APPLICATION_LABEL.name),
+                openStart,
+                rs.getString(OPEN_SESSION_TIMEZONE.name)
+            )
+        )
+    }
+
+    private data class PreprocessingState(
+        val studyId: UUID,
+        val participantId: String,
+        val dirtySince: OffsetDateTime?,
+        val processedThrough: OffsetDateTime?,
+        val open: OpenAppSession?,
+    )
+}
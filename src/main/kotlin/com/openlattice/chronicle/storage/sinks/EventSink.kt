@@ -0,0 +1,18 @@
+package com.openlattice.chronicle.storage.sinks
+
+/**
+ * Destination for events drained from the upload buffer.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+interface EventSink<T> {
+    /**
+     * Writes a batch of events.
+     *
+     * @param events The events to write, possibly spanning several studies and participants.
+     * @param dedupWindow When true the sink must remove any duplicates of the written events within the time window
+     * covered by the batch. When false every event is known to be new.
+     * @return The number of events written.
+     */
+    fun write(events: List<T>, dedupWindow: Boolean): Int
+}
@@ -0,0 +1,30 @@
+package com.openlattice.chronicle.storage.sinks
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Keeps drained events in memory. Used to exercise and benchmark the drain without event storage.
+ *
+ * @param retain When false events are only counted, which keeps memory flat during long benchmark runs.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class InMemoryEventSink<T>(private val retain: Boolean = true) : EventSink<T> {
+    private val events = ConcurrentLinkedQueue<T>()
+    private val written = AtomicLong()
+    private val batches = AtomicLong()
+
+    override fun write(events: List<T>, dedupWindow: Boolean): Int {
+        if (retain) this.events.addAll(events)
+        written.addAndGet(events.size.toLong())
+        batches.incrementAndGet()
+        return events.size
+    }
+
+    fun getEvents(): List<T> = events.toList()
+
+    fun getWrittenCount(): Long = written.get()
+
+    fun getBatchCount(): Long = batches.get()
+}
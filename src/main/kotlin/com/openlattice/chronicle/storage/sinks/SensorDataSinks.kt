@@ -0,0 +1,260 @@
+package com.openlattice.chronicle.storage.sinks
+
+import com.geekbeast.postgres.PostgresArrays
+import com.geekbeast.postgres.PostgresDatatype
+import com.geekbeast.util.StopWatch
+import com.openlattice.chronicle.sensorkit.SensorType
+import com.openlattice.chronicle.storage.ChroniclePostgresTables
+import com.openlattice.chronicle.storage.PostgresBinaryCopyLoader
+import com.openlattice.chronicle.storage.RedshiftColumns
+import com.openlattice.chronicle.storage.RedshiftDataTables
+import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.IOS_SENSOR_DATA
+import com.openlattice.chronicle.storage.odtFromUsageEventColumn
+import com.openlattice.chronicle.storage.tasks.SensorDataColumn
+import com.openlattice.chronicle.storage.tasks.SensorDataRow
+import com.openlattice.chronicle.util.ChronicleServerUtil
+import com.zaxxer.hikari.HikariDataSource
+import org.apache.commons.lang3.RandomStringUtils
+import org.slf4j.LoggerFactory
+import org.slf4j.event.Level
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.util.*
+import kotlin.math.min
+
+/**
+ * Writes ios sensor data to a redshift event storage using multi-row inserts and removes duplicates within the window
+ * of recorded date times covered by each batch.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+internal open class RedshiftSensorDataSink(
+    private val hds: HikariDataSource,
+    private val includeOnConflict: Boolean = false,
+) : EventSink<SensorDataRow> {
+    companion object {
+        private val logger = LoggerFactory.getLogger(RedshiftSensorDataSink::class.java)
+        private val RS_BATCH_SIZE = (ChroniclePostgresTables.MAX_BIND_PARAMETERS / IOS_SENSOR_DATA.columns.size)
+    }
+
+    override fun write(events: List<SensorDataRow>, dedupWindow: Boolean): Int {
+        if (events.isEmpty()) return 0
+
+        val studies = events.map { it.studyId.toString() }.toSet()
+        val participants = events.map { it.participantId }.toSet()
+        val window = EventTimestampWindow()
+
+        return StopWatch(
+            log = "writing ${events.size} entries to event storage.",
+            level = Level.INFO,
+            logger = logger
+        ).use {
+            hds.connection.use { connection ->
+                connection.autoCommit = false
+                val s = insert(connection, events, window)
+
+                //Everything written by this batch was new according to the dedup index.
+                if (dedupWindow) deleteDuplicates(connection, window, studies, participants)
+
+                connection.commit()
+                connection.autoCommit = true
+                s
+            }
+        }
+    }
+
+    protected open fun insert(connection: Connection, data: List<SensorDataRow>, window: EventTimestampWindow): Int {
+        val insertBatchSize = min(data.size, RS_BATCH_SIZE)
+
+        logger.info("Preparing primary insert statement (sensor data) with batch size $insertBatchSize")
+        val insertSql = RedshiftDataTables.buildMultilineInsertSensorEvents(insertBatchSize, includeOnConflict)
+
+        val pps = connection.prepareStatement(insertSql)
+
+        val dr = data.size % RS_BATCH_SIZE
+
+        val fps = if (data.size > RS_BATCH_SIZE && dr != 0) {
+            logger.info("Preparing secondary insert statement with batch size $dr")
+            connection.prepareStatement(RedshiftDataTables.buildMultilineInsertSensorEvents(dr, includeOnConflict))
+        } else {
+            pps
+        }
+
+        try {
+            data.chunked(insertBatchSize).forEach { sensorDataRows ->
+                var offset = 0
+                val ps = if (insertBatchSize == sensorDataRows.size) {
+                    pps
+                } else {
+                    fps
+                }
+
+                logger.info("Writing row of size ${sensorDataRows.size} to ios event storage.")
+
+                sensorDataRows.forEach {
+                    logger.trace(
+                        "Writing row to storage (ios) " + ChronicleServerUtil.STUDY_PARTICIPANT_DATASOURCE,
+                        it.studyId,
+                        it.participantId,
+                        it.sourceDeviceId
+                    )
+
+                    bindSensorData(ps, offset, it.studyId, it.participantId, it.sensorType, it.row, window)
+                    offset += IOS_SENSOR_DATA.columns.size
+                }
+                if (ps === pps)
+                    ps.addBatch()
+            }
+
+            //We only call fps.executeBatch() if they ended up different objects.
+            return pps.executeBatch().sum() + if (pps !== fps) {
+                fps.executeUpdate()
+            } else {
+                0
+            }
+        } finally {
+            if (pps !== fps) fps.close()
+            pps.close()
+        }
+    }
+
+    /*
+     * We need to remove any duplicates that were inserted. The general approach is to use min/max recorded date
+     * and (study_id, participant_id) to count duplicates within that window and remove them. The reason for using
+     * this approach is that we don't know when duplicate may be uploaded so we need a bounded way to maintain
+     * the uniqueness invariant on each upload.
+     */
+    private fun deleteDuplicates(
+        connection: Connection,
+        window: EventTimestampWindow,
+        studies: Set<String>,
+        participants: Set<String>
+    ) {
+        val tempTableName = "duplicate_ios_events_${RandomStringUtils.randomAlphanumeric(10)}"
+
+        //Create a table that contains any duplicate values introduced by this latest upload for the minimum upload_at value
+        StopWatch(
+            log = "Creating duplicates table for ios studies = {} and participants = {} ",
+            level = Level.INFO,
+            logger = logger,
+            studies,
+            participants
+        ).use {
+            connection.createStatement().use { stmt ->
+                stmt.execute(RedshiftDataTables.createTempTableOfDuplicates(tempTableName, IOS_SENSOR_DATA))
+            }
+            connection.prepareStatement(RedshiftDataTables.buildTempTableOfDuplicatesForIos(tempTableName)).use { ps ->
+                logger.info("Earliest timestamp for studies = {} and participants = {} is {}", studies, participants, window.min)
+                logger.info("Latest timestamp for studies = {} and participants = {} is {}", studies, participants, window.max)
+                ps.setArray(1, PostgresArrays.createTextArray(connection, studies))
+                ps.setArray(2, PostgresArrays.createTextArray(connection, participants))
+                ps.setObject(3, window.min)
+                ps.setObject(4, window.max)
+                ps.execute()
+            }
+        }
+
+        //Delete the duplicates, if any from chronicle_usage_events and drop the temporary table.
+        StopWatch(
+            log = "Deleting duplicates for ios studies = {} and participants = {} ",
+            level = Level.INFO,
+            logger = logger,
+            studies,
+            participants
+        ).use {
+            connection.createStatement().use { stmt ->
+                stmt.execute(RedshiftDataTables.getDeleteIosSensorDataFromTempTable(tempTableName))
+                stmt.execute("INSERT INTO ${IOS_SENSOR_DATA.name} SELECT * FROM $tempTableName")
+                stmt.execute("DROP TABLE $tempTableName")
+            }
+        }
+    }
+
+    private fun bindSensorData(
+        ps: PreparedStatement,
+        offset: Int,
+        studyId: UUID,
+        participantId: String,
+        sensorType: SensorType,
+        dataColumns: List<SensorDataColumn>,
+        window: EventTimestampWindow,
+    ) {
+        ps.setString(
+            offset + RedshiftDataTables.getInsertSensorDataColumnIndex(RedshiftColumns.STUDY_ID),
+            studyId.toString()
+        )
+        ps.setString(
+            offset + RedshiftDataTables.getInsertSensorDataColumnIndex(RedshiftColumns.PARTICIPANT_ID),
+            participantId
+        )
+        ps.setString(
+            offset + RedshiftDataTables.getInsertSensorDataColumnIndex(RedshiftColumns.SENSOR_TYPE),
+            sensorType.name
+        )
+
+        dataColumns.forEach { dataColumn ->
+            val col = dataColumn.col
+            val index = offset + dataColumn.colIndex
+            val value = dataColumn.value
+
+            if (value != null && col.name == RedshiftColumns.RECORDED_DATE_TIME.name) {
+                window.add(odtFromUsageEventColumn(value)!!)
+            }
+
+            if (value == null) {
+                ps.setObject(index, null)
+            } else {
+                when (col.datatype) {
+                    PostgresDatatype.TEXT -> ps.setString(index, value as String)
+                    PostgresDatatype.DOUBLE -> ps.setDouble(index, value as Double)
+                    else -> ps.setObject(index, value)
+                }
+            }
+        }
+    }
+}
+
+/**
+ * Writes ios sensor data to a vanilla postgres event storage, ignoring conflicting rows. When [binaryCopy] is enabled
+ * and supported by the connection, rows are bulk loaded with binary `COPY` instead of multi-row inserts.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+internal class PostgresSensorDataSink(
+    hds: HikariDataSource,
+    private val binaryCopy: Boolean = false,
+) : RedshiftSensorDataSink(hds, true) {
+    companion object {
+        private val SENSOR_DATA_COPY_LOADER = PostgresBinaryCopyLoader(IOS_SENSOR_DATA)
+    }
+
+    override fun insert(connection: Connection, data: List<SensorDataRow>, window: EventTimestampWindow): Int {
+        if (!binaryCopy || !SENSOR_DATA_COPY_LOADER.isAvailable(connection)) {
+            return super.insert(connection, data, window)
+        }
+        val rows = data.asSequence().map { toCopyRow(it, window) }
+        return SENSOR_DATA_COPY_LOADER.copy(connection, rows, true).toInt()
+    }
+
+    /**
+     * Maps a sensor data row to the column order of [IOS_SENSOR_DATA] for binary copy.
+     */
+    private fun toCopyRow(sensorDataRow: SensorDataRow, window: EventTimestampWindow): Array<Any?> {
+        val row = arrayOfNulls<Any>(IOS_SENSOR_DATA.columns.size)
+        row[RedshiftDataTables.getInsertSensorDataColumnIndex(RedshiftColumns.STUDY_ID) - 1] =
+            sensorDataRow.studyId.toString()
+        row[RedshiftDataTables.getInsertSensorDataColumnIndex(RedshiftColumns.PARTICIPANT_ID) - 1] =
+            sensorDataRow.participantId
+        row[RedshiftDataTables.getInsertSensorDataColumnIndex(RedshiftColumns.SENSOR_TYPE) - 1] =
+            sensorDataRow.sensorType.name
+
+        sensorDataRow.row.forEach { dataColumn ->
+            val value = dataColumn.value
+            if (value != null && dataColumn.col.name == RedshiftColumns.RECORDED_DATE_TIME.name) {
+                window.add(odtFromUsageEventColumn(value)!!)
+            }
+            row[dataColumn.colIndex - 1] = value
+        }
+        return row
+    }
+}
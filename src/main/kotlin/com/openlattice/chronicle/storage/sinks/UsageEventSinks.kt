@@ -0,0 +1,266 @@
+package com.openlattice.chronicle.storage.sinks
+
+import com.geekbeast.postgres.PostgresArrays
+import com.geekbeast.postgres.PostgresDatatype
+import com.geekbeast.util.StopWatch
+import com.openlattice.chronicle.services.upload.UsageEventQueueEntry
+import com.openlattice.chronicle.storage.PostgresBinaryCopyLoader
+import com.openlattice.chronicle.storage.RedshiftColumns
+import com.openlattice.chronicle.storage.RedshiftDataTables
+import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.CHRONICLE_USAGE_EVENTS
+import com.openlattice.chronicle.storage.odtFromUsageEventColumn
+import com.zaxxer.hikari.HikariDataSource
+import org.apache.commons.lang3.RandomStringUtils
+import org.slf4j.LoggerFactory
+import org.slf4j.event.Level
+import java.sql.Connection
+import java.time.OffsetDateTime
+import kotlin.math.min
+
+/**
+ * Writes android usage events to a redshift event storage using multi-row inserts and removes duplicates within the
+ * window of event timestamps covered by each batch.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+open class RedshiftUsageEventSink(
+    private val hds: HikariDataSource,
+    private val includeOnConflict: Boolean = false,
+) : EventSink<UsageEventQueueEntry> {
+    companion object {
+        private val logger = LoggerFactory.getLogger(RedshiftUsageEventSink::class.java)
+        private const val RS_BATCH_SIZE = 3276
+        internal val UPLOAD_AT_INDEX = RedshiftDataTables.getInsertUsageEventColumnIndex(RedshiftColumns.UPLOADED_AT)
+    }
+
+    override fun write(events: List<UsageEventQueueEntry>, dedupWindow: Boolean): Int {
+        if (events.isEmpty()) return 0
+
+        return hds.connection.use { connection ->
+            try {
+                val studies = events.map { it.studyId.toString() }.toSet()
+                val participants = events.map { it.participantId }.toSet()
+                val window = EventTimestampWindow()
+
+                val wc = insert(connection, events, window, studies, participants)
+
+                //Everything written by this batch was new according to the dedup index.
+                if (dedupWindow) deleteDuplicates(connection, window, studies, participants)
+
+                wc
+            } catch (ex: Exception) {
+                logger.error("Unable to save data to event storage.", ex)
+                throw ex
+            }
+        }
+    }
+
+    /**
+     * Inserts events into [CHRONICLE_USAGE_EVENTS], tracking the event timestamps written in [window].
+     */
+    protected open fun insert(
+        connection: Connection,
+        data: List<UsageEventQueueEntry>,
+        window: EventTimestampWindow,
+        studies: Set<String>,
+        participants: Set<String>
+    ): Int {
+        // There are two prepared statements one for the data array from 0 up to RS_BATCH_SIZE elements.
+        // After RS_BATCH_SIZE elements the insert prepared statement covers all the chunks except the last chunk of RS_BATCH_SIZE elements
+        val insertBatchSize = min(data.size, RS_BATCH_SIZE)
+        logger.info("Preparing primary insert statement with batch size $insertBatchSize")
+        val insertSql = RedshiftDataTables.buildMultilineInsertUsageEvents(insertBatchSize, includeOnConflict)
+
+        val dr = data.size % RS_BATCH_SIZE
+
+        val finalInsertSql = if (data.size > RS_BATCH_SIZE && dr != 0) {
+            logger.info("Preparing secondary insert statement with batch size $dr")
+            RedshiftDataTables.buildMultilineInsertUsageEvents(dr, includeOnConflict)
+        } else {
+            insertSql
+        }
+
+        return data.chunked(RS_BATCH_SIZE).sumOf { subList ->
+            logger.info("Processing sublist of length ${subList.size}")
+            connection.prepareStatement(if (subList.size == insertBatchSize) insertSql else finalInsertSql).use { ps ->
+                StopWatch(
+                    log = "Inserting ${data.size} entries into ${CHRONICLE_USAGE_EVENTS.name} with studies = {} and participants = {}",
+                    level = Level.INFO,
+                    logger = logger,
+                    studies,
+                    participants
+                ).use {
+                    var indexBase = 0
+                    subList.forEach { usageEventCols ->
+                        ps.setString(indexBase + 1, usageEventCols.studyId.toString())
+                        ps.setString(indexBase + 2, usageEventCols.participantId)
+                        usageEventCols.data.values.forEach { usageEventCol ->
+                            //TODO: If we ever change the columns, we need to do a lookup for colIndex by name every time.
+                            val colIndex = indexBase + usageEventCol.colIndex
+                            val value = usageEventCol.value
+
+                            try {
+                                //Set insert value to null, if value was not provided.
+                                if (value == null) {
+                                    ps.setObject(colIndex, null)
+                                } else {
+                                    when (usageEventCol.datatype) {
+                                        PostgresDatatype.TEXT -> ps.setString(colIndex, value as String)
+                                        PostgresDatatype.TIMESTAMPTZ -> {
+                                            val odt = odtFromUsageEventColumn(value)
+                                            ps.setObject(colIndex, odt)
+                                            //We need to keep track the min and max event timestamps for this batch
+                                            if (odt != null && usageEventCol.name == RedshiftColumns.TIMESTAMP.name) {
+                                                window.add(odt)
+                                            }
+                                        }
+                                        PostgresDatatype.INTEGER -> ps.setInt(colIndex, value as Int)
+                                        PostgresDatatype.BIGINT -> ps.setLong(colIndex, value as Long)
+                                        else -> ps.setObject(colIndex, value)
+                                    }
+                                }
+                            } catch (ex: Exception) {
+                                logger.info("Error writing $usageEventCol", ex)
+                                throw ex
+                            }
+                        }
+                        ps.setObject(indexBase + UPLOAD_AT_INDEX, usageEventCols.uploadedAt)
+                        indexBase += CHRONICLE_USAGE_EVENTS.columns.size
+                    }
+
+                    StopWatch(
+                        log = "Executing update on ${subList.size} entries into ${CHRONICLE_USAGE_EVENTS.name} with studies = {} and participants = {}",
+                        level = Level.INFO,
+                        logger = logger,
+                        studies,
+                        participants
+                    ).use {
+                        val insertCount = ps.executeUpdate()
+                        logger.info(
+                            "Inserted $insertCount entities for ${CHRONICLE_USAGE_EVENTS.name} studies = {}, participantIds = {}",
+                            studies,
+                            participants
+                        )
+                        insertCount
+                    }
+                }
+            }
+        }
+    }
+
+    private fun deleteDuplicates(
+        connection: Connection,
+        window: EventTimestampWindow,
+        studies: Set<String>,
+        participants: Set<String>
+    ) {
+        val tempTableName = "duplicate_events_${RandomStringUtils.randomAlphanumeric(10)}"
+
+        //Create a table that contains any duplicate values introduced by this latest upload for the minimum upload_at value
+        StopWatch(
+            log = "Creating duplicates table for studies = {} and participants = {} ",
+            level = Level.INFO,
+            logger = logger,
+            studies,
+            participants
+        ).use {
+            connection.createStatement()
+                .use { stmt -> stmt.execute(RedshiftDataTables.createTempTableOfDuplicates(tempTableName)) }
+            connection.prepareStatement(RedshiftDataTables.buildTempTableOfDuplicates(tempTableName)).use { ps ->
+                ps.setArray(1, PostgresArrays.createTextArray(connection, studies))
+                ps.setArray(2, PostgresArrays.createTextArray(connection, participants))
+                ps.setObject(3, window.min)
+                ps.setObject(4, window.max)
+                ps.execute()
+            }
+        }
+
+        //Delete the duplicates, if any from chronicle_usage_events and drop the temporary table.
+        StopWatch(
+            log = "Deleting duplicates for studies = {} and participants = {} ",
+            level = Level.INFO,
+            logger = logger,
+            studies,
+            participants
+        ).use {
+            connection.createStatement().use { stmt ->
+                stmt.execute(RedshiftDataTables.getDeleteUsageEventsFromTempTable(tempTableName))
+                stmt.execute("DROP TABLE $tempTableName")
+            }
+        }
+    }
+}
+
+/**
+ * Writes android usage events to a vanilla postgres event storage. When [binaryCopy] is enabled and supported by the
+ * connection, events are bulk loaded with binary `COPY` instead of multi-row inserts.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class PostgresUsageEventSink(
+    hds: HikariDataSource,
+    private val binaryCopy: Boolean = false,
+) : RedshiftUsageEventSink(hds) {
+    companion object {
+        private val logger = LoggerFactory.getLogger(PostgresUsageEventSink::class.java)
+        private val USAGE_EVENTS_COPY_LOADER = PostgresBinaryCopyLoader(CHRONICLE_USAGE_EVENTS)
+    }
+
+    override fun insert(
+        connection: Connection,
+        data: List<UsageEventQueueEntry>,
+        window: EventTimestampWindow,
+        studies: Set<String>,
+        participants: Set<String>
+    ): Int {
+        if (!binaryCopy || !USAGE_EVENTS_COPY_LOADER.isAvailable(connection)) {
+            return super.insert(connection, data, window, studies, participants)
+        }
+
+        return StopWatch(
+            log = "Copying ${data.size} entries into ${CHRONICLE_USAGE_EVENTS.name} with studies = {} and participants = {}",
+            level = Level.INFO,
+            logger = logger,
+            studies,
+            participants
+        ).use {
+            val rows = data.asSequence().map { entry -> toCopyRow(entry, window) }
+            USAGE_EVENTS_COPY_LOADER.copy(connection, rows, false).toInt()
+        }
+    }
+
+    /**
+     * Maps a queue entry to the column order of [CHRONICLE_USAGE_EVENTS] for binary copy.
+     */
+    private fun toCopyRow(entry: UsageEventQueueEntry, window: EventTimestampWindow): Array<Any?> {
+        val row = arrayOfNulls<Any>(CHRONICLE_USAGE_EVENTS.columns.size)
+        row[0] = entry.studyId.toString()
+        row[1] = entry.participantId
+        entry.data.values.forEach { usageEventCol ->
+            row[usageEventCol.colIndex - 1] = if (usageEventCol.datatype == PostgresDatatype.TIMESTAMPTZ) {
+                val odt = odtFromUsageEventColumn(usageEventCol.value)
+                if (odt != null && usageEventCol.name == RedshiftColumns.TIMESTAMP.name) window.add(odt)
+                odt
+            } else {
+                usageEventCol.value
+            }
+        }
+        row[RedshiftUsageEventSink.UPLOAD_AT_INDEX - 1] = entry.uploadedAt
+        return row
+    }
+}
+
+/**
+ * Tracks the earliest and latest event timestamps written by a batch, which bound the windowed delete of duplicates.
+ */
+class EventTimestampWindow {
+    var min: OffsetDateTime = OffsetDateTime.MAX
+        private set
+    var max: OffsetDateTime = OffsetDateTime.MIN
+        private set
+
+    fun add(odt: OffsetDateTime) {
+        if (odt.isBefore(min)) min = odt
+        if (odt.isAfter(max)) max = odt
+    }
+}
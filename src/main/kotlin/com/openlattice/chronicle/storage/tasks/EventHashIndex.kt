@@ -0,0 +1,388 @@
+package com.openlattice.chronicle.storage.tasks
+
+import com.codahale.metrics.Meter
+import com.codahale.metrics.MetricRegistry
+import com.geekbeast.postgres.PostgresArrays
+import com.geekbeast.postgres.PostgresDatatype
+import com.google.common.hash.Hasher
+import com.google.common.hash.Hashing
+import com.openlattice.chronicle.configuration.ChronicleUploadConfiguration
+import com.openlattice.chronicle.services.upload.UploadType
+import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.EVENT_HASHES
+import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.EVENT_HASH_COVERAGE
+import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.EVENT_HASH_PENDING
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.EVENT_DATE
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.EVENT_HASH
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.PARTICIPANT_ID
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.STARTED_AT
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.STUDY_ID
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOAD_TYPE
+import com.openlattice.chronicle.storage.StorageResolver
+import com.openlattice.chronicle.storage.odtFromUsageEventColumn
+import com.zaxxer.hikari.HikariDataSource
+import org.slf4j.LoggerFactory
+import java.nio.charset.StandardCharsets
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.time.Instant
+import java.time.LocalDate
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+import java.time.ZonedDateTime
+import java.util.*
+
+/**
+ * Filters duplicate events before they are written to event storage using a per participant index of content hashes
+ * kept in the platform database.
+ *
+ * Hashes are claimed with an `INSERT ... ON CONFLICT DO NOTHING` on the same platform transaction that removes the rows
+ * from the upload buffer, so if writing to event storage fails the claimed hashes are rolled back along with the
+ * buffer. Event storage is a different database, so the write may also succeed and the platform transaction still
+ * roll back, leaving events behind whose hashes are not claimed. To detect this each participant of a batch is marked
+ * as pending in its own transaction before events are written, and the mark is removed by the platform transaction.
+ * A participant that is still marked when the next batch arrives is deduplicated with the windowed delete.
+ *
+ * The caller must also fall back to the windowed delete of duplicates for events that cannot be checked against the
+ * index:
+ *
+ * - events without a timestamp
+ * - events older than the retention window
+ * - events older than the time the index started covering the upload type, since events written before then were
+ *   never hashed. Coverage starts the first time the index is used and is reset by [disable].
+ *
+ * Pending marks assume that a participant is only drained by one worker at a time, which the upload buffer drains
+ * guarantee.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class EventHashIndex(
+    private val storageResolver: StorageResolver,
+    private val uploadType: UploadType,
+    private val uploadConfiguration: ChronicleUploadConfiguration,
+    metricRegistry: MetricRegistry,
+) {
+    companion object {
+        private val logger = LoggerFactory.getLogger(EventHashIndex::class.java)
+
+        /**
+         * 1. upload type
+         * 2. study ids (uuid array)
+         * 3. participant ids (text array)
+         * 4. event hashes (bigint array)
+         * 5. event dates (date array)
+         */
+        private val CLAIM_HASHES_SQL = """
+            INSERT INTO ${EVENT_HASHES.name} (${STUDY_ID.name},${PARTICIPANT_ID.name},${UPLOAD_TYPE.name},${EVENT_HASH.name},${EVENT_DATE.name})
+                SELECT s, p, ?, h, d FROM unnest(?::uuid[], ?::text[], ?::bigint[], ?::date[]) AS t(s, p, h, d)
+            ON CONFLICT DO NOTHING
+            RETURNING ${STUDY_ID.name}, ${PARTICIPANT_ID.name}, ${EVENT_HASH.name}
+        """.trimIndent()
+
+        /**
+         * 1. upload type
+         * 2. study ids (uuid array)
+         * 3. participant ids (text array)
+         */
+        private val MARK_PENDING_SQL = """
+            INSERT INTO ${EVENT_HASH_PENDING.name} (${UPLOAD_TYPE.name},${STUDY_ID.name},${PARTICIPANT_ID.name})
+                SELECT ?, s, p FROM unnest(?::uuid[], ?::text[]) AS t(s, p)
+            ON CONFLICT DO NOTHING
+            RETURNING ${STUDY_ID.name}, ${PARTICIPANT_ID.name}
+        """.trimIndent()
+
+        /**
+         * 1. upload type
+         * 2. study ids (uuid array)
+         * 3. participant ids (text array)
+         */
+        private val CLEAR_PENDING_SQL = """
+            DELETE FROM ${EVENT_HASH_PENDING.name}
+            WHERE ${UPLOAD_TYPE.name} = ?
+                AND (${STUDY_ID.name}, ${PARTICIPANT_ID.name}) IN (SELECT * FROM unnest(?::uuid[], ?::text[]))
+        """.trimIndent()
+
+        /**
+         * Starts coverage if it has not started yet and returns its start.
+         *
+         * 1. upload type
+         * 2. upload type
+         */
+        private val COVERAGE_SQL = """
+            WITH started AS (
+                INSERT INTO ${EVENT_HASH_COVERAGE.name} (${UPLOAD_TYPE.name}) VALUES (?)
+                ON CONFLICT DO NOTHING
+                RETURNING ${STARTED_AT.name}
+            )
+            SELECT ${STARTED_AT.name} FROM started
+            UNION ALL
+            SELECT ${STARTED_AT.name} FROM ${EVENT_HASH_COVERAGE.name} WHERE ${UPLOAD_TYPE.name} = ?
+        """.trimIndent()
+
+        /**
+         * 1. upload type
+         */
+        private val RESET_COVERAGE_SQL = """
+            DELETE FROM ${EVENT_HASH_COVERAGE.name} WHERE ${UPLOAD_TYPE.name} = ?
+        """.trimIndent()
+
+        /**
+         * 1. upload type
+         * 2. event date cutoff
+         */
+        private val PRUNE_HASHES_SQL = """
+            DELETE FROM ${EVENT_HASHES.name} WHERE ${UPLOAD_TYPE.name} = ? AND ${EVENT_DATE.name} < ?
+        """.trimIndent()
+
+        /**
+         * Computes the content hash of an event. Columns must be provided in a stable order. Null values hash the same
+         * as the default value used by the windowed delete of duplicates, so that both approaches agree on what a
+         * duplicate is.
+         */
+        @JvmStatic
+        fun hash(
+            studyId: UUID,
+            participantId: String,
+            columns: Sequence<Triple<String, PostgresDatatype, Any?>>
+        ): Long {
+            val hasher = Hashing.murmur3_128().newHasher()
+                .putLong(studyId.mostSignificantBits)
+                .putLong(studyId.leastSignificantBits)
+            putString(hasher, participantId)
+            columns.forEach { (name, datatype, value) ->
+                putString(hasher, name)
+                putValue(hasher, datatype, value)
+            }
+            return hasher.hash().asLong()
+        }
+
+        private fun putString(hasher: Hasher, value: String) {
+            hasher.putInt(value.length).putString(value, StandardCharsets.UTF_8)
+        }
+
+        private fun putValue(hasher: Hasher, datatype: PostgresDatatype, value: Any?) {
+            when (datatype) {
+                PostgresDatatype.TIMESTAMPTZ, PostgresDatatype.TIMESTAMP -> {
+                    val instant = when (value) {
+                        is Instant -> value
+                        is ZonedDateTime -> value.toInstant()
+                        else -> odtFromUsageEventColumn(value)?.toInstant()
+                    }
+                    hasher.putLong(instant?.epochSecond ?: 0L).putInt(instant?.nano ?: 0)
+                }
+                PostgresDatatype.BIGINT, PostgresDatatype.INTEGER, PostgresDatatype.SMALLINT ->
+                    hasher.putLong((value as Number?)?.toLong() ?: 0L)
+                PostgresDatatype.DOUBLE, PostgresDatatype.REAL, PostgresDatatype.NUMERIC, PostgresDatatype.DECIMAL ->
+                    hasher.putDouble((value as Number?)?.toDouble() ?: 0.0)
+                PostgresDatatype.BOOLEAN -> hasher.putBoolean(value as Boolean? ?: false)
+                else -> putString(hasher, value?.toString() ?: "")
+            }
+        }
+    }
+
+    private val duplicates: Meter = metricRegistry.meter(metricName("duplicates"))
+    private val fallbacks: Meter = metricRegistry.meter(metricName("window-dedup-fallbacks"))
+
+    /**
+     * Removes events that have already been written to event storage, as well as repeats within [rows], and claims the
+     * hashes of the remaining events. This must be called right before the events are written, since it marks their
+     * participants as pending.
+     *
+     * @param platform A connection to the platform database, expected to be inside the transaction draining the
+     * upload buffer.
+     * @param event Maps a row to the identifying information used by the index.
+     */
+    fun <T> deduplicate(platform: Connection, rows: List<T>, event: (T) -> IndexedEvent): DeduplicatedEvents<T> {
+        if (rows.isEmpty()) return DeduplicatedEvents(rows, false)
+
+        val indexedEvents = rows.map(event)
+        val participants = indexedEvents.mapTo(mutableSetOf()) { it.studyId to it.participantId }
+        val (coveredSince, retried) = storageResolver.getPlatformStorage().connection.use { connection ->
+            coveredSince(connection) to participants - markPending(connection, participants)
+        }
+        clearPending(platform, participants)
+
+        val cutoff = maxOf(
+            retentionCutoff().atStartOfDay().atOffset(ZoneOffset.UTC),
+            coveredSince.withOffsetSameInstant(ZoneOffset.UTC)
+        )
+        var requiresWindowDedup = false
+        val unindexed = mutableListOf<T>()
+        val candidates = LinkedHashMap<IndexedEvent, T>(rows.size)
+        val retriedRows = mutableListOf<T>()
+        val retriedEvents = mutableSetOf<IndexedEvent>()
+
+        rows.forEachIndexed { i, row ->
+            val indexedEvent = indexedEvents[i]
+            val eventTimestamp = indexedEvent.eventTimestamp
+            if (eventTimestamp == null || eventTimestamp.isBefore(cutoff)) {
+                requiresWindowDedup = true
+                unindexed.add(row)
+            } else if ((indexedEvent.studyId to indexedEvent.participantId) in retried) {
+                //Event storage may already hold these events without their hashes, so keep them for the windowed
+                //delete and claim their hashes so that later uploads are checked against them.
+                requiresWindowDedup = true
+                retriedRows.add(row)
+                retriedEvents.add(indexedEvent)
+            } else {
+                candidates.putIfAbsent(indexedEvent, row)
+            }
+        }
+
+        if (retried.isNotEmpty()) {
+            logger.warn(
+                "Falling back to windowed dedup of {} uploads for {} participants with an unfinished earlier write.",
+                uploadType.name,
+                retried.size
+            )
+        }
+
+        val claimed = claim(platform, candidates.keys + retriedEvents)
+        val deduplicated = candidates.filterKeys { claimed.contains(it.key()) }.values + retriedRows + unindexed
+
+        duplicates.mark((rows.size - deduplicated.size).toLong())
+        if (requiresWindowDedup) fallbacks.mark()
+
+        return DeduplicatedEvents(deduplicated, requiresWindowDedup)
+    }
+
+    /**
+     * Resets coverage, so that it starts over once the index is enabled again. This must be called while the index is
+     * disabled, since events written in the meantime are not hashed.
+     */
+    fun disable(hds: HikariDataSource) {
+        hds.connection.use { connection ->
+            connection.prepareStatement(RESET_COVERAGE_SQL).use { ps ->
+                ps.setString(1, uploadType.name)
+                ps.executeUpdate()
+            }
+        }
+    }
+
+    /**
+     * Removes hashes of events older than the retention window.
+     */
+    fun prune(hds: HikariDataSource): Int {
+        return hds.connection.use { connection ->
+            connection.prepareStatement(PRUNE_HASHES_SQL).use { ps ->
+                ps.setString(1, uploadType.name)
+                ps.setObject(2, retentionCutoff())
+                val pruned = ps.executeUpdate()
+                logger.info("Pruned $pruned event hashes for ${uploadType.name} uploads.")
+                pruned
+            }
+        }
+    }
+
+    private fun coveredSince(connection: Connection): OffsetDateTime {
+        return connection.prepareStatement(COVERAGE_SQL).use { ps ->
+            ps.setString(1, uploadType.name)
+            ps.setString(2, uploadType.name)
+            ps.executeQuery().use { rs ->
+                check(rs.next()) { "Unable to read dedup index coverage for ${uploadType.name} uploads." }
+                rs.getObject(STARTED_AT.name, OffsetDateTime::class.java)
+            }
+        }
+    }
+
+    /**
+     * Marks participants as pending in its own transaction.
+     *
+     * @return The participants that were not already pending.
+     */
+    private fun markPending(connection: Connection, participants: Set<Pair<UUID, String>>): Set<Pair<UUID, String>> {
+        return connection.prepareStatement(MARK_PENDING_SQL).use { ps ->
+            bindParticipants(connection, ps, participants)
+            ps.executeQuery().use { rs ->
+                val marked = mutableSetOf<Pair<UUID, String>>()
+                while (rs.next()) {
+                    marked.add(rs.getObject(STUDY_ID.name, UUID::class.java) to rs.getString(PARTICIPANT_ID.name))
+                }
+                marked
+            }
+        }
+    }
+
+    /**
+     * Removes the pending marks of participants as part of the platform transaction, so they are only removed if the
+     * upload buffer rows are.
+     */
+    private fun clearPending(platform: Connection, participants: Set<Pair<UUID, String>>) {
+        platform.prepareStatement(CLEAR_PENDING_SQL).use { ps ->
+            bindParticipants(platform, ps, participants)
+            ps.executeUpdate()
+        }
+    }
+
+    private fun bindParticipants(connection: Connection, ps: PreparedStatement, participants: Set<Pair<UUID, String>>) {
+        ps.setString(1, uploadType.name)
+        ps.setArray(2, PostgresArrays.createUuidArray(connection, participants.map { it.first }))
+        ps.setArray(3, PostgresArrays.createTextArray(connection, participants.map { it.second }))
+    }
+
+    private fun claim(platform: Connection, events: Collection<IndexedEvent>): Set<EventHashKey> {
+        if (events.isEmpty()) return setOf()
+
+        return platform.prepareStatement(CLAIM_HASHES_SQL).use { ps ->
+            ps.setString(1, uploadType.name)
+            ps.setArray(2, PostgresArrays.createUuidArray(platform, events.map { it.studyId }))
+            ps.setArray(3, PostgresArrays.createTextArray(platform, events.map { it.participantId }))
+            ps.setArray(4, platform.createArrayOf("bigint", events.map { it.hash }.toTypedArray()))
+            ps.setArray(
+                5,
+                PostgresArrays.createDateArray(
+                    platform,
+                    events.map { it.eventTimestamp!!.withOffsetSameInstant(ZoneOffset.UTC).toLocalDate() }
+                )
+            )
+            ps.executeQuery().use { rs ->
+                val claimed = mutableSetOf<EventHashKey>()
+                while (rs.next()) {
+                    claimed.add(
+                        EventHashKey(
+                            rs.getObject(STUDY_ID.name, UUID::class.java),
+                            rs.getString(PARTICIPANT_ID.name),
+                            rs.getLong(EVENT_HASH.name)
+                        )
+                    )
+                }
+                claimed
+            }
+        }
+    }
+
+    private fun retentionCutoff(): LocalDate =
+        LocalDate.now(ZoneOffset.UTC).minusDays(uploadConfiguration.dedupIndexRetentionDays.toLong())
+
+    private fun metricName(name: String): String =
+        MetricRegistry.name(EventHashIndex::class.java, uploadType.name, name)
+}
+
+/**
+ * @param eventTimestamp The timestamp used to bucket the event for retention. Events without one are never indexed.
+ */
+data class IndexedEvent(
+    val studyId: UUID,
+    val participantId: String,
+    val eventTimestamp: OffsetDateTime?,
+    val hash: Long,
+) {
+    /**
+     * Two events with the same hash are duplicates regardless of the timestamp used for retention.
+     */
+    internal fun key(): EventHashKey = EventHashKey(studyId, participantId, hash)
+
+    override fun equals(other: Any?): Boolean = other is IndexedEvent && key() == other.key()
+
+    override fun hashCode(): Int = key().hashCode()
+}
+
+internal data class EventHashKey(
+    val studyId: UUID,
+    val participantId: String,
+    val hash: Long,
+)
+
+data class DeduplicatedEvents<T>(
+    val rows: List<T>,
+    val requiresWindowDedup: Boolean,
+)
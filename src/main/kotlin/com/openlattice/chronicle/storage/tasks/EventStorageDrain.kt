@@ -0,0 +1,156 @@
+package com.openlattice.chronicle.storage.tasks
+
+import com.geekbeast.configuration.postgres.PostgresFlavor
+import com.openlattice.chronicle.services.upload.UploadType
+import com.openlattice.chronicle.storage.ChroniclePostgresTables
+import com.openlattice.chronicle.storage.sinks.EventSink
+import com.zaxxer.hikari.HikariDataSource
+import org.slf4j.LoggerFactory
+import java.sql.Connection
+import java.sql.ResultSet
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Semaphore
+
+/**
+ * Batching engine that moves upload buffer rows of a single upload type into event storage.
+ *
+ * Rows are grouped by the postgres flavor of the study's event storage, filtered against the [hashIndex] when it is
+ * enabled and written to the [EventSink] for the flavor. Both the partitioned [UploadBufferDrain] and the single
+ * statement move ([moveToEventStorage]) go through [moveBatch], so android and ios only differ in how rows are read
+ * from the upload buffer and how events are identified for deduplication.
+ *
+ * @param flavorResolver Resolves the postgres flavor of the event storage for a study.
+ * @param sinkResolver Creates the sink for a postgres flavor. Sinks are created once per flavor and reused.
+ * @param hashIndex The dedup index, or null if every batch should fall back to the windowed delete of duplicates.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+abstract class EventStorageDrain<T>(
+    private val uploadType: UploadType,
+    private val flavorResolver: (UUID) -> PostgresFlavor,
+    private val sinkResolver: (PostgresFlavor) -> EventSink<T>,
+    private val hashIndex: EventHashIndex?,
+) {
+    companion object {
+        private val logger = LoggerFactory.getLogger(EventStorageDrain::class.java)
+    }
+
+    private val sinks = ConcurrentHashMap<PostgresFlavor, EventSink<T>>()
+
+    /**
+     * Guards against overlapping single statement moves, for example a move requested through the admin api while
+     * the scheduled task is running.
+     */
+    private val moveLock = Semaphore(1)
+
+    /**
+     * Reads the current upload buffer row.
+     */
+    protected abstract fun read(rs: ResultSet): BufferedUpload<T>
+
+    protected abstract fun indexedEvent(event: T): IndexedEvent
+
+    /**
+     * Invoked after all events read in a batch have been written, including events dropped as duplicates.
+     */
+    protected open fun afterWrite(received: List<T>) {}
+
+    /**
+     * Writes the upload buffer rows returned by a move statement to event storage. When the dedup index is enabled
+     * events that were already written are dropped before insert, and the windowed delete of duplicates only runs
+     * for batches containing events the index does not cover.
+     *
+     * @param platform The platform connection the move statement was executed on.
+     * @return The number of upload buffer rows consumed.
+     */
+    fun moveBatch(platform: Connection, rs: ResultSet): Int {
+        val uploads = mutableListOf<BufferedUpload<T>>()
+        while (rs.next()) {
+            uploads.add(read(rs))
+        }
+        write(uploads, platform)
+        return uploads.size
+    }
+
+    /**
+     * Writes buffered uploads to the sink for the event storage of each study.
+     *
+     * @param platform The platform connection used to claim hashes in the dedup index. If null the index is not
+     * consulted.
+     * @return The number of events written.
+     */
+    fun write(uploads: List<BufferedUpload<T>>, platform: Connection?): Int {
+        val eventsByFlavor: MutableMap<PostgresFlavor, MutableList<T>> = mutableMapOf()
+        uploads.forEach { upload ->
+            eventsByFlavor.getOrPut(flavorResolver(upload.studyId)) { mutableListOf() }.addAll(upload.events)
+        }
+
+        eventsByFlavor.forEach { (flavor, events) ->
+            logger.info("Total number of ${uploadType.name} entries for ${flavor.name}: ${events.size}")
+        }
+
+        val written = eventsByFlavor.entries.sumOf { (flavor, received) ->
+            if (received.isEmpty()) return@sumOf 0
+            val (events, dedupWindow) = if (hashIndex != null && platform != null) {
+                hashIndex.deduplicate(platform, received) { indexedEvent(it) }
+            } else {
+                DeduplicatedEvents(received, true)
+            }
+            if (events.isEmpty()) 0 else getSink(flavor).write(events, dedupWindow)
+        }
+
+        afterWrite(eventsByFlavor.values.flatten())
+        return written
+    }
+
+    /**
+     * Moves a single batch of uploads from the upload buffer to event storage in one platform transaction. If a move
+     * is already in progress on this node this returns immediately.
+     *
+     * @return The number of upload buffer rows moved.
+     */
+    fun moveToEventStorage(platformStorage: HikariDataSource, batchSize: Int = 128): Int {
+        if (!moveLock.tryAcquire()) {
+            logger.info("Skipping ${uploadType.name} move to event storage as one is already in progress.")
+            return 0
+        }
+        try {
+            logger.info("Moving ${uploadType.name} data from aurora to event storage.")
+            val moved = platformStorage.connection.use { platform ->
+                platform.autoCommit = false
+                try {
+                    val moved = platform.createStatement().use { stmt ->
+                        stmt.executeQuery(ChroniclePostgresTables.getMoveSql(batchSize, uploadType)).use { rs ->
+                            moveBatch(platform, rs)
+                        }
+                    }
+                    platform.commit()
+                    moved
+                } catch (ex: Exception) {
+                    platform.rollback()
+                    throw ex
+                } finally {
+                    platform.autoCommit = true
+                }
+            }
+            logger.info("Successfully moved $moved ${uploadType.name} uploads to event storage.")
+            return moved
+        } catch (ex: Exception) {
+            logger.info("Unable to move ${uploadType.name} data from aurora to event storage.", ex)
+            throw ex
+        } finally {
+            moveLock.release()
+        }
+    }
+
+    private fun getSink(flavor: PostgresFlavor): EventSink<T> = sinks.computeIfAbsent(flavor) { sinkResolver(it) }
+}
+
+/**
+ * The events of a single upload buffer row.
+ */
+data class BufferedUpload<T>(
+    val studyId: UUID,
+    val events: List<T>,
+)
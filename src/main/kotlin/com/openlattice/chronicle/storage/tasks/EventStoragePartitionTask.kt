@@ -0,0 +1,349 @@
+package com.openlattice.chronicle.storage.tasks
+
+import com.geekbeast.configuration.postgres.PostgresFlavor
+import com.geekbeast.postgres.PostgresArrays
+import com.geekbeast.tasks.HazelcastFixedRateTask
+import com.geekbeast.tasks.HazelcastTaskDependencies
+import com.geekbeast.tasks.Task
+import com.openlattice.chronicle.configuration.ChronicleStorageConfiguration
+import com.openlattice.chronicle.services.studies.StudyLimitsManager
+import com.openlattice.chronicle.services.studies.StudyManager
+import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.PURGED_EVENT_STORAGE_STUDIES
+import com.openlattice.chronicle.storage.PartitionedPostgresDataTables
+import com.openlattice.chronicle.storage.PartitionedPostgresTableDefinition
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.DATA_SOURCE_NAME
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.STUDY_ID
+import com.openlattice.chronicle.storage.StorageResolver
+import org.slf4j.LoggerFactory
+import java.sql.Connection
+import java.sql.SQLException
+import java.time.YearMonth
+import java.time.ZoneOffset
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Maintains the partitions of partitioned event tables in every vanilla postgres event storage. Monthly partitions
+ * are created [ChronicleStorageConfiguration.eventPartitionMonthsAhead] months ahead of time, so that rows are never
+ * routed to the default partition during normal operation. Rows that still end up in the default partition, for example
+ * from devices with their clock set too far ahead, are moved to the partition of their month once it is created.
+ *
+ * If [ChronicleStorageConfiguration.expiredStudyDataDeletion] is enabled the event data of studies past their data
+ * retention period is also removed. Each expired study is mapped to its hash partition with the hash function of the
+ * table, so its rows are only deleted from that hash partition of every month and from the default partition. Past
+ * months that only held rows of expired studies are detached and dropped. Purged studies are recorded in
+ * [PURGED_EVENT_STORAGE_STUDIES] per event storage and skipped on later runs.
+ *
+ * Tables that exist but are not partitioned are skipped.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class EventStoragePartitionTask : HazelcastFixedRateTask<EventStoragePartitionTaskDependencies> {
+    companion object {
+        private val logger = LoggerFactory.getLogger(EventStoragePartitionTask::class.java)
+
+        private const val IS_PARTITIONED_SQL = "SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass(?)"
+
+        private val CHILD_PARTITIONS_SQL = """
+            SELECT c.relname FROM pg_inherits i INNER JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = to_regclass(?)
+        """.trimIndent()
+
+        /**
+         * Maps study ids to the remainder of the hash partition they are routed to, using the hash function of the
+         * partitioned table.
+         *
+         * 1) study ids
+         * 2) number of hash partitions
+         * 3) hash partitioned table
+         * 4) number of hash partitions
+         */
+        private val HASH_REMAINDERS_SQL = """
+            SELECT s.study_id, r.remainder
+            FROM unnest(?::text[]) AS s(study_id), generate_series(0, ?::integer - 1) AS r(remainder)
+            WHERE satisfies_hash_partition(to_regclass(?)::oid, ?::integer, r.remainder, s.study_id)
+        """.trimIndent()
+
+        /**
+         * 1) data source name
+         */
+        private val PURGED_STUDIES_SQL = """
+            SELECT ${STUDY_ID.name} FROM ${PURGED_EVENT_STORAGE_STUDIES.name} WHERE ${DATA_SOURCE_NAME.name} = ?
+        """.trimIndent()
+
+        /**
+         * 1) study id
+         * 2) data source name
+         */
+        private val INSERT_PURGED_STUDY_SQL = """
+            INSERT INTO ${PURGED_EVENT_STORAGE_STUDIES.name} (${STUDY_ID.name},${DATA_SOURCE_NAME.name}) VALUES (?,?)
+            ON CONFLICT DO NOTHING
+        """.trimIndent()
+    }
+
+    override fun getInitialDelay(): Long = 0
+
+    override fun getPeriod(): Long = 6
+
+    override fun getTimeUnit(): TimeUnit = TimeUnit.HOURS
+
+    override fun runTask() {
+        try {
+            maintainPartitions()
+        } catch (ex: Exception) {
+            logger.error("Unable to maintain event storage partitions.", ex)
+        }
+    }
+
+    override fun getName(): String = Task.EVENT_STORAGE_PARTITIONS.name
+
+    override fun getDependenciesClass(): Class<out EventStoragePartitionTaskDependencies> =
+        EventStoragePartitionTaskDependencies::class.java
+
+    private fun maintainPartitions() = with(getDependency()) {
+        val dataSourceNames = storageResolver.getStudyIdsByDataSourceName(studyService.getAllStudyIds().toList()).keys +
+                storageConfiguration.defaultEventStorage
+        val expiredStudyIds = if (storageConfiguration.expiredStudyDataDeletion) {
+            studyLimitsManager.getStudiesExcceedingDataRetentionPeriod()
+        } else {
+            setOf()
+        }
+        val currentMonth = YearMonth.now(ZoneOffset.UTC)
+        val monthsAhead = storageConfiguration.eventPartitionMonthsAhead
+
+        dataSourceNames.forEach { dataSourceName ->
+            val (flavor, hds) = storageResolver.getDataSource(dataSourceName)
+            if (flavor != PostgresFlavor.VANILLA) {
+                return@forEach
+            }
+
+            val unpurgedStudyIds = if (expiredStudyIds.isEmpty()) {
+                setOf()
+            } else {
+                expiredStudyIds - getPurgedStudyIds(dataSourceName)
+            }
+
+            hds.connection.use { connection ->
+                PartitionedPostgresDataTables.TABLES
+                    .filter { table -> isPartitioned(connection, table) }
+                    .forEach { table ->
+                        createPartitions(connection, table, currentMonth, monthsAhead)
+                        if (unpurgedStudyIds.isNotEmpty()) {
+                            deleteExpiredStudyData(connection, table, currentMonth, unpurgedStudyIds)
+                        }
+                    }
+            }
+
+            if (unpurgedStudyIds.isNotEmpty()) {
+                markPurged(dataSourceName, unpurgedStudyIds)
+            }
+        }
+    }
+
+    private fun createPartitions(
+        connection: Connection,
+        table: PartitionedPostgresTableDefinition,
+        currentMonth: YearMonth,
+        monthsAhead: Int
+    ) {
+        val existing = getChildPartitions(connection, table.name)
+        if (table.defaultPartitionName !in existing) {
+            connection.createStatement().use { stmt -> stmt.execute(table.createDefaultPartitionQuery()) }
+        }
+
+        (0..monthsAhead.coerceAtLeast(0).toLong())
+            .map { currentMonth.plusMonths(it) }
+            .filter { table.partitionName(it) !in existing }
+            .forEach { month ->
+                try {
+                    if (hasDefaultPartitionRows(connection, table, month)) {
+                        createPartitionFromDefault(connection, table, month)
+                    } else {
+                        connection.createStatement().use { stmt ->
+                            table.createPartitionQueries(month).forEach { stmt.execute(it) }
+                        }
+                        logger.info("Created partition {} of {}", table.partitionName(month), table.name)
+                    }
+                } catch (ex: SQLException) {
+                    logger.error("Unable to create partition {} of {}", table.partitionName(month), table.name, ex)
+                }
+            }
+    }
+
+    private fun hasDefaultPartitionRows(
+        connection: Connection,
+        table: PartitionedPostgresTableDefinition,
+        month: YearMonth
+    ): Boolean {
+        return connection.createStatement().use { stmt ->
+            stmt.executeQuery(table.defaultPartitionRowsQuery(month)).use { rs -> rs.next() }
+        }
+    }
+
+    /**
+     * Creates the partition for a month with rows in the default partition in a single transaction, so that the
+     * default partition is never left detached.
+     */
+    private fun createPartitionFromDefault(
+        connection: Connection,
+        table: PartitionedPostgresTableDefinition,
+        month: YearMonth
+    ) {
+        connection.autoCommit = false
+        try {
+            connection.createStatement().use { stmt ->
+                table.createPartitionFromDefaultQueries(month).forEach { stmt.execute(it) }
+            }
+            connection.commit()
+            logger.info(
+                "Created partition {} of {} and moved its rows from the default partition",
+                table.partitionName(month),
+                table.name
+            )
+        } catch (ex: SQLException) {
+            connection.rollback()
+            throw ex
+        } finally {
+            connection.autoCommit = true
+        }
+    }
+
+    private fun deleteExpiredStudyData(
+        connection: Connection,
+        table: PartitionedPostgresTableDefinition,
+        currentMonth: YearMonth,
+        expiredStudyIds: Set<UUID>
+    ) {
+        val expired = expiredStudyIds.mapTo(mutableSetOf()) { it.toString() }
+        val months = getChildPartitions(connection, table.name)
+            .mapNotNull { partition -> getMonth(table, partition) }
+            .sorted()
+
+        if (months.isNotEmpty()) {
+            //Every month is hash partitioned the same way, so any of them maps study ids to remainders.
+            val studyIdsByRemainder = getHashRemainders(connection, table, table.partitionName(months.first()), expired)
+            months.forEach { month ->
+                val deleted = studyIdsByRemainder.entries.sumOf { (remainder, studyIds) ->
+                    deleteStudies(connection, table, table.hashPartitionName(month, remainder), studyIds)
+                }
+
+                if (month < currentMonth && deleted > 0 && isEmpty(connection, table.partitionName(month))) {
+                    connection.createStatement().use { stmt ->
+                        stmt.execute(table.detachPartitionQuery(month))
+                        stmt.execute(table.dropPartitionQuery(month))
+                    }
+                    logger.info("Detached and dropped partition {} of {}", table.partitionName(month), table.name)
+                }
+            }
+        }
+        deleteStudies(connection, table, table.defaultPartitionName, expired)
+    }
+
+    private fun deleteStudies(
+        connection: Connection,
+        table: PartitionedPostgresTableDefinition,
+        partition: String,
+        studyIds: Set<String>
+    ): Int {
+        val deleted = connection.prepareStatement(
+            "DELETE FROM $partition WHERE ${table.hashColumn.name} = ANY(?)"
+        ).use { ps ->
+            ps.setArray(1, PostgresArrays.createTextArray(connection, studyIds))
+            ps.executeUpdate()
+        }
+        if (deleted > 0) {
+            logger.info("Deleted {} rows of expired studies from partition {} of {}", deleted, partition, table.name)
+        }
+        return deleted
+    }
+
+    private fun getMonth(table: PartitionedPostgresTableDefinition, partition: String): YearMonth? {
+        val suffix = partition.removePrefix("${table.name}_p")
+        if (suffix == partition || suffix.length != 6 || !suffix.all { it.isDigit() }) {
+            return null
+        }
+        return YearMonth.of(suffix.substring(0, 4).toInt(), suffix.substring(4).toInt())
+    }
+
+    private fun isPartitioned(connection: Connection, table: PartitionedPostgresTableDefinition): Boolean {
+        return connection.prepareStatement(IS_PARTITIONED_SQL).use { ps ->
+            ps.setString(1, table.name)
+            ps.executeQuery().use { rs -> rs.next() }
+        }
+    }
+
+    private fun getChildPartitions(connection: Connection, parent: String): Set<String> {
+        return connection.prepareStatement(CHILD_PARTITIONS_SQL).use { ps ->
+            ps.setString(1, parent)
+            ps.executeQuery().use { rs ->
+                val partitions = mutableSetOf<String>()
+                while (rs.next()) {
+                    partitions.add(rs.getString(1))
+                }
+                partitions
+            }
+        }
+    }
+
+    private fun getHashRemainders(
+        connection: Connection,
+        table: PartitionedPostgresTableDefinition,
+        hashPartitionedTable: String,
+        studyIds: Set<String>
+    ): Map<Int, Set<String>> {
+        return connection.prepareStatement(HASH_REMAINDERS_SQL).use { ps ->
+            ps.setArray(1, PostgresArrays.createTextArray(connection, studyIds))
+            ps.setInt(2, table.hashPartitions)
+            ps.setString(3, hashPartitionedTable)
+            ps.setInt(4, table.hashPartitions)
+            ps.executeQuery().use { rs ->
+                val studyIdsByRemainder = mutableMapOf<Int, MutableSet<String>>()
+                while (rs.next()) {
+                    studyIdsByRemainder.getOrPut(rs.getInt(2)) { mutableSetOf() }.add(rs.getString(1))
+                }
+                studyIdsByRemainder
+            }
+        }
+    }
+
+    private fun isEmpty(connection: Connection, partition: String): Boolean {
+        return connection.createStatement().use { stmt ->
+            stmt.executeQuery("SELECT 1 FROM $partition LIMIT 1").use { rs -> !rs.next() }
+        }
+    }
+
+    private fun getPurgedStudyIds(dataSourceName: String): Set<UUID> {
+        return getDependency().storageResolver.getPlatformStorage().connection.use { connection ->
+            connection.prepareStatement(PURGED_STUDIES_SQL).use { ps ->
+                ps.setString(1, dataSourceName)
+                ps.executeQuery().use { rs ->
+                    val studyIds = mutableSetOf<UUID>()
+                    while (rs.next()) {
+                        studyIds.add(rs.getObject(1, UUID::class.java))
+                    }
+                    studyIds
+                }
+            }
+        }
+    }
+
+    private fun markPurged(dataSourceName: String, studyIds: Set<UUID>) {
+        getDependency().storageResolver.getPlatformStorage().connection.use { connection ->
+            connection.prepareStatement(INSERT_PURGED_STUDY_SQL).use { ps ->
+                studyIds.forEach { studyId ->
+                    ps.setObject(1, studyId)
+                    ps.setString(2, dataSourceName)
+                    ps.addBatch()
+                }
+                ps.executeBatch()
+            }
+        }
+    }
+}
+
+data class EventStoragePartitionTaskDependencies(
+    val storageResolver: StorageResolver,
+    val studyService: StudyManager,
+    val studyLimitsManager: StudyLimitsManager,
+    val storageConfiguration: ChronicleStorageConfiguration,
+) : HazelcastTaskDependencies
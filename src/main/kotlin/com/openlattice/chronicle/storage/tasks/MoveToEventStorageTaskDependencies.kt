@@ -1,8 +1,14 @@
 package com.openlattice.chronicle.storage.tasks
 
+import com.codahale.metrics.MetricRegistry
 import com.geekbeast.tasks.HazelcastTaskDependencies
+import com.hazelcast.core.HazelcastInstance
+import com.openlattice.chronicle.configuration.ChronicleUploadConfiguration
 import com.openlattice.chronicle.services.studies.StudyManager
+import com.openlattice.chronicle.services.upload.UploadType
 import com.openlattice.chronicle.storage.StorageResolver
+import com.openlattice.chronicle.storage.preprocessing.DailyAppUsageRollups
+import com.openlattice.chronicle.storage.preprocessing.UsageEventPreprocessor
 
 /**
  *
@@ -11,4 +17,40 @@ import com.openlattice.chronicle.storage.StorageResolver
 data class MoveToEventStorageTaskDependencies(
     val storageResolver: StorageResolver,
     val studyService: StudyManager,
-) : HazelcastTaskDependencies
\ No newline at end of file
+    val hazelcast: HazelcastInstance,
+    val uploadConfiguration: ChronicleUploadConfiguration,
+    val metricRegistry: MetricRegistry,
+) : HazelcastTaskDependencies {
+    val androidDrain = UploadBufferDrain(
+        UploadType.Android,
+        storageResolver,
+        hazelcast,
+        uploadConfiguration,
+        metricRegistry
+    )
+    val iosDrain = UploadBufferDrain(
+        UploadType.Ios,
+        storageResolver,
+        hazelcast,
+        uploadConfiguration,
+        metricRegistry
+    )
+    val usageEventHashIndex = EventHashIndex(storageResolver, UploadType.Android, uploadConfiguration, metricRegistry)
+    val sensorDataHashIndex = EventHashIndex(storageResolver, UploadType.Ios, uploadConfiguration, metricRegistry)
+    val usageEventPreprocessor = UsageEventPreprocessor(storageResolver, uploadConfiguration)
+    val dailyAppUsageRollups = DailyAppUsageRollups(storageResolver, uploadConfiguration)
+    val usageEvents = UsageEventStorageDrain.create(
+        storageResolver,
+        uploadConfiguration,
+        usageEventHashIndex,
+        usageEventPreprocessor,
+        dailyAppUsageRollups
+    )
+    internal val sensorData = SensorDataStorageDrain.create(
+        storageResolver,
+        studyService,
+        uploadConfiguration,
+        sensorDataHashIndex,
+        dailyAppUsageRollups
+    )
+}
@@ -1,42 +1,22 @@
 package com.openlattice.chronicle.storage.tasks
 
 import com.fasterxml.jackson.module.kotlin.readValue
-import com.geekbeast.configuration.postgres.PostgresFlavor
-import com.geekbeast.postgres.PostgresArrays
 import com.geekbeast.postgres.PostgresColumnDefinition
-import com.geekbeast.postgres.PostgresDatatype
 import com.geekbeast.tasks.HazelcastFixedRateTask
 import com.geekbeast.tasks.Task
-import com.geekbeast.util.StopWatch
 import com.google.common.util.concurrent.ListeningExecutorService
 import com.google.common.util.concurrent.MoreExecutors
-import com.openlattice.chronicle.participants.ParticipantStats
-import com.openlattice.chronicle.postgres.ResultSetAdapters
 import com.openlattice.chronicle.sensorkit.*
-import com.openlattice.chronicle.services.studies.StudyManager
 import com.openlattice.chronicle.services.upload.*
-import com.openlattice.chronicle.storage.ChroniclePostgresTables
 import com.openlattice.chronicle.storage.RedshiftColumns
 import com.openlattice.chronicle.storage.RedshiftDataTables
-import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.IOS_SENSOR_DATA
-import com.openlattice.chronicle.storage.odtFromUsageEventColumn
-import com.openlattice.chronicle.util.ChronicleServerUtil
-import com.zaxxer.hikari.HikariDataSource
-import org.apache.commons.lang3.RandomStringUtils
 import org.slf4j.LoggerFactory
-import org.slf4j.event.Level
-import java.security.InvalidParameterException
-import java.sql.PreparedStatement
-import java.time.LocalDate
 import java.time.OffsetDateTime
-import java.time.ZoneId
-import java.time.ZonedDateTime
 import java.time.temporal.ChronoUnit
 import java.util.*
 import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.TimeoutException
-import kotlin.math.min
 
 /**
  *
@@ -44,12 +24,8 @@ import kotlin.math.min
  */
 class MoveToIosEventStorageTask : HazelcastFixedRateTask<MoveToEventStorageTaskDependencies> {
     companion object {
-        private val RS_BATCH_SIZE =
-            (ChroniclePostgresTables.MAX_BIND_PARAMETERS / RedshiftDataTables.IOS_SENSOR_DATA.columns.size)
         private const val PERIOD = 5 * 60000L
         private const val INITIAL_DELAY = 5000L
-        private val UPLOAD_AT_INDEX = RedshiftDataTables.getInsertUsageEventColumnIndex(RedshiftColumns.UPLOADED_AT)
-
         private val logger = LoggerFactory.getLogger(MoveToIosEventStorageTask::class.java)
 
         private val executor: ListeningExecutorService =
@@ -58,7 +34,24 @@ class MoveToIosEventStorageTask : HazelcastFixedRateTask<MoveToEventStorageTaskD
 
     override fun runTask() {
         val f = executor.submit {
-            moveToEventStorage()
+            with(getDependency()) {
+                if (uploadConfiguration.partitionedDrain) {
+                    logger.info("Draining ios upload buffer to event storage.")
+                    val moved = iosDrain.drain(sensorData::moveBatch)
+                    logger.info("Moved $moved ios uploads to event storage.")
+                } else {
+                    sensorData.moveToEventStorage(storageResolver.getPlatformStorage())
+                    iosDrain.refreshDepth()
+                }
+                if (uploadConfiguration.dedupIndex) {
+                    sensorDataHashIndex.prune(storageResolver.getPlatformStorage())
+                } else {
+                    sensorDataHashIndex.disable(storageResolver.getPlatformStorage())
+                }
+                if (uploadConfiguration.dailyUsageRollups) {
+                    dailyAppUsageRollups.process()
+                }
+            }
         }
         try {
             f.get(1, TimeUnit.HOURS)
@@ -72,326 +65,6 @@ class MoveToIosEventStorageTask : HazelcastFixedRateTask<MoveToEventStorageTaskD
 
     override fun getName(): String = Task.MOVE_IOS_DATA_TO_EVENT_STORAGE.name
 
-    private fun moveToEventStorage() {
-
-        with(getDependency()) {
-            val platform = storageResolver.getPlatformStorage().connection
-            platform.autoCommit = false
-            val stmt = platform.createStatement()
-            try {
-                logger.info("Moving ios data from aurora to event storage.")
-                val queueEntriesByFlavor: MutableMap<PostgresFlavor, MutableList<SensorDataRow>> = mutableMapOf()
-
-                stmt.executeQuery(ChroniclePostgresTables.getMoveSql(128, UploadType.Ios)).use { rs ->
-                    while (rs.next()) {
-                        val sensorDataSamples = ResultSetAdapters.sensorDataSamples(rs)
-                        val (flavor, _) = storageResolver.resolveAndGetFlavor(sensorDataSamples.studyId)
-                        queueEntriesByFlavor.getOrPut(flavor) { mutableListOf() }
-                            .addAll(sensorDataSamples.toSensorDataRows())
-                    }
-                }
-
-                queueEntriesByFlavor.forEach { (postgresFlavor, sensorDataEntries) ->
-                    if (sensorDataEntries.isEmpty()) return@forEach
-                    when (postgresFlavor) {
-                        PostgresFlavor.REDSHIFT -> writeToEventStorage(
-                            storageResolver.getEventStorageWithFlavor(PostgresFlavor.REDSHIFT),
-                            sensorDataEntries,
-                            false
-                        )
-
-                        PostgresFlavor.VANILLA -> writeToEventStorage(
-                            storageResolver.getEventStorageWithFlavor(PostgresFlavor.VANILLA),
-                            sensorDataEntries,
-                            true
-                        )
-
-                        else -> throw InvalidParameterException("Invalid postgres flavor: ${postgresFlavor.name}")
-                    }
-                }
-
-                platform.commit()
-                platform.autoCommit = true
-                stmt.close()
-                platform.close()
-                logger.info("Successfully moved ios data to event storage.")
-                logger.info("Total number of entries for redshift: ${(queueEntriesByFlavor[PostgresFlavor.REDSHIFT] ?: listOf()).size}")
-                logger.info("Total number of entries for postgres: ${(queueEntriesByFlavor[PostgresFlavor.VANILLA] ?: listOf()).size}")
-            } catch (ex: Exception) {
-                logger.info("Unable to move data from aurora to redshift.", ex)
-                platform.rollback()
-                stmt.close()
-                platform.autoCommit = true
-                platform.close()
-                throw ex
-            }
-        }
-    }
-
-    private fun writeToEventStorage(
-        hds: HikariDataSource,
-        data: List<SensorDataRow>,
-        includeOnConflict: Boolean
-    ): Int {
-        val studies = data.map { it.studyId.toString() }.toSet()
-        val participants = data.map { it.participantId }.toSet()
-        //TODO: May be based this off data being inserted instead?
-        var minEventTimestamp: OffsetDateTime = OffsetDateTime.MAX
-        var maxEventTimestamp: OffsetDateTime = OffsetDateTime.MIN
-
-        return StopWatch(
-            log = "writing ${data.size} entries to event storage.",
-            level = Level.INFO,
-            logger = logger
-        ).use {
-            val w = hds.connection.use { connection ->
-                connection.autoCommit = false
-                val insertBatchSize = min(data.size, RS_BATCH_SIZE)
-
-                logger.info("Preparing primary insert statement (sensor data) with batch size $insertBatchSize")
-                val insertSql = RedshiftDataTables.buildMultilineInsertSensorEvents(
-                    insertBatchSize,
-                    includeOnConflict
-                )
-
-                val pps = connection.prepareStatement(insertSql)
-
-                val dr = data.size % RS_BATCH_SIZE
-
-                val fps = if (data.size > RS_BATCH_SIZE && dr != 0) {
-                    logger.info("Preparing secondary insert statement with batch size $dr")
-                    connection.prepareStatement(
-                        RedshiftDataTables.buildMultilineInsertSensorEvents(
-                            dr,
-                            includeOnConflict
-                        )
-                    )
-                } else {
-                    pps
-                }
-
-                val s = try {
-                    data.chunked(insertBatchSize).forEach { sensorDataRows ->
-                        var offset = 0
-                        val ps = if (insertBatchSize == sensorDataRows.size) {
-                            pps
-                        } else {
-                            fps
-                        }
-
-                        logger.info("Writing row of size ${sensorDataRows.size} to ios event storage.")
-
-                        sensorDataRows.forEach {
-                            val studyId = it.studyId
-                            val participantId = it.participantId
-                            val sourceDeviceId = it.sourceDeviceId
-
-                            logger.trace(
-                                "Writing row to storage (ios) " + ChronicleServerUtil.STUDY_PARTICIPANT_DATASOURCE,
-                                studyId,
-                                participantId,
-                                sourceDeviceId
-                            )
-
-                            val (minOdt, maxOdt) = writeSensorDataToRedshift(
-                                ps,
-                                offset,
-                                studyId,
-                                participantId,
-                                it.sensorType,
-                                it.row
-                            )
-                            minEventTimestamp = minOf(minOdt, minEventTimestamp)
-                            maxEventTimestamp = maxOf(maxOdt, maxEventTimestamp)
-                            offset += RedshiftDataTables.IOS_SENSOR_DATA.columns.size
-                        }
-                        if (ps === pps)
-                            ps.addBatch()
-                    }
-
-                    //We only call fps.executeBatch() if they ended up different objects.
-                    pps.executeBatch().sum() + if (pps !== fps) {
-                        fps.executeUpdate()
-                    } else {
-                        0
-                    }
-                } finally {
-                    if (pps !== fps) fps.close()
-                    pps.close()
-                }
-
-                /*
-                 * We need to remove any duplicates that were inserted. The general approach is to use min/max recorded date
-                 * and (study_id, participant_id) to count duplicates within that window and remove them. The reason for using
-                 * this approach is that we don't know when duplicate may be uploaded so we need a bounded way to maintain
-                 * the uniqueness invariant on each upload.
-                 */
-
-                val tempTableName = "duplicate_ios_events_${RandomStringUtils.randomAlphanumeric(10)}"
-
-                //Create a table that contains any duplicate values introduced by this latest upload for the minimum upload_at value
-                StopWatch(
-                    log = "Creating duplicates table for ios studies = {} and participants = {} ",
-                    level = Level.INFO,
-                    logger = logger,
-                    studies,
-                    participants
-                ).use {
-                    connection.createStatement()
-                        .use { stmt ->
-                            stmt.execute(
-                                RedshiftDataTables.createTempTableOfDuplicates(
-                                    tempTableName,
-                                    IOS_SENSOR_DATA
-                                )
-                            )
-                        }
-                    connection.prepareStatement(RedshiftDataTables.buildTempTableOfDuplicatesForIos(tempTableName))
-                        .use { ps ->
-                            logger.info("Earliest timestamp for studies = {} and participants = {} is {}", studies, participants, minEventTimestamp)
-                            logger.info("Latest timestamp for studies = {} and participants = {} is {}", studies, participants, maxEventTimestamp)
-                            ps.setArray(1, PostgresArrays.createTextArray(connection, studies))
-                            ps.setArray(2, PostgresArrays.createTextArray(connection, participants))
-                            ps.setObject(3, minEventTimestamp)
-                            ps.setObject(4, maxEventTimestamp)
-                            ps.execute()
-                        }
-                }
-
-                //Delete the duplicates, if any from chronicle_usage_events and drop the temporary table.
-                StopWatch(
-                    log = "Deleting duplicates for ios studies = {} and participants = {} ",
-                    level = Level.INFO,
-                    logger = logger,
-                    studies,
-                    participants
-                ).use {
-                    connection.createStatement().use { stmt ->
-                        stmt.execute(RedshiftDataTables.getDeleteIosSensorDataFromTempTable(tempTableName))
-                        stmt.execute("INSERT INTO ${IOS_SENSOR_DATA.name} SELECT * FROM $tempTableName")
-                        stmt.execute("DROP TABLE $tempTableName")
-                    }
-                }
-
-                connection.commit()
-                connection.autoCommit = true
-                s
-            }
-
-            //Process all the participant updates. Being lazy hear since I don't have them batched.
-            data.forEach {
-                updateParticipantStats(
-                    it.studyId,
-                    it.participantId,
-                    mapOf(it.sensorType to listOf(it.row)),
-                    getDependency().studyService
-                )
-            }
-            w
-        }
-    }
-
-    /**
-     * @return A pair of [OffsetDateTime] where the first element in the pair is the minimum offset datetime in the
-     * data and the second element is maximum element in the data.
-     */
-    private fun writeSensorDataToRedshift(
-        ps: PreparedStatement,
-        offset: Int,
-        studyId: UUID,
-        participantId: String,
-        sensorType: SensorType,
-        dataColumns: List<SensorDataColumn>,
-    ): Pair<OffsetDateTime, OffsetDateTime> {
-        var minEventTimestamp: OffsetDateTime = OffsetDateTime.MAX
-        var maxEventTimestamp: OffsetDateTime = OffsetDateTime.MIN
-        ps.setString(
-            offset + RedshiftDataTables.getInsertSensorDataColumnIndex(RedshiftColumns.STUDY_ID),
-            studyId.toString()
-        )
-        ps.setString(
-            offset + RedshiftDataTables.getInsertSensorDataColumnIndex(RedshiftColumns.PARTICIPANT_ID),
-            participantId
-        )
-        ps.setString(
-            offset + RedshiftDataTables.getInsertSensorDataColumnIndex(RedshiftColumns.SENSOR_TYPE),
-            sensorType.name
-        )
-
-        dataColumns.forEach { dataColumn ->
-            val col = dataColumn.col
-            val index = offset + dataColumn.colIndex
-            val value = dataColumn.value
-
-            if (value != null && col.name == RedshiftColumns.RECORDED_DATE_TIME.name) {
-                val odt = odtFromUsageEventColumn(value)!!
-
-                if (odt.isBefore(minEventTimestamp)) {
-                    minEventTimestamp = odt
-                }
-                if (odt.isAfter(maxEventTimestamp)) {
-                    maxEventTimestamp = odt
-                }
-            }
-
-            if (value == null) {
-                ps.setObject(index, null)
-            } else {
-                when (col.datatype) {
-                    PostgresDatatype.TEXT -> ps.setString(index, value as String)
-                    PostgresDatatype.DOUBLE -> ps.setDouble(index, value as Double)
-                    else -> ps.setObject(index, value)
-                }
-            }
-        }
-        return minEventTimestamp to maxEventTimestamp
-    }
-
-    private fun getZonedDateTime(sensorDataColumns: List<SensorDataColumn>): ZonedDateTime {
-        var timezone: String? = null
-        var odt: OffsetDateTime? = null
-        sensorDataColumns.forEach {
-            if (odt == null && it.col == RedshiftColumns.RECORDED_DATE_TIME) {
-                odt = it.value as OffsetDateTime
-            } else if (timezone == null && it.col == RedshiftColumns.TIMEZONE) {
-                timezone = it.value as String
-            }
-        }
-        checkNotNull(odt) { "Recorded date was null while processing upload." }
-        checkNotNull(timezone) { "Timezone was null while processing upload." }
-        return odt!!.atZoneSameInstant(ZoneId.of(timezone))
-    }
-
-    private fun updateParticipantStats(
-        studyId: UUID,
-        participantId: String,
-        data: Map<SensorType, List<List<SensorDataColumn>>>,
-        studyService: StudyManager
-    ) {
-        //TODO: We should be able to use odt directly instead of decoding with timezone as timestamp from iphone
-        //should include timezone and it is preferred in upload buffer json
-        val dates = data
-            .values.asSequence()
-            .flatMap { sensorRowsOfType -> sensorRowsOfType.map { getZonedDateTime(it) } }
-            .toSet()
-
-
-        val uniqueDates: Set<LocalDate> = dates.map { it.toLocalDate() }.toSet()
-
-        val minDate = dates.min()
-        val maxDate = dates.max()
-
-        val statsUpdate = ParticipantStats(
-            studyId = studyId,
-            participantId = participantId,
-            iosUniqueDates = uniqueDates,
-            iosLastPing = OffsetDateTime.now(),
-            iosFirstDate = minDate.toOffsetDateTime(),
-            iosLastDate = maxDate.toOffsetDateTime(),
-        )
-        studyService.insertOrUpdateParticipantStats(statsUpdate)
-    }
-
     override fun getInitialDelay(): Long = INITIAL_DELAY
 
     override fun getPeriod(): Long = PERIOD
@@ -0,0 +1,158 @@
+package com.openlattice.chronicle.storage.tasks
+
+import com.geekbeast.configuration.postgres.PostgresFlavor
+import com.openlattice.chronicle.configuration.ChronicleUploadConfiguration
+import com.openlattice.chronicle.mapstores.stats.ParticipantStatsBatch
+import com.openlattice.chronicle.participants.ParticipantStats
+import com.openlattice.chronicle.postgres.ResultSetAdapters
+import com.openlattice.chronicle.services.studies.StudyManager
+import com.openlattice.chronicle.services.upload.UploadType
+import com.openlattice.chronicle.storage.RedshiftColumns
+import com.openlattice.chronicle.storage.StorageResolver
+import com.openlattice.chronicle.storage.odtFromUsageEventColumn
+import com.openlattice.chronicle.storage.preprocessing.DailyAppUsageRollups
+import com.openlattice.chronicle.storage.preprocessing.UsageDay
+import com.openlattice.chronicle.storage.sinks.EventSink
+import com.openlattice.chronicle.storage.sinks.PostgresSensorDataSink
+import com.openlattice.chronicle.storage.sinks.RedshiftSensorDataSink
+import java.security.InvalidParameterException
+import java.sql.ResultSet
+import java.time.LocalDate
+import java.time.OffsetDateTime
+import java.time.ZoneId
+import java.time.ZonedDateTime
+import java.util.*
+
+/**
+ * Drains ios sensor data from the upload buffer and updates participant stats for every sample received. The days of
+ * written samples are marked for daily app usage rollups.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+internal class SensorDataStorageDrain(
+    private val studyManager: StudyManager,
+    flavorResolver: (UUID) -> PostgresFlavor,
+    sinkResolver: (PostgresFlavor) -> EventSink<SensorDataRow>,
+    hashIndex: EventHashIndex? = null,
+    private val rollups: DailyAppUsageRollups? = null,
+) : EventStorageDrain<SensorDataRow>(UploadType.Ios, flavorResolver, sinkResolver, hashIndex) {
+    companion object {
+        /**
+         * Columns that are ignored when deciding whether two samples are duplicates.
+         */
+        private val WINDOW_DEDUP_EXCLUDED_COLUMNS = setOf(
+            RedshiftColumns.SAMPLE_ID,
+            RedshiftColumns.START_DATE_TIME,
+            RedshiftColumns.END_DATE_TIME,
+            RedshiftColumns.EXACT_RECORDED_DATE_TIME
+        ).map { it.name }.toSet()
+
+        @JvmStatic
+        fun create(
+            storageResolver: StorageResolver,
+            studyManager: StudyManager,
+            uploadConfiguration: ChronicleUploadConfiguration,
+            hashIndex: EventHashIndex,
+            rollups: DailyAppUsageRollups,
+        ): SensorDataStorageDrain = SensorDataStorageDrain(
+            studyManager,
+            { studyId -> storageResolver.resolveAndGetFlavor(studyId).first },
+            { flavor ->
+                when (flavor) {
+                    PostgresFlavor.REDSHIFT -> RedshiftSensorDataSink(storageResolver.getEventStorageWithFlavor(flavor))
+                    PostgresFlavor.VANILLA -> PostgresSensorDataSink(
+                        storageResolver.getEventStorageWithFlavor(flavor),
+                        uploadConfiguration.binaryCopy
+                    )
+                    else -> throw InvalidParameterException("Invalid postgres flavor: ${flavor.name}")
+                }
+            },
+            if (uploadConfiguration.dedupIndex) hashIndex else null,
+            rollups
+        )
+    }
+
+    override fun read(rs: ResultSet): BufferedUpload<SensorDataRow> {
+        val sensorDataSamples = ResultSetAdapters.sensorDataSamples(rs)
+        return BufferedUpload(sensorDataSamples.studyId, sensorDataSamples.toSensorDataRows())
+    }
+
+    override fun indexedEvent(event: SensorDataRow): IndexedEvent {
+        val columns = event.row
+            .asSequence()
+            .filter { it.col.name !in WINDOW_DEDUP_EXCLUDED_COLUMNS }
+            .sortedBy { it.col.name }
+            .map { Triple(it.col.name, it.col.datatype, it.value) }
+        val recordedDateTime = event.row.firstOrNull { it.col.name == RedshiftColumns.RECORDED_DATE_TIME.name }
+        return IndexedEvent(
+            event.studyId,
+            event.participantId,
+            odtFromUsageEventColumn(recordedDateTime?.value),
+            EventHashIndex.hash(event.studyId, event.participantId, columns)
+        )
+    }
+
+    /**
+     * Fold the participant updates, including duplicates since they still count as a ping from the device.
+     */
+    override fun afterWrite(received: List<SensorDataRow>) {
+        if (received.isEmpty()) return
+        val statsBatch = ParticipantStatsBatch()
+        received.forEach {
+            statsBatch.add(participantStatsDelta(it.studyId, it.participantId, listOf(it.row)))
+        }
+        studyManager.insertOrUpdateParticipantStats(statsBatch)
+        rollups?.markDirty(UploadType.Ios, received.mapNotNull { usageDay(it) })
+    }
+
+    /**
+     * Samples are rolled up into the day they end on, with a sample ending exactly at midnight belonging to the day
+     * before.
+     */
+    private fun usageDay(sensorDataRow: SensorDataRow): UsageDay? {
+        val endDateTime = sensorDataRow.row.firstOrNull { it.col == RedshiftColumns.END_DATE_TIME }?.value
+        val timezone = sensorDataRow.row.firstOrNull { it.col == RedshiftColumns.TIMEZONE }?.value as? String
+        return odtFromUsageEventColumn(endDateTime)?.let {
+            UsageDay.of(sensorDataRow.studyId, sensorDataRow.participantId, it.minusNanos(1), timezone)
+        }
+    }
+
+    private fun getZonedDateTime(sensorDataColumns: List<SensorDataColumn>): ZonedDateTime {
+        var timezone: String? = null
+        var odt: OffsetDateTime? = null
+        sensorDataColumns.forEach {
+            if (odt == null && it.col == RedshiftColumns.RECORDED_DATE_TIME) {
+                odt = it.value as OffsetDateTime
+            } else if (timezone == null && it.col == RedshiftColumns.TIMEZONE) {
+                timezone = it.value as String
+            }
+        }
+        checkNotNull(odt) { "Recorded date was null while processing upload." }
+        checkNotNull(timezone) { "Timezone was null while processing upload." }
+        return odt!!.atZoneSameInstant(ZoneId.of(timezone))
+    }
+
+    private fun participantStatsDelta(
+        studyId: UUID,
+        participantId: String,
+        sensorRows: List<List<SensorDataColumn>>,
+    ): ParticipantStats {
+        //TODO: We should be able to use odt directly instead of decoding with timezone as timestamp from iphone
+        //should include timezone and it is preferred in upload buffer json
+        val dates = sensorRows.map { getZonedDateTime(it) }.toSet()
+
+        val uniqueDates: Set<LocalDate> = dates.map { it.toLocalDate() }.toSet()
+
+        val minDate = dates.min()
+        val maxDate = dates.max()
+
+        return ParticipantStats(
+            studyId = studyId,
+            participantId = participantId,
+            iosUniqueDates = uniqueDates,
+            iosLastPing = OffsetDateTime.now(),
+            iosFirstDate = minDate.toOffsetDateTime(),
+            iosLastDate = maxDate.toOffsetDateTime(),
+        )
+    }
+}
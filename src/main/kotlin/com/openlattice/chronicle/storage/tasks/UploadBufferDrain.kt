@@ -0,0 +1,188 @@
+package com.openlattice.chronicle.storage.tasks
+
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.Meter
+import com.codahale.metrics.MetricRegistry
+import com.codahale.metrics.Timer
+import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.ListeningExecutorService
+import com.google.common.util.concurrent.MoreExecutors
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import com.hazelcast.core.HazelcastInstance
+import com.openlattice.chronicle.configuration.ChronicleUploadConfiguration
+import com.openlattice.chronicle.hazelcast.HazelcastMap
+import com.openlattice.chronicle.services.upload.UploadType
+import com.openlattice.chronicle.storage.ChroniclePostgresTables
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOADED_AT
+import com.openlattice.chronicle.storage.StorageResolver
+import org.slf4j.LoggerFactory
+import java.sql.Connection
+import java.sql.ResultSet
+import java.time.Duration
+import java.time.OffsetDateTime
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Drains the upload buffer for a single upload type using several workers per node.
+ *
+ * The buffer is split into [ChronicleUploadConfiguration.drainPartitions] hash partitions of (study id, participant id).
+ * A worker claims a partition by acquiring a cluster wide lock on it, then moves batches out of that partition, each in
+ * its own transaction, until it is empty. Workers keep sweeping partitions until a full pass finds nothing to move, so
+ * a backlog is drained without waiting for the next fixed rate tick.
+ *
+ * Buffer depth, the age of the oldest buffered upload (drain lag) and the drain rate are published as metrics.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class UploadBufferDrain(
+    private val uploadType: UploadType,
+    private val storageResolver: StorageResolver,
+    hazelcast: HazelcastInstance,
+    private val uploadConfiguration: ChronicleUploadConfiguration,
+    metricRegistry: MetricRegistry,
+) {
+    companion object {
+        private val logger = LoggerFactory.getLogger(UploadBufferDrain::class.java)
+    }
+
+    private val locks = HazelcastMap.UPLOAD_DRAIN_LOCKS.getMap(hazelcast)
+    private val running = AtomicBoolean(false)
+    private val depth = AtomicLong(0)
+    private val lagSeconds = AtomicLong(0)
+    private val moveSql = ChroniclePostgresTables.getPartitionedMoveSql(
+        uploadConfiguration.drainBatchSize,
+        uploadType,
+        uploadConfiguration.drainPartitions
+    )
+
+    private val workers: ListeningExecutorService = MoreExecutors.listeningDecorator(
+        Executors.newFixedThreadPool(
+            uploadConfiguration.drainWorkersPerNode,
+            ThreadFactoryBuilder().setNameFormat("upload-drain-${uploadType.name.lowercase()}-%d").setDaemon(true).build()
+        )
+    )
+
+    private val drained: Meter = metricRegistry.meter(metricName("drained"))
+    private val batches: Timer = metricRegistry.timer(metricName("batches"))
+
+    init {
+        metricRegistry.gauge(metricName("depth")) { Gauge { depth.get() } }
+        metricRegistry.gauge(metricName("lag-seconds")) { Gauge { lagSeconds.get() } }
+    }
+
+    /**
+     * Refreshes the buffer depth and drain lag metrics.
+     */
+    fun refreshDepth() {
+        storageResolver.getPlatformStorage().connection.use { connection ->
+            connection.prepareStatement(ChroniclePostgresTables.UPLOAD_BUFFER_DEPTH_SQL).use { ps ->
+                ps.setString(1, uploadType.name)
+                ps.executeQuery().use { rs ->
+                    if (rs.next()) {
+                        depth.set(rs.getLong(1))
+                        val oldest = rs.getObject(UPLOADED_AT.name, OffsetDateTime::class.java)
+                        lagSeconds.set(
+                            if (oldest == null) 0 else Duration.between(oldest, OffsetDateTime.now()).seconds
+                        )
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Drains the upload buffer until it is empty and blocks until all workers on this node have finished. If a drain
+     * is already in progress on this node this returns immediately.
+     *
+     * @param moveBatch Consumes the rows removed from the upload buffer by a single batch, writing them to event
+     * storage, and returns the number of rows consumed. It is invoked with the batch's platform connection inside its
+     * transaction, so an exception will roll the batch back into the buffer.
+     * @return The number of upload buffer rows moved by this node.
+     */
+    fun drain(moveBatch: (Connection, ResultSet) -> Int): Long {
+        if (!running.compareAndSet(false, true)) {
+            logger.info("Drain of {} upload buffer is already running on this node.", uploadType)
+            return 0
+        }
+
+        try {
+            val futures = (0 until uploadConfiguration.drainWorkersPerNode).map {
+                workers.submit<Long> { drainPartitions(moveBatch) }
+            }
+            val combined = Futures.allAsList(futures)
+            return try {
+                combined.get().sum()
+            } catch (ex: InterruptedException) {
+                combined.cancel(true)
+                Thread.currentThread().interrupt()
+                0
+            } catch (ex: ExecutionException) {
+                logger.error("Drain worker for {} upload buffer failed.", uploadType, ex)
+                0
+            }
+        } finally {
+            running.set(false)
+            refreshDepth()
+        }
+    }
+
+    private fun drainPartitions(moveBatch: (Connection, ResultSet) -> Int): Long {
+        val partitions = uploadConfiguration.drainPartitions
+        //Start each worker at a different partition to reduce contention for locks.
+        val offset = ThreadLocalRandom.current().nextInt(partitions)
+        var total = 0L
+        var idle = false
+
+        while (!idle && !Thread.currentThread().isInterrupted) {
+            idle = true
+            for (i in 0 until partitions) {
+                val partition = (offset + i) % partitions
+                val lockKey = "${uploadType.name}:$partition"
+                if (!locks.tryLock(lockKey)) continue
+                try {
+                    var moved: Int
+                    do {
+                        moved = drainBatch(partition, moveBatch)
+                        total += moved
+                        if (moved > 0) idle = false
+                    } while (moved > 0 && !Thread.currentThread().isInterrupted)
+                } catch (ex: Exception) {
+                    //Skip this partition for the rest of the pass, the rows are back in the buffer for the next run.
+                    logger.error("Unable to drain partition {} of {} upload buffer.", partition, uploadType, ex)
+                } finally {
+                    locks.unlock(lockKey)
+                }
+            }
+        }
+        return total
+    }
+
+    private fun drainBatch(partition: Int, moveBatch: (Connection, ResultSet) -> Int): Int {
+        return batches.time().use {
+            storageResolver.getPlatformStorage().connection.use { platform ->
+                platform.autoCommit = false
+                try {
+                    val moved = platform.prepareStatement(moveSql).use { ps ->
+                        ps.setInt(1, partition)
+                        ps.executeQuery().use { rs -> moveBatch(platform, rs) }
+                    }
+                    platform.commit()
+                    drained.mark(moved.toLong())
+                    moved
+                } catch (ex: Exception) {
+                    platform.rollback()
+                    throw ex
+                } finally {
+                    platform.autoCommit = true
+                }
+            }
+        }
+    }
+
+    private fun metricName(name: String): String =
+        MetricRegistry.name(UploadBufferDrain::class.java, uploadType.name, name)
+}
@@ -0,0 +1,93 @@
+package com.openlattice.chronicle.storage.tasks
+
+import com.geekbeast.configuration.postgres.PostgresFlavor
+import com.openlattice.chronicle.configuration.ChronicleUploadConfiguration
+import com.openlattice.chronicle.postgres.ResultSetAdapters
+import com.openlattice.chronicle.services.upload.UploadType
+import com.openlattice.chronicle.services.upload.UsageEventQueueEntry
+import com.openlattice.chronicle.storage.RedshiftColumns
+import com.openlattice.chronicle.storage.StorageResolver
+import com.openlattice.chronicle.storage.odtFromUsageEventColumn
+import com.openlattice.chronicle.storage.preprocessing.DailyAppUsageRollups
+import com.openlattice.chronicle.storage.preprocessing.UsageDay
+import com.openlattice.chronicle.storage.preprocessing.UsageEventPreprocessor
+import com.openlattice.chronicle.storage.sinks.EventSink
+import com.openlattice.chronicle.storage.sinks.PostgresUsageEventSink
+import com.openlattice.chronicle.storage.sinks.RedshiftUsageEventSink
+import java.security.InvalidParameterException
+import java.sql.ResultSet
+import java.util.*
+
+/**
+ * Drains android usage events from the upload buffer. Participant stats for android are updated at upload time, so
+ * after a batch is written its participants are only marked for incremental preprocessing and their days for daily
+ * app usage rollups.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class UsageEventStorageDrain(
+    flavorResolver: (UUID) -> PostgresFlavor,
+    sinkResolver: (PostgresFlavor) -> EventSink<UsageEventQueueEntry>,
+    hashIndex: EventHashIndex? = null,
+    private val preprocessor: UsageEventPreprocessor? = null,
+    private val rollups: DailyAppUsageRollups? = null,
+) : EventStorageDrain<UsageEventQueueEntry>(UploadType.Android, flavorResolver, sinkResolver, hashIndex) {
+    companion object {
+        @JvmStatic
+        fun create(
+            storageResolver: StorageResolver,
+            uploadConfiguration: ChronicleUploadConfiguration,
+            hashIndex: EventHashIndex,
+            preprocessor: UsageEventPreprocessor,
+            rollups: DailyAppUsageRollups,
+        ): UsageEventStorageDrain = UsageEventStorageDrain(
+            { studyId -> storageResolver.resolveAndGetFlavor(studyId).first },
+            { flavor ->
+                when (flavor) {
+                    PostgresFlavor.REDSHIFT -> RedshiftUsageEventSink(storageResolver.getEventStorageWithFlavor(flavor))
+                    PostgresFlavor.VANILLA -> PostgresUsageEventSink(
+                        storageResolver.getEventStorageWithFlavor(flavor),
+                        uploadConfiguration.binaryCopy
+                    )
+                    else -> throw InvalidParameterException("Invalid postgres flavor: ${flavor.name}")
+                }
+            },
+            if (uploadConfiguration.dedupIndex) hashIndex else null,
+            preprocessor,
+            rollups
+        )
+    }
+
+    override fun read(rs: ResultSet): BufferedUpload<UsageEventQueueEntry> {
+        val usageEventQueueEntries = ResultSetAdapters.usageEventQueueEntries(rs)
+        return BufferedUpload(usageEventQueueEntries.studyId, usageEventQueueEntries.toEntryList())
+    }
+
+    override fun afterWrite(received: List<UsageEventQueueEntry>) {
+        preprocessor?.markDirty(received)
+        rollups?.markDirty(UploadType.Android, received.mapNotNull { event ->
+            val timestamp = odtFromUsageEventColumn(event.data[RedshiftColumns.TIMESTAMP.name]?.value)
+                ?: return@mapNotNull null
+            UsageDay.of(
+                event.studyId,
+                event.participantId,
+                timestamp,
+                event.data[RedshiftColumns.TIMEZONE.name]?.value as? String
+            )
+        })
+    }
+
+    override fun indexedEvent(event: UsageEventQueueEntry): IndexedEvent {
+        val columns = event.data.values
+            .asSequence()
+            .filter { it.name != RedshiftColumns.UPLOADED_AT.name }
+            .sortedBy { it.name }
+            .map { Triple(it.name, it.datatype, it.value) }
+        return IndexedEvent(
+            event.studyId,
+            event.participantId,
+            odtFromUsageEventColumn(event.data[RedshiftColumns.TIMESTAMP.name]?.value),
+            EventHashIndex.hash(event.studyId, event.participantId, columns)
+        )
+    }
+}
@@ -49,6 +49,7 @@ enum class Task {
     CODEX_INITIALIZER,
     SCHEDULED_TASK_SERVICE,
     RECALCULATE_PARTICIPANT_STATS,
+    EVENT_STORAGE_PARTITIONS,
     STUDY_COMPLIANCE_TASK,
     MATERIALIZE_PERMISSION_SYNC_TASK,
     EXTERNAL_DATABASE_PERMISSIONS_SYNC_TASK,
@@ -0,0 +1,62 @@
+package com.openlattice.chronicle.upgrades
+
+import com.geekbeast.hazelcast.PreHazelcastUpgradeService
+import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.UPLOAD_BUFFER
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOAD_DATA
+import com.openlattice.chronicle.storage.PostgresColumns.Companion.UPLOAD_DATA_BINARY
+import com.openlattice.chronicle.storage.StorageResolver
+import org.slf4j.LoggerFactory
+
+/**
+ * Adds the binary payload column to the upload buffer and relaxes the not null constraint on the json payload, so
+ * uploads can be buffered in either encoding. Rows already in the buffer keep their json payload.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class UploadBufferEncodingUpgrade(
+    private val storageResolver: StorageResolver,
+    private val upgradeService: UpgradeService,
+) : PreHazelcastUpgradeService {
+
+    init {
+        upgradeService.registerUpgrade(this)
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(UploadBufferEncodingUpgrade::class.java)
+
+        private val ADD_COLUMN_SQL = """
+            ALTER TABLE ${UPLOAD_BUFFER.name} ADD COLUMN IF NOT EXISTS ${UPLOAD_DATA_BINARY.name} ${UPLOAD_DATA_BINARY.datatype.sql()}
+        """.trimIndent()
+        private val DROP_NOT_NULL_SQL = """
+            ALTER TABLE ${UPLOAD_BUFFER.name} ALTER COLUMN ${UPLOAD_DATA.name} DROP NOT NULL
+        """.trimIndent()
+    }
+
+    override fun runUpgrade() {
+        try {
+            doUpgrade()
+        } catch (ex: Exception) {
+            upgradeService.failUpgrade(this)
+            throw ex
+        }
+    }
+
+    private fun doUpgrade() {
+        if (upgradeService.isUpgradeComplete(this)) {
+            return
+        }
+
+        storageResolver.getPlatformStorage().connection.use { connection ->
+            connection.autoCommit = false
+            connection.createStatement().use { s ->
+                s.execute(ADD_COLUMN_SQL)
+                s.execute(DROP_NOT_NULL_SQL)
+            }
+            upgradeService.completeUpgrade(connection, this)
+            connection.commit()
+            connection.autoCommit = true
+            logger.info("Added ${UPLOAD_DATA_BINARY.name} column to ${UPLOAD_BUFFER.name} table.")
+        }
+    }
+}
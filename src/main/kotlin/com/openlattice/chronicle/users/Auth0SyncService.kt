@@ -5,6 +5,7 @@ import com.hazelcast.core.HazelcastInstance
 import com.hazelcast.query.Predicates
 import com.openlattice.chronicle.authorization.*
 import com.openlattice.chronicle.authorization.principals.PrincipalMapstore
+import com.openlattice.chronicle.authorization.principals.PrincipalTreeClosure
 import com.openlattice.chronicle.authorization.principals.SecurePrincipalsManager
 import com.openlattice.chronicle.hazelcast.HazelcastMap
 import com.openlattice.chronicle.util.getPrincipal
@@ -19,6 +20,7 @@ import java.util.*
 class Auth0SyncService(
     hazelcastInstance: HazelcastInstance,
     private val spm: SecurePrincipalsManager,
+    private val principalTreeClosure: PrincipalTreeClosure,
 ) {
     companion object {
         private val logger = LoggerFactory.getLogger(Auth0SyncService::class.java)
@@ -28,7 +30,6 @@ class Auth0SyncService(
     private val principals = HazelcastMap.PRINCIPALS.getMap(hazelcastInstance)
     private val authnPrincipalCache = HazelcastMap.SECURABLE_PRINCIPALS.getMap(hazelcastInstance)
     private val authnRolesCache = HazelcastMap.RESOLVED_PRINCIPAL_TREES.getMap(hazelcastInstance)
-    private val principalTrees = HazelcastMap.PRINCIPAL_TREES.getMap(hazelcastInstance)
 
     /**
      * Returns true, if the user initialization task has ran at and
@@ -157,7 +158,9 @@ class Auth0SyncService(
             )
         ).associate { it.value.principal.id to it.value }
         authnPrincipalCache.putAll(securablePrincipals)
-        authnRolesCache.putAll(getPrincipalTreesByPrincipalId(securablePrincipals.values.toSet()))
+        authnRolesCache.putAll(
+            principalTreeClosure.resolvePrincipals(securablePrincipals.values).mapKeys { it.key.principal.id }
+        )
     }
 
     private fun syncAuthenticationCache(principalId: String) {
@@ -168,73 +171,7 @@ class Auth0SyncService(
             )
         ).firstOrNull() ?: return
         authnPrincipalCache.set(principalId, sp)
-        val securablePrincipals = getAllPrincipals(sp)
-
-        val currentPrincipals: NavigableSet<Principal> = TreeSet()
-        currentPrincipals.add(sp.principal)
-        securablePrincipals
-            .asSequence()
-            .map { it.principal }
-            .forEach { currentPrincipals.add(it) }
-
-        authnRolesCache.set(principalId, SortedPrincipalSet(currentPrincipals))
-    }
-
-    private fun getLayer(aclKeys: Set<AclKey>): AclKeySet {
-        return AclKeySet(principalTrees.getAll(aclKeys).values.flatten().toMutableSet())
-    }
-
-    private fun getPrincipalTreesByPrincipalId(sps: Set<SecurablePrincipal>): Map<String, SortedPrincipalSet> {
-        val aclKeyPrincipals = mutableMapOf<AclKey, AclKeySet>()
-
-        // Bulk load all relevant principal trees from hazelcast
-        var nextLayer = sps.mapTo(mutableSetOf()) { it.aclKey }
-        while (nextLayer.isNotEmpty()) {
-            //Don't load what's already been loaded.
-            val nextLayerMap = principalTrees.getAll(nextLayer - aclKeyPrincipals.keys)
-            nextLayer = nextLayerMap.values.flatten().toMutableSet()
-            aclKeyPrincipals.putAll(nextLayerMap)
-        }
-
-        // Map all loaded principals to SecurablePrincipals
-        val aclKeysToPrincipals = principals.getAll(aclKeyPrincipals.keys + aclKeyPrincipals.values.flatten())
-
-        // Map each SecurablePrincipal to all its aclKey children from the in-memory map, and from there a SortedPrincipalSet
-        return sps.associate { sp ->
-            val childAclKeys = mutableSetOf(sp.aclKey) //Need to include self.
-            aclKeyPrincipals.getOrDefault(sp.aclKey, AclKeySet()).forEach { childAclKeys.add(it) }
-
-            var nextAclKeyLayer: Set<AclKey> = childAclKeys
-
-            while (nextAclKeyLayer.isNotEmpty()) {
-                nextAclKeyLayer = (nextAclKeyLayer.flatMapTo(mutableSetOf()) {
-                    aclKeyPrincipals[it] ?: setOf()
-                }) - childAclKeys
-                childAclKeys += nextAclKeyLayer
-            }
-
-            val sortedPrincipals = SortedPrincipalSet(TreeSet(childAclKeys.mapNotNull { aclKey ->
-                aclKeysToPrincipals[aclKey]?.principal
-            }))
-
-            if (childAclKeys.size != sortedPrincipals.size) {
-                logger.warn("Unable to retrieve principals for acl keys: ${childAclKeys - aclKeysToPrincipals.keys}")
-            }
-
-            sp.principal.id to sortedPrincipals
-        }
-    }
-
-    private fun getAllPrincipals(sp: SecurablePrincipal): Collection<SecurablePrincipal> {
-        val roles = getLayer(setOf(sp.aclKey))
-        var nextLayer: Set<AclKey> = roles
-
-        while (nextLayer.isNotEmpty()) {
-            nextLayer = getLayer(nextLayer) - roles
-            roles.addAll(nextLayer)
-        }
-
-        return principals.getAll(roles).values
+        authnRolesCache.set(principalId, principalTreeClosure.resolvePrincipals(listOf(sp)).getValue(sp))
     }
 
     private fun tryCreateNewUserPrincipal(user: User, principal: Principal): Boolean {
@@ -0,0 +1,88 @@
+package com.openlattice.chronicle.auditing
+
+import com.codahale.metrics.MetricRegistry
+import com.openlattice.chronicle.authorization.AclKey
+import com.openlattice.chronicle.authorization.Principal
+import com.openlattice.chronicle.authorization.PrincipalType
+import com.openlattice.chronicle.configuration.ChronicleAuditConfiguration
+import org.junit.Assert
+import org.junit.Test
+import java.util.*
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class AuditEventPipelineTests {
+    private val principal = Principal(PrincipalType.USER, "user")
+
+    private fun event() = AuditableEvent(
+        AclKey(UUID.randomUUID()),
+        UUID.randomUUID(),
+        principal,
+        eventType = AuditEventType.GET_STUDY
+    )
+
+    @Test
+    fun testRingBufferIsBoundedAndFifo() {
+        val buffer = MpscRingBuffer<Int>(3)
+        Assert.assertEquals(4, buffer.capacity)
+        (0 until 4).forEach { Assert.assertTrue(buffer.offer(it)) }
+        Assert.assertFalse(buffer.offer(4))
+        Assert.assertEquals(0, buffer.poll())
+        Assert.assertTrue(buffer.offer(4))
+        Assert.assertEquals(listOf(1, 2, 3, 4), generateSequence { buffer.poll() }.toList())
+        Assert.assertEquals(0, buffer.size)
+    }
+
+    @Test
+    fun testWaitForFlushReturnsAfterEventsAreWritten() {
+        val written = CopyOnWriteArrayList<AuditableEvent>()
+        val pipeline = AuditEventPipeline(ChronicleAuditConfiguration(lingerMillis = 60_000), MetricRegistry()) {
+            written.addAll(it)
+            it.size
+        }
+        val events = listOf(event(), event())
+
+        Assert.assertEquals(2, pipeline.record(events, AuditDurability.WAIT_FOR_FLUSH))
+        Assert.assertEquals(events, written)
+        pipeline.close()
+    }
+
+    @Test
+    fun testFireAndForgetIsGroupCommitted() {
+        val batches = CopyOnWriteArrayList<Int>()
+        val flushed = CountDownLatch(1)
+        val pipeline = AuditEventPipeline(ChronicleAuditConfiguration(maxBatch = 8), MetricRegistry()) {
+            batches.add(it.size)
+            flushed.countDown()
+            it.size
+        }
+
+        repeat(8) { Assert.assertEquals(1, pipeline.record(listOf(event()), AuditDurability.FIRE_AND_FORGET)) }
+        Assert.assertTrue(flushed.await(10, TimeUnit.SECONDS))
+        pipeline.close()
+        Assert.assertEquals(8, batches.sum())
+    }
+
+    @Test
+    fun testFullQueueDropsFireAndForgetEvents() {
+        val release = CountDownLatch(1)
+        val metrics = MetricRegistry()
+        val configuration = ChronicleAuditConfiguration(queueCapacity = 1, maxBatch = 1)
+        val pipeline = AuditEventPipeline(configuration, metrics) {
+            release.await()
+            it.size
+        }
+
+        //The first event blocks the writer, the second fills the queue.
+        val recorded = (0 until 3).sumOf { pipeline.record(listOf(event()), AuditDurability.FIRE_AND_FORGET) }
+        release.countDown()
+        pipeline.close()
+        Assert.assertTrue(recorded < 3)
+        val dropped = metrics.meter(MetricRegistry.name(AuditEventPipeline::class.java, "dropped"))
+        Assert.assertEquals(3L - recorded, dropped.count)
+    }
+}
@@ -0,0 +1,45 @@
+package com.openlattice.chronicle.authorization
+
+import com.openlattice.chronicle.authorization.aggregators.AuthorizationSetsAggregator
+import org.junit.Assert
+import org.junit.Test
+import java.time.OffsetDateTime
+import java.util.*
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class AuthorizationSetsAggregatorTests {
+    private val study = AclKey(UUID.randomUUID())
+    private val otherStudy = AclKey(UUID.randomUUID())
+    private val unshared = AclKey(UUID.randomUUID())
+    private val user = Principal(PrincipalType.USER, "user")
+    private val role = Principal(PrincipalType.ROLE, "role")
+    private val sets = listOf(setOf(study), setOf(study, otherStudy), setOf(study, unshared), setOf())
+
+    private fun ace(aclKey: AclKey, principal: Principal, vararg permissions: Permission) =
+        AbstractMap.SimpleEntry<AceKey, AceValue?>(
+            AceKey(aclKey, principal),
+            AceValue(EnumSet.copyOf(permissions.toList()), SecurableObjectType.Study, OffsetDateTime.MAX)
+        )
+
+    @Test
+    fun testSetsAreEvaluatedFromCombinedPartialResults() {
+        //Each aggregator stands in for the aces of one partition.
+        val first = AuthorizationSetsAggregator(sets)
+        first.accumulate(ace(study, user, Permission.READ))
+        first.accumulate(ace(otherStudy, role, Permission.READ, Permission.WRITE))
+        val second = AuthorizationSetsAggregator(sets)
+        second.accumulate(ace(study, role, Permission.WRITE))
+
+        first.combine(second)
+        val permissions = first.aggregate()
+
+        val readWrite = EnumSet.of(Permission.READ, Permission.WRITE)
+        val none = EnumSet.noneOf(Permission::class.java)
+        Assert.assertEquals(readWrite, permissions.getValue(setOf(study)))
+        Assert.assertEquals(readWrite, permissions.getValue(setOf(study, otherStudy)))
+        Assert.assertEquals(none, permissions.getValue(setOf(study, unshared)))
+        Assert.assertEquals(none, permissions.getValue(setOf()))
+    }
+}
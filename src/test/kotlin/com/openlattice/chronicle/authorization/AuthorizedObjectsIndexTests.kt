@@ -0,0 +1,279 @@
+package com.openlattice.chronicle.authorization
+
+import com.hazelcast.config.IndexConfig
+import com.hazelcast.config.IndexType
+import com.hazelcast.config.InMemoryFormat
+import com.hazelcast.config.MapConfig
+import com.hazelcast.core.EntryEvent
+import com.hazelcast.core.EntryEventType
+import com.hazelcast.core.HazelcastInstance
+import com.hazelcast.map.IMap
+import com.hazelcast.map.listener.EntryAddedListener
+import com.hazelcast.map.listener.EntryEvictedListener
+import com.hazelcast.map.listener.EntryExpiredListener
+import com.hazelcast.map.listener.EntryRemovedListener
+import com.hazelcast.map.listener.MapListener
+import com.hazelcast.query.Predicate
+import com.hazelcast.query.Predicates
+import com.openlattice.chronicle.hazelcast.TestHazelcastInstances
+import com.openlattice.chronicle.mapstores.authorization.PermissionMapstore.Companion.PERMISSIONS_INDEX
+import com.openlattice.chronicle.mapstores.authorization.PermissionMapstore.Companion.PRINCIPAL_INDEX
+import com.openlattice.chronicle.mapstores.authorization.PermissionMapstore.Companion.SECURABLE_OBJECT_TYPE_INDEX
+import com.openlattice.chronicle.serializers.AceKeyStreamSerializer
+import com.openlattice.chronicle.serializers.AceValueStreamSerializer
+import com.openlattice.chronicle.serializers.AclKeyStreamSerializer
+import com.openlattice.chronicle.serializers.PrincipalStreamSerializer
+import org.junit.AfterClass
+import org.junit.Assert
+import org.junit.BeforeClass
+import org.junit.Test
+import org.mockito.Mockito
+import java.time.OffsetDateTime
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class AuthorizedObjectsIndexTests {
+    companion object {
+        private const val PERMISSIONS_MAP_PREFIX = "authorized_objects_index_tests_"
+        private val EVENT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10)
+
+        private lateinit var hazelcast: HazelcastInstance
+
+        @JvmStatic
+        @BeforeClass
+        fun startHazelcast() {
+            hazelcast = TestHazelcastInstances.newInstance(
+                "authorized_objects_index_tests",
+                listOf(
+                    AceKeyStreamSerializer(),
+                    AceValueStreamSerializer(),
+                    AclKeyStreamSerializer(),
+                    PrincipalStreamSerializer()
+                ),
+                listOf(
+                    MapConfig("$PERMISSIONS_MAP_PREFIX*")
+                        .setInMemoryFormat(InMemoryFormat.OBJECT)
+                        .addIndexConfig(IndexConfig(IndexType.HASH, PRINCIPAL_INDEX))
+                        .addIndexConfig(IndexConfig(IndexType.HASH, SECURABLE_OBJECT_TYPE_INDEX))
+                        .addIndexConfig(IndexConfig(IndexType.HASH, PERMISSIONS_INDEX))
+                )
+            )
+        }
+
+        @JvmStatic
+        @AfterClass
+        fun stopHazelcast() {
+            hazelcast.shutdown()
+        }
+    }
+
+    private val user = Principal(PrincipalType.USER, "user")
+    private val otherUser = Principal(PrincipalType.USER, "other-user")
+    private val role = Principal(PrincipalType.ROLE, "role")
+    private val studies = (0 until 6).map { AclKey(UUID.randomUUID()) }
+    private val organization = AclKey(UUID.randomUUID())
+
+    private val read = EnumSet.of(Permission.READ)
+    private val write = EnumSet.of(Permission.WRITE)
+    private val readWrite = EnumSet.of(Permission.READ, Permission.WRITE)
+
+    //Each test gets its own map, since clearing a map does not raise entry events.
+    private val aces: IMap<AceKey, AceValue> = hazelcast.getMap("$PERMISSIONS_MAP_PREFIX${UUID.randomUUID()}")
+
+    private fun aceValue(
+        permissions: EnumSet<Permission>,
+        objectType: SecurableObjectType = SecurableObjectType.Study
+    ): AceValue {
+        return AceValue(permissions, objectType, OffsetDateTime.MAX)
+    }
+
+    private fun predicateListing(
+        principals: Set<Principal>,
+        objectTypes: Set<SecurableObjectType>,
+        permissions: EnumSet<Permission>
+    ): Set<AclKey> {
+        val predicates = listOf<Predicate<AceKey, AceValue>>(
+            Predicates.`in`(PRINCIPAL_INDEX, *principals.toTypedArray()),
+            Predicates.`in`(SECURABLE_OBJECT_TYPE_INDEX, *objectTypes.toTypedArray())
+        ) + permissions.map { Predicates.equal(PERMISSIONS_INDEX, it) }
+        return aces.keySet(Predicates.and(*predicates.toTypedArray())).mapTo(mutableSetOf()) { it.aclKey }
+    }
+
+    /**
+     * Waits for entry events to reach the index and checks the listing against [expected] and the predicate query.
+     */
+    private fun assertListing(
+        index: AuthorizedObjectsIndex,
+        principals: Set<Principal>,
+        permissions: EnumSet<Permission>,
+        expected: Set<AclKey>
+    ) {
+        val objectTypes = setOf(SecurableObjectType.Study)
+        val deadline = System.nanoTime() + EVENT_TIMEOUT_NANOS
+        var listed = index.listAuthorizedObjects(principals, objectTypes, permissions)?.toSet()
+        while (listed != expected && System.nanoTime() < deadline) {
+            Thread.sleep(10)
+            listed = index.listAuthorizedObjects(principals, objectTypes, permissions)?.toSet()
+        }
+        Assert.assertEquals(expected, listed)
+        Assert.assertEquals(expected, predicateListing(principals, objectTypes, permissions))
+    }
+
+    @Test
+    fun testAceAddUpdateAndRemove() {
+        val index = AuthorizedObjectsIndex(aces)
+        val study = studies.first()
+        assertListing(index, setOf(user), read, setOf())
+
+        aces.set(AceKey(study, user), aceValue(readWrite))
+        assertListing(index, setOf(user), read, setOf(study))
+        assertListing(index, setOf(user), readWrite, setOf(study))
+
+        //Removing a permission from the ace stops it from matching listings that require it.
+        aces.set(AceKey(study, user), aceValue(write))
+        assertListing(index, setOf(user), read, setOf())
+        assertListing(index, setOf(user), readWrite, setOf())
+        assertListing(index, setOf(user), write, setOf(study))
+
+        aces.delete(AceKey(study, user))
+        assertListing(index, setOf(user), write, setOf())
+    }
+
+    @Test
+    fun testChangesOfOnePrincipalDoNotAffectOthers() {
+        val index = AuthorizedObjectsIndex(aces)
+        val study = studies.first()
+        aces.set(AceKey(study, user), aceValue(read))
+        aces.set(AceKey(study, otherUser), aceValue(read))
+        assertListing(index, setOf(otherUser), read, setOf(study))
+
+        aces.delete(AceKey(study, user))
+        assertListing(index, setOf(user), read, setOf())
+        assertListing(index, setOf(otherUser), read, setOf(study))
+    }
+
+    @Test
+    fun testUnionsOverPrincipalsAndTypesMatchPredicateQueries() {
+        aces.putAll(
+            mapOf(
+                AceKey(studies[0], user) to aceValue(readWrite),
+                AceKey(studies[1], user) to aceValue(read),
+                AceKey(studies[2], role) to aceValue(readWrite),
+                AceKey(studies[3], otherUser) to aceValue(write),
+                //Neither principal has both permissions on its own, so listings requiring both must not include it.
+                AceKey(studies[4], user) to aceValue(read),
+                AceKey(studies[4], role) to aceValue(write),
+                AceKey(studies[5], role) to aceValue(read),
+                AceKey(organization, user) to aceValue(readWrite, SecurableObjectType.Organization),
+                AceKey(organization, role) to aceValue(read, SecurableObjectType.Organization)
+            )
+        )
+        //Built from a snapshot of the populated map.
+        val index = AuthorizedObjectsIndex(aces)
+
+        val principalSets = listOf(setOf(user), setOf(user, role), setOf(user, otherUser, role), setOf(otherUser))
+        val objectTypeSets = listOf(
+            setOf(SecurableObjectType.Study),
+            setOf(SecurableObjectType.Organization),
+            setOf(SecurableObjectType.Study, SecurableObjectType.Organization)
+        )
+        principalSets.forEach { principals ->
+            objectTypeSets.forEach { objectTypes ->
+                listOf(read, write, readWrite).forEach { permissions ->
+                    val listed = index.listAuthorizedObjects(principals, objectTypes, permissions)
+                    Assert.assertNotNull(listed)
+                    Assert.assertEquals(listed!!.size, listed.toSet().size)
+                    Assert.assertEquals(predicateListing(principals, objectTypes, permissions), listed.toSet())
+                }
+            }
+        }
+
+        Assert.assertEquals(
+            setOf(studies[0], studies[2]),
+            index.listAuthorizedObjects(setOf(user, role), setOf(SecurableObjectType.Study), readWrite)!!.toSet()
+        )
+        Assert.assertEquals(
+            setOf(studies[0], studies[1], studies[2], studies[4], studies[5], organization),
+            index.listAuthorizedObjects(
+                setOf(user, role),
+                setOf(SecurableObjectType.Study, SecurableObjectType.Organization),
+                read
+            )!!.toSet()
+        )
+    }
+
+    @Test
+    fun testBuildReplaysChangesSeenWhileBuilding() {
+        @Suppress("UNCHECKED_CAST")
+        val permissions = Mockito.mock(IMap::class.java) as IMap<AceKey, AceValue>
+        val snapshot = mapOf(
+            AceKey(studies[0], user) to aceValue(read),
+            AceKey(studies[1], user) to aceValue(read)
+        )
+        lateinit var listener: MapListener
+        lateinit var index: AuthorizedObjectsIndex
+        var listedWhileBuilding: List<AclKey>? = listOf()
+
+        Mockito.doAnswer { invocation ->
+            listener = invocation.arguments[0] as MapListener
+            UUID.randomUUID()
+        }.`when`(permissions).addEntryListener(Mockito.any(MapListener::class.java), Mockito.anyBoolean())
+        Mockito.doAnswer {
+            //Changes made while the snapshot is read are only visible as events.
+            listedWhileBuilding = index.listAuthorizedObjects(setOf(user), setOf(SecurableObjectType.Study), read)
+            removed(listener, AceKey(studies[0], user))
+            added(listener, AceKey(studies[2], user), aceValue(read))
+            snapshot.entries
+        }.`when`(permissions).entrySet()
+
+        index = AuthorizedObjectsIndex(permissions)
+        //Before the build is started changes are left to the snapshot, which does not include this one.
+        added(listener, AceKey(studies[3], user), aceValue(read))
+
+        val listed = index.listAuthorizedObjects(setOf(user), setOf(SecurableObjectType.Study), read)
+        Assert.assertNull(listedWhileBuilding)
+        Assert.assertEquals(setOf(studies[1], studies[2]), listed!!.toSet())
+
+        //Once built, changes are applied as they arrive.
+        removed(listener, AceKey(studies[1], user))
+        Assert.assertEquals(
+            listOf(studies[2]),
+            index.listAuthorizedObjects(setOf(user), setOf(SecurableObjectType.Study), read)
+        )
+    }
+
+    @Test
+    fun testEvictionsDoNotRevokeAces() {
+        @Suppress("UNCHECKED_CAST")
+        val permissions = Mockito.mock(IMap::class.java) as IMap<AceKey, AceValue>
+        lateinit var listener: MapListener
+        Mockito.doAnswer { invocation ->
+            listener = invocation.arguments[0] as MapListener
+            UUID.randomUUID()
+        }.`when`(permissions).addEntryListener(Mockito.any(MapListener::class.java), Mockito.anyBoolean())
+
+        AuthorizedObjectsIndex(permissions)
+
+        //An evicted ace is still in the map store, so only expirations and removals are revokes.
+        Assert.assertFalse(listener is EntryEvictedListener<*, *>)
+        Assert.assertTrue(listener is EntryExpiredListener<*, *>)
+        Assert.assertTrue(listener is EntryRemovedListener<*, *>)
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun added(listener: MapListener, aceKey: AceKey, aceValue: AceValue) {
+        (listener as EntryAddedListener<AceKey, AceValue>).entryAdded(
+            EntryEvent(aces.name, null, EntryEventType.ADDED.type, aceKey, null, aceValue)
+        )
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun removed(listener: MapListener, aceKey: AceKey) {
+        (listener as EntryRemovedListener<AceKey, AceValue>).entryRemoved(
+            EntryEvent(aces.name, null, EntryEventType.REMOVED.type, aceKey, null, null)
+        )
+    }
+}
@@ -0,0 +1,66 @@
+package com.openlattice.chronicle.authorization
+
+import com.codahale.metrics.MetricRegistry
+import com.google.common.eventbus.EventBus
+import com.openlattice.chronicle.configuration.ChronicleAuthorizationConfiguration
+import org.junit.Assert
+import org.junit.Test
+import java.time.OffsetDateTime
+import java.util.*
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class EffectivePermissionCacheTests {
+    private val aclKey = AclKey(UUID.randomUUID())
+    private val user = Principal(PrincipalType.USER, "user")
+    private val role = Principal(PrincipalType.ROLE, "role")
+    private val eventBus = EventBus()
+    private val cache = EffectivePermissionCache(eventBus, ChronicleAuthorizationConfiguration(), MetricRegistry())
+    private val aces = mutableMapOf(
+        AceKey(aclKey, user) to AceValue(EnumSet.of(Permission.READ), SecurableObjectType.Study, OffsetDateTime.MAX),
+        AceKey(aclKey, role) to AceValue(EnumSet.of(Permission.WRITE), SecurableObjectType.Study, OffsetDateTime.MAX)
+    )
+    private var loads = 0
+
+    private fun load(aceKeys: Set<AceKey>): Map<AceKey, AceValue> {
+        loads++
+        return aces.filterKeys { it in aceKeys }
+    }
+
+    @Test
+    fun testCachesUnionOfPrincipalPermissions() {
+        val expected = EnumSet.of(Permission.READ, Permission.WRITE)
+        Assert.assertEquals(expected, cache.getPermissions(setOf(aclKey), setOf(user, role), ::load).getValue(aclKey))
+        Assert.assertEquals(expected, cache.getPermissions(setOf(aclKey), setOf(role, user), ::load).getValue(aclKey))
+        Assert.assertEquals(1, loads)
+    }
+
+    @Test
+    fun testPermissionChangeInvalidatesObject() {
+        cache.getPermissions(setOf(aclKey), setOf(user), ::load)
+        aces[AceKey(aclKey, user)] = AceValue(
+            EnumSet.of(Permission.OWNER),
+            SecurableObjectType.Study,
+            OffsetDateTime.MAX
+        )
+        eventBus.post(PermissionChangedEvent(AceKey(aclKey, user)))
+
+        val permissions = cache.getPermissions(setOf(aclKey), setOf(user), ::load).getValue(aclKey)
+        Assert.assertEquals(EnumSet.of(Permission.OWNER), permissions)
+        Assert.assertEquals(2, loads)
+    }
+
+    @Test
+    fun testExpiredAcesAreNotCached() {
+        aces[AceKey(aclKey, user)] = AceValue(
+            EnumSet.of(Permission.READ),
+            SecurableObjectType.Study,
+            OffsetDateTime.now().minusSeconds(1)
+        )
+
+        cache.getPermissions(setOf(aclKey), setOf(user), ::load)
+        cache.getPermissions(setOf(aclKey), setOf(user), ::load)
+        Assert.assertEquals(2, loads)
+    }
+}
@@ -0,0 +1,244 @@
+package com.openlattice.chronicle.authorization
+
+import com.hazelcast.core.HazelcastInstance
+import com.openlattice.chronicle.authorization.principals.PrincipalTreeClosure
+import com.openlattice.chronicle.authorization.principals.processors.AddPrincipalToPrincipalEntryProcessor
+import com.openlattice.chronicle.authorization.principals.processors.NestedPrincipalRemover
+import com.openlattice.chronicle.hazelcast.HazelcastMap
+import com.openlattice.chronicle.hazelcast.TestHazelcastInstances
+import com.openlattice.chronicle.serializers.AclKeySetStreamSerializer
+import com.openlattice.chronicle.serializers.AclKeyStreamSerializer
+import com.openlattice.chronicle.serializers.AddPrincipalToPrincipalEntryProcessorStreamSerializer
+import com.openlattice.chronicle.serializers.PrincipalStreamSerializer
+import com.openlattice.chronicle.serializers.SecurablePrincipalStreamSerializer
+import com.openlattice.chronicle.serializers.SortedPrincipalSetStreamSerializer
+import org.junit.AfterClass
+import org.junit.Assert
+import org.junit.BeforeClass
+import org.junit.Test
+import java.util.*
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class PrincipalTreeClosureTests {
+    companion object {
+        private lateinit var hazelcast: HazelcastInstance
+
+        @JvmStatic
+        @BeforeClass
+        fun startHazelcast() {
+            hazelcast = TestHazelcastInstances.newInstance(
+                "principal_tree_closure_tests",
+                listOf(
+                    AclKeyStreamSerializer(),
+                    AclKeySetStreamSerializer(),
+                    PrincipalStreamSerializer(),
+                    SecurablePrincipalStreamSerializer(),
+                    SortedPrincipalSetStreamSerializer(),
+                    AddPrincipalToPrincipalEntryProcessorStreamSerializer()
+                )
+            )
+        }
+
+        @JvmStatic
+        @AfterClass
+        fun stopHazelcast() {
+            hazelcast.shutdown()
+        }
+    }
+
+    private val user = AclKey(UUID.randomUUID())
+    private val otherUser = AclKey(UUID.randomUUID())
+    private val role = AclKey(UUID.randomUUID(), UUID.randomUUID())
+    private val nestedRole = AclKey(UUID.randomUUID(), UUID.randomUUID())
+    private val organization = AclKey(UUID.randomUUID())
+
+    //Both roles have the organization and the nested role also has the role, so the organization is reached twice.
+    private val trees = mapOf(
+        user to setOf(nestedRole),
+        otherUser to setOf(role),
+        nestedRole to setOf(role, organization),
+        role to setOf(organization),
+    )
+    private val parents = trees.entries
+        .flatMap { (parent, children) -> children.map { it to parent } }
+        .groupBy({ it.first }, { it.second })
+        .mapValues { it.value.toSet() }
+    private val loads = mutableListOf<Set<AclKey>>()
+
+    //The tests against hazelcast update the principal trees the same way the principal service does before notifying
+    //the closure. Acl keys and principal ids are random, so tests do not see each other's entries.
+    private val closure = PrincipalTreeClosure(hazelcast)
+    private val principals = HazelcastMap.PRINCIPALS.getMap(hazelcast)
+    private val principalTrees = HazelcastMap.PRINCIPAL_TREES.getMap(hazelcast)
+    private val principalTreeParents = HazelcastMap.PRINCIPAL_TREE_PARENTS.getMap(hazelcast)
+    private val resolvedPrincipalTrees = HazelcastMap.RESOLVED_PRINCIPAL_TREES.getMap(hazelcast)
+
+    private val resolvedUser = securablePrincipal(PrincipalType.USER, AclKey(UUID.randomUUID()))
+    private val unresolvedUser = securablePrincipal(PrincipalType.USER, AclKey(UUID.randomUUID()))
+    private val studyRole = securablePrincipal(PrincipalType.ROLE, AclKey(UUID.randomUUID(), UUID.randomUUID()))
+    private val otherStudyRole = securablePrincipal(PrincipalType.ROLE, AclKey(UUID.randomUUID(), UUID.randomUUID()))
+    private val sharedRole = securablePrincipal(PrincipalType.ROLE, AclKey(UUID.randomUUID(), UUID.randomUUID()))
+    private val innerRole = securablePrincipal(PrincipalType.ROLE, AclKey(UUID.randomUUID(), UUID.randomUUID()))
+    private val securablePrincipals = listOf(
+        resolvedUser,
+        unresolvedUser,
+        studyRole,
+        otherStudyRole,
+        sharedRole,
+        innerRole
+    )
+
+    private fun children(aclKeys: Set<AclKey>): Map<AclKey, Set<AclKey>> {
+        loads.add(aclKeys)
+        return trees.filterKeys { it in aclKeys }
+    }
+
+    private fun ancestors(aclKey: AclKey): Set<AclKey> {
+        return PrincipalTreeClosure.reachable(setOf(aclKey)) { aclKeys -> parents.filterKeys { it in aclKeys } }
+    }
+
+    @Test
+    fun testAncestorsFollowReverseEdges() {
+        Assert.assertEquals(setOf(role, nestedRole, user, otherUser), ancestors(organization))
+        Assert.assertEquals(setOf(user), ancestors(nestedRole))
+    }
+
+    @Test
+    fun testClosuresIncludeSelfAndLoadEachAclKeyOnce() {
+        val closures = PrincipalTreeClosure.closures(setOf(user, otherUser), ::children)
+        Assert.assertEquals(setOf(user, nestedRole, role, organization), closures.getValue(user))
+        Assert.assertEquals(setOf(otherUser, role, organization), closures.getValue(otherUser))
+        Assert.assertEquals(loads.flatten().size, loads.flatten().toSet().size)
+    }
+
+    private fun securablePrincipal(type: PrincipalType, aclKey: AclKey): SecurablePrincipal {
+        val principal = Principal(type, "${type.name.lowercase()}-${UUID.randomUUID()}")
+        return SecurablePrincipal(aclKey, principal, principal.id, Optional.of(""))
+    }
+
+    /**
+     * Registers the principals and resolves [resolvedUser], as if it had been synchronized before the changes.
+     */
+    private fun initializePrincipals() {
+        principals.putAll(securablePrincipals.associateBy { it.aclKey })
+        resolvedPrincipalTrees[resolvedUser.principal.id] = SortedPrincipalSet(TreeSet(setOf(resolvedUser.principal)))
+    }
+
+    private fun addPrincipal(source: SecurablePrincipal, target: SecurablePrincipal) {
+        val updated = principalTrees
+            .executeOnKeys(setOf(target.aclKey), AddPrincipalToPrincipalEntryProcessor(source.aclKey))
+            .values
+            .filterNotNull()
+            .toSet()
+        closure.principalAdded(source.aclKey, updated)
+    }
+
+    private fun removePrincipal(source: SecurablePrincipal, target: SecurablePrincipal) {
+        principalTrees.executeOnKeys(setOf(target.aclKey), NestedPrincipalRemover(setOf(source.aclKey)))
+        closure.principalsRemoved(setOf(source.aclKey), setOf(target.aclKey))
+    }
+
+    private fun deletePrincipal(sp: SecurablePrincipal) {
+        val parentAclKeys = closure.getParents(setOf(sp.aclKey))[sp.aclKey] ?: setOf()
+        principalTrees.executeOnKeys(parentAclKeys, NestedPrincipalRemover(setOf(sp.aclKey)))
+        val childAclKeys = principalTrees.remove(sp.aclKey) ?: setOf()
+        principals.delete(sp.aclKey)
+        closure.principalDeleted(sp.aclKey, parentAclKeys, childAclKeys)
+    }
+
+    /**
+     * Checks that the reverse edges are exactly the inverted principal trees and that the resolved principals of
+     * [resolvedUser] match both [expected] and a resolution from scratch.
+     */
+    private fun assertConsistent(vararg expected: SecurablePrincipal) {
+        val aclKeys = securablePrincipals.mapTo(mutableSetOf()) { it.aclKey }
+        val invertedTrees = principalTrees.getAll(aclKeys).entries
+            .flatMap { (parent, childAclKeys) -> childAclKeys.map { it to parent } }
+            .groupBy({ it.first }, { it.second })
+            .mapValues { it.value.toSet() }
+        val reverseEdges = principalTreeParents.getAll(aclKeys)
+            .filterValues { it.isNotEmpty() }
+            .mapValues { it.value.toSet() }
+        Assert.assertEquals(invertedTrees, reverseEdges)
+
+        val resolved = resolvedPrincipalTrees[resolvedUser.principal.id]
+        Assert.assertEquals(expected.mapTo(mutableSetOf()) { it.principal }, resolved?.toSet())
+        Assert.assertEquals(
+            closure.resolvePrincipals(setOf(resolvedUser)).getValue(resolvedUser).toSet(),
+            resolved?.toSet()
+        )
+    }
+
+    @Test
+    fun testPrincipalAddedUpdatesReverseEdgesAndResolvedUsers() {
+        initializePrincipals()
+
+        addPrincipal(sharedRole, studyRole)
+        assertConsistent(resolvedUser)
+
+        addPrincipal(studyRole, resolvedUser)
+        assertConsistent(resolvedUser, studyRole, sharedRole)
+
+        //Reaches the user through two roles, so the shared role is only added once.
+        addPrincipal(otherStudyRole, resolvedUser)
+        addPrincipal(sharedRole, otherStudyRole)
+        assertConsistent(resolvedUser, studyRole, otherStudyRole, sharedRole)
+
+        //Added below existing roles, so the user is only reached through ancestors.
+        addPrincipal(innerRole, sharedRole)
+        assertConsistent(resolvedUser, studyRole, otherStudyRole, sharedRole, innerRole)
+        Assert.assertEquals(setOf(studyRole.aclKey, otherStudyRole.aclKey), principalTreeParents[sharedRole.aclKey])
+    }
+
+    @Test
+    fun testUsersWithoutResolvedPrincipalsAreNotResolved() {
+        initializePrincipals()
+
+        addPrincipal(studyRole, unresolvedUser)
+        addPrincipal(sharedRole, studyRole)
+        removePrincipal(sharedRole, studyRole)
+
+        Assert.assertNull(resolvedPrincipalTrees[unresolvedUser.principal.id])
+        Assert.assertEquals(setOf(unresolvedUser.aclKey), principalTreeParents[studyRole.aclKey])
+    }
+
+    @Test
+    fun testRemovingOnePathKeepsRoleReachableThroughAnother() {
+        initializePrincipals()
+        addPrincipal(studyRole, resolvedUser)
+        addPrincipal(otherStudyRole, resolvedUser)
+        addPrincipal(sharedRole, studyRole)
+        addPrincipal(sharedRole, otherStudyRole)
+        addPrincipal(innerRole, sharedRole)
+        assertConsistent(resolvedUser, studyRole, otherStudyRole, sharedRole, innerRole)
+
+        removePrincipal(sharedRole, studyRole)
+        assertConsistent(resolvedUser, studyRole, otherStudyRole, sharedRole, innerRole)
+        Assert.assertEquals(setOf(otherStudyRole.aclKey), principalTreeParents[sharedRole.aclKey])
+
+        removePrincipal(sharedRole, otherStudyRole)
+        assertConsistent(resolvedUser, studyRole, otherStudyRole)
+        Assert.assertEquals(setOf<AclKey>(), closure.getAncestors(setOf(sharedRole.aclKey)))
+    }
+
+    @Test
+    fun testPrincipalDeletedRemovesReverseEdges() {
+        initializePrincipals()
+        addPrincipal(studyRole, resolvedUser)
+        addPrincipal(otherStudyRole, resolvedUser)
+        addPrincipal(sharedRole, studyRole)
+        addPrincipal(sharedRole, otherStudyRole)
+        addPrincipal(innerRole, sharedRole)
+
+        deletePrincipal(sharedRole)
+        assertConsistent(resolvedUser, studyRole, otherStudyRole)
+        Assert.assertNull(principalTreeParents[sharedRole.aclKey])
+        Assert.assertEquals(setOf<AclKey>(), closure.getAncestors(setOf(innerRole.aclKey)))
+
+        deletePrincipal(studyRole)
+        assertConsistent(resolvedUser, otherStudyRole)
+        Assert.assertEquals(setOf(resolvedUser.aclKey), principalTreeParents[otherStudyRole.aclKey])
+    }
+}
@@ -0,0 +1,250 @@
+package com.openlattice.chronicle.converters
+
+import com.geekbeast.postgres.PostgresDatatype
+import com.openlattice.chronicle.storage.RedshiftColumns
+import org.apache.arrow.memory.RootAllocator
+import org.apache.arrow.vector.FieldVector
+import org.apache.arrow.vector.IntVector
+import org.apache.arrow.vector.ipc.ArrowStreamReader
+import org.apache.arrow.vector.types.FloatingPointPrecision
+import org.apache.arrow.vector.types.TimeUnit
+import org.apache.arrow.vector.types.pojo.ArrowType
+import org.apache.arrow.vector.util.Text
+import org.apache.parquet.example.data.Group
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter
+import org.apache.parquet.hadoop.ParquetFileReader
+import org.apache.parquet.io.ColumnIOFactory
+import org.apache.parquet.io.DelegatingSeekableInputStream
+import org.apache.parquet.io.InputFile
+import org.apache.parquet.io.SeekableInputStream
+import org.apache.parquet.schema.LogicalTypeAnnotation
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName
+import org.junit.Assert
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class ColumnarDownloadsTests {
+    private val roundTripColumns = listOf(
+        RedshiftColumns.STUDY_ID.name,
+        RedshiftColumns.TIMESTAMP.name,
+        RedshiftColumns.DURATION.name,
+        RedshiftColumns.APP_USAGE_TIME.name,
+        RedshiftColumns.DAY.name,
+        RedshiftColumns.NEW_APP.name,
+        "not_a_column"
+    )
+
+    private val firstTimestamp = OffsetDateTime.of(2022, 3, 1, 8, 30, 0, 123_456_000, ZoneOffset.ofHours(-5))
+
+    //Missing keys and empty timestamps are both read back as null.
+    private val roundTripRows = listOf<Map<String, Any>>(
+        mapOf(
+            RedshiftColumns.STUDY_ID.name to "study-1",
+            RedshiftColumns.TIMESTAMP.name to firstTimestamp,
+            RedshiftColumns.DURATION.name to 42L,
+            RedshiftColumns.APP_USAGE_TIME.name to 1.5,
+            RedshiftColumns.DAY.name to 2,
+            RedshiftColumns.NEW_APP.name to true,
+            "not_a_column" to "value"
+        ),
+        mapOf(
+            RedshiftColumns.STUDY_ID.name to "study-2",
+            RedshiftColumns.TIMESTAMP.name to "",
+            RedshiftColumns.APP_USAGE_TIME.name to "0.25",
+            RedshiftColumns.DAY.name to "7",
+            RedshiftColumns.NEW_APP.name to false
+        ),
+        mapOf(
+            RedshiftColumns.STUDY_ID.name to "study-1",
+            RedshiftColumns.TIMESTAMP.name to "2022-03-02T00:00:00.000001Z"
+        )
+    )
+
+    private val expectedRoundTripRows = listOf(
+        listOf<Any?>(
+            "study-1",
+            firstTimestamp.toEpochSecond() * 1_000_000 + 123_456,
+            42L,
+            1.5,
+            2,
+            true,
+            "value"
+        ),
+        listOf<Any?>("study-2", null, null, 0.25, 7, false, null),
+        listOf<Any?>(
+            "study-1",
+            OffsetDateTime.parse("2022-03-02T00:00:00.000001Z").toEpochSecond() * 1_000_000 + 1,
+            null,
+            null,
+            null,
+            null,
+            null
+        )
+    )
+
+    @Test
+    fun testColumnTypes() {
+        val columns = ColumnarDownloads.columns(
+            listOf(
+                RedshiftColumns.STUDY_ID.name,
+                RedshiftColumns.TIMESTAMP.name,
+                RedshiftColumns.DURATION.name,
+                RedshiftColumns.APP_USAGE_TIME.name,
+                "not_a_column"
+            )
+        )
+
+        Assert.assertEquals(
+            listOf(
+                PostgresDatatype.TEXT,
+                PostgresDatatype.TIMESTAMPTZ,
+                PostgresDatatype.BIGINT,
+                PostgresDatatype.DOUBLE,
+                PostgresDatatype.TEXT
+            ),
+            columns.map { it.datatype }
+        )
+        Assert.assertEquals(listOf(true, false, false, false, false), columns.map { it.dictionary })
+    }
+
+    @Test
+    fun testTimestampMicros() {
+        val timestamp = OffsetDateTime.of(2022, 3, 1, 8, 30, 0, 123_456_000, ZoneOffset.ofHours(-5))
+        val expected = timestamp.toEpochSecond() * 1_000_000 + 123_456
+
+        Assert.assertEquals(expected, ColumnarDownloads.timestampMicros(timestamp))
+        Assert.assertEquals(expected, ColumnarDownloads.timestampMicros(timestamp.toString()))
+        Assert.assertNull(ColumnarDownloads.timestampMicros(""))
+        Assert.assertNull(ColumnarDownloads.timestampMicros(null))
+    }
+
+    private fun roundTripDownload(): PostgresDownloadWrapper {
+        return PostgresDownloadWrapper(roundTripRows).withColumnAdvice(roundTripColumns)
+    }
+
+    @Test
+    fun testArrowRoundTrip() {
+        val out = ByteArrayOutputStream()
+        ArrowStreamHttpMessageConverter.write(roundTripDownload(), out)
+
+        RootAllocator().use { allocator ->
+            ArrowStreamReader(ByteArrayInputStream(out.toByteArray()), allocator).use { reader ->
+                val root = reader.vectorSchemaRoot
+                val fields = root.schema.fields
+                Assert.assertEquals(roundTripColumns, fields.map { it.name })
+                Assert.assertEquals(
+                    listOf(
+                        ArrowType.Utf8(),
+                        ArrowType.Timestamp(TimeUnit.MICROSECOND, "UTC"),
+                        ArrowType.Int(64, true),
+                        ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE),
+                        ArrowType.Int(32, true),
+                        ArrowType.Bool(),
+                        ArrowType.Utf8()
+                    ),
+                    fields.map { it.type }
+                )
+                Assert.assertEquals(ArrowType.Int(32, true), fields[0].dictionary.indexType)
+                Assert.assertTrue(fields.drop(1).all { it.dictionary == null })
+
+                val rows = mutableListOf<List<Any?>>()
+                while (reader.loadNextBatch()) {
+                    (0 until root.rowCount).forEach { row ->
+                        rows.add(fields.indices.map { index ->
+                            val vector: FieldVector = root.getVector(index)
+                            val encoding = fields[index].dictionary
+                            val value = if (encoding == null || vector.isNull(row)) {
+                                vector.getObject(row)
+                            } else {
+                                reader.lookup(encoding.id).vector.getObject((vector as IntVector).get(row))
+                            }
+                            if (value is Text) value.toString() else value
+                        })
+                    }
+                }
+                Assert.assertEquals(expectedRoundTripRows, rows)
+            }
+        }
+    }
+
+    @Test
+    fun testParquetRoundTrip() {
+        val out = ByteArrayOutputStream()
+        ParquetHttpMessageConverter.write(roundTripDownload(), out)
+
+        ParquetFileReader.open(BytesInputFile(out.toByteArray())).use { reader ->
+            val schema = reader.footer.fileMetaData.schema
+            Assert.assertEquals(roundTripColumns, schema.fields.map { it.name })
+            Assert.assertEquals(
+                listOf(
+                    PrimitiveTypeName.BINARY,
+                    PrimitiveTypeName.INT64,
+                    PrimitiveTypeName.INT64,
+                    PrimitiveTypeName.DOUBLE,
+                    PrimitiveTypeName.INT32,
+                    PrimitiveTypeName.BOOLEAN,
+                    PrimitiveTypeName.BINARY
+                ),
+                schema.fields.map { it.asPrimitiveType().primitiveTypeName }
+            )
+            Assert.assertEquals(
+                LogicalTypeAnnotation.timestampType(true, LogicalTypeAnnotation.TimeUnit.MICROS),
+                schema.fields[1].logicalTypeAnnotation
+            )
+            Assert.assertEquals(LogicalTypeAnnotation.stringType(), schema.fields[0].logicalTypeAnnotation)
+
+            val rows = mutableListOf<List<Any?>>()
+            var pages = reader.readNextRowGroup()
+            while (pages != null) {
+                val records = ColumnIOFactory().getColumnIO(schema).getRecordReader(pages, GroupRecordConverter(schema))
+                repeat(pages.rowCount.toInt()) {
+                    val group: Group = records.read()
+                    rows.add(schema.fields.mapIndexed { index, field ->
+                        if (group.getFieldRepetitionCount(index) == 0) {
+                            null
+                        } else {
+                            when (field.asPrimitiveType().primitiveTypeName) {
+                                PrimitiveTypeName.INT64 -> group.getLong(index, 0)
+                                PrimitiveTypeName.INT32 -> group.getInteger(index, 0)
+                                PrimitiveTypeName.DOUBLE -> group.getDouble(index, 0)
+                                PrimitiveTypeName.BOOLEAN -> group.getBoolean(index, 0)
+                                else -> group.getString(index, 0)
+                            }
+                        }
+                    })
+                }
+                pages = reader.readNextRowGroup()
+            }
+            Assert.assertEquals(expectedRoundTripRows, rows)
+        }
+    }
+
+    private class BytesInputFile(private val bytes: ByteArray) : InputFile {
+        override fun getLength(): Long = bytes.size.toLong()
+
+        override fun newStream(): SeekableInputStream {
+            val input = SeekableByteArrayInputStream(bytes)
+            return object : DelegatingSeekableInputStream(input) {
+                override fun getPos(): Long = input.position.toLong()
+
+                override fun seek(newPos: Long) {
+                    input.position = newPos.toInt()
+                }
+            }
+        }
+    }
+
+    private class SeekableByteArrayInputStream(bytes: ByteArray) : ByteArrayInputStream(bytes) {
+        var position: Int
+            get() = pos
+            set(value) {
+                pos = value
+            }
+    }
+}
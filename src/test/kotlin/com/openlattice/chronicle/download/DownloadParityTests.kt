@@ -0,0 +1,210 @@
+package com.openlattice.chronicle.download
+
+import com.fasterxml.jackson.core.JsonGenerator
+import com.fasterxml.jackson.core.type.TypeReference
+import com.geekbeast.mappers.mappers.ObjectMappers
+import com.geekbeast.postgres.PostgresColumnDefinition
+import com.geekbeast.postgres.PostgresDatatype
+import com.openlattice.chronicle.constants.CustomMediaType
+import com.openlattice.chronicle.converters.PostgresDownloadCsvHttpMessageConverter
+import com.openlattice.chronicle.converters.PostgresDownloadWrapper
+import com.openlattice.chronicle.converters.PostgresRowDownload
+import com.openlattice.chronicle.converters.PostgresRowDownloadHttpMessageConverter
+import com.openlattice.chronicle.converters.RowWriter
+import com.openlattice.chronicle.sensorkit.SensorType
+import com.openlattice.chronicle.services.download.DataDownloadService
+import com.openlattice.chronicle.services.download.DownloadColumn
+import com.openlattice.chronicle.storage.ChroniclePostgresTables.Companion.APP_USAGE_SURVEY
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.APP_TIMEZONE
+import com.openlattice.chronicle.storage.RedshiftColumns.Companion.TIMEZONE
+import com.openlattice.chronicle.storage.RedshiftDataTables.Companion.CHRONICLE_USAGE_EVENTS
+import com.zaxxer.hikari.HikariDataSource
+import org.junit.Assert
+import org.junit.Test
+import org.mockito.Mockito
+import org.mockito.stubbing.Answer
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpOutputMessage
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import java.sql.ResultSet
+import java.sql.SQLException
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+import java.util.*
+
+/**
+ * Writes the same rows through the map based downloads and the streaming row downloads and checks that the csv and
+ * json output of both paths match.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class DownloadParityTests {
+    private val mapper = ObjectMappers.getJsonMapper()
+    private val timestamp = OffsetDateTime.of(2022, 3, 1, 8, 30, 0, 123_456_000, ZoneOffset.UTC)
+
+    @Test
+    fun testUsageEvents() {
+        val csv = assertSameDownload(
+            CHRONICLE_USAGE_EVENTS.columns.toList(),
+            TIMEZONE,
+            CHRONICLE_USAGE_EVENTS.columns.map { it.name },
+            DataDownloadService.Companion::readUsageEvent,
+            DataDownloadService.USAGE_EVENTS_DOWNLOAD_COLUMNS
+        )
+
+        //Timestamps are rendered in the timezone recorded with the event.
+        Assert.assertTrue(csv.contains("2022-03-01T03:30:00.123456-05:00"))
+    }
+
+    @Test
+    fun testPreprocessedUsageEvents() {
+        assertSameDownload(
+            DataDownloadService.PREPROCESSED_RESULT_SET_COLUMNS,
+            APP_TIMEZONE,
+            DataDownloadService.PREPROCESSED_RESULT_SET_COLUMNS.map { it.name },
+            DataDownloadService.Companion::readPreprocessedUsageEvent,
+            DataDownloadService.PREPROCESSED_DOWNLOAD_COLUMNS
+        )
+    }
+
+    @Test
+    fun testAppUsageSurvey() {
+        assertSameDownload(
+            APP_USAGE_SURVEY.columns.toList(),
+            TIMEZONE,
+            APP_USAGE_SURVEY.columns.map { it.name },
+            DataDownloadService.Companion::readAppUsageSurvey,
+            DataDownloadService.APP_USAGE_SURVEY_DOWNLOAD_COLUMNS
+        )
+    }
+
+    @Test
+    fun testSensorData() {
+        val (cols, _) = DataDownloadService.getSensorDataColsAndSql(SensorType.values().toSet())
+        assertSameDownload(
+            cols.toList(),
+            TIMEZONE,
+            cols.map { it.name },
+            DataDownloadService.sensorReader(cols),
+            DataDownloadService.sensorDownloadColumns(cols)
+        )
+    }
+
+    /**
+     * Writes the same rows through both paths, checks that the csv and json output match and returns the csv.
+     *
+     * @param columns The columns selected by the query of the download.
+     * @param columnAdvice The csv header of the map based download.
+     */
+    private fun assertSameDownload(
+        columns: List<PostgresColumnDefinition>,
+        timezoneColumn: PostgresColumnDefinition,
+        columnAdvice: List<String>,
+        read: (ResultSet) -> Map<String, Any>,
+        downloadColumns: List<DownloadColumn>
+    ): String {
+        val rows = rows(columns, timezoneColumn)
+        val rs = resultSet(columns, rows)
+        val mapRows = generateSequence { if (rs.next()) read(rs) else null }.toList()
+
+        val mapCsv = BufferedOutputMessage()
+        PostgresDownloadCsvHttpMessageConverter().write(
+            PostgresDownloadWrapper(mapRows).withColumnAdvice(columnAdvice),
+            CustomMediaType.TEXT_CSV,
+            mapCsv
+        )
+        val rowCsv = ByteArrayOutputStream()
+        val rowCsvCount = PostgresRowDownloadHttpMessageConverter.writeCsv(
+            ResultSetRowDownload(resultSet(columns, rows), downloadColumns),
+            rowCsv
+        )
+        val rowJson = ByteArrayOutputStream()
+        val rowJsonCount = PostgresRowDownloadHttpMessageConverter.writeJson(
+            ResultSetRowDownload(resultSet(columns, rows), downloadColumns),
+            rowJson
+        )
+
+        val csv = rowCsv.toString(Charsets.UTF_8)
+        Assert.assertEquals(rows.size.toLong(), rowCsvCount)
+        Assert.assertEquals(rows.size.toLong(), rowJsonCount)
+        Assert.assertEquals(columnAdvice.joinToString(","), csv.lines().first())
+        Assert.assertEquals(mapCsv.out.toString(Charsets.UTF_8), csv)
+        Assert.assertEquals(readJson(mapper.writeValueAsBytes(mapRows)), readJson(rowJson.toByteArray()))
+        return csv
+    }
+
+    private fun readJson(json: ByteArray): List<Map<String, Any?>> {
+        return mapper.readValue(json, object : TypeReference<List<Map<String, Any?>>>() {})
+    }
+
+    /**
+     * The first row has every value, the second row is missing every value except its timestamps, so its timestamps
+     * are rendered in the default timezone, and the third row is missing its timestamps.
+     */
+    private fun rows(
+        columns: List<PostgresColumnDefinition>,
+        timezoneColumn: PostgresColumnDefinition
+    ): List<Map<String, Any?>> {
+        return listOf("America/New_York", null, "Asia/Kolkata").mapIndexed { row, timezone ->
+            columns.associate { column ->
+                column.name to if (column.name == timezoneColumn.name) timezone else value(column, row)
+            }
+        }
+    }
+
+    private fun value(column: PostgresColumnDefinition, row: Int): Any? = when {
+        column.datatype == PostgresDatatype.TIMESTAMPTZ -> if (row == 2) null else timestamp.plusHours(row.toLong())
+        row == 1 -> null
+        else -> when (column.datatype) {
+            PostgresDatatype.UUID -> UUID(0, row.toLong())
+            PostgresDatatype.INTEGER, PostgresDatatype.BIGINT -> row + 7
+            PostgresDatatype.DOUBLE -> row + 0.25
+            PostgresDatatype.BOOLEAN -> true
+            //Commas and quotes check that both paths quote the same values.
+            else -> "${column.name}, \"$row\""
+        }
+    }
+
+    /**
+     * A result set over [rows] that reads values the way the postgres driver does for the getters used by downloads.
+     */
+    private fun resultSet(columns: List<PostgresColumnDefinition>, rows: List<Map<String, Any?>>): ResultSet {
+        val names = columns.map { it.name }
+        var current = -1
+        return Mockito.mock(ResultSet::class.java, Answer<Any?> { invocation ->
+            val args = invocation.arguments
+            val value = { ->
+                val column = args[0]
+                rows[current][if (column is Int) names[column - 1] else column as String]
+            }
+            when (invocation.method.name) {
+                "next" -> ++current < rows.size
+                "findColumn" -> {
+                    val index = names.indexOf(args[0])
+                    if (index < 0) throw SQLException("Column ${args[0]} was not selected.") else index + 1
+                }
+                "getString" -> value()?.toString()
+                "getInt" -> (value() as Number?)?.toInt() ?: 0
+                "getDouble" -> (value() as Number?)?.toDouble() ?: 0.0
+                "getObject" -> value()
+                else -> Mockito.RETURNS_DEFAULTS.answer(invocation)
+            }
+        })
+    }
+
+    private class ResultSetRowDownload(
+        private val rs: ResultSet,
+        columns: List<DownloadColumn>
+    ) : PostgresRowDownload(HikariDataSource(), "", columns, 1, { _, _ -> }) {
+        override fun writeRows(generator: JsonGenerator, writeRow: RowWriter): Long = writeRows(rs, generator, writeRow)
+    }
+
+    private class BufferedOutputMessage : HttpOutputMessage {
+        private val headers = HttpHeaders()
+        val out = ByteArrayOutputStream()
+
+        override fun getHeaders(): HttpHeaders = headers
+        override fun getBody(): OutputStream = out
+    }
+}
@@ -0,0 +1,126 @@
+package com.openlattice.chronicle.download
+
+import com.codahale.metrics.MetricRegistry
+import com.openlattice.chronicle.configuration.ChronicleDownloadConfiguration
+import com.openlattice.chronicle.services.download.FanOutQueryExecutor
+import com.openlattice.chronicle.services.download.QuerySlice
+import com.zaxxer.hikari.HikariDataSource
+import org.junit.Assert
+import org.junit.Test
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class FanOutQueryExecutorTests {
+    private val participantIds = (0 until 5).map { "participant-$it" }.toSet()
+    private val start = OffsetDateTime.of(2022, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC)
+
+    @Test
+    fun testSplitsByParticipantAndTimeRange() {
+        val slices = QuerySlice(participantIds, start, start.plusDays(10)).split(2, 7)
+
+        Assert.assertEquals(6, slices.size)
+        Assert.assertEquals(participantIds, slices.flatMap { it.participantIds }.toSet())
+        Assert.assertEquals(setOf("participant-0", "participant-1"), slices[0].participantIds)
+        Assert.assertEquals(slices[0].participantIds, slices[1].participantIds)
+        Assert.assertEquals(listOf(start, start.plusDays(7)), slices.take(2).map { it.startDateTime })
+        Assert.assertEquals(listOf(start.plusDays(7), start.plusDays(10)), slices.take(2).map { it.endDateTime })
+    }
+
+    @Test
+    fun testUnboundedRangeIsNotSplitByTime() {
+        val slices = QuerySlice(participantIds, OffsetDateTime.MIN, OffsetDateTime.MAX).split(2, 7)
+
+        Assert.assertEquals(3, slices.size)
+        Assert.assertTrue(slices.all { it.startDateTime == OffsetDateTime.MIN && it.endDateTime == OffsetDateTime.MAX })
+    }
+
+    @Test
+    fun testMergesSlicesInOrderWithBoundedConcurrency() {
+        val executor = FanOutQueryExecutor(ChronicleDownloadConfiguration(), MetricRegistry())
+        val slices = QuerySlice(participantIds, start, start.plusDays(30)).split(1, 1)
+        val running = AtomicInteger()
+        val maxRunning = AtomicInteger()
+
+        val rows = executor.execute<String>("test", HikariDataSource(), slices, 3, 2) { slice, emit ->
+            maxRunning.accumulateAndGet(running.incrementAndGet()) { a, b -> maxOf(a, b) }
+            Thread.sleep(1)
+            (0 until 4).forEach { emit("${slice.participantIds.single()} ${slice.startDateTime} $it") }
+            running.decrementAndGet()
+        }.asSequence().toList()
+
+        val expected = slices.flatMap { slice ->
+            (0 until 4).map { "${slice.participantIds.single()} ${slice.startDateTime} $it" }
+        }
+        Assert.assertEquals(expected, rows)
+        Assert.assertTrue(maxRunning.get() <= 3)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testFailedSliceFailsDownload() {
+        val executor = FanOutQueryExecutor(ChronicleDownloadConfiguration(), MetricRegistry())
+        val slices = QuerySlice(participantIds, start, start.plusDays(2)).split(1, 1)
+
+        executor.execute<String>("test", HikariDataSource(), slices, 2, 16) { slice, emit ->
+            check(slice.participantIds.single() != "participant-3") { "Query failed." }
+            emit(slice.participantIds.single())
+        }.forEach { _ -> }
+    }
+
+    @Test
+    fun testSlowConsumerDoesNotTimeOutSlicesWaitingBehindIt() {
+        val configuration = ChronicleDownloadConfiguration(maxDownloadConcurrency = 2, downloadStallTimeoutMillis = 100)
+        val executor = FanOutQueryExecutor(configuration, MetricRegistry())
+        val slices = QuerySlice(participantIds, start, start.plusDays(2)).split(1, 1)
+        Assert.assertTrue(slices.size > configuration.maxDownloadConcurrency)
+
+        //Each slice takes longer to consume than the stall timeout, so later slices wait several timeouts in total.
+        val concurrency = executor.concurrency(8)
+        val rows = executor.execute<String>("test", HikariDataSource(), slices, concurrency, 1) { slice, emit ->
+            (0 until 4).forEach { emit("${slice.participantIds.single()} ${slice.startDateTime} $it") }
+        }.asSequence().onEach { Thread.sleep(40) }.toList()
+
+        Assert.assertEquals(slices.size * 4, rows.size)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun testStalledConsumerFailsDownload() {
+        val configuration = ChronicleDownloadConfiguration(downloadStallTimeoutMillis = 100)
+        val executor = FanOutQueryExecutor(configuration, MetricRegistry())
+        val slices = QuerySlice(participantIds, start, start.plusDays(2)).split(1, 1)
+
+        val rows = executor.execute<Int>("test", HikariDataSource(), slices, 2, 1) { _, emit ->
+            (0 until 4).forEach { emit(it) }
+        }
+        rows.next()
+        Thread.sleep(500)
+        rows.forEach { _ -> }
+    }
+
+    @Test
+    fun testClosingCancelsRunningSlices() {
+        val executor = FanOutQueryExecutor(ChronicleDownloadConfiguration(), MetricRegistry())
+        val slices = QuerySlice(participantIds, start, start.plusDays(2)).split(1, 1)
+        val started = AtomicInteger()
+        val finished = CountDownLatch(2)
+
+        val rows = executor.execute<Int>("test", HikariDataSource(), slices, 2, 1) { _, emit ->
+            started.incrementAndGet()
+            try {
+                (0 until 1000).forEach { emit(it) }
+            } finally {
+                finished.countDown()
+            }
+        }
+        rows.use { Assert.assertEquals(0, it.next()) }
+
+        Assert.assertTrue(finished.await(10, TimeUnit.SECONDS))
+        Assert.assertEquals(2, started.get())
+        Assert.assertFalse(rows.hasNext())
+    }
+}
@@ -0,0 +1,91 @@
+package com.openlattice.chronicle.download
+
+import com.openlattice.chronicle.services.download.DownloadPageToken
+import com.openlattice.chronicle.services.download.KeysetPageQuery
+import com.openlattice.chronicle.storage.RedshiftColumns
+import com.openlattice.chronicle.storage.RedshiftDataTables
+import org.junit.Assert
+import org.junit.Test
+import java.lang.reflect.Proxy
+import java.sql.ResultSet
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class KeysetPageQueryTests {
+    private val start = OffsetDateTime.of(2022, 3, 1, 0, 0, 0, 123_456_000, ZoneOffset.UTC)
+    private val query = KeysetPageQuery(
+        "SELECT * FROM ${RedshiftDataTables.CHRONICLE_USAGE_EVENTS.name} WHERE study_id = ?",
+        1,
+        RedshiftDataTables.CHRONICLE_USAGE_EVENTS.columns,
+        RedshiftColumns.TIMESTAMP,
+        RedshiftColumns.UPLOADED_AT
+    )
+
+    //Three events share participant-0's first timestamp, so pages of two split the tie.
+    private val rows = listOf(
+        "participant-0" to start,
+        "participant-0" to start,
+        "participant-0" to start,
+        "participant-0" to start.plusSeconds(1),
+        "participant-1" to start,
+    )
+
+    @Test
+    fun testTokenRoundTrip() {
+        val token = DownloadPageToken("participant|0", start, 3, start.plusDays(1))
+        Assert.assertEquals(token, DownloadPageToken.decode(token.encode()))
+        Assert.assertNull(DownloadPageToken.decode(token.copy(watermark = null).encode()).watermark)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testInvalidTokenIsRejected() {
+        DownloadPageToken.decode("not a token")
+    }
+
+    @Test
+    fun testPageQueryIsKeysetRangeQuery() {
+        val keyset = "AND (participant_id > ? OR (participant_id = ? AND event_timestamp >= ?))"
+        Assert.assertTrue(query.sql.contains(keyset))
+        Assert.assertTrue(query.sql.contains("AND uploaded_at <= ?"))
+        Assert.assertTrue(query.sql.contains("ORDER BY participant_id, event_timestamp, study_id,"))
+        Assert.assertTrue(query.sql.endsWith("LIMIT ?"))
+    }
+
+    @Test
+    fun testPagesSplitTiesWithoutSkippingOrRepeatingRows() {
+        var token = DownloadPageToken.first(start)
+        val read = mutableListOf<Pair<String, OffsetDateTime>>()
+        var pages = 0
+        while (pages++ < rows.size) {
+            val page = query.read(resultSet(rows.filter { after(it, token) }), token, 2) { rs ->
+                mapOf("row" to (rs.getString("participant_id") to rs.getObject("event_timestamp")))
+            }
+            @Suppress("UNCHECKED_CAST")
+            read.addAll(page.data.map { it.getValue("row") as Pair<String, OffsetDateTime> })
+            Assert.assertEquals(start, page.watermark)
+            token = DownloadPageToken.decode(page.nextPageToken ?: break)
+        }
+
+        Assert.assertEquals(rows, read)
+        Assert.assertEquals(3, pages)
+    }
+
+    private fun after(row: Pair<String, OffsetDateTime>, token: DownloadPageToken): Boolean {
+        return row.first > token.participantId || (row.first == token.participantId && row.second >= token.timestamp)
+    }
+
+    private fun resultSet(rows: List<Pair<String, OffsetDateTime>>): ResultSet {
+        var index = -1
+        return Proxy.newProxyInstance(javaClass.classLoader, arrayOf(ResultSet::class.java)) { _, method, _ ->
+            when (method.name) {
+                "next" -> ++index < rows.size
+                "getString" -> rows[index].first
+                "getObject" -> rows[index].second
+                else -> throw UnsupportedOperationException(method.name)
+            }
+        } as ResultSet
+    }
+}
@@ -0,0 +1,72 @@
+package com.openlattice.chronicle.export
+
+import com.openlattice.chronicle.constants.ParticipantDataType
+import com.openlattice.chronicle.converters.DownloadFormat
+import org.junit.Assert
+import org.junit.Test
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+import java.util.*
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class ExportPartTests {
+    private val participantIds = (0 until 5).map { "participant-$it" }.toSet()
+    private val start = OffsetDateTime.of(2022, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC)
+
+    @Test
+    fun testSplitsByParticipantAndTimeRange() {
+        val export = export(start, start.plusDays(10))
+        val parts = ExportPart.plan(export, 2, 7)
+
+        Assert.assertEquals(6, parts.size)
+        Assert.assertEquals((0 until 6).toList(), parts.map { it.index })
+        Assert.assertEquals(participantIds, parts.flatMap { it.participantIds }.toSet())
+        parts.groupBy { it.participantIds }.values.forEach { ranges ->
+            Assert.assertEquals(start, ranges.first().startDateTime)
+            Assert.assertEquals(start.plusDays(7), ranges.first().endDateTime)
+            Assert.assertEquals(start.plusDays(7), ranges.last().startDateTime)
+            Assert.assertEquals(start.plusDays(10), ranges.last().endDateTime)
+        }
+    }
+
+    @Test
+    fun testUnboundedRangeIsNotSplit() {
+        val parts = ExportPart.plan(export(null, start), 8, 7)
+
+        Assert.assertEquals(1, parts.size)
+        Assert.assertNull(parts.first().startDateTime)
+        Assert.assertEquals(start, parts.first().endDateTime)
+    }
+
+    @Test
+    fun testPlanIsStable() {
+        val export = export(start, start.plusDays(30))
+        Assert.assertEquals(ExportPart.plan(export, 2, 7), ExportPart.plan(export, 2, 7))
+    }
+
+    @Test
+    fun testOnlyTextPartsAreGzipped() {
+        val studyId = UUID.randomUUID()
+        val jobId = UUID.randomUUID()
+
+        Assert.assertEquals(
+            "exports/$studyId/$jobId/part-00003.csv.gz",
+            ExportParticipantDataRunner.partKey(studyId, jobId, 3, DownloadFormat.csv)
+        )
+        Assert.assertEquals(
+            "exports/$studyId/$jobId/part-00003.parquet",
+            ExportParticipantDataRunner.partKey(studyId, jobId, 3, DownloadFormat.parquet)
+        )
+    }
+
+    private fun export(startDateTime: OffsetDateTime?, endDateTime: OffsetDateTime?) = ExportParticipantData(
+        UUID.randomUUID(),
+        participantIds.shuffled(),
+        ParticipantDataType.UsageEvents,
+        DownloadFormat.csv,
+        startDateTime = startDateTime,
+        endDateTime = endDateTime
+    )
+}
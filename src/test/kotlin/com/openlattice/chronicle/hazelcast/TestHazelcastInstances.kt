@@ -0,0 +1,33 @@
+package com.openlattice.chronicle.hazelcast
+
+import com.geekbeast.rhizome.pods.hazelcast.SelfRegisteringStreamSerializer
+import com.hazelcast.config.Config
+import com.hazelcast.config.MapConfig
+import com.hazelcast.config.SerializerConfig
+import com.hazelcast.core.Hazelcast
+import com.hazelcast.core.HazelcastInstance
+
+/**
+ * Creates embedded single member hazelcast instances, so that code using maps, entry processors and listeners can be
+ * tested without starting the server. Each cluster name should be unique to its test class.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+object TestHazelcastInstances {
+    fun newInstance(
+        clusterName: String,
+        serializers: List<SelfRegisteringStreamSerializer<*>>,
+        mapConfigs: List<MapConfig> = listOf()
+    ): HazelcastInstance {
+        val config = Config()
+        config.clusterName = clusterName
+        config.networkConfig.join.multicastConfig.isEnabled = false
+        mapConfigs.forEach { config.addMapConfig(it) }
+        serializers.forEach { serializer ->
+            config.serializationConfig.addSerializerConfig(
+                SerializerConfig().setImplementation(serializer).setTypeClass(serializer.clazz)
+            )
+        }
+        return Hazelcast.newHazelcastInstance(config)
+    }
+}
@@ -0,0 +1,94 @@
+package com.openlattice.chronicle.serialization
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.module.kotlin.readValue
+import com.geekbeast.mappers.mappers.ObjectMappers
+import com.openlattice.chronicle.android.ChronicleData
+import com.openlattice.chronicle.android.ChronicleUsageEvent
+import com.openlattice.chronicle.services.upload.AppDataUploadService
+import com.openlattice.chronicle.services.upload.StreamingUsageEventReader
+import com.openlattice.chronicle.services.upload.UsageEventColumn
+import com.openlattice.chronicle.storage.RedshiftColumns
+import com.openlattice.chronicle.storage.odtFromUsageEventColumn
+import com.openlattice.chronicle.util.tests.TestDataFactory
+import org.junit.Assert
+import org.junit.Test
+import java.io.StringWriter
+import java.util.*
+
+/**
+ * Verifies that the streaming ingest path writes upload buffer entries that drain identically to the object mapping
+ * path.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class StreamingUsageEventReaderTests {
+    private val mapper: ObjectMapper = ObjectMappers.getJsonMapper()
+
+    @Test
+    fun testStreamingMatchesObjectMapping() {
+        val payload = mapper.writeValueAsBytes(TestDataFactory.chronicleUsageEvents(UUID.randomUUID(), "test", 100))
+
+        val data = mapper.readValue(payload, ChronicleData::class.java)
+        val expected = mapper.readValue<List<Map<String, UsageEventColumn>>>(
+            mapper.writeValueAsString(
+                AppDataUploadService.filter(
+                    AppDataUploadService.mapToStorageModel(data.map { it as ChronicleUsageEvent })
+                ).toList()
+            )
+        )
+
+        val rows = StreamingUsageEventReader(mapper).read(payload.inputStream()).filter()
+        val writer = StringWriter()
+        rows.writeUploadData(mapper, writer)
+        val actual = mapper.readValue<List<Map<String, UsageEventColumn>>>(writer.toString())
+
+        Assert.assertEquals(expected.size, actual.size)
+        expected.zip(actual).forEach { (e, a) ->
+            Assert.assertEquals(e.keys, a.keys)
+            e.forEach { (col, expectedCol) ->
+                val actualCol = a.getValue(col)
+                Assert.assertEquals(expectedCol.colIndex, actualCol.colIndex)
+                Assert.assertEquals(expectedCol.datatype, actualCol.datatype)
+                if (col == RedshiftColumns.TIMESTAMP.name) {
+                    Assert.assertTrue(
+                        odtFromUsageEventColumn(expectedCol.value)!!.isEqual(odtFromUsageEventColumn(actualCol.value))
+                    )
+                } else {
+                    Assert.assertEquals(expectedCol.value, actualCol.value)
+                }
+            }
+        }
+    }
+
+    @Test
+    fun testFilterDropsMalformedPackageNames() {
+        val json = """
+            [
+              {"appPackageName":"com.example[1]","interactionType":"Move to Foreground","eventType":1,"timestamp":"2022-03-01T10:15:30Z","timezone":"UTC","user":"","applicationLabel":"Example"},
+              {"appPackageName":"com.example","interactionType":"Move to Foreground","eventType":1,"timestamp":"2022-03-01T10:15:30Z","timezone":"UTC","user":"","applicationLabel":"Example"},
+              {"appPackageName":"com.example","interactionType":"Move to Background","eventType":2,"timestamp":null,"timezone":"UTC","user":"","applicationLabel":"Example"}
+            ]
+        """.trimIndent()
+
+        val rows = StreamingUsageEventReader(mapper).read(json.byteInputStream())
+        Assert.assertEquals(3, rows.size)
+        Assert.assertEquals(1, rows.filter().size)
+    }
+
+    @Test
+    fun testOnlyUsageEventTypeIdsAreRead() {
+        val sample = """
+            {"appPackageName":"com.example","interactionType":"Move to Foreground","eventType":1,"timestamp":"2022-03-01T10:15:30Z","timezone":"UTC","user":"","applicationLabel":"Example"}
+        """.trimIndent()
+        val typeIds = listOf(
+            ChronicleUsageEvent::class.java.name,
+            ChronicleUsageEvent::class.java.simpleName,
+            "com.example.NotAChronicleUsageEvent",
+            "NotAChronicleUsageEvent"
+        )
+        val json = typeIds.joinToString(",", "[", "]") { "[\"$it\",$sample]" }
+
+        Assert.assertEquals(2, StreamingUsageEventReader(mapper).read(json.byteInputStream()).size)
+    }
+}
@@ -0,0 +1,66 @@
+package com.openlattice.chronicle.serialization
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.module.kotlin.readValue
+import com.geekbeast.mappers.mappers.ObjectMappers
+import com.openlattice.chronicle.services.upload.StreamingUsageEventReader
+import com.openlattice.chronicle.services.upload.UploadBufferCodec
+import com.openlattice.chronicle.services.upload.UsageEventColumn
+import com.openlattice.chronicle.storage.RedshiftColumns
+import com.openlattice.chronicle.storage.odtFromUsageEventColumn
+import com.openlattice.chronicle.util.tests.TestDataFactory
+import org.junit.Assert
+import org.junit.Test
+import java.io.StringWriter
+import java.util.*
+
+/**
+ * Verifies that usage events buffered in the binary encodings drain identically to the jsonb encoding.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class UploadBufferCodecTests {
+    private val mapper: ObjectMapper = ObjectMappers.getJsonMapper()
+
+    @Test
+    fun testColumnarMatchesJson() {
+        val (expected, rows) = bufferedJson()
+        assertDrainsEqual(expected, UploadBufferCodec.decodeUsageEvents(mapper, UploadBufferCodec.encodeUsageEvents(rows)))
+    }
+
+    @Test
+    fun testCompressedJsonMatchesJson() {
+        val (expected, _) = bufferedJson()
+        val encoded = UploadBufferCodec.encodeJson(mapper, expected)
+        assertDrainsEqual(expected, UploadBufferCodec.decodeUsageEvents(mapper, encoded))
+    }
+
+    private fun bufferedJson() = TestDataFactory.chronicleUsageEvents(UUID.randomUUID(), "test", 100).let { events ->
+        val rows = StreamingUsageEventReader(mapper).read(mapper.writeValueAsBytes(events).inputStream()).filter()
+        val writer = StringWriter()
+        rows.writeUploadData(mapper, writer)
+        mapper.readValue<List<Map<String, UsageEventColumn>>>(writer.toString()) to rows
+    }
+
+    private fun assertDrainsEqual(
+        expected: List<Map<String, UsageEventColumn>>,
+        actual: List<Map<String, UsageEventColumn>>
+    ) {
+        Assert.assertEquals(expected.size, actual.size)
+        expected.zip(actual).forEach { (e, a) ->
+            Assert.assertEquals(e.keys, a.keys)
+            e.forEach { (col, expectedCol) ->
+                val actualCol = a.getValue(col)
+                Assert.assertEquals(expectedCol.colIndex, actualCol.colIndex)
+                Assert.assertEquals(expectedCol.datatype, actualCol.datatype)
+                if (col == RedshiftColumns.TIMESTAMP.name) {
+                    Assert.assertTrue(
+                        odtFromUsageEventColumn(expectedCol.value)!!.isEqual(odtFromUsageEventColumn(actualCol.value))
+                    )
+                } else {
+                    Assert.assertEquals(expectedCol.value, actualCol.value)
+                }
+            }
+        }
+    }
+}
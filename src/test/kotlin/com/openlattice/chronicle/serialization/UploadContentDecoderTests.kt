@@ -0,0 +1,72 @@
+package com.openlattice.chronicle.serialization
+
+import com.codahale.metrics.MetricRegistry
+import com.github.luben.zstd.ZstdOutputStream
+import com.openlattice.chronicle.configuration.ChronicleUploadConfiguration
+import com.openlattice.chronicle.controllers.UnsupportedContentEncodingException
+import com.openlattice.chronicle.controllers.UploadTooLargeException
+import com.openlattice.chronicle.services.upload.UploadContentDecoder
+import org.junit.Assert
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import java.util.zip.GZIPOutputStream
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class UploadContentDecoderTests {
+    private val payload = (1..1000).joinToString(",", "[", "]") {
+        """{"appPackageName":"com.example","interactionType":"Move to Foreground","timezone":"UTC"}"""
+    }.toByteArray()
+
+    @Test
+    fun testDecodesGzipAndZstd() {
+        val metrics = MetricRegistry()
+        val decoder = UploadContentDecoder(ChronicleUploadConfiguration(), metrics)
+        val gzip = compress(payload) { GZIPOutputStream(it) }
+        val zstd = compress(payload) { ZstdOutputStream(it) }
+
+        Assert.assertArrayEquals(payload, decoder.decode("test", "gzip", gzip.inputStream()).readBytes())
+        Assert.assertArrayEquals(payload, decoder.decode("test", "zstd", zstd.inputStream()).readBytes())
+        Assert.assertArrayEquals(payload, decoder.decode("test", null, payload.inputStream()).readBytes())
+
+        val prefix = UploadContentDecoder::class.java.name + ".test"
+        Assert.assertEquals(3L * payload.size, metrics.meter("$prefix.uncompressed-bytes").count)
+        Assert.assertEquals(
+            (gzip.size + zstd.size + payload.size).toLong(),
+            metrics.meter("$prefix.compressed-bytes").count
+        )
+    }
+
+    @Test(expected = UploadTooLargeException::class)
+    fun testDecompressionLimit() {
+        val decoder = UploadContentDecoder(
+            ChronicleUploadConfiguration(maxDecompressedUploadBytes = payload.size / 2L),
+            MetricRegistry()
+        )
+        decoder.decode("test", "gzip", compress(payload) { GZIPOutputStream(it) }.inputStream()).readBytes()
+    }
+
+    @Test
+    fun testDecompressionLimitOnlyAppliesToEncodedUploads() {
+        val decoder = UploadContentDecoder(
+            ChronicleUploadConfiguration(maxDecompressedUploadBytes = payload.size / 2L),
+            MetricRegistry()
+        )
+        Assert.assertArrayEquals(payload, decoder.decode("test", null, payload.inputStream()).readBytes())
+        Assert.assertArrayEquals(payload, decoder.decode("test", "identity", payload.inputStream()).readBytes())
+    }
+
+    @Test(expected = UnsupportedContentEncodingException::class)
+    fun testUnsupportedEncoding() {
+        UploadContentDecoder(ChronicleUploadConfiguration(), MetricRegistry())
+            .decode("test", "br", payload.inputStream())
+    }
+
+    private fun compress(bytes: ByteArray, encoder: (OutputStream) -> OutputStream): ByteArray {
+        val out = ByteArrayOutputStream()
+        encoder(out).use { it.write(bytes) }
+        return out.toByteArray()
+    }
+}
@@ -0,0 +1,47 @@
+package com.openlattice.chronicle.stats
+
+import com.openlattice.chronicle.mapstores.stats.ParticipantKey
+import com.openlattice.chronicle.mapstores.stats.ParticipantStatsBatch
+import com.openlattice.chronicle.participants.ParticipantStats
+import org.junit.Assert
+import org.junit.Test
+import java.time.LocalDate
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+import java.util.*
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@getmethodic.com&gt;
+ */
+class ParticipantStatsBatchTests {
+    private val studyId = UUID.randomUUID()
+
+    private fun iosStats(participantId: String, day: Int): ParticipantStats {
+        val odt = OffsetDateTime.of(2022, 3, day, 12, 0, 0, 0, ZoneOffset.UTC)
+        return ParticipantStats(
+            studyId = studyId,
+            participantId = participantId,
+            iosUniqueDates = setOf(odt.toLocalDate()),
+            iosLastPing = odt,
+            iosFirstDate = odt,
+            iosLastDate = odt,
+        )
+    }
+
+    @Test
+    fun testFoldsOneDeltaPerParticipant() {
+        val batch = ParticipantStatsBatch()
+        batch.addAll(listOf(iosStats("a", 3), iosStats("a", 1), iosStats("b", 2), iosStats("a", 2)))
+
+        Assert.assertEquals(4, batch.deltas)
+        val stats = batch.getStatsByParticipant()
+        Assert.assertEquals(2, stats.size)
+
+        val a = stats.getValue(ParticipantKey(studyId, "a"))
+        Assert.assertEquals((1..3).map { LocalDate.of(2022, 3, it) }.toSet(), a.iosUniqueDates)
+        Assert.assertEquals(1, a.iosFirstDate!!.dayOfMonth)
+        Assert.assertEquals(3, a.iosLastDate!!.dayOfMonth)
+        Assert.assertEquals(3, a.iosLastPing!!.dayOfMonth)
+        Assert.assertNull(a.androidFirstDate)
+    }
+}
@@ -0,0 +1,53 @@
+package com.openlattice.chronicle.stats
+
+import com.openlattice.chronicle.mapstores.stats.ParticipantKey
+import com.openlattice.chronicle.participants.ParticipantStats
+import com.openlattice.chronicle.services.studies.aggregators.RecentUploadsAggregator
+import org.junit.Assert
+import org.junit.Test
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+import java.util.*
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class RecentUploadsAggregatorTests {
+    private val studyId = UUID.randomUUID()
+    private val otherStudyId = UUID.randomUUID()
+    private val cutoff = OffsetDateTime.of(2022, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC)
+
+    @Test
+    fun testCollectsParticipantsWithDataAfterCutoff() {
+        val first = RecentUploadsAggregator(mapOf(studyId to cutoff))
+        val second = RecentUploadsAggregator(mapOf(studyId to cutoff))
+
+        first.accumulate(entry(studyId, "recent-android", androidLastDate = cutoff.plusDays(1)))
+        first.accumulate(entry(studyId, "stale-android", androidLastDate = cutoff.minusDays(1)))
+        second.accumulate(entry(studyId, "recent-ios", iosLastDate = cutoff))
+        second.accumulate(entry(studyId, "no-data"))
+        second.accumulate(entry(otherStudyId, "other-study", androidLastDate = cutoff.plusDays(1)))
+        first.combine(second)
+
+        val result = first.aggregate()
+        Assert.assertEquals(mapOf(studyId to setOf("recent-android")), result.android)
+        Assert.assertEquals(mapOf(studyId to setOf("recent-ios")), result.ios)
+    }
+
+    private fun entry(
+        studyId: UUID,
+        participantId: String,
+        androidLastDate: OffsetDateTime? = null,
+        iosLastDate: OffsetDateTime? = null,
+    ): MutableMap.MutableEntry<ParticipantKey, ParticipantStats> {
+        return AbstractMap.SimpleEntry(
+            ParticipantKey(studyId, participantId),
+            ParticipantStats(
+                studyId = studyId,
+                participantId = participantId,
+                androidLastDate = androidLastDate,
+                iosLastDate = iosLastDate
+            )
+        )
+    }
+}
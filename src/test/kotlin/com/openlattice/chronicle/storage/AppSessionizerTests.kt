@@ -0,0 +1,63 @@
+package com.openlattice.chronicle.storage
+
+import com.openlattice.chronicle.storage.preprocessing.AppSessionizer
+import com.openlattice.chronicle.storage.preprocessing.AppUsageEvent
+import org.junit.Assert
+import org.junit.Test
+import java.time.DayOfWeek
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class AppSessionizerTests {
+    private val start = OffsetDateTime.of(2022, 3, 7, 12, 0, 0, 0, ZoneOffset.UTC)
+
+    @Test
+    fun testForegroundAndBackground() {
+        val sessionizer = AppSessionizer()
+        Assert.assertNull(sessionizer.accept(event("maps", 0, true)))
+        val session = sessionizer.accept(event("maps", 45, false))!!
+
+        Assert.assertEquals("maps", session.appPackageName)
+        Assert.assertEquals(45.0, session.durationSeconds, 0.0)
+        Assert.assertTrue(session.engaged)
+        Assert.assertFalse(session.switchedApp)
+        Assert.assertEquals(DayOfWeek.MONDAY, session.day)
+        Assert.assertNull(sessionizer.open)
+    }
+
+    @Test
+    fun testSwitchingAppsClosesOpenSession() {
+        val sessionizer = AppSessionizer()
+        sessionizer.accept(event("maps", 0, true))
+        Assert.assertNull(sessionizer.accept(event("maps", 5, true)))
+        val session = sessionizer.accept(event("mail", 10, true))!!
+
+        Assert.assertEquals("maps", session.appPackageName)
+        Assert.assertEquals(10.0, session.durationSeconds, 0.0)
+        Assert.assertTrue(session.switchedApp)
+        Assert.assertEquals("mail", sessionizer.open?.appPackageName)
+    }
+
+    @Test
+    fun testOpenSessionCarriesAcrossRuns() {
+        val first = AppSessionizer()
+        first.accept(event("maps", 0, true))
+        Assert.assertNull(first.accept(event("mail", 5, false)))
+
+        val second = AppSessionizer(first.open)
+        val session = second.accept(event("maps", 20, false))!!
+        Assert.assertEquals(start, session.start)
+        Assert.assertFalse(session.engaged)
+    }
+
+    private fun event(app: String, seconds: Long, foreground: Boolean) = AppUsageEvent(
+        app,
+        app,
+        start.plusSeconds(seconds),
+        "America/Los_Angeles",
+        foreground
+    )
+}
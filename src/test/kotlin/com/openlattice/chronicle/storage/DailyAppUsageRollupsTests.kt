@@ -0,0 +1,44 @@
+package com.openlattice.chronicle.storage
+
+import com.openlattice.chronicle.storage.preprocessing.RolledUpUsage
+import com.openlattice.chronicle.storage.preprocessing.UsageDay
+import org.junit.Assert
+import org.junit.Test
+import java.time.LocalDate
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+import java.util.*
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class DailyAppUsageRollupsTests {
+    private val studyId = UUID.randomUUID()
+
+    @Test
+    fun testUsageDayIsLocalToTimezone() {
+        val timestamp = OffsetDateTime.of(2022, 3, 8, 3, 0, 0, 0, ZoneOffset.UTC)
+        val day = UsageDay.of(studyId, "p1", timestamp, "America/Los_Angeles")
+
+        Assert.assertEquals(LocalDate.of(2022, 3, 7), day.date)
+        Assert.assertEquals(OffsetDateTime.of(2022, 3, 7, 0, 0, 0, 0, ZoneOffset.ofHours(-8)), day.start)
+        Assert.assertEquals(OffsetDateTime.of(2022, 3, 8, 0, 0, 0, 0, ZoneOffset.ofHours(-8)), day.end)
+        Assert.assertEquals(ZoneOffset.UTC.id, UsageDay.of(studyId, "p1", timestamp, "not a timezone").timezone)
+    }
+
+    @Test
+    fun testGapsAroundRolledUpDays() {
+        val start = OffsetDateTime.of(2022, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC)
+        val end = start.plusDays(4).plusHours(6)
+        val rolledUp = RolledUpUsage(
+            listOf(start.plusDays(2) to start.plusDays(3), start to start.plusDays(1)),
+            listOf()
+        )
+
+        Assert.assertEquals(
+            listOf(start.plusDays(1) to start.plusDays(2), start.plusDays(3) to end),
+            rolledUp.gaps(start, end)
+        )
+        Assert.assertEquals(listOf(start to end), RolledUpUsage.NONE.gaps(start, end))
+    }
+}
@@ -0,0 +1,56 @@
+package com.openlattice.chronicle.storage
+
+import com.geekbeast.postgres.PostgresDatatype
+import com.openlattice.chronicle.storage.tasks.EventHashIndex
+import org.junit.Assert
+import org.junit.Test
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+import java.util.*
+
+/**
+ * Verifies that event hashes agree with the columns compared by the windowed delete of duplicates.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class EventHashIndexTests {
+    private val studyId = UUID.randomUUID()
+    private val timestamp = OffsetDateTime.parse("2022-03-01T10:15:30Z")
+
+    private fun columns(
+        timestamp: Any?,
+        user: String?,
+        eventType: Int?
+    ) = sequenceOf(
+        Triple(RedshiftColumns.EVENT_TYPE.name, PostgresDatatype.INTEGER, eventType),
+        Triple(RedshiftColumns.TIMESTAMP.name, PostgresDatatype.TIMESTAMPTZ, timestamp),
+        Triple(RedshiftColumns.USERNAME.name, PostgresDatatype.TEXT, user),
+    )
+
+    @Test
+    fun testSameInstantHashesEqual() {
+        val utc = EventHashIndex.hash(studyId, "p", columns(timestamp, "u", 1))
+        val offset = EventHashIndex.hash(
+            studyId,
+            "p",
+            columns(timestamp.withOffsetSameInstant(ZoneOffset.ofHours(-7)).toString(), "u", 1)
+        )
+        Assert.assertEquals(utc, offset)
+    }
+
+    @Test
+    fun testNullsMatchDefaults() {
+        Assert.assertEquals(
+            EventHashIndex.hash(studyId, "p", columns(timestamp, null, null)),
+            EventHashIndex.hash(studyId, "p", columns(timestamp, "", 0))
+        )
+    }
+
+    @Test
+    fun testDifferentParticipantsHashDifferently() {
+        Assert.assertNotEquals(
+            EventHashIndex.hash(studyId, "ab", columns(timestamp, "c", 1)),
+            EventHashIndex.hash(studyId, "a", columns(timestamp, "bc", 1))
+        )
+    }
+}
@@ -0,0 +1,62 @@
+package com.openlattice.chronicle.storage
+
+import com.geekbeast.configuration.postgres.PostgresFlavor
+import com.openlattice.chronicle.android.ChronicleUsageEvent
+import com.openlattice.chronicle.services.upload.AppDataUploadService
+import com.openlattice.chronicle.services.upload.UsageEventQueueEntries
+import com.openlattice.chronicle.services.upload.UsageEventQueueEntry
+import com.openlattice.chronicle.storage.sinks.InMemoryEventSink
+import com.openlattice.chronicle.storage.tasks.BufferedUpload
+import com.openlattice.chronicle.storage.tasks.UsageEventStorageDrain
+import com.openlattice.chronicle.util.tests.TestDataFactory
+import org.junit.Assert
+import org.junit.Test
+import java.time.OffsetDateTime
+import java.util.*
+
+/**
+ * Verifies that drained events are routed to the sink for the event storage flavor of each study.
+ *
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class EventStorageDrainTests {
+    private val redshiftStudy = UUID.randomUUID()
+    private val postgresStudy = UUID.randomUUID()
+
+    @Test
+    fun testRoutesByFlavor() {
+        val sinks = mapOf(
+            PostgresFlavor.REDSHIFT to InMemoryEventSink<UsageEventQueueEntry>(),
+            PostgresFlavor.VANILLA to InMemoryEventSink()
+        )
+        val drain = UsageEventStorageDrain(
+            { studyId -> if (studyId == redshiftStudy) PostgresFlavor.REDSHIFT else PostgresFlavor.VANILLA },
+            { flavor -> sinks.getValue(flavor) }
+        )
+
+        val written = drain.write(
+            listOf(upload(redshiftStudy, 10), upload(postgresStudy, 5), upload(redshiftStudy, 3)),
+            null
+        )
+
+        Assert.assertEquals(18, written)
+        Assert.assertEquals(13L, sinks.getValue(PostgresFlavor.REDSHIFT).getWrittenCount())
+        Assert.assertEquals(5L, sinks.getValue(PostgresFlavor.VANILLA).getWrittenCount())
+        Assert.assertTrue(sinks.getValue(PostgresFlavor.REDSHIFT).getEvents().all { it.studyId == redshiftStudy })
+
+        //Each flavor is written as a single batch per drained set of uploads.
+        Assert.assertEquals(1L, sinks.getValue(PostgresFlavor.REDSHIFT).getBatchCount())
+        Assert.assertEquals(1L, sinks.getValue(PostgresFlavor.VANILLA).getBatchCount())
+    }
+
+    private fun upload(studyId: UUID, count: Int): BufferedUpload<UsageEventQueueEntry> {
+        val events = TestDataFactory.chronicleUsageEvents(studyId, "participant", count).map { it as ChronicleUsageEvent }
+        val entries = UsageEventQueueEntries(
+            studyId,
+            "participant",
+            AppDataUploadService.mapToStorageModel(events).toList(),
+            OffsetDateTime.now()
+        )
+        return BufferedUpload(studyId, entries.toEntryList())
+    }
+}
@@ -0,0 +1,79 @@
+package com.openlattice.chronicle.storage
+
+import org.junit.Assert
+import org.junit.Test
+import java.time.YearMonth
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class PartitionedPostgresTableDefinitionTests {
+    private val table = PartitionedPostgresDataTables.CHRONICLE_USAGE_EVENTS
+
+    @Test
+    fun testPartitionKeysArePartOfPrimaryKey() {
+        PartitionedPostgresDataTables.TABLES.forEach { table ->
+            Assert.assertTrue(table.primaryKey.contains(table.rangeColumn))
+            Assert.assertTrue(table.primaryKey.contains(table.hashColumn))
+        }
+    }
+
+    @Test
+    fun testEveryDataTableIsRegistered() {
+        val dataTables = listOf(
+            PostgresDataTables.CHRONICLE_USAGE_EVENTS,
+            PostgresDataTables.CHRONICLE_USAGE_STATS,
+            PostgresDataTables.AUDIT,
+            PostgresDataTables.IOS_SENSOR_DATA,
+            PostgresDataTables.PREPROCESSED_USAGE_EVENTS
+        )
+        val registered = PartitionedPostgresDataTables.TABLES + PartitionedPostgresDataTables.UNPARTITIONED_TABLES
+
+        Assert.assertEquals(dataTables.map { it.name }.toSet(), registered.map { it.name }.toSet())
+        Assert.assertEquals(dataTables.size, registered.size)
+    }
+
+    @Test
+    fun testMonthlyPartitionQueries() {
+        val month = YearMonth.of(2022, 12)
+        val queries = table.createPartitionQueries(month)
+
+        Assert.assertEquals(1 + PartitionedPostgresDataTables.HASH_PARTITIONS, queries.size)
+        Assert.assertEquals("chronicle_usage_events_p202212", table.partitionName(month))
+        Assert.assertTrue(queries.first().contains("FROM ('2022-12-01T00:00Z') TO ('2023-01-01T00:00Z')"))
+        Assert.assertTrue(queries.first().contains("PARTITION BY HASH (${RedshiftColumns.STUDY_ID.name})"))
+        val lastHashPartition = table.hashPartitionName(month, PartitionedPostgresDataTables.HASH_PARTITIONS - 1)
+        Assert.assertEquals("chronicle_usage_events_p202212_h7", lastHashPartition)
+        Assert.assertTrue(queries.last().startsWith("CREATE TABLE IF NOT EXISTS $lastHashPartition PARTITION OF"))
+    }
+
+    @Test
+    fun testCreatingPartitionFromDefaultMovesRowsWhileDetached() {
+        val month = YearMonth.of(2031, 1)
+        val queries = table.createPartitionFromDefaultQueries(month)
+        val monthFilter = "${RedshiftColumns.TIMESTAMP.name} >= '2031-01-01T00:00Z' " +
+                "AND ${RedshiftColumns.TIMESTAMP.name} < '2031-02-01T00:00Z'"
+
+        Assert.assertEquals("ALTER TABLE ${table.name} DETACH PARTITION ${table.defaultPartitionName}", queries.first())
+        Assert.assertEquals(table.createPartitionQueries(month), queries.subList(1, queries.size - 3))
+        Assert.assertEquals(
+            listOf(
+                "INSERT INTO ${table.name} SELECT * FROM ${table.defaultPartitionName} WHERE $monthFilter",
+                "DELETE FROM ${table.defaultPartitionName} WHERE $monthFilter",
+                "ALTER TABLE ${table.name} ATTACH PARTITION ${table.defaultPartitionName} DEFAULT"
+            ),
+            queries.takeLast(3)
+        )
+        Assert.assertEquals(
+            "SELECT 1 FROM ${table.defaultPartitionName} WHERE $monthFilter LIMIT 1",
+            table.defaultPartitionRowsQuery(month)
+        )
+    }
+
+    @Test
+    fun testCreateTableIsPartitionedByRange() {
+        Assert.assertTrue(
+            table.createTableQuery().endsWith("PARTITION BY RANGE (${RedshiftColumns.TIMESTAMP.name})")
+        )
+    }
+}
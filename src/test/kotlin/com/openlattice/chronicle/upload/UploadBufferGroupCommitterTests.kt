@@ -0,0 +1,174 @@
+package com.openlattice.chronicle.upload
+
+import com.codahale.metrics.MetricRegistry
+import com.openlattice.chronicle.configuration.ChronicleUploadConfiguration
+import com.openlattice.chronicle.controllers.UploadQueueSaturatedException
+import com.openlattice.chronicle.services.upload.UploadBufferGroupCommitter
+import com.openlattice.chronicle.services.upload.UploadBufferPayload
+import com.openlattice.chronicle.services.upload.UploadType
+import com.zaxxer.hikari.HikariDataSource
+import org.junit.After
+import org.junit.Assert
+import org.junit.Test
+import org.mockito.Mockito
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.SQLException
+import java.time.OffsetDateTime
+import java.util.*
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+
+/**
+ * @author Matthew Tamayo-Rios &lt;matthew@openlattice.com&gt;
+ */
+class UploadBufferGroupCommitterTests {
+    private val studyId = UUID.randomUUID()
+    private val uploadedAt = OffsetDateTime.now()
+    private val requests = Executors.newCachedThreadPool()
+    private val metrics = MetricRegistry()
+
+    //The number of uploads in each multi-row insert, in the order the inserts were prepared.
+    private val batches = CopyOnWriteArrayList<Int>()
+    private val connection = Mockito.mock(Connection::class.java)
+    private val ps = Mockito.mock(PreparedStatement::class.java)
+    private val hds = Mockito.mock(HikariDataSource::class.java)
+
+    init {
+        Mockito.`when`(hds.connection).thenReturn(connection)
+        Mockito.`when`(connection.prepareStatement(Mockito.anyString())).thenAnswer { invocation ->
+            batches.add((invocation.arguments[0] as String).split("?::jsonb").size - 1)
+            ps
+        }
+        Mockito.`when`(ps.executeUpdate()).thenAnswer { batches.last() }
+    }
+
+    @After
+    fun shutdown() {
+        requests.shutdownNow()
+    }
+
+    private fun committer(configuration: ChronicleUploadConfiguration): UploadBufferGroupCommitter {
+        return UploadBufferGroupCommitter({ hds }, configuration, metrics)
+    }
+
+    private fun write(committer: UploadBufferGroupCommitter, participantId: String): Future<Int> {
+        return requests.submit<Int> {
+            committer.write(
+                studyId,
+                participantId,
+                UploadBufferPayload.json("[]"),
+                uploadedAt,
+                UploadType.Android
+            )
+        }
+    }
+
+    @Test
+    fun testFullQueueIsRejectedWithoutBlocking() {
+        val committing = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        Mockito.`when`(ps.executeUpdate()).thenAnswer {
+            committing.countDown()
+            release.await()
+            batches.last()
+        }
+        val committer = committer(
+            ChronicleUploadConfiguration(
+                groupCommitWriters = 1,
+                groupCommitQueueCapacity = 1,
+                groupCommitMaxBatch = 1,
+                groupCommitLingerMillis = 0,
+                groupCommitRetryAfterSeconds = 7
+            )
+        )
+
+        //The only committer is busy with the first upload and the second upload fills the queue.
+        val first = write(committer, "first")
+        Assert.assertTrue(committing.await(10, TimeUnit.SECONDS))
+        val second = write(committer, "second")
+        val queueDepth = metrics.gauges.values.single()
+        while (queueDepth.value != 1) {
+            Thread.sleep(1)
+        }
+
+        val start = System.nanoTime()
+        try {
+            committer.write(studyId, "third", UploadBufferPayload.json("[]"), uploadedAt, UploadType.Android)
+            Assert.fail("A write to a full queue should be rejected.")
+        } catch (ex: UploadQueueSaturatedException) {
+            Assert.assertEquals(7L, ex.retryAfterSeconds)
+        }
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000)
+        Assert.assertEquals(1L, metrics.meters.values.single().count)
+
+        release.countDown()
+        Assert.assertEquals(1, first.get(10, TimeUnit.SECONDS))
+        Assert.assertEquals(1, second.get(10, TimeUnit.SECONDS))
+    }
+
+    @Test
+    fun testBatchIsCommittedWhenFull() {
+        val committer = committer(
+            ChronicleUploadConfiguration(
+                groupCommitWriters = 1,
+                groupCommitMaxBatch = 3,
+                groupCommitLingerMillis = 60_000
+            )
+        )
+
+        //The linger is far longer than the test waits, so the batch can only be committed because it is full.
+        val writes = (0 until 3).map { write(committer, "participant-$it") }
+        writes.forEach { Assert.assertEquals(1, it.get(10, TimeUnit.SECONDS)) }
+        Assert.assertEquals(listOf(3), batches)
+        Mockito.verify(connection).commit()
+    }
+
+    @Test
+    fun testBatchIsCommittedAfterLinger() {
+        val lingerMillis = 200L
+        val committer = committer(
+            ChronicleUploadConfiguration(
+                groupCommitWriters = 1,
+                groupCommitMaxBatch = 64,
+                groupCommitLingerMillis = lingerMillis
+            )
+        )
+
+        val start = System.nanoTime()
+        Assert.assertEquals(1, write(committer, "participant").get(10, TimeUnit.SECONDS))
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= lingerMillis)
+        Assert.assertEquals(listOf(1), batches)
+    }
+
+    @Test
+    fun testFailedBatchFailsEveryWaitingRequest() {
+        val failure = SQLException("Unable to insert.")
+        Mockito.`when`(ps.executeUpdate()).thenThrow(failure)
+        val committer = committer(
+            ChronicleUploadConfiguration(
+                groupCommitWriters = 1,
+                groupCommitMaxBatch = 3,
+                groupCommitLingerMillis = 60_000
+            )
+        )
+
+        val writes = (0 until 3).map { write(committer, "participant-$it") }
+        writes.forEach { write ->
+            try {
+                write.get(10, TimeUnit.SECONDS)
+                Assert.fail("Every upload in a failed batch should fail.")
+            } catch (ex: ExecutionException) {
+                Assert.assertTrue(ex.cause is IllegalStateException)
+                Assert.assertSame(failure, ex.cause?.cause)
+            }
+        }
+        Assert.assertEquals(listOf(3), batches)
+        Mockito.verify(connection).rollback()
+        Mockito.verify(connection, Mockito.never()).commit()
+    }
+}